@@ -882,6 +882,9 @@ public class ContainerModelBuilder extends ConfigModelBuilder<ContainerModel> {
         /* Add runtime providing utilities such as metrics to embedder implementations */
         cluster.addSimpleComponent(
                 "ai.vespa.embedding.EmbedderRuntime", null, ContainerModelEvaluation.INTEGRATION_BUNDLE_NAME);
+        /* Add cache of embeddings shared between requests, which is disabled unless configured with a size */
+        cluster.addSimpleComponent(
+                "ai.vespa.embedding.EmbeddingCache", null, ContainerModelEvaluation.INTEGRATION_BUNDLE_NAME);
     }
 
     private void addProcessing(DeployState deployState, Element spec, ApplicationContainerCluster cluster, ConfigModelContext context) {
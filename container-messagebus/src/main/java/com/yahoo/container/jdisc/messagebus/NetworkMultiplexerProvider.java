@@ -8,6 +8,7 @@ import com.yahoo.messagebus.network.Identity;
 import com.yahoo.messagebus.network.NetworkMultiplexer;
 import com.yahoo.messagebus.network.rpc.RPCNetworkParams;
 
+import java.time.Duration;
 import java.util.function.Supplier;
 
 /**
@@ -44,7 +45,9 @@ public class NetworkMultiplexerProvider {
                                      .setNumTargetsPerSpec(mbusConfig.numconnectionspertarget())
                                      .setNumNetworkThreads(mbusConfig.numthreads())
                                      .setTransportEventsBeforeWakeup(mbusConfig.transport_events_before_wakeup())
-                                     .setOptimization(RPCNetworkParams.Optimization.valueOf(mbusConfig.optimize_for().name()));
+                                     .setOptimization(RPCNetworkParams.Optimization.valueOf(mbusConfig.optimize_for().name()))
+                                     .setBatchWindow(Duration.ofNanos((long) (mbusConfig.batch_window_ms() * 1_000_000)))
+                                     .setMaxBatchBytes(mbusConfig.max_batch_bytes());
     }
 
     public NetworkMultiplexer net() {
@@ -2,6 +2,7 @@
 package com.yahoo.messagebus.jdisc;
 
 import com.google.inject.Inject;
+import com.yahoo.documentapi.messagebus.protocol.WriteDocumentReply;
 import com.yahoo.jdisc.AbstractResource;
 import com.yahoo.jdisc.Request;
 import com.yahoo.jdisc.ResourceReference;
@@ -19,6 +20,7 @@ import com.yahoo.messagebus.Reply;
 import com.yahoo.messagebus.shared.ServerSession;
 
 import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,6 +37,7 @@ public final class MbusServer extends AbstractResource implements ServerProvider
     private final ServerSession session;
     private final URI uri;
     private final ResourceReference sessionReference;
+    private final AtomicInteger pending = new AtomicInteger(0);
 
     @Inject
     public MbusServer(CurrentContainer container, ServerSession session) {
@@ -90,6 +93,7 @@ public final class MbusServer extends AbstractResource implements ServerProvider
         }
         Request request = null;
         ContentChannel content = null;
+        pending.incrementAndGet();
         try {
             request = new MbusRequest(container, uri, msg) {
                 final ResourceReference sessionReference = session.refer();
@@ -97,6 +101,7 @@ public final class MbusServer extends AbstractResource implements ServerProvider
             };
             content = request.connect(new ServerResponseHandler(msg));
         } catch (RuntimeException e) {
+            pending.decrementAndGet();
             dispatchErrorReply(msg, ErrorCode.APP_FATAL_ERROR, e.toString());
         } finally {
             if (request != null) {
@@ -112,6 +117,9 @@ public final class MbusServer extends AbstractResource implements ServerProvider
         return session.connectionSpec();
     }
 
+    /** Returns the number of messages received by this which are not yet replied to */
+    int pending() { return pending.get(); }
+
     private void dispatchErrorReply(Message msg, int errCode, String errMsg) {
         Reply reply = new EmptyReply();
         reply.swapState(msg);
@@ -148,6 +156,11 @@ public final class MbusServer extends AbstractResource implements ServerProvider
                     }
                 }
             }
+            // Let clients balance load on how busy this is with messages from all clients
+            int queueDepth = pending.decrementAndGet();
+            if (reply instanceof WriteDocumentReply writeReply) {
+                writeReply.setQueueDepth(queueDepth);
+            }
             if (reply.getTrace().shouldTrace(6)) {
                 reply.getTrace().trace(6, "Sending reply from MbusServer.");
             }
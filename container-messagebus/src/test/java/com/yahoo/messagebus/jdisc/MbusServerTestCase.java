@@ -2,6 +2,8 @@
 package com.yahoo.messagebus.jdisc;
 
 import com.google.inject.AbstractModule;
+import com.yahoo.documentapi.messagebus.protocol.DocumentProtocol;
+import com.yahoo.documentapi.messagebus.protocol.WriteDocumentReply;
 import com.yahoo.jdisc.Container;
 import com.yahoo.jdisc.Request;
 import com.yahoo.jdisc.ResourceReference;
@@ -28,6 +30,7 @@ import org.junit.Test;
 
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -89,6 +92,46 @@ public class MbusServerTestCase {
         assertEquals(0, session.refCount);
     }
 
+    @Test
+    public void requireThatWriteDocumentRepliesReportPendingMessages() {
+        List<ResponseHandler> responseHandlers = new ArrayList<>();
+        Container container = new Container() {
+            @Override public long currentTimeMillis() { return 0; }
+            @Override public void release() { }
+            @Override public RequestHandler resolveHandler(Request request) {
+                return new AbstractRequestHandler() {
+                    @Override public ContentChannel handleRequest(Request request, ResponseHandler handler) {
+                        responseHandlers.add(handler);
+                        return null;
+                    }
+                };
+            }
+            @Override public <T> T getInstance(Class<T> type) { return null; }
+        };
+        CurrentContainer current = new CurrentContainer() {
+            @Override public Container newReference(URI uri) { return container; }
+        };
+
+        MySession session = new MySession();
+        MbusServer server = new MbusServer(current, session);
+        server.start();
+        for (int i = 0; i < 3; i++)
+            server.handleMessage(new SimpleMessage("message " + i));
+        assertEquals(3, server.pending());
+
+        responseHandlers.get(0).handleResponse(new MbusResponse(Response.Status.OK,
+                                                                new WriteDocumentReply(DocumentProtocol.REPLY_PUTDOCUMENT)));
+        responseHandlers.get(1).handleResponse(new Response(Response.Status.OK));
+        responseHandlers.get(2).handleResponse(new MbusResponse(Response.Status.OK,
+                                                                new WriteDocumentReply(DocumentProtocol.REPLY_PUTDOCUMENT)));
+        assertEquals(0, server.pending());
+        assertEquals(3, session.replies.size());
+        assertEquals(2, ((WriteDocumentReply)session.replies.get(0)).getQueueDepth());
+        assertEquals(0, ((WriteDocumentReply)session.replies.get(2)).getQueueDepth());
+        server.close();
+        server.destroy();
+    }
+
     @Test
     public void requireThatServerRetainsSession() {
         MySession session = new MySession();
@@ -387,9 +430,12 @@ public class MbusServerTestCase {
     private static class MySession implements ServerSession {
 
         int refCount = 1;
+        final List<Reply> replies = new ArrayList<>();
 
         @Override
-        public void sendReply(Reply reply) { }
+        public void sendReply(Reply reply) {
+            replies.add(reply);
+        }
 
         @Override
         public MessageHandler getMessageHandler() {
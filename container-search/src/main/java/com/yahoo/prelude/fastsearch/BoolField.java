@@ -3,6 +3,7 @@
 package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
 
 /**
  * Class representing a byte field in the result set
@@ -18,4 +19,7 @@ public class BoolField extends DocsumField {
     @Override
     public Object convert(Inspector value) { return value.asBool(); }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) { return value.type() == Type.BOOL; }
+
 }
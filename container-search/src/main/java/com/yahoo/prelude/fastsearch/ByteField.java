@@ -8,6 +8,7 @@ package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.search.result.NanNumber;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
 
 /**
  * @author Bjørn Borud
@@ -33,4 +34,9 @@ public class ByteField extends DocsumField {
         return convert((byte)value.asLong(EMPTY_VALUE));
     }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) {
+        return value.type() == Type.LONG && (byte)value.asLong() != EMPTY_VALUE;
+    }
+
 }
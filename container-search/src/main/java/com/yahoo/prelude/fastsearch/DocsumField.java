@@ -89,4 +89,10 @@ public abstract class DocsumField {
     /** Returns whether this is the string field type. */
     boolean isString() { return false; }
 
+    /**
+     * Returns whether the given value of this field renders to the same JSON as the value returned
+     * by {@link #convert}, such that renderers can write the value directly without converting it.
+     */
+    boolean isDirectlyRenderable(Inspector value) { return false; }
+
 }
@@ -3,6 +3,7 @@ package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.search.result.NanNumber;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
 
 /**
  * @author Mathias Mølster Lidal
@@ -28,4 +29,9 @@ public class DoubleField extends DocsumField {
         return convert(value.asDouble(EMPTY_VALUE));
     }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) {
+        return value.type() == Type.DOUBLE && Double.isFinite(value.asDouble());
+    }
+
 }
@@ -538,6 +538,8 @@ public class FastHit extends Hit {
                         if (fieldType.isString()) {
                             byte[] utf8Value = value.asUtf8();
                             consumer.accept(name, utf8Value, 0, utf8Value.length);
+                        } else if (consumer.acceptsInspectors() && fieldType.isDirectlyRenderable(value)) {
+                            consumer.acceptInspector(name, value);
                         } else {
                             Object convertedValue = fieldType.convert(value);
                             if (convertedValue != null)
@@ -7,6 +7,7 @@ package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.search.result.NanNumber;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
 
 
 /**
@@ -38,4 +39,9 @@ public class Int64Field extends DocsumField {
         return convert(value.asLong(EMPTY_VALUE));
     }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) {
+        return value.type() == Type.LONG && value.asLong() != EMPTY_VALUE;
+    }
+
 }
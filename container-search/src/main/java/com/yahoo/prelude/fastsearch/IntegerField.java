@@ -7,6 +7,7 @@ package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.search.result.NanNumber;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
 
 /**
  * @author Bjørn Borud
@@ -37,4 +38,9 @@ public class IntegerField extends DocsumField {
         return convert((int)value.asLong(EMPTY_VALUE));
     }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) {
+        return value.type() == Type.LONG && (int)value.asLong() != EMPTY_VALUE;
+    }
+
 }
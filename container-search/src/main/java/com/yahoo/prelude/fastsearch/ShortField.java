@@ -7,6 +7,7 @@ package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.search.result.NanNumber;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
 
 /**
  * @author Bjørn Borud
@@ -32,4 +33,9 @@ public class ShortField extends DocsumField {
         return convert((short)value.asLong(EMPTY_VALUE));
     }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) {
+        return value.type() == Type.LONG && (short)value.asLong() != EMPTY_VALUE;
+    }
+
 }
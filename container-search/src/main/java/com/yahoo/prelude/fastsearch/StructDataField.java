@@ -35,4 +35,9 @@ public class StructDataField extends DocsumField {
         }
     }
 
+    @Override
+    boolean isDirectlyRenderable(Inspector value) {
+        return value.type() == Type.ARRAY || value.type() == Type.OBJECT;
+    }
+
 }
@@ -17,6 +17,7 @@ public abstract class CloseableInvoker implements Closeable {
 
     private BiConsumer<Boolean, RequestDuration> teardown = null;
     private boolean success = false;
+    private boolean cancelled = false;
     private RequestDuration duration;
 
     public void teardown(BiConsumer<Boolean, RequestDuration> teardown) {
@@ -28,6 +29,22 @@ public abstract class CloseableInvoker implements Closeable {
         this.success = success;
     }
 
+    /**
+     * Closes this because its outcome is no longer needed, e.g. because another invoker produced it first.
+     * Requests in flight are aborted, and the outcome is not counted as a success.
+     */
+    public final void cancel() {
+        cancelled = true;
+        abort();
+        close();
+    }
+
+    /** Aborts the requests made by this which are still in flight. This default implementation does nothing. */
+    protected void abort() { }
+
+    /** Returns whether this was closed by {@link #cancel} */
+    boolean isCancelled() { return cancelled; }
+
     @Override
     public final void close() {
         if (teardown != null) {
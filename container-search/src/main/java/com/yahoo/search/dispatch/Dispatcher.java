@@ -1,11 +1,14 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch;
 
+import ai.vespa.metrics.ContainerMetrics;
 import com.yahoo.component.AbstractComponent;
 import com.yahoo.component.ComponentId;
 import com.yahoo.component.annotation.Inject;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
@@ -61,6 +64,9 @@ public class Dispatcher extends AbstractComponent {
     private final RpcConnectionPool rpcResourcePool;
     private final SearchCluster searchCluster;
     private final ClusterMonitor<Node> clusterMonitor;
+    private final Counter hedgeCounter;
+    private final Counter hedgeWinCounter;
+    private final HedgeBudget hedgeBudget;
     private volatile VolatileItems volatileItems;
 
     private static class VolatileItems {
@@ -111,32 +117,48 @@ public class Dispatcher extends AbstractComponent {
     }
 
     @Inject
-    public Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig, VipStatus vipStatus) {
-        this(clusterId, dispatchConfig, new RpcResourcePool(dispatchConfig, nodesConfig), nodesConfig, vipStatus, RpcInvokerFactory::new);
+    public Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig,
+                      VipStatus vipStatus, MetricReceiver metric) {
+        this(clusterId, dispatchConfig, new RpcResourcePool(dispatchConfig, nodesConfig, metric), nodesConfig, vipStatus,
+             (pool, groups, config) -> new RpcInvokerFactory(pool, groups, config, metric), metric);
         initialWarmup(dispatchConfig.warmuptime());
     }
 
+    public Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig, VipStatus vipStatus) {
+        this(clusterId, dispatchConfig, nodesConfig, vipStatus, MetricReceiver.nullImplementation);
+    }
+
     Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
-               DispatchNodesConfig nodesConfig, VipStatus vipStatus, InvokerFactoryFactory invokerFactories) {
+               DispatchNodesConfig nodesConfig, VipStatus vipStatus, InvokerFactoryFactory invokerFactories,
+               MetricReceiver metric) {
         this(dispatchConfig, rpcConnectionPool,
              new SearchCluster(clusterId.stringValue(), dispatchConfig.minActivedocsPercentage(),
                                toNodes(clusterId.stringValue(), nodesConfig), vipStatus, new RpcPingFactory(rpcConnectionPool)),
-             invokerFactories);
+             invokerFactories, metric);
     }
 
     Dispatcher(DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
                SearchCluster searchCluster, InvokerFactoryFactory invokerFactories) {
-        this(dispatchConfig, rpcConnectionPool, searchCluster, new ClusterMonitor<>(searchCluster, false), invokerFactories);
+        this(dispatchConfig, rpcConnectionPool, searchCluster, invokerFactories, MetricReceiver.nullImplementation);
+    }
+
+    Dispatcher(DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
+               SearchCluster searchCluster, InvokerFactoryFactory invokerFactories, MetricReceiver metric) {
+        this(dispatchConfig, rpcConnectionPool, searchCluster, new ClusterMonitor<>(searchCluster, false), invokerFactories, metric);
         this.clusterMonitor.start(); // Populate nodes to monitor before starting it.
     }
 
     Dispatcher(DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
-               SearchCluster searchCluster, ClusterMonitor<Node> clusterMonitor, InvokerFactoryFactory invokerFactories) {
+               SearchCluster searchCluster, ClusterMonitor<Node> clusterMonitor, InvokerFactoryFactory invokerFactories,
+               MetricReceiver metric) {
         this.dispatchConfig = dispatchConfig;
         this.rpcResourcePool = rpcConnectionPool;
         this.searchCluster = searchCluster;
         this.invokerFactories = invokerFactories;
         this.clusterMonitor = clusterMonitor;
+        this.hedgeCounter = metric.declareCounter(ContainerMetrics.DISPATCH_HEDGES.baseName());
+        this.hedgeWinCounter = metric.declareCounter(ContainerMetrics.DISPATCH_HEDGE_WINS.baseName());
+        this.hedgeBudget = new HedgeBudget(dispatchConfig.hedgeMaxFraction());
         this.volatileItems = update();
         searchCluster.addMonitoring(clusterMonitor);
     }
@@ -144,7 +166,13 @@ public class Dispatcher extends AbstractComponent {
     /* For simple mocking in tests. Beware that searchCluster is shutdown in deconstruct() */
     Dispatcher(ClusterMonitor<Node> clusterMonitor, SearchCluster searchCluster,
                DispatchConfig dispatchConfig, InvokerFactory invokerFactory) {
-        this(dispatchConfig, null, searchCluster, clusterMonitor, (__, ___, ____) -> invokerFactory);
+        this(clusterMonitor, searchCluster, dispatchConfig, invokerFactory, MetricReceiver.nullImplementation);
+    }
+
+    /* For simple mocking in tests. Beware that searchCluster is shutdown in deconstruct() */
+    Dispatcher(ClusterMonitor<Node> clusterMonitor, SearchCluster searchCluster,
+               DispatchConfig dispatchConfig, InvokerFactory invokerFactory, MetricReceiver metric) {
+        this(dispatchConfig, null, searchCluster, clusterMonitor, (__, ___, ____) -> invokerFactory, metric);
     }
 
     /** Returns the snapshot of volatile items that need to be kept together, incrementing its reference counter. */
@@ -227,6 +255,7 @@ public class Dispatcher extends AbstractComponent {
             case BEST_OF_RANDOM_2 -> LoadBalancer.Policy.BEST_OF_RANDOM_2;
             case ADAPTIVE,LATENCY_AMORTIZED_OVER_REQUESTS -> LoadBalancer.Policy.LATENCY_AMORTIZED_OVER_REQUESTS;
             case LATENCY_AMORTIZED_OVER_TIME -> LoadBalancer.Policy.LATENCY_AMORTIZED_OVER_TIME;
+            case LATENCY_PERCENTILES -> LoadBalancer.Policy.LATENCY_PERCENTILES;
         };
     }
     private static List<Node> toNodes(String clusterName, DispatchNodesConfig nodesConfig) {
@@ -266,7 +295,7 @@ public class Dispatcher extends AbstractComponent {
         try (var items = volatileItems()) { // Take a snapshot, and release it when we're done.
             int maxHitsPerNode = dispatchConfig.maxHitsPerNode();
             SearchInvoker invoker = getSearchPathInvoker(query, searcher, searchCluster.groupList(), items.get().invokerFactory, maxHitsPerNode)
-                    .orElseGet(() -> getInternalInvoker(query, searcher, searchCluster, items.get().loadBalancer, items.get().invokerFactory, maxHitsPerNode));
+                    .orElseGet(() -> getInternalInvoker(query, searcher, items.get().loadBalancer, items.get().invokerFactory, maxHitsPerNode));
 
             if (query.properties().getBoolean(com.yahoo.search.query.Model.ESTIMATE)) {
                 query.setHits(0);
@@ -297,8 +326,9 @@ public class Dispatcher extends AbstractComponent {
         }
     }
 
-    private static SearchInvoker getInternalInvoker(Query query, VespaBackend searcher, SearchCluster cluster,
-                                                    LoadBalancer loadBalancer, InvokerFactory invokerFactory, int maxHitsPerNode) {
+    private SearchInvoker getInternalInvoker(Query query, VespaBackend searcher,
+                                             LoadBalancer loadBalancer, InvokerFactory invokerFactory, int maxHitsPerNode) {
+        SearchCluster cluster = searchCluster;
         Optional<Node> directNode = cluster.localCorpusDispatchTarget();
         if (directNode.isPresent()) {
             Node node = directNode.get();
@@ -329,8 +359,10 @@ public class Dispatcher extends AbstractComponent {
             if (invoker.isPresent()) {
                 query.trace(false, 2, "Dispatching to group ", group.id(), " after retries = ", i);
                 query.getModel().setSearchPath("/" + group.id());
-                invoker.get().teardown((success, time) -> loadBalancer.releaseGroup(group, success, time));
-                return invoker.get();
+                SearchInvoker selected = invoker.get();
+                selected.teardown((success, time) -> loadBalancer.releaseGroup(group, success, time,
+                                                                               failureLatency(selected, time, query)));
+                return hedged(invoker.get(), group, query, searcher, loadBalancer, invokerFactory, maxHitsPerNode);
             } else {
                 loadBalancer.releaseGroup(group, false, RequestDuration.of(Duration.ZERO));
                 if (rejected == null) {
@@ -342,6 +374,71 @@ public class Dispatcher extends AbstractComponent {
         throw new IllegalStateException("No suitable groups to dispatch query. Rejected: " + rejected);
     }
 
+    /**
+     * Returns the given invoker wrapped in one which also sends the query to another group if the given group
+     * is slow to respond, if hedging is enabled and possible, and the given invoker otherwise.
+     * Whether a search is actually hedged when it is slow also depends on the remaining hedge budget.
+     */
+    private SearchInvoker hedged(SearchInvoker invoker, Group group, Query query, VespaBackend searcher,
+                                 LoadBalancer loadBalancer, InvokerFactory invokerFactory, int maxHitsPerNode) {
+        if ( ! dispatchConfig.hedgeSearches()) return invoker;
+        if (dispatchConfig.minSearchCoverage() < 100.0) return invoker; // Hedging waits for complete results
+        if (searchCluster.groupList().size() < 2) return invoker;
+        hedgeBudget.searched();
+        Optional<Duration> percentile = loadBalancer.latencyPercentile(group, dispatchConfig.hedgePercentile());
+        if (percentile.isEmpty()) return invoker;
+
+        Duration delay = max(percentile.get(), Duration.ofNanos((long)(dispatchConfig.hedgeMinDelay() * 1_000_000_000)));
+        return new HedgedSearchInvoker(invoker, delay,
+                                       () -> hedge(group, query, searcher, loadBalancer, invokerFactory, maxHitsPerNode));
+    }
+
+    private Optional<HedgedSearchInvoker.Hedge> hedge(Group slowGroup, Query query, VespaBackend searcher,
+                                                      LoadBalancer loadBalancer, InvokerFactory invokerFactory, int maxHitsPerNode) {
+        Set<Integer> rejected = rejectGroupBlockingFeed(searchCluster.groupList().groups());
+        if (rejected == null) {
+            rejected = new HashSet<>();
+        }
+        rejected.add(slowGroup.id());
+        if (rejected.size() >= searchCluster.groupList().size()) return Optional.empty();
+        if ( ! hedgeBudget.tryHedge()) {
+            query.trace(false, 2, "Group ", slowGroup.id(), " is slow, but the hedge budget is spent");
+            return Optional.empty();
+        }
+
+        Optional<Group> hedgeGroup = loadBalancer.takeGroup(rejected);
+        if (hedgeGroup.isEmpty()) return Optional.empty();
+
+        Group group = hedgeGroup.get();
+        Optional<SearchInvoker> invoker = invokerFactory.createSearchInvoker(searcher, query, group.nodes(), false, maxHitsPerNode);
+        if (invoker.isEmpty()) {
+            loadBalancer.releaseGroup(group, false, RequestDuration.of(Duration.ZERO));
+            return Optional.empty();
+        }
+        hedgeCounter.add(1);
+        query.trace(false, 2, "Group ", slowGroup.id(), " is slow: Hedging search to group ", group.id());
+        SearchInvoker selected = invoker.get();
+        selected.teardown((success, time) -> loadBalancer.releaseGroup(group, success, time,
+                                                                       failureLatency(selected, time, query)));
+        return Optional.of(new HedgedSearchInvoker.Hedge(invoker.get(), () -> {
+            hedgeWinCounter.add(1);
+            query.trace(false, 2, "Using the result from group ", group.id());
+            query.getModel().setSearchPath("/" + group.id());
+        }));
+    }
+
+    /**
+     * Returns the latency to record for a search which did not succeed: A cancelled search, which lost to a hedge,
+     * lasted at least until it was cancelled, while one that failed is taken to have lasted the full timeout.
+     */
+    private static Duration failureLatency(CloseableInvoker invoker, RequestDuration time, Query query) {
+        return invoker.isCancelled() ? time.duration() : Duration.ofMillis(query.getTimeout());
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
     /**
      * We want to avoid groups blocking feed because their data may be out of date.
      * If there is a single group blocking feed, we want to reject it.
@@ -0,0 +1,42 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+/**
+ * Limits the hedged searches to a fraction of all searches: Each search earns that fraction of a hedge,
+ * and each hedge spends a whole one. Earnings are capped, such that hedges are spread out over time
+ * rather than spent in a burst after a period where no searches were slow.
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+class HedgeBudget {
+
+    /** The max number of hedges which can be saved up */
+    static final int MAX_BALANCE = 10;
+
+    /** The balance of a single hedge, such that the balance is kept in whole millionths of hedges */
+    private static final long HEDGE = 1_000_000;
+
+    private final long earnedPerSearch;
+    private long balance = 0;
+
+    /** Creates a budget allowing the given fraction of searches, in [0, 1], to be hedged */
+    HedgeBudget(double fraction) {
+        if (fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("The hedge fraction must be in [0, 1], but was " + fraction);
+        this.earnedPerSearch = Math.round(fraction * HEDGE);
+    }
+
+    /** Adds the share of a hedge earned by a search */
+    synchronized void searched() {
+        balance = Math.min(MAX_BALANCE * HEDGE, balance + earnedPerSearch);
+    }
+
+    /** Spends a hedge and returns true if the budget allows it, and returns false otherwise */
+    synchronized boolean tryHedge() {
+        if (balance < HEDGE) return false;
+        balance -= HEDGE;
+        return true;
+    }
+
+}
@@ -0,0 +1,131 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.Query;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A search invoker which sends a search to a primary invoker, and if that has not produced a complete
+ * response within a given delay, sends the same search to a hedge invoker as well.
+ * The first complete response is used, and the other invoker is cancelled. A response containing only errors
+ * is not considered complete as long as the other invoker may still produce a usable one.
+ *
+ * @author agent
+ */
+class HedgedSearchInvoker extends SearchInvoker implements ResponseMonitor<SearchInvoker> {
+
+    private final SearchInvoker primary;
+    private final Duration delay;
+    private final Supplier<Optional<Hedge>> hedger;
+    private final LinkedBlockingQueue<SearchInvoker> availableForProcessing = new LinkedBlockingQueue<>();
+
+    private Hedge hedge = null;
+    private Query query;
+
+    /**
+     * Creates a hedged invoker
+     *
+     * @param primary the invoker to send the search to first
+     * @param delay the time to wait for a complete response from the primary invoker before hedging
+     * @param hedger supplies the hedge to use, or empty if none is available
+     */
+    HedgedSearchInvoker(SearchInvoker primary, Duration delay, Supplier<Optional<Hedge>> hedger) {
+        super(Optional.empty());
+        this.primary = primary;
+        this.delay = delay;
+        this.hedger = hedger;
+    }
+
+    @Override
+    protected Object sendSearchRequest(Query query, Object context) throws IOException {
+        this.query = query;
+        primary.setMonitor(this);
+        return primary.sendSearchRequest(query, context);
+    }
+
+    @Override
+    protected InvokerResult getSearchResult() throws IOException {
+        try {
+            InvokerResult primaryResult = null;
+            if (availableForProcessing.poll(Math.min(delay.toMillis(), query.getTimeLeft()), TimeUnit.MILLISECONDS) != null) {
+                primaryResult = primary.getSearchResult();
+                if ( ! isErrorsOnly(primaryResult)) return use(primary, primaryResult);
+            }
+
+            // The primary is slow, or failed: hedge if possible
+            if (query.getTimeLeft() > 0)
+                hedge = hedger.get().orElse(null);
+            if (hedge == null)
+                return use(primary, primaryResult != null ? primaryResult : primary.getSearchResult());
+            hedge.invoker().setMonitor(this);
+            hedge.invoker().sendSearchRequest(query, null);
+
+            InvokerResult hedgeResult = null;
+            while (primaryResult == null || hedgeResult == null) {
+                SearchInvoker next = availableForProcessing.poll(query.getTimeLeft(), TimeUnit.MILLISECONDS);
+                if (next == null) break;
+                if (next == primary) {
+                    primaryResult = primary.getSearchResult();
+                    if ( ! isErrorsOnly(primaryResult)) return use(primary, primaryResult);
+                }
+                else {
+                    hedgeResult = hedge.invoker().getSearchResult();
+                    if ( ! isErrorsOnly(hedgeResult)) return use(hedge.invoker(), hedgeResult);
+                }
+            }
+
+            // Neither produced a usable response: Use the one we have, and otherwise let the primary produce the timeout result
+            if (primaryResult == null && hedgeResult != null)
+                return use(hedge.invoker(), hedgeResult);
+            return use(primary, primaryResult != null ? primaryResult : primary.getSearchResult());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for search results", e);
+        }
+    }
+
+    private InvokerResult use(SearchInvoker winner, InvokerResult result) {
+        if (hedge != null) // Cancel the loser to release its resources
+            (winner == primary ? hedge.invoker() : primary).cancel();
+        winner.setFinalStatus(result.getResult().hits().getError() == null);
+        if (hedge != null && winner == hedge.invoker())
+            hedge.onUsed().run();
+        return result;
+    }
+
+    /** Returns whether this result contains errors and nothing else, which should not win over a healthy hedge */
+    private static boolean isErrorsOnly(InvokerResult result) {
+        return result.getResult().hits().getError() != null
+               && result.getLeanHits().isEmpty()
+               && result.getResult().hits().getConcreteSize() == 0;
+    }
+
+    @Override
+    protected void release() {
+        primary.close();
+        if (hedge != null)
+            hedge.invoker().close();
+    }
+
+    @Override
+    public void responseAvailable(SearchInvoker from) {
+        availableForProcessing.add(from);
+    }
+
+    // For testing
+    boolean hedged() { return hedge != null; }
+
+    /**
+     * An invoker to hedge to.
+     *
+     * @param invoker the invoker to send the search to
+     * @param onUsed called if the response of this invoker is used
+     */
+    record Hedge(SearchInvoker invoker, Runnable onUsed) {}
+
+}
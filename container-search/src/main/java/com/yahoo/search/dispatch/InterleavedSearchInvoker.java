@@ -15,12 +15,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -28,6 +31,7 @@ import java.util.stream.Collectors;
  * InterleavedSearchInvoker uses multiple {@link SearchInvoker} objects to interface with content
  * nodes in parallel. Operationally it first sends requests to all contained invokers and then
  * collects the results. The user of this class is responsible for merging the results if needed.
+ * If a monitor is set, it is notified when all the contained invokers have a response available.
  *
  * @author ollivir
  */
@@ -43,8 +47,13 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     private final Set<Integer> alreadyFailedNodes;
     private final CoverageAggregator coverageAggregator;
     private final TopKEstimator hitEstimator;
+    private final int invokerCount;
+    private final AtomicInteger responseCount = new AtomicInteger();
     private Query query;
 
+    /** The number of hits requested from each node by distribution key, if estimated per node */
+    private Map<Integer, Integer> requestedHits = null;
+
     private TimeoutHandler timeoutHandler;
     public InterleavedSearchInvoker(Timer timer, Collection<SearchInvoker> invokers,
                                     TopKEstimator hitEstimator,
@@ -55,6 +64,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         this.timer = timer;
         this.invokers = Collections.newSetFromMap(new IdentityHashMap<>());
         this.invokers.addAll(invokers);
+        this.invokerCount = this.invokers.size();
         this.dispatchConfig = dispatchConfig;
         this.group = group;
         this.availableForProcessing = newQueue();
@@ -89,6 +99,14 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         int originalHits = query.getHits();
         int originalOffset = query.getOffset();
         int neededHits = originalHits + originalOffset;
+        query.setOffset(0);
+        if (hitEstimator.isAdaptive() && !group.isSparse()) {
+            sendSearchRequestsPerNode(query, neededHits);
+            query.setHits(originalHits);
+            query.setOffset(originalOffset);
+            return null;
+        }
+
         int q = neededHits;
         if (group.isBalanced() && !group.isSparse()) {
             Double topkProbabilityOverrride = query.properties().getDouble(Dispatcher.topKProbability);
@@ -97,7 +115,6 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                     : estimateHitsToFetch(neededHits, invokers.size());
         }
         query.setHits(q);
-        query.setOffset(0);
 
         Object context = null;
         for (SearchInvoker invoker : invokers) {
@@ -110,10 +127,39 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         return null;
     }
 
+    /**
+     * Sends the query to each node with the number of hits estimated from the learned share of that node.
+     * Until the share of a node is learned, it gets an estimate from an even share if the group is balanced,
+     * and all the hits needed otherwise, as without adaptive estimates. To bound the number of distinct requests to serialize, the hits are rounded up to a multiple of
+     * 1/32 of the hits needed, and nodes getting the same number of hits share the request context.
+     */
+    private void sendSearchRequestsPerNode(Query query, int neededHits) throws IOException {
+        Double topkProbabilityOverrride = query.properties().getDouble(Dispatcher.topKProbability);
+        double p = (topkProbabilityOverrride != null) ? topkProbabilityOverrride : hitEstimator.defaultProbability();
+        int step = Math.max(1, neededHits / 32);
+        requestedHits = new HashMap<>();
+        Map<Integer, Object> contexts = new HashMap<>();
+        for (SearchInvoker invoker : invokers) {
+            int q = neededHits;
+            if (invoker.distributionKey().isPresent()) {
+                int node = invoker.distributionKey().get();
+                if (hitEstimator.hasLearnedShareOf(node))
+                    q = hitEstimator.estimateK(neededHits, invokers.size(), node, p);
+                else if (group.isBalanced())
+                    q = hitEstimator.estimateK(neededHits, invokers.size(), p);
+                q = Math.min(neededHits, (q + step - 1) / step * step);
+                requestedHits.put(node, q);
+            }
+            query.setHits(q);
+            contexts.put(q, invoker.sendSearchRequest(query, contexts.get(q)));
+        }
+        timeoutHandler = createTimeoutHandler(dispatchConfig, invokers.size(), query);
+    }
+
     @Override
     protected InvokerResult getSearchResult() throws IOException {
         InvokerResult result = new InvokerResult(query, query.getHits());
-        List<LeanHit> merged = List.of();
+        List<List<LeanHit>> partialHits = new ArrayList<>(invokerCount);
         long nextTimeout = query.getTimeLeft();
         var groupingResultAggregator = new GroupingResultAggregator();
         try {
@@ -125,7 +171,8 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                     break;
                 } else {
                     InvokerResult toMerge = invoker.getSearchResult();
-                    merged = mergeResult(result.getResult(), toMerge, merged, groupingResultAggregator);
+                    mergeResult(result.getResult(), toMerge, groupingResultAggregator);
+                    partialHits.add(toMerge.getLeanHits());
                     ejectInvoker(invoker);
                 }
                 nextTimeout = timeoutHandler.nextTimeoutMS(coverageAggregator.getAnsweredNodes());
@@ -140,6 +187,9 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         result.getResult().setCoverage(adjusted.createCoverage(timeoutHandler));
 
         int needed = query.getOffset() + query.getHits();
+        List<LeanHit> merged = LeanHitMerger.merge(partialHits, needed);
+        if (requestedHits != null && invokers.isEmpty() && alreadyFailedNodes == null && merged.size() >= needed)
+            hitEstimator.learn(merged.subList(0, needed), requestedHits);
         for (int index = query.getOffset(); (index < merged.size()) && (index < needed); index++) {
             result.getLeanHits().add(merged.get(index));
         }
@@ -175,8 +225,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         }
     }
 
-    private List<LeanHit> mergeResult(Result result, InvokerResult partialResult, List<LeanHit> current,
-                                      GroupingResultAggregator groupingResultAggregator) {
+    private void mergeResult(Result result, InvokerResult partialResult, GroupingResultAggregator groupingResultAggregator) {
         coverageAggregator.add(partialResult.getResult().getCoverage(true));
 
         result.mergeWith(partialResult.getResult());
@@ -190,44 +239,6 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                 }
             }
         }
-        if (current.isEmpty() ) {
-            return partialResult.getLeanHits();
-        }
-        List<LeanHit> partial = partialResult.getLeanHits();
-        if (partial.isEmpty()) {
-            return current;
-        }
-
-        int needed = query.getOffset() + query.getHits();
-        List<LeanHit> merged = new ArrayList<>(needed);
-        int indexCurrent = 0;
-        int indexPartial = 0;
-        while (indexCurrent < current.size() && indexPartial < partial.size() && merged.size() < needed) {
-            LeanHit incomingHit = partial.get(indexPartial);
-            LeanHit currentHit = current.get(indexCurrent);
-
-            int cmpRes = currentHit.compareTo(incomingHit);
-            if (cmpRes < 0) {
-                merged.add(currentHit);
-                indexCurrent++;
-            } else if (cmpRes > 0) {
-                merged.add(incomingHit);
-                indexPartial++;
-            } else { // Duplicates
-                merged.add(currentHit);
-                indexCurrent++;
-                indexPartial++;
-            }
-        }
-        appendRemainingIfNeeded(merged, needed, current, indexCurrent);
-        appendRemainingIfNeeded(merged, needed, partial, indexPartial);
-        return merged;
-    }
-
-    private void appendRemainingIfNeeded(List<LeanHit> merged, int needed, List<LeanHit> hits, int index) {
-        while ((index < hits.size()) && (merged.size() < needed)) {
-            merged.add(hits.get(index++));
-        }
     }
 
     private void ejectInvoker(SearchInvoker invoker) {
@@ -235,6 +246,11 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         invoker.release();
     }
 
+    @Override
+    protected void abort() {
+        invokers.forEach(SearchInvoker::abort); // Those not yet processed
+    }
+
     @Override
     protected void release() {
         if (!invokers.isEmpty()) {
@@ -248,11 +264,9 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         if (availableForProcessing != null) {
             availableForProcessing.add(from);
         }
-    }
-
-    @Override
-    protected void setMonitor(ResponseMonitor<SearchInvoker> monitor) {
-        // never to be called
+        if (responseCount.incrementAndGet() == invokerCount) {
+            responseAvailable();
+        }
     }
 
     // For overriding in tests
@@ -2,6 +2,7 @@
 package com.yahoo.search.dispatch;
 
 import com.yahoo.concurrent.Timer;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
@@ -29,9 +30,14 @@ public abstract class InvokerFactory {
     private final TopKEstimator hitEstimator;
 
     public InvokerFactory(SearchGroups searchCluster, DispatchConfig dispatchConfig) {
+        this(searchCluster, dispatchConfig, MetricReceiver.nullImplementation);
+    }
+
+    public InvokerFactory(SearchGroups searchCluster, DispatchConfig dispatchConfig, MetricReceiver metric) {
         this.cluster = searchCluster;
         this.dispatchConfig = dispatchConfig;
-        this.hitEstimator = new TopKEstimator(30.0, dispatchConfig.topKProbability(), SKEW_FACTOR);
+        this.hitEstimator = new TopKEstimator(30.0, dispatchConfig.topKProbability(), SKEW_FACTOR,
+                                              dispatchConfig.adaptiveTopK(), dispatchConfig.adaptiveTopKMinShare(), metric);
     }
 
     protected abstract Optional<SearchInvoker> createNodeSearchInvoker(VespaBackend searcher,
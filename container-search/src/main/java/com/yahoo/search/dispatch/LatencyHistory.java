@@ -0,0 +1,75 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The latencies of the most recent searches to a group, from which percentiles can be computed.
+ * Percentiles are read from a sorted snapshot of the recent latencies which is refreshed for every
+ * few latencies added, such that reading them is cheap enough to be done for each query.
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+class LatencyHistory {
+
+    static final int DEFAULT_SIZE = 128;
+    static final int DEFAULT_MIN_SAMPLES = 16;
+    static final int SNAPSHOT_INTERVAL = 8;
+
+    private final long[] samples;
+    private final int minSamples;
+    private int next = 0;
+    private int count = 0;
+    private int addedSinceSnapshot = 0;
+
+    /** The recent latencies in nanoseconds in sorted order, or null if there are too few */
+    private volatile long[] snapshot = null;
+
+    LatencyHistory() {
+        this(DEFAULT_SIZE, DEFAULT_MIN_SAMPLES);
+    }
+
+    LatencyHistory(int size, int minSamples) {
+        if (minSamples < 1 || minSamples > size)
+            throw new IllegalArgumentException("minSamples must be in [1, " + size + "], but was " + minSamples);
+        this.samples = new long[size];
+        this.minSamples = minSamples;
+    }
+
+    synchronized void add(Duration latency) {
+        samples[next] = latency.toNanos();
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+            count++;
+        addedSinceSnapshot++;
+        if (count >= minSamples && (snapshot == null || addedSinceSnapshot >= SNAPSHOT_INTERVAL)) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            snapshot = sorted;
+            addedSinceSnapshot = 0;
+        }
+    }
+
+    /**
+     * Returns the given percentile of the recorded latencies,
+     * or empty if too few latencies are recorded to compute it reliably.
+     *
+     * @param percentile the percentile to return, in [0, 100]
+     */
+    Optional<Duration> percentile(double percentile) {
+        long nanos = percentileNanos(percentile);
+        return nanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(nanos));
+    }
+
+    /** Returns the given percentile of the recorded latencies in nanoseconds, or -1 if there are too few */
+    long percentileNanos(double percentile) {
+        long[] sorted = snapshot;
+        if (sorted == null) return -1;
+        int index = (int)Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+}
@@ -0,0 +1,127 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges lists of sorted hits into a single sorted list of the top hits, where duplicates are removed.
+ * <p>
+ * This uses a tournament tree over the lists, such that taking each hit costs a comparison per level
+ * of the tree, i.e. log2 of the number of lists, and no objects are allocated other than the merged list.
+ * When the hits are ordered by relevance, the relevance of the current first hit of each list is kept
+ * in a primitive array such that most comparisons do not need to access the hits.
+ *
+ * @author agent
+ */
+final class LeanHitMerger {
+
+    private LeanHitMerger() {}
+
+    /**
+     * Returns the first hits in the sorted order of the given lists of hits.
+     *
+     * @param lists the lists of hits to merge, each sorted
+     * @param count the max number of hits to return
+     */
+    static List<LeanHit> merge(List<List<LeanHit>> lists, int count) {
+        List<List<LeanHit>> nonEmpty = new ArrayList<>(lists.size());
+        for (List<LeanHit> list : lists) {
+            if ( ! list.isEmpty())
+                nonEmpty.add(list);
+        }
+        if (nonEmpty.isEmpty()) return List.of();
+        if (nonEmpty.size() == 1) return nonEmpty.get(0);
+        return new Tournament(nonEmpty).take(count);
+    }
+
+    private static final class Tournament {
+
+        private final List<List<LeanHit>> lists;
+
+        /** The number of leaves of the tree, a power of two not smaller than the number of lists */
+        private final int leaves;
+
+        /**
+         * The index of the list whose first hit wins each subtree, or -1 if all lists in it are exhausted.
+         * The root is at 1, the children of i are at 2i and 2i+1, and the leaf of list i is at leaves + i.
+         */
+        private final int[] tree;
+
+        /** The position of the current first hit in each list */
+        private final int[] positions;
+
+        /** The relevance of the current first hit in each list */
+        private final double[] relevance;
+
+        /** Whether hits are ordered by sort data rather than relevance */
+        private final boolean bySortData;
+
+        Tournament(List<List<LeanHit>> lists) {
+            this.lists = lists;
+            this.leaves = Integer.highestOneBit(lists.size() - 1) << 1;
+            this.tree = new int[2 * leaves];
+            this.positions = new int[lists.size()];
+            this.relevance = new double[lists.size()];
+            this.bySortData = lists.get(0).get(0).hasSortData();
+            for (int i = 0; i < leaves; i++) {
+                if (i < lists.size()) {
+                    tree[leaves + i] = i;
+                    relevance[i] = lists.get(i).get(0).getRelevance();
+                }
+                else {
+                    tree[leaves + i] = -1;
+                }
+            }
+            for (int node = leaves - 1; node > 0; node--)
+                tree[node] = winner(tree[2 * node], tree[2 * node + 1]);
+        }
+
+        List<LeanHit> take(int count) {
+            List<LeanHit> merged = new ArrayList<>(count);
+            LeanHit previous = null;
+            while (merged.size() < count && tree[1] >= 0) {
+                int list = tree[1];
+                LeanHit hit = lists.get(list).get(positions[list]);
+                if (previous == null || hit.compareTo(previous) != 0) { // Duplicates are adjacent
+                    merged.add(hit);
+                    previous = hit;
+                }
+                advance(list);
+            }
+            return merged;
+        }
+
+        /** Moves to the next hit in the given list and replays the matches on the path from its leaf to the root */
+        private void advance(int list) {
+            int position = ++positions[list];
+            int node = leaves + list;
+            if (position < lists.get(list).size())
+                relevance[list] = lists.get(list).get(position).getRelevance();
+            else
+                tree[node] = -1;
+            for (node >>= 1; node > 0; node >>= 1)
+                tree[node] = winner(tree[2 * node], tree[2 * node + 1]);
+        }
+
+        private int winner(int a, int b) {
+            if (a < 0) return b;
+            if (b < 0) return a;
+            return compare(a, b) <= 0 ? a : b;
+        }
+
+        private int compare(int a, int b) {
+            if ( ! bySortData) {
+                int result = Double.compare(relevance[b], relevance[a]);
+                if (result != 0) return result;
+            }
+            return first(a).compareTo(first(b));
+        }
+
+        private LeanHit first(int list) {
+            return lists.get(list).get(positions[list]);
+        }
+
+    }
+
+}
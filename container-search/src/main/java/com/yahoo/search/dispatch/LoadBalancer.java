@@ -34,7 +34,7 @@ public class LoadBalancer {
     private final Map<Integer, GroupStatus> scoreboard;
     private final GroupScheduler scheduler;
 
-    public enum Policy { ROUNDROBIN, LATENCY_AMORTIZED_OVER_REQUESTS, LATENCY_AMORTIZED_OVER_TIME, BEST_OF_RANDOM_2}
+    public enum Policy { ROUNDROBIN, LATENCY_AMORTIZED_OVER_REQUESTS, LATENCY_AMORTIZED_OVER_TIME, BEST_OF_RANDOM_2, LATENCY_PERCENTILES}
 
     public LoadBalancer(Collection<Group> groups, Policy policy) {
         this.scoreboard = new HashMap<>();
@@ -49,6 +49,7 @@ public class LoadBalancer {
             case BEST_OF_RANDOM_2: yield new BestOfRandom2(new Random(), scoreboard);
             case LATENCY_AMORTIZED_OVER_REQUESTS: yield new AdaptiveScheduler(AdaptiveScheduler.Type.REQUESTS, new Random(), scoreboard);
             case LATENCY_AMORTIZED_OVER_TIME: yield new AdaptiveScheduler(AdaptiveScheduler.Type.TIME, new Random(), scoreboard);
+            case LATENCY_PERCENTILES: yield new LatencyPercentileScheduler(new Random(), scoreboard);
         };
     }
 
@@ -89,6 +90,33 @@ public class LoadBalancer {
         }
     }
 
+    /**
+     * Release an allocation given by {@link #takeGroup} which was used for a search with the given timeout.
+     * A failed search is taken to have lasted at least the timeout, such that a group where searches fail or
+     * time out does not appear to be fast to those using its {@link #latencyPercentile latency percentiles}.
+     *
+     * @param group previously allocated group
+     * @param success was the query successful
+     * @param searchTime query execution time, used for adaptive load balancing
+     * @param timeout the timeout of the query
+     */
+    public void releaseGroup(Group group, boolean success, RequestDuration searchTime, Duration timeout) {
+        synchronized (this) {
+            GroupStatus sched = scoreboard.get(group.id());
+            sched.release(success, searchTime, timeout);
+        }
+    }
+
+    /**
+     * Returns the given percentile of the latencies of recent searches to the given group,
+     * or empty if not enough searches to it have completed yet.
+     */
+    public Optional<Duration> latencyPercentile(Group group, double percentile) {
+        GroupStatus status = scoreboard.get(group.id());
+        if (status == null) return Optional.empty();
+        return status.latencies.percentile(percentile);
+    }
+
     static class GroupStatus {
 
         interface Decayer {
@@ -102,6 +130,7 @@ public class LoadBalancer {
         }
 
         private final Group group;
+        private final LatencyHistory latencies = new LatencyHistory();
         private int allocations = 0;
         private Decayer decayer;
 
@@ -125,17 +154,41 @@ public class LoadBalancer {
             }
             if (success) {
                 decayer.decay(searchTime);
+                latencies.add(searchTime.duration());
             }
         }
 
+        /** Releases a search which, if it failed, is recorded as having lasted at least the given latency */
+        void release(boolean success, RequestDuration searchTime, Duration failureLatency) {
+            release(success, searchTime);
+            if ( ! success)
+                latencies.add(max(searchTime.duration(), failureLatency));
+        }
+
         double weight() {
             return 1.0 / decayer.averageCost();
         }
 
+        /**
+         * Returns the estimated time in seconds until a new query to this group completes: The median latency of
+         * recent searches times the number of searches in flight including the new one, plus the distance
+         * from the median to the 99th percentile latency, such that groups with a long latency tail are avoided.
+         */
+        double estimatedCompletionTime() {
+            long median = latencies.percentileNanos(50);
+            if (median < 0) return (allocations + 1) * MIN_QUERY_TIME; // Not enough history: Use the number in flight
+            long p99 = latencies.percentileNanos(99);
+            return ((allocations + 1) * median + (p99 - median)) / 1_000_000_000.0;
+        }
+
         int groupId() {
             return group.id();
         }
 
+        private static Duration max(Duration a, Duration b) {
+            return a.compareTo(b) >= 0 ? a : b;
+        }
+
     }
 
     private interface GroupScheduler {
@@ -290,6 +343,49 @@ public class LoadBalancer {
         }
     }
 
+    /**
+     * Selects the group with the lowest {@link GroupStatus#estimatedCompletionTime() estimated completion time}
+     * among those with sufficient coverage, or among all if none have. Ties are broken by starting
+     * the search at a random group.
+     */
+    static class LatencyPercentileScheduler implements GroupScheduler {
+
+        private final Random random;
+        private final List<GroupStatus> groups;
+
+        LatencyPercentileScheduler(Random random, Map<Integer, GroupStatus> scoreboard) {
+            this.random = random;
+            this.groups = List.copyOf(scoreboard.values());
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
+            if (groups.isEmpty()) return Optional.empty();
+            int start = random.nextInt(groups.size());
+            GroupStatus gs = selectFastest(start, rejectedGroups, true);
+            return (gs != null)
+                    ? Optional.of(gs)
+                    : Optional.ofNullable(selectFastest(start, rejectedGroups, false));
+        }
+
+        private GroupStatus selectFastest(int start, Set<Integer> rejectedGroups, boolean requireCoverage) {
+            GroupStatus best = null;
+            double bestTime = Double.MAX_VALUE;
+            for (int i = 0; i < groups.size(); i++) {
+                GroupStatus gs = groups.get((start + i) % groups.size());
+                if (rejectedGroups != null && rejectedGroups.contains(gs.groupId())) continue;
+                if (requireCoverage && ! gs.group.hasSufficientCoverage()) continue;
+                double time = gs.estimatedCompletionTime();
+                if (time < bestTime) {
+                    best = gs;
+                    bestTime = time;
+                }
+            }
+            return best;
+        }
+
+    }
+
     static class BestOfRandom2 implements GroupScheduler {
         private final Random random;
         private final Map<Integer, GroupStatus> scoreboard;
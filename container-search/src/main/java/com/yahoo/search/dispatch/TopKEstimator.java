@@ -1,11 +1,27 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch;
 
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.concurrent.Timer;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
 import org.apache.commons.math3.distribution.TDistribution;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Use StudentT distribution and estimate how many hits you need from each partition
  * to to get the globally top-k documents with the desired probability
+ * <p>
+ * If adaptive, this also learns the share of the top-k hits each node contributes from the queries
+ * it is told about, and uses that in place of an even share when estimating the hits to get from that node.
+ * The predicted and actual shares of each node are averaged over the queries learned from,
+ * and sampled as metrics at most once per {@link #METRICS_SAMPLE_INTERVAL_MILLIS}.
  *
  * @author baldersheim
  */
@@ -18,6 +34,23 @@ public class TopKEstimator {
     private final double [] defaultCumulativeProbability;
     private final static int MIN_N = 2;
 
+    /** The number of queries a node must have contributed to before its learned share is used */
+    static final int MIN_SAMPLES = 32;
+
+    /** The weight of each new observation of the share of a node */
+    private static final double ALPHA = 0.02;
+
+    /** The minimum time between each sampling of the share metrics */
+    static final long METRICS_SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final boolean adaptive;
+    private final double minShare;
+    private final Map<Integer, NodeShare> shares = new ConcurrentHashMap<>();
+    private final Gauge predictedShare;
+    private final Gauge actualShare;
+    private final Timer timer;
+    private final AtomicLong lastSampled;
+
     private static boolean needEstimate(double p) {
         return (0.0 < p) && (p < 1.0);
     }
@@ -27,6 +60,29 @@ public class TopKEstimator {
     }
 
     public TopKEstimator(double freedom, double defaultProbability, double skewFactor) {
+        this(freedom, defaultProbability, skewFactor, false, 0.0, MetricReceiver.nullImplementation);
+    }
+
+    /**
+     * Creates a top-k estimator.
+     *
+     * @param adaptive whether to learn the share of the top-k hits contributed by each node
+     * @param minShare the smallest share assumed for a node when adaptive, as a fraction of an even share
+     * @param metric the receiver of metrics of predicted and actual shares when adaptive
+     */
+    public TopKEstimator(double freedom, double defaultProbability, double skewFactor,
+                         boolean adaptive, double minShare, MetricReceiver metric) {
+        this(freedom, defaultProbability, skewFactor, adaptive, minShare, metric, Timer.monotonic);
+    }
+
+    TopKEstimator(double freedom, double defaultProbability, double skewFactor,
+                  boolean adaptive, double minShare, MetricReceiver metric, Timer timer) {
+        this.adaptive = adaptive;
+        this.minShare = minShare;
+        this.predictedShare = metric.declareGauge(ContainerMetrics.DISPATCH_TOPK_PREDICTED_SHARE.baseName());
+        this.actualShare = metric.declareGauge(ContainerMetrics.DISPATCH_TOPK_ACTUAL_SHARE.baseName());
+        this.timer = timer;
+        this.lastSampled = new AtomicLong(timer.milliTime());
         this.studentT = new TDistribution(null, freedom);
         defaultP = defaultProbability;
         estimate = needEstimate(defaultP);
@@ -75,5 +131,120 @@ public class TopKEstimator {
                 ? Math.min(k, (int)Math.ceil(estimateExactK(k, n, p)))
                 : k;
     }
-}
 
+    /** Returns whether this learns the share of the top-k hits contributed by each node */
+    public boolean isAdaptive() { return adaptive; }
+
+    public double defaultProbability() { return defaultP; }
+
+    /** Returns whether this is adaptive and has enough samples of the share of the given node to use it in estimates */
+    public boolean hasLearnedShareOf(int node) {
+        NodeShare share = adaptive ? shares.get(node) : null;
+        return share != null && share.isLearned();
+    }
+
+    /**
+     * Returns the number of hits to get from the given node to get the globally top-k documents with probability p.
+     * If adaptive and the share of the node is learned, that is used in place of an even share,
+     * but never less than the configured minimum share.
+     *
+     * @param k the number of hits needed
+     * @param n the number of nodes queried
+     * @param node the distribution key of the node to estimate for
+     * @param p the desired probability of getting the top-k documents
+     */
+    public int estimateK(int k, int n, int node, double p) {
+        if ( ! hasLearnedShareOf(node) || ! needEstimate(p) || n < MIN_N) return estimateK(k, n, p);
+        NodeShare share = shares.get(node);
+        double s = Math.min(1.0, Math.max(share.value(), minShare / n));
+        double estimate = k * s + inverseCumulativeProbability(n, p) * Math.sqrt(k * s * (1 - s));
+        return Math.min(k, (int)Math.ceil(estimate));
+    }
+
+    /**
+     * Learns from the top-k hits of a query which share of them each of the nodes queried contributed.
+     * A node which contributed all the hits requested from it may have had more in the top-k,
+     * so its observed share is doubled to let the estimate grow until it is no longer limited by the request.
+     *
+     * @param topK the globally top-k hits of a query which got all the hits it needed
+     * @param requested the number of hits requested from each node queried, by distribution key
+     */
+    public void learn(List<LeanHit> topK, Map<Integer, Integer> requested) {
+        if ( ! adaptive || topK.isEmpty()) return;
+        Map<Integer, Integer> contributed = new HashMap<>();
+        for (LeanHit hit : topK)
+            contributed.merge(hit.getDistributionKey(), 1, Integer::sum);
+        for (var entry : requested.entrySet()) {
+            int count = contributed.getOrDefault(entry.getKey(), 0);
+            double observed = (double)count / topK.size();
+            NodeShare share = shares.computeIfAbsent(entry.getKey(), this::newNodeShare);
+            double predicted = share.isLearned() ? share.value() : 1.0 / requested.size();
+            share.add(count >= entry.getValue() ? Math.min(1.0, 2 * observed) : observed);
+            share.observe(predicted, observed);
+        }
+        maybeSampleMetrics();
+    }
+
+    /** Samples the average predicted and actual share of each node if the sample interval has passed */
+    private void maybeSampleMetrics() {
+        long now = timer.milliTime();
+        long last = lastSampled.get();
+        if (now - last < METRICS_SAMPLE_INTERVAL_MILLIS || ! lastSampled.compareAndSet(last, now)) return;
+        for (NodeShare share : shares.values())
+            share.sample(predictedShare, actualShare);
+    }
+
+    private NodeShare newNodeShare(int node) {
+        return new NodeShare(predictedShare.builder().set("node", node).build());
+    }
+
+    /** The learned share of the top-k hits contributed by a node */
+    private static class NodeShare {
+
+        private final Point point;
+        private double value = 0;
+        private long samples = 0;
+
+        // The sums of predicted and actual shares observed since the metrics were last sampled
+        private double predictedSum = 0;
+        private double actualSum = 0;
+        private int observations = 0;
+
+        NodeShare(Point point) {
+            this.point = point;
+        }
+
+        synchronized void add(double share) {
+            samples++;
+            double weight = Math.max(ALPHA, 1.0 / samples); // Average until there are enough samples
+            value += weight * (share - value);
+        }
+
+        synchronized void observe(double predicted, double actual) {
+            predictedSum += predicted;
+            actualSum += actual;
+            observations++;
+        }
+
+        /** Samples the average predicted and actual share observed since the last time this was called, if any */
+        void sample(Gauge predictedShare, Gauge actualShare) {
+            double predicted, actual;
+            synchronized (this) {
+                if (observations == 0) return;
+                predicted = predictedSum / observations;
+                actual = actualSum / observations;
+                predictedSum = 0;
+                actualSum = 0;
+                observations = 0;
+            }
+            predictedShare.sample(predicted, point);
+            actualShare.sample(actual, point);
+        }
+
+        synchronized double value() { return value; }
+
+        synchronized boolean isLearned() { return samples >= MIN_SAMPLES; }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.search.dispatch.rpc.CompressPayload.PayloadKind;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Chooses the compression of each payload sent to a node as the one minimizing the estimated time spent
+ * compressing and transferring it: The compression ratio and time per byte of each compression type is measured
+ * per node and payload kind, and the transfer time per byte to each node is estimated from the round trip times
+ * of the requests to it, as described in {@link TransferTime}.
+ * <p>
+ * Until there are enough measurements to estimate the transfer time, the default compression type is used.
+ * A small fraction of payloads are compressed with another type than the estimated best, to keep the
+ * measurements of all types current.
+ * <p>
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+class AdaptiveCompression {
+
+    /** The compression types to measure and choose between, in addition to none */
+    private static final CompressionType[] candidates = { CompressionType.LZ4, CompressionType.ZSTD };
+
+    /** The weight of each new measurement in the moving averages */
+    static final double alpha = 0.05;
+
+    /** The number of measurements needed before an estimate is used */
+    static final int minSamples = 16;
+
+    /** The fraction of payloads which are compressed with a random type to keep measurements current */
+    static final double explorationRate = 1.0 / 64;
+
+    private final Compressor compressor;
+    private final LongSupplier nanoClock;
+    private final Map<Integer, NodeStatistics> nodes = new ConcurrentHashMap<>();
+    private final Counter requests;
+    private final Counter bytesSaved;
+    private final Map<PayloadKind, Map<CompressionType, Point>> points = new EnumMap<>(PayloadKind.class);
+
+    AdaptiveCompression(Compressor compressor, MetricReceiver metric) {
+        this(compressor, metric, System::nanoTime);
+    }
+
+    AdaptiveCompression(Compressor compressor, MetricReceiver metric, LongSupplier nanoClock) {
+        this.compressor = compressor;
+        this.nanoClock = nanoClock;
+        this.requests = metric.declareCounter(ContainerMetrics.DISPATCH_COMPRESSION_REQUESTS.baseName());
+        this.bytesSaved = metric.declareCounter(ContainerMetrics.DISPATCH_COMPRESSION_BYTES_SAVED.baseName());
+        for (PayloadKind kind : PayloadKind.values()) {
+            Map<CompressionType, Point> kindPoints = new EnumMap<>(CompressionType.class);
+            for (CompressionType type : CompressionType.values())
+                kindPoints.put(type, requests.builder().set("compression", type.name().toLowerCase(Locale.ROOT))
+                                                       .set("payload", kind.name().toLowerCase(Locale.ROOT))
+                                                       .build());
+            points.put(kind, kindPoints);
+        }
+    }
+
+    /** Compresses a payload of the given kind to be sent to the given node */
+    Compressor.Compression compress(byte[] payload, int nodeId, PayloadKind kind) {
+        return compress(choose(payload.length, nodeId, kind), payload, nodeId, kind);
+    }
+
+    /** Returns the compression type to use for a payload of the given kind and size to be sent to the given node */
+    CompressionType choose(int size, int nodeId, PayloadKind kind) {
+        if (size < compressor.compressMinSizeBytes()) return compressor.type();
+        return node(nodeId).choose(kind, size);
+    }
+
+    /** Compresses a payload of the given kind to be sent to the given node with the given type, and measures it */
+    Compressor.Compression compress(CompressionType type, byte[] payload, int nodeId, PayloadKind kind) {
+        long start = nanoClock.getAsLong();
+        Compressor.Compression compression = compressor.compress(type, payload);
+        if (type != CompressionType.NONE && payload.length >= compressor.compressMinSizeBytes())
+            node(nodeId).compressed(kind, type, payload.length, compression.data().length, nanoClock.getAsLong() - start);
+
+        Point point = points.get(kind).get(compression.type());
+        requests.add(1, point);
+        bytesSaved.add(payload.length - compression.data().length, point);
+        return compression;
+    }
+
+    /**
+     * Records that a request and its response were exchanged with a node with the given round trip time.
+     *
+     * @param payloadBytes the uncompressed size of the request and response payloads
+     * @param transferredBytes the compressed size of the request and response payloads, as transferred
+     */
+    void transferred(int nodeId, long payloadBytes, long transferredBytes, long roundTripNanos) {
+        node(nodeId).transfer.add(payloadBytes, transferredBytes, roundTripNanos);
+    }
+
+    /** Returns the estimated transfer time in nanoseconds per byte to the given node, or -1 if not known */
+    double transferNanosPerByte(int nodeId) {
+        NodeStatistics node = nodes.get(nodeId);
+        return node == null ? -1 : node.transfer.slope();
+    }
+
+    private NodeStatistics node(int nodeId) {
+        return nodes.computeIfAbsent(nodeId, __ -> new NodeStatistics());
+    }
+
+    private class NodeStatistics {
+
+        private final TransferTime transfer = new TransferTime();
+        private final Map<PayloadKind, Map<CompressionType, CompressionStatistics>> compression = new EnumMap<>(PayloadKind.class);
+
+        NodeStatistics() {
+            for (PayloadKind kind : PayloadKind.values()) {
+                Map<CompressionType, CompressionStatistics> kindStatistics = new EnumMap<>(CompressionType.class);
+                for (CompressionType type : candidates)
+                    kindStatistics.put(type, new CompressionStatistics());
+                compression.put(kind, kindStatistics);
+            }
+        }
+
+        CompressionType choose(PayloadKind kind, int size) {
+            Map<CompressionType, CompressionStatistics> statistics = compression.get(kind);
+            for (CompressionType type : candidates) {
+                if (statistics.get(type).samples() < minSamples) return type; // Measure all types first
+            }
+
+            double transferNanosPerByte = transfer.slope();
+            if (transferNanosPerByte < 0) return compressor.type();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < explorationRate)
+                return candidates[random.nextInt(candidates.length)];
+
+            CompressionType best = CompressionType.NONE;
+            double bestCost = size * transferNanosPerByte;
+            for (CompressionType type : candidates) {
+                CompressionStatistics typeStatistics = statistics.get(type);
+                double cost = size * (typeStatistics.nanosPerByte() + typeStatistics.ratio() * transferNanosPerByte);
+                if (cost < bestCost) {
+                    best = type;
+                    bestCost = cost;
+                }
+            }
+            return best;
+        }
+
+        void compressed(PayloadKind kind, CompressionType type, int size, int compressedSize, long nanos) {
+            compression.get(kind).get(type).add(size, compressedSize, nanos);
+        }
+
+    }
+
+    /** Moving averages of the compression ratio and time per byte of a compression type */
+    private static class CompressionStatistics {
+
+        private int samples = 0;
+        private double ratio = 1;
+        private double nanosPerByte = 0;
+
+        synchronized void add(int size, int compressedSize, long nanos) {
+            double weight = samples < minSamples ? 1.0 / (samples + 1) : alpha;
+            ratio += weight * ((double)compressedSize / size - ratio);
+            nanosPerByte += weight * ((double)nanos / size - nanosPerByte);
+            samples++;
+        }
+
+        synchronized int samples() { return samples; }
+        synchronized double ratio() { return ratio; }
+        synchronized double nanosPerByte() { return nanosPerByte; }
+
+    }
+
+    /**
+     * An exponentially weighted least squares fit of round trip time to the payload bytes and the transferred bytes
+     * of requests and their responses. The round trip time includes the time the node spends processing a request,
+     * which grows with its payload, so a fit to the transferred bytes alone would count that as transfer time.
+     * Compression varies the transferred bytes independently of the payload, so the coefficient of the transferred
+     * bytes in this fit estimates the transfer time per byte, while that of the payload bytes absorbs the processing.
+     */
+    static class TransferTime {
+
+        private int samples = 0;
+        private double weights, payload, transferred, nanos;
+        private double payloadSquared, payloadTimesTransferred, transferredSquared, payloadTimesNanos, transferredTimesNanos;
+
+        synchronized void add(long payloadBytes, long transferredBytes, long roundTripNanos) {
+            double p = payloadBytes;
+            double t = transferredBytes;
+            double y = roundTripNanos;
+            weights = (1 - alpha) * weights + 1;
+            payload = (1 - alpha) * payload + p;
+            transferred = (1 - alpha) * transferred + t;
+            nanos = (1 - alpha) * nanos + y;
+            payloadSquared = (1 - alpha) * payloadSquared + p * p;
+            payloadTimesTransferred = (1 - alpha) * payloadTimesTransferred + p * t;
+            transferredSquared = (1 - alpha) * transferredSquared + t * t;
+            payloadTimesNanos = (1 - alpha) * payloadTimesNanos + p * y;
+            transferredTimesNanos = (1 - alpha) * transferredTimesNanos + t * y;
+            samples++;
+        }
+
+        /** Returns the estimated nanoseconds per byte transferred, or -1 if there is too little data to estimate it */
+        synchronized double slope() {
+            if (samples < minSamples) return -1;
+            // Weighted (co)variances, times the sum of weights
+            double pp = weights * payloadSquared - payload * payload;
+            double pt = weights * payloadTimesTransferred - payload * transferred;
+            double tt = weights * transferredSquared - transferred * transferred;
+            double py = weights * payloadTimesNanos - payload * nanos;
+            double ty = weights * transferredTimesNanos - transferred * nanos;
+            if (tt <= 1e-9 * weights * transferredSquared) return -1; // All transfers have (nearly) the same size
+            if (pp <= 1e-9 * weights * payloadSquared) return Math.max(0, ty / tt); // Processing does not vary with payload
+            double determinant = pp * tt - pt * pt;
+            if (determinant <= 1e-9 * pp * tt) return -1; // Transferred bytes are proportional to payload bytes
+            return Math.max(0, (pp * ty - pt * py) / determinant);
+        }
+
+    }
+
+}
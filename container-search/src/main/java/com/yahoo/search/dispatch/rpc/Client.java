@@ -6,6 +6,7 @@ import com.yahoo.prelude.fastsearch.FastHit;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.LongConsumer;
 
 /**
  * A dispatch client.
@@ -97,9 +98,33 @@ public interface Client {
         void request(String rpcMethod, CompressionType compression, int uncompressedLength, byte[] compressedPayload,
                      ResponseReceiver responseReceiver, double timeoutSeconds);
 
+        /**
+         * Sends a request as {@link #request}, and returns a handle which aborts it if it is not yet responded to.
+         * Aborting releases what is held for the request by this, and gives the receiver an error response,
+         * but the node may keep working on the request until it times out.
+         * This default implementation returns a handle which does nothing.
+         */
+        default Runnable abortableRequest(String rpcMethod, CompressionType compression, int uncompressedLength,
+                                          byte[] compressedPayload, ResponseReceiver responseReceiver, double timeoutSeconds) {
+            request(rpcMethod, compression, uncompressedLength, compressedPayload, responseReceiver, timeoutSeconds);
+            return () -> { };
+        }
+
         /** Closes this connection */
         void close();
 
+        /** Returns the number of requests sent on this which are not yet responded to, or -1 if this is not tracked */
+        default int inflightRequests() { return -1; }
+
+        /** Returns the payload bytes of requests sent on this which are not yet responded to, or -1 if this is not tracked */
+        default long inflightBytes() { return -1; }
+
+        /**
+         * Sets a listener which is given the nanoseconds each request sent on this waits before it is written to the network.
+         * This default implementation does not track this, and ignores the listener.
+         */
+        default void setQueueDelayListener(LongConsumer listener) { }
+
     }
 
     class ProtobufResponse {
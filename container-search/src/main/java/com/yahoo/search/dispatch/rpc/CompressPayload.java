@@ -1,6 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch.rpc;
 
+import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.search.Query;
 
@@ -10,6 +11,29 @@ import com.yahoo.search.Query;
  * @author baldersheim
  */
 public interface CompressPayload {
+
+    /** The kinds of request payloads sent to content nodes */
+    enum PayloadKind { SEARCH, DOCSUM }
+
     Compressor.Compression compress(Query query, byte[] payload);
+
+    /** Compresses a payload of the given kind to be sent to the node with the given distribution key */
+    default Compressor.Compression compress(Query query, byte[] payload, int nodeId, PayloadKind kind) {
+        return compress(compressionType(query, payload.length, nodeId, kind), payload, nodeId, kind);
+    }
+
+    /** Returns the compression type to use for a payload of the given kind and size sent to the node with the given distribution key */
+    CompressionType compressionType(Query query, int size, int nodeId, PayloadKind kind);
+
+    /** Compresses a payload of the given kind to be sent to the node with the given distribution key with the given type */
+    Compressor.Compression compress(CompressionType type, byte[] payload, int nodeId, PayloadKind kind);
+
     byte[] decompress(Client.ProtobufResponse response);
+
+    /**
+     * Called when a response is received from a node, with the uncompressed sizes of the request and response payloads,
+     * and their sizes as transferred
+     */
+    default void transferred(int nodeId, long payloadBytes, long transferredBytes, long roundTripNanos) { }
+
 }
@@ -3,19 +3,32 @@ package com.yahoo.search.dispatch.rpc;
 
 import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 
+import java.util.Optional;
+
 /**
  * Implement interface to compress/decompress request/response
  *
  * @author baldersheim
  */
 public class CompressService implements CompressPayload {
-    /** The compression method which will be used with rpc dispatch. "lz4" (default) and "none" is supported. */
+    /** The compression method which will be used with rpc dispatch. "lz4" (default), "zstd" and "none" is supported. */
     public static final CompoundName dispatchCompression = CompoundName.from("dispatch.compression");
     private final Compressor compressor = new Compressor(CompressionType.LZ4, 5, 0.95, 256);
 
+    /** The adaptive compression used when the query does not specify one, or null to use lz4 */
+    private final AdaptiveCompression adaptiveCompression;
+
+    public CompressService() {
+        this(false, MetricReceiver.nullImplementation);
+    }
+
+    public CompressService(boolean adaptive, MetricReceiver metric) {
+        this.adaptiveCompression = adaptive ? new AdaptiveCompression(compressor, metric) : null;
+    }
 
     @Override
     public Compressor.Compression compress(Query query, byte[] payload) {
@@ -23,10 +36,33 @@ public class CompressService implements CompressPayload {
         return compressor.compress(compression, payload);
     }
 
+    @Override
+    public CompressionType compressionType(Query query, int size, int nodeId, PayloadKind kind) {
+        if (adaptiveCompression == null || query.properties().get(dispatchCompression) != null)
+            return CompressionType.valueOf(query.properties().getString(dispatchCompression, "LZ4").toUpperCase());
+        return adaptiveCompression.choose(size, nodeId, kind);
+    }
+
+    @Override
+    public Compressor.Compression compress(CompressionType type, byte[] payload, int nodeId, PayloadKind kind) {
+        if (adaptiveCompression == null)
+            return compressor.compress(type, payload);
+        return adaptiveCompression.compress(type, payload, nodeId, kind);
+    }
+
     @Override
     public byte[] decompress(Client.ProtobufResponse response) {
         CompressionType compression = CompressionType.valueOf(response.compression());
-        return compressor.decompress(response.compressedPayload(), compression, response.uncompressedSize());
+        byte[] compressed = response.compressedPayload();
+        return compressor.decompress(compression, compressed, 0, response.uncompressedSize(),
+                                     compression == CompressionType.ZSTD ? Optional.of(compressed.length) : Optional.empty());
     }
+
+    @Override
+    public void transferred(int nodeId, long payloadBytes, long transferredBytes, long roundTripNanos) {
+        if (adaptiveCompression != null)
+            adaptiveCompression.transferred(nodeId, payloadBytes, transferredBytes, roundTripNanos);
+    }
+
     Compressor compressor() { return compressor; }
 }
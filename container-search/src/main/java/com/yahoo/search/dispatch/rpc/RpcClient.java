@@ -13,6 +13,10 @@ import com.yahoo.jrt.Target;
 import com.yahoo.jrt.Transport;
 import com.yahoo.jrt.Values;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
 /**
  * A client which uses rpc request to search nodes to implement the Client API.
  *
@@ -23,7 +27,7 @@ public class RpcClient implements Client {
     private final Supervisor supervisor;
 
     public RpcClient(String name, int transportThreads) {
-        supervisor = new Supervisor(new Transport(name, transportThreads));
+        supervisor = new Supervisor(new Transport(name, transportThreads).withRoundRobinThreadSelection());
     }
 
     @Override
@@ -48,6 +52,13 @@ public class RpcClient implements Client {
         // All access to this must be synchronized
         private Target target;
 
+        // The requests and request payload bytes sent on this which are not yet responded to
+        private final AtomicInteger inflightRequests = new AtomicInteger();
+        private final AtomicLong inflightBytes = new AtomicLong();
+
+        // Given the time each request waits on this before it is sent, or null if not measured
+        private volatile LongConsumer queueDelayListener = null;
+
         public RpcNodeConnection(String hostname, int port, Supervisor supervisor) {
             this.supervisor = supervisor;
             this.hostname = hostname;
@@ -63,15 +74,44 @@ public class RpcClient implements Client {
             return port;
         }
 
+        @Override
+        public int inflightRequests() { return inflightRequests.get(); }
+
+        @Override
+        public long inflightBytes() { return inflightBytes.get(); }
+
+        @Override
+        public void setQueueDelayListener(LongConsumer listener) { queueDelayListener = listener; }
+
         @Override
         public void request(String rpcMethod, CompressionType compression, int uncompressedLength, byte[] compressedPayload,
                             ResponseReceiver responseReceiver, double timeoutSeconds) {
+            abortableRequest(rpcMethod, compression, uncompressedLength, compressedPayload, responseReceiver, timeoutSeconds);
+        }
+
+        @Override
+        public Runnable abortableRequest(String rpcMethod, CompressionType compression, int uncompressedLength,
+                                         byte[] compressedPayload, ResponseReceiver responseReceiver, double timeoutSeconds) {
             Request request = new Request(rpcMethod);
             request.parameters().add(new Int8Value(compression.getCode()));
             request.parameters().add(new Int32Value(uncompressedLength));
             request.parameters().add(new DataValue(compressedPayload));
 
-            invokeAsync(request, timeoutSeconds, new RpcProtobufResponseWaiter(this, responseReceiver));
+            LongConsumer listener = queueDelayListener;
+            if (listener != null) {
+                long queuedAt = System.nanoTime();
+                request.setSentHandler(() -> listener.accept(System.nanoTime() - queuedAt));
+            }
+
+            inflightRequests.incrementAndGet();
+            inflightBytes.addAndGet(compressedPayload.length);
+            invokeAsync(request, timeoutSeconds, new RpcProtobufResponseWaiter(this, responseReceiver, compressedPayload.length));
+            return request::abort;
+        }
+
+        private void requestDone(int payloadSize) {
+            inflightBytes.addAndGet(-payloadSize);
+            inflightRequests.decrementAndGet();
         }
 
         private void invokeAsync(Request req, double timeout, RequestWaiter waiter) {
@@ -104,13 +144,18 @@ public class RpcClient implements Client {
         /** The handler to which the response is forwarded */
         private final ResponseReceiver handler;
 
-        public RpcProtobufResponseWaiter(RpcNodeConnection node, ResponseReceiver handler) {
+        /** The size of the request payload */
+        private final int payloadSize;
+
+        public RpcProtobufResponseWaiter(RpcNodeConnection node, ResponseReceiver handler, int payloadSize) {
             this.node = node;
             this.handler = handler;
+            this.payloadSize = payloadSize;
         }
 
         @Override
         public void handleRequestDone(Request requestWithResponse) {
+            node.requestDone(payloadSize);
             if (requestWithResponse.isError()) {
                 handler.receive(ResponseOrError.fromError("Error response from " + node + ": " + requestWithResponse.errorMessage()));
                 return;
@@ -1,6 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch.rpc;
 
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
@@ -21,6 +22,7 @@ public class RpcInvokerFactory extends InvokerFactory {
     private final RpcConnectionPool rpcResourcePool;
     private final CompressPayload compressor;
     private final RpcProtobufFillInvoker.DecodePolicy decodeType;
+    private final int maxHitsPerDocsumRequest;
 
     private static RpcProtobufFillInvoker.DecodePolicy convert(DispatchConfig.SummaryDecodePolicy.Enum decoding) {
         return switch (decoding) {
@@ -30,10 +32,16 @@ public class RpcInvokerFactory extends InvokerFactory {
     }
 
     public RpcInvokerFactory(RpcConnectionPool rpcResourcePool, SearchGroups cluster, DispatchConfig dispatchConfig) {
-        super(cluster, dispatchConfig);
+        this(rpcResourcePool, cluster, dispatchConfig, MetricReceiver.nullImplementation);
+    }
+
+    public RpcInvokerFactory(RpcConnectionPool rpcResourcePool, SearchGroups cluster, DispatchConfig dispatchConfig,
+                             MetricReceiver metric) {
+        super(cluster, dispatchConfig, metric);
         this.rpcResourcePool = rpcResourcePool;
-        this.compressor = new CompressService();
+        this.compressor = new CompressService(dispatchConfig.adaptiveCompression(), metric);
         this.decodeType = convert(dispatchConfig.summaryDecodePolicy());
+        this.maxHitsPerDocsumRequest = dispatchConfig.maxHitsPerDocsumRequest();
     }
 
     @Override
@@ -47,6 +55,6 @@ public class RpcInvokerFactory extends InvokerFactory {
 
         boolean summaryNeedsQuery = searcher.summaryNeedsQuery(query);
         return new RpcProtobufFillInvoker(rpcResourcePool, compressor, searcher.getDocumentDatabase(query),
-                                          searcher.getServerId(), decodeType, summaryNeedsQuery);
+                                          searcher.getServerId(), decodeType, summaryNeedsQuery, maxHitsPerDocsumRequest);
     }
 }
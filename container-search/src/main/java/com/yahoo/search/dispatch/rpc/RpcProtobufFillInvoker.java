@@ -2,7 +2,10 @@
 package com.yahoo.search.dispatch.rpc;
 
 import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 import com.yahoo.collections.ListMap;
 import com.yahoo.collections.Pair;
 import com.yahoo.compress.Compressor;
@@ -22,6 +25,8 @@ import com.yahoo.slime.ArrayTraverser;
 import com.yahoo.slime.BinaryFormat;
 import com.yahoo.slime.BinaryView;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -49,6 +54,7 @@ public class RpcProtobufFillInvoker extends FillInvoker {
     private final String serverId;
     private final CompressPayload compressor;
     private final DecodePolicy decodePolicy;
+    private final int maxHitsPerRequest;
 
     private BlockingQueue<Pair<Client.ResponseOrError<ProtobufResponse>, List<FastHit>>> responses;
 
@@ -59,40 +65,56 @@ public class RpcProtobufFillInvoker extends FillInvoker {
     private int outstandingResponses;
 
     RpcProtobufFillInvoker(RpcConnectionPool resourcePool, CompressPayload compressor, DocumentDatabase documentDb,
-                           String serverId, DecodePolicy decodePolicy, boolean summaryNeedsQuery) {
+                           String serverId, DecodePolicy decodePolicy, boolean summaryNeedsQuery, int maxHitsPerRequest) {
         this.documentDb = documentDb;
         this.resourcePool = resourcePool;
         this.serverId = serverId;
         this.summaryNeedsQuery = summaryNeedsQuery;
         this.compressor = compressor;
         this.decodePolicy = decodePolicy;
+        this.maxHitsPerRequest = maxHitsPerRequest;
     }
 
     @Override
     protected void sendFillRequest(Result result, String summaryClass) {
         ListMap<Integer, FastHit> hitsByNode = hitsByNode(result);
+        List<Pair<Integer, List<FastHit>>> batches = batches(hitsByNode);
 
-        result.getQuery().trace(false, 5, "Sending ", hitsByNode.size(), " summary fetch requests with jrt/protobuf");
+        result.getQuery().trace(false, 5, "Sending ", batches.size(), " summary fetch requests to ", hitsByNode.size(),
+                                " nodes with jrt/protobuf");
 
-        outstandingResponses = hitsByNode.size();
+        outstandingResponses = batches.size();
         responses = new LinkedBlockingQueue<>(outstandingResponses);
 
         var timeout = TimeoutHelper.calculateTimeout(result.getQuery());
         if (timeout.timedOut()) {
             // Need to produce an error response her in case of JVM system clock being adjusted
             // Timeout mechanism relies on System.currentTimeMillis(), not System.nanoTime() :(
-            hitsByNode.forEach((nodeId, hits) ->
-                    receive(Client.ResponseOrError.fromTimeoutError("Timed out prior to sending docsum request to " + nodeId), hits));
+            batches.forEach(batch ->
+                    receive(Client.ResponseOrError.fromTimeoutError("Timed out prior to sending docsum request to " + batch.getFirst()),
+                            batch.getSecond()));
             return;
         }
         var builder = ProtobufSerialization.createDocsumRequestBuilder(
                 result.getQuery(), serverId, summaryClass, result.getQuery().getPresentation().getSummaryFields(), summaryNeedsQuery, timeout.request());
-        hitsByNode.forEach((nodeId, hits) -> {
-            var payload = ProtobufSerialization.serializeDocsumRequest(builder, hits);
-            sendDocsumsRequest(nodeId, hits, payload, result, timeout.client());
+        batches.forEach(batch -> {
+            var payload = ProtobufSerialization.serializeDocsumRequest(builder, batch.getSecond());
+            sendDocsumsRequest(batch.getFirst(), batch.getSecond(), payload, result, timeout.client());
         });
     }
 
+    /** Splits the hits of each node into batches of at most maxHitsPerRequest hits, each fetched in a separate request */
+    private List<Pair<Integer, List<FastHit>>> batches(ListMap<Integer, FastHit> hitsByNode) {
+        List<Pair<Integer, List<FastHit>>> batches = new ArrayList<>();
+        for (var entry : hitsByNode.entrySet()) {
+            List<FastHit> hits = entry.getValue();
+            int batchSize = maxHitsPerRequest > 0 ? maxHitsPerRequest : hits.size();
+            for (int start = 0; start < hits.size(); start += batchSize)
+                batches.add(new Pair<>(entry.getKey(), hits.subList(start, Math.min(start + batchSize, hits.size()))));
+        }
+        return batches;
+    }
+
     @Override
     protected void getFillResults(Result result, String summaryClass) {
         try {
@@ -137,9 +159,16 @@ public class RpcProtobufFillInvoker extends FillInvoker {
         }
 
         Query query = result.getQuery();
-        Compressor.Compression compressionResult = compressor.compress(query, payload);
+        Compressor.Compression compressionResult = compressor.compress(query, payload, nodeId, CompressPayload.PayloadKind.DOCSUM);
+        long sentAtNanos = System.nanoTime();
         node.request(RPC_METHOD, compressionResult.type(), payload.length, compressionResult.data(),
-                roe -> receive(roe, hits), clientTimeout);
+                roe -> {
+                    roe.response().ifPresent(r -> compressor.transferred(nodeId,
+                                                                         (long)payload.length + r.uncompressedSize(),
+                                                                         (long)compressionResult.data().length + r.compressedPayload().length,
+                                                                         System.nanoTime() - sentAtNanos));
+                    receive(roe, hits);
+                }, clientTimeout);
     }
 
     private void processResponses(Result result, String summaryClass) throws TimeoutException {
@@ -204,16 +233,16 @@ public class RpcProtobufFillInvoker extends FillInvoker {
 
     private int fill(Result result, List<FastHit> hits, String summaryClass, byte[] payload) {
         try {
-            var protobuf = SearchProtocol.DocsumReply.parseFrom(payload);
+            List<SearchProtocol.Error> replyErrors = new ArrayList<>();
             var root = (decodePolicy == DecodePolicy.ONDEMAND)
-                    ? BinaryView.inspect(protobuf.getSlimeSummaries().toByteArray())
-                    : BinaryFormat.decode(protobuf.getSlimeSummaries().toByteArray()).get();
+                    ? inspectSummaries(payload, replyErrors)
+                    : decodeSummaries(payload, replyErrors);
             var errors = root.field("errors");
             boolean hasErrors = errors.valid() && (errors.entries() > 0);
             if (hasErrors) {
                 addErrors(result, errors);
             }
-            convertErrorsFromDocsumReply(result, protobuf.getErrorsList());
+            convertErrorsFromDocsumReply(result, replyErrors);
 
             Inspector summaries = new SlimeAdapter(root.field("docsums"));
             if (!summaries.valid()) {
@@ -231,13 +260,45 @@ public class RpcProtobufFillInvoker extends FillInvoker {
                 }
             }
             return skippedHits;
-        } catch (InvalidProtocolBufferException ex) {
+        } catch (IOException ex) {
             log.log(Level.WARNING, "Invalid response to docsum request", ex);
             result.hits().addError(ErrorMessage.createInternalServerError("Invalid response to docsum request from backend"));
             return 0;
         }
     }
 
+    /** Decodes the summaries of the given DocsumReply payload to a Slime, and adds its errors to the given list */
+    private static com.yahoo.slime.Inspector decodeSummaries(byte[] payload, List<SearchProtocol.Error> errors)
+            throws InvalidProtocolBufferException {
+        var protobuf = SearchProtocol.DocsumReply.parseFrom(payload);
+        errors.addAll(protobuf.getErrorsList());
+        return BinaryFormat.decode(protobuf.getSlimeSummaries().toByteArray()).get();
+    }
+
+    /**
+     * Returns a view of the summaries in the given DocsumReply payload, and adds its errors to the given list.
+     * The view references the payload directly, such that summary data is not copied, and is
+     * only decoded when fields are accessed.
+     */
+    static com.yahoo.slime.Inspector inspectSummaries(byte[] payload, List<SearchProtocol.Error> errors) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(payload);
+        int summariesOffset = 0;
+        int summariesLength = 0;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case SearchProtocol.DocsumReply.SLIME_SUMMARIES_FIELD_NUMBER -> {
+                    summariesLength = input.readRawVarint32();
+                    summariesOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(summariesLength);
+                }
+                case SearchProtocol.DocsumReply.ERRORS_FIELD_NUMBER ->
+                        errors.add(input.readMessage(SearchProtocol.Error.parser(), ExtensionRegistryLite.getEmptyRegistry()));
+                default -> input.skipField(tag);
+            }
+        }
+        return BinaryView.inspect(payload, summariesOffset, summariesLength);
+    }
+
     private void throwTimeout() throws TimeoutException {
         throw new TimeoutException("Timed out waiting for summary data. " + outstandingResponses + " responses outstanding.");
     }
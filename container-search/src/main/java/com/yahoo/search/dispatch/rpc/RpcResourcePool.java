@@ -1,6 +1,12 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch.rpc;
 
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.concurrent.DaemonThreadFactory;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.MetricSettings;
+import com.yahoo.metrics.simple.Point;
 import com.yahoo.search.dispatch.FillInvoker;
 import com.yahoo.search.dispatch.rpc.Client.NodeConnection;
 import com.yahoo.search.dispatch.rpc.RpcClient.RpcNodeConnection;
@@ -8,40 +14,95 @@ import com.yahoo.vespa.config.search.DispatchConfig;
 import com.yahoo.vespa.config.search.DispatchNodesConfig;
 import com.yahoo.vespa.config.search.DispatchNodesConfig.Node;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 /**
  * RpcResourcePool constructs {@link FillInvoker} objects that communicate with content nodes over RPC. It also contains
  * the RPC connection pool.
+ * <p>
+ * Requests to a node are sent on the least busy of two randomly chosen connections to it, measured in request bytes
+ * in flight. If adaptive connections are configured, connections to a node are added when those are busy,
+ * and removed again when idle.
+ * <p>
+ * The number of connections to each node, and the request bytes in flight on them, are sampled as metrics
+ * with a node dimension every second. The time each request waits on its connection before it is sent is
+ * recorded as a histogram with the same dimension.
  *
  * @author ollivir
  */
 public class RpcResourcePool implements RpcConnectionPool {
 
+    private static final long maintenanceInterval = Duration.ofSeconds(1).toNanos();
+    private static final long retirementGracePeriod = Duration.ofSeconds(1).toNanos();
+    private static final Duration metricsInterval = Duration.ofSeconds(1);
+
     /** Connections to the search nodes this talks to, indexed by node id ("partid") */
     private volatile Map<Integer, NodeConnectionPool> nodeConnectionPools = Map.of();
     private final int numConnections;
-    private final RpcClient rpcClient;
+    private final Client rpcClient;
+    private final Adaptivity adaptivity;
+    private final Gauge connectionsGauge;
+    private final Gauge inflightBytesGauge;
+    private final Gauge queueDelayGauge;
+    private final LongSupplier nanoClock;
+    private final ScheduledExecutorService metricsSampler; // null when testing
 
     RpcResourcePool(Map<Integer, NodeConnection> nodeConnections) {
-        var builder = new HashMap<Integer, NodeConnectionPool>();
-        nodeConnections.forEach((key, connection) -> builder.put(key, new NodeConnectionPool(List.of(connection))));
-        this.nodeConnectionPools = Map.copyOf(builder);
         this.rpcClient = null;
         this.numConnections = 1;
+        this.adaptivity = null;
+        this.connectionsGauge = MetricReceiver.nullImplementation.declareGauge(ContainerMetrics.DISPATCH_RPC_CONNECTIONS.baseName());
+        this.inflightBytesGauge = MetricReceiver.nullImplementation.declareGauge(ContainerMetrics.DISPATCH_RPC_INFLIGHT_BYTES.baseName());
+        this.queueDelayGauge = MetricReceiver.nullImplementation.declareGauge(ContainerMetrics.DISPATCH_RPC_QUEUE_DELAY.baseName());
+        this.nanoClock = System::nanoTime;
+        this.metricsSampler = null;
+        var builder = new HashMap<Integer, NodeConnectionPool>();
+        nodeConnections.forEach((key, connection) -> builder.put(key, new NodeConnectionPool(key, List.of(connection), null)));
+        this.nodeConnectionPools = Map.copyOf(builder);
     }
 
     public RpcResourcePool(DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig) {
-        rpcClient = new RpcClient("dispatch-client", dispatchConfig.numJrtTransportThreads());
+        this(dispatchConfig, nodesConfig, MetricReceiver.nullImplementation);
+    }
+
+    public RpcResourcePool(DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig, MetricReceiver metric) {
+        this(new RpcClient("dispatch-client", dispatchConfig.numJrtTransportThreads()), dispatchConfig, nodesConfig, metric,
+             System::nanoTime);
+    }
+
+    RpcResourcePool(Client rpcClient, DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig, MetricReceiver metric,
+                    LongSupplier nanoClock) {
+        this.rpcClient = rpcClient;
+        this.nanoClock = nanoClock;
         numConnections = dispatchConfig.numJrtConnectionsPerNode();
+        adaptivity = dispatchConfig.adaptiveJrtConnections()
+                     ? new Adaptivity(numConnections,
+                                      Math.max(numConnections, dispatchConfig.maxJrtConnectionsPerNode()),
+                                      dispatchConfig.maxInflightBytesPerConnection())
+                     : null;
+        connectionsGauge = metric.declareGauge(ContainerMetrics.DISPATCH_RPC_CONNECTIONS.baseName());
+        inflightBytesGauge = metric.declareGauge(ContainerMetrics.DISPATCH_RPC_INFLIGHT_BYTES.baseName());
+        queueDelayGauge = metric.declareGauge(ContainerMetrics.DISPATCH_RPC_QUEUE_DELAY.baseName(), Optional.empty(),
+                                              new MetricSettings.Builder().histogram(true).build());
         updateNodes(nodesConfig).forEach(pool -> {
             try { pool.close(); } catch (Exception ignored) { } // Shouldn't throw.
         });
+        metricsSampler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("dispatch-rpc-metrics-"));
+        metricsSampler.scheduleWithFixedDelay(this::sampleMetrics, metricsInterval.toMillis(), metricsInterval.toMillis(),
+                                              TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -51,17 +112,18 @@ public class RpcResourcePool implements RpcConnectionPool {
         // Who can be reused
         for (Node node : nodesConfig.node()) {
             if (   currentPools.containsKey(node.key())
-                && currentPools.get(node.key()).nextConnection() instanceof RpcNodeConnection rpcNodeConnection
+                && currentPools.get(node.key()).anyConnection() instanceof RpcNodeConnection rpcNodeConnection
                 && rpcNodeConnection.getPort() == node.port()
                 && rpcNodeConnection.getHostname().equals(node.host()))
             {
                 nextPools.put(node.key(), currentPools.remove(node.key()));
             } else {
+                Supplier<NodeConnection> connectionFactory = () -> rpcClient.createConnection(node.host(), node.port());
                 ArrayList<NodeConnection> connections = new ArrayList<>(numConnections);
                 for (int i = 0; i < numConnections; i++) {
-                    connections.add(rpcClient.createConnection(node.host(), node.port()));
+                    connections.add(connectionFactory.get());
                 }
-                nextPools.put(node.key(), new NodeConnectionPool(connections));
+                nextPools.put(node.key(), new NodeConnectionPool(node.key(), connections, adaptivity == null ? null : connectionFactory));
             }
         }
         this.nodeConnectionPools = Map.copyOf(nextPools);
@@ -78,29 +140,147 @@ public class RpcResourcePool implements RpcConnectionPool {
         }
     }
 
+    /** Samples the number of connections to each node, and the request bytes in flight on them */
+    void sampleMetrics() {
+        for (NodeConnectionPool pool : nodeConnectionPools.values())
+            pool.sampleMetrics();
+    }
+
     @Override
     public void close() {
+        if (metricsSampler != null) metricsSampler.shutdownNow();
         nodeConnectionPools.values().forEach(NodeConnectionPool::close);
         if (rpcClient != null) {
             rpcClient.close();
         }
     }
 
-    private static class NodeConnectionPool implements AutoCloseable {
-        private final List<Client.NodeConnection> connections;
+    // For testing
+    int connectionCount(int nodeId) {
+        return nodeConnectionPools.get(nodeId).connections.size();
+    }
+
+    /** The settings of adaptive connection pools */
+    private record Adaptivity(int minConnections, int maxConnections, long maxInflightBytes) {}
+
+    private class NodeConnectionPool implements AutoCloseable {
+
+        /** Creates new connections to the node of this, or null if this is not adaptive */
+        private final Supplier<NodeConnection> connectionFactory;
+
+        /** The connections in use. Changes are made by replacing the list while synchronized on this. */
+        private volatile List<NodeConnection> connections;
+
+        /** Connections no longer in use, which are closed when they are idle. Guarded by this. */
+        private final List<Retired> retired = new ArrayList<>();
+
+        private volatile long nextMaintenance = nanoClock.getAsLong() + maintenanceInterval;
+
+        /** The metric dimensions of the node of this */
+        private final Point point;
+
+        NodeConnectionPool(int nodeId, List<NodeConnection> connections, Supplier<NodeConnection> connectionFactory) {
+            this.connections = List.copyOf(connections);
+            this.connectionFactory = connectionFactory;
+            this.point = connectionsGauge.builder().set("node", nodeId).build();
+            connections.forEach(connection -> connection.setQueueDelayListener(this::queued));
+        }
 
-        NodeConnectionPool(List<NodeConnection> connections) {
-            this.connections = connections;
+        NodeConnection anyConnection() {
+            return connections.get(0);
         }
 
         Client.NodeConnection nextConnection() {
-            int slot = ThreadLocalRandom.current().nextInt(connections.size());
-            return connections.get(slot);
+            List<NodeConnection> current = connections;
+            NodeConnection selected = leastBusyOfTwo(current);
+            if (connectionFactory == null) return selected;
+
+            long inflightBytes = selected.inflightBytes();
+            if (inflightBytes > adaptivity.maxInflightBytes() && current.size() < adaptivity.maxConnections()) {
+                NodeConnection added = add(current);
+                if (added != null) return added;
+            }
+            long now = nanoClock.getAsLong();
+            if (now >= nextMaintenance)
+                maintain(now);
+            return selected;
+        }
+
+        private NodeConnection leastBusyOfTwo(List<NodeConnection> connections) {
+            if (connections.size() == 1) return connections.get(0);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(connections.size());
+            int second = (first + 1 + random.nextInt(connections.size() - 1)) % connections.size();
+            NodeConnection a = connections.get(first);
+            NodeConnection b = connections.get(second);
+            return b.inflightBytes() < a.inflightBytes() ? b : a;
+        }
+
+        /** Adds a connection unless the connections have changed since they were read, and returns it or null */
+        private synchronized NodeConnection add(List<NodeConnection> current) {
+            if (connections != current) return null;
+            NodeConnection added = connectionFactory.get();
+            added.setQueueDelayListener(this::queued);
+            List<NodeConnection> next = new ArrayList<>(current);
+            next.add(added);
+            connections = List.copyOf(next);
+            return added;
         }
 
-        public void close() {
+        /** Closes retired connections which have become idle, and retires an idle connection if there is spare capacity */
+        private synchronized void maintain(long now) {
+            if (now < nextMaintenance) return; // Done by another thread
+            nextMaintenance = now + maintenanceInterval;
+
+            for (Iterator<Retired> i = retired.iterator(); i.hasNext(); ) {
+                Retired candidate = i.next();
+                if (now - candidate.retiredAt() >= retirementGracePeriod && candidate.connection().inflightRequests() == 0) {
+                    candidate.connection().close();
+                    i.remove();
+                }
+            }
+
+            List<NodeConnection> current = connections;
+            if (current.size() > adaptivity.minConnections()) {
+                long totalInflightBytes = 0;
+                NodeConnection leastBusy = null;
+                for (NodeConnection connection : current) {
+                    long inflightBytes = connection.inflightBytes();
+                    totalInflightBytes += inflightBytes;
+                    if (leastBusy == null || inflightBytes < leastBusy.inflightBytes())
+                        leastBusy = connection;
+                }
+                if (totalInflightBytes < adaptivity.maxInflightBytes() * (current.size() - 1) / 2) {
+                    List<NodeConnection> next = new ArrayList<>(current);
+                    next.remove(leastBusy);
+                    connections = List.copyOf(next);
+                    retired.add(new Retired(leastBusy, now));
+                }
+            }
+        }
+
+        /** Records the time a request waited on a connection of this before it was sent */
+        private void queued(long delayNanos) {
+            queueDelayGauge.sample(delayNanos / 1_000_000.0, point);
+        }
+
+        void sampleMetrics() {
+            List<NodeConnection> current = connections;
+            long inflightBytes = 0;
+            for (NodeConnection connection : current)
+                inflightBytes += Math.max(0, connection.inflightBytes());
+            connectionsGauge.sample(current.size(), point);
+            inflightBytesGauge.sample(inflightBytes, point);
+        }
+
+        public synchronized void close() {
             connections.forEach(Client.NodeConnection::close);
+            retired.forEach(r -> r.connection().close());
+            retired.clear();
         }
+
     }
 
+    private record Retired(NodeConnection connection, long retiredAt) {}
+
 }
@@ -1,6 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch.rpc;
 
+import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.search.Query;
@@ -11,6 +12,8 @@ import com.yahoo.search.dispatch.searchcluster.Node;
 import com.yahoo.search.result.ErrorMessage;
 
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -33,6 +36,9 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
     private final CompressPayload compressor;
 
     private Query query;
+    private Compressor.Compression request;
+    private long sentAtNanos;
+    private Runnable abortRequest = null;
 
     RpcSearchInvoker(VespaBackend searcher, CompressPayload compressor, Node node, RpcConnectionPool resourcePool, int maxHits) {
         super(Optional.of(node));
@@ -65,12 +71,14 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
             return incomingContext;
         }
         RpcContext context = getContext(incomingContext, timeout.request());
-        nodeConnection.request(RPC_METHOD,
-                               context.compressedPayload.type(),
-                               context.compressedPayload.uncompressedSize(),
-                               context.compressedPayload.data(),
-                               this,
-                               timeout.client());
+        request = context.compressedPayload(node.key());
+        sentAtNanos = System.nanoTime();
+        abortRequest = nodeConnection.abortableRequest(RPC_METHOD,
+                                                       request.type(),
+                                                       request.uncompressedSize(),
+                                                       request.data(),
+                                                       this,
+                                                       timeout.client());
         return context;
     }
 
@@ -114,12 +122,22 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
         return ProtobufSerialization.deserializeToSearchResult(payload, query, searcher, node.pathIndex(), node.key());
     }
 
+    @Override
+    protected void abort() {
+        if (abortRequest != null)
+            abortRequest.run();
+    }
+
     @Override
     protected void release() {
         // nothing to release
     }
 
     public void receive(Client.ResponseOrError<ProtobufResponse> response) {
+        response.response().ifPresent(r -> compressor.transferred(node.key(),
+                                                                  (long)request.uncompressedSize() + r.uncompressedSize(),
+                                                                  (long)request.data().length + r.compressedPayload().length,
+                                                                  System.nanoTime() - sentAtNanos));
         responses.add(response);
         responseAvailable();
     }
@@ -130,10 +148,25 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
 
     static class RpcContext {
 
-        final Compressor.Compression compressedPayload;
+        private final CompressPayload compressor;
+        private final Query query;
+        private final byte[] payload;
+        private final Map<CompressionType, Compressor.Compression> compressions = new EnumMap<>(CompressionType.class);
 
+        /** Creates a context for a search request payload, which is shared by all the nodes the query is sent to */
         RpcContext(CompressPayload compressor, Query query, byte[] payload) {
-            compressedPayload = compressor.compress(query, payload);
+            this.compressor = compressor;
+            this.query = query;
+            this.payload = payload;
+        }
+
+        /**
+         * Returns the payload compressed as chosen for the given node. Each compression type is only applied once,
+         * and shared by the nodes it is chosen for.
+         */
+        synchronized Compressor.Compression compressedPayload(int nodeId) {
+            CompressionType type = compressor.compressionType(query, payload.length, nodeId, CompressPayload.PayloadKind.SEARCH);
+            return compressions.computeIfAbsent(type, __ -> compressor.compress(type, payload, nodeId, CompressPayload.PayloadKind.SEARCH));
         }
 
     }
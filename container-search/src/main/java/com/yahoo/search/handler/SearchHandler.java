@@ -348,7 +348,9 @@ public class SearchHandler extends LoggingRequestHandler {
         Result result = execution.search(query);
 
         ensureQuerySet(result, query);
-        execution.fill(result, result.getQuery().getPresentation().getSummary());
+        String summaryClass = result.getQuery().getPresentation().getSummary();
+        if ( ! StreamingFill.start(result, summaryClass, searchChain, execution))
+            execution.fill(result, summaryClass);
 
         traceExecutionTimes(query, result);
         traceVespaVersion(query);
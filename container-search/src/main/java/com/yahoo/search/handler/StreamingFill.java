@@ -0,0 +1,165 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.handler;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.DefaultErrorHit;
+import com.yahoo.search.result.ErrorHit;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.result.HitGroup;
+import com.yahoo.search.searchchain.AsyncExecution;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchchain.FutureResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills the hits of a result in batches which are filled in parallel, and adds each batch to the result
+ * when it and all the batches before it are filled, such that rendering can start before all hits are filled.
+ * Hits are added in rank order, and any errors from filling a batch are added with it.
+ * <p>
+ * This is only used for the final fill of a result, when requested by the query, since the result is not complete
+ * when this returns. Results containing groups of hits are not streamed. Since the result is rendered while
+ * it is filled, hits beyond the requested number of hits are removed before filling, and rank features are
+ * removed from each hit as it is added, as the search handler otherwise does just before rendering.
+ * <p>
+ * The first batch is filled before this returns, and its hits and errors are added to the result directly,
+ * such that the HTTP status of the response reflects them as when not streaming. Errors from filling later
+ * batches are rendered with the hits of those batches, but can not change the HTTP status, which is already sent.
+ * <p>
+ * Batches are filled in parallel by default, which means the fill method of the searchers in the chain
+ * is invoked concurrently on different results of the same query. With fill.streamingParallel=false they
+ * are filled one after the other, which should be requested for chains where fill modifies the query.
+ *
+ * @author agent
+ */
+class StreamingFill {
+
+    /** Whether to fill and render the hits of the result as a stream */
+    static final CompoundName streaming = CompoundName.from("fill.streaming");
+
+    /** The number of hits to fill in each batch when streaming */
+    static final CompoundName streamingBatchSize = CompoundName.from("fill.streamingBatchSize");
+
+    /** Whether to fill batches in parallel, which requires fill in all searchers of the chain to only read the query */
+    static final CompoundName streamingParallel = CompoundName.from("fill.streamingParallel");
+
+    private static final int defaultBatchSize = 100;
+
+    /**
+     * Starts filling the given result by streaming if this is requested by the query and possible for this result,
+     * and returns whether it did. If this returns false, the result must be filled by the caller.
+     *
+     * @param result the result to fill, which will have its hits replaced by a group where the filled hits are added
+     * @param summaryClass the summary class to fill
+     * @param chain the chain to fill the batches of hits with
+     * @param execution the execution of the query of the result
+     * @return whether filling was started
+     */
+    static boolean start(Result result, String summaryClass, Chain<? extends Searcher> chain, Execution execution) {
+        Query query = result.getQuery();
+        if ( ! query.properties().getBoolean(streaming, false)) return false;
+        if (query.getTrace().getLevel() > 0) return false; // The query trace is not thread safe
+        HitGroup hits = result.hits();
+        if (hits.getSubgroupCount() > 0 || hits.isFilled(summaryClass)) return false;
+
+        int batchSize = Math.max(1, query.properties().getInteger(streamingBatchSize, defaultBatchSize));
+        boolean parallel = query.properties().getBoolean(streamingParallel, true);
+        List<Batch> batches = new ArrayList<>();
+        List<Hit> ordered = new ArrayList<>();
+        int concreteHits = 0;
+        for (Hit hit : hits.asList()) {
+            if (hit instanceof ErrorHit) continue;
+            if ( ! hit.isMeta() && concreteHits++ >= query.getHits()) continue; // Trim as SearchResponse.trimHits
+            ordered.add(hit);
+        }
+        for (int start = 0; start < ordered.size(); start += batchSize) {
+            List<Hit> batchHits = ordered.subList(start, Math.min(start + batchSize, ordered.size()));
+            Result batchResult = new Result(query);
+            batchHits.forEach(batchResult.hits()::add);
+            batches.add(new Batch(batchHits, batchResult,
+                                  parallel ? new AsyncExecution(chain, execution).fill(batchResult, summaryClass) : null));
+        }
+
+        HitGroup streamed = HitGroup.createAsync(hits.getId().toString());
+        streamed.setQuery(query);
+        hits.fields().forEach(streamed::setField);
+        streamed.addErrorsFrom(hits);
+        result.setHits(streamed);
+        if ( ! batches.isEmpty()) {
+            Batch first = batches.remove(0);
+            Result filled = filled(first, summaryClass, chain, execution);
+            hitsOf(first, query).forEach(streamed::add);
+            streamed.addErrorsFrom(filled.hits());
+        }
+        try {
+            execution.context().executor().execute(() -> addInOrder(batches, streamed, summaryClass, chain, execution));
+        } catch (RejectedExecutionException e) {
+            addInOrder(batches, streamed, summaryClass, chain, execution);
+        }
+        return true;
+    }
+
+    /** Adds the hits of each batch to the given group in order when it is filled, and completes it when all are added */
+    private static void addInOrder(List<Batch> batches, HitGroup streamed, String summaryClass,
+                                   Chain<? extends Searcher> chain, Execution execution) {
+        Query query = streamed.getQuery();
+        try {
+            for (Batch batch : batches) {
+                Result filled = filled(batch, summaryClass, chain, execution);
+                List<Hit> batchHits = hitsOf(batch, query);
+                ErrorHit errors = filled.hits().getErrorHit();
+                if (errors != null)
+                    batchHits.add(new DefaultErrorHit(streamed.getSource(), new ArrayList<>(errors.errors())));
+                streamed.incoming().add(batchHits);
+            }
+        } finally {
+            streamed.incoming().markComplete();
+        }
+    }
+
+    /** Returns the given batch when it is filled, by waiting for it if it is filled in parallel, or filling it otherwise */
+    private static Result filled(Batch batch, String summaryClass, Chain<? extends Searcher> chain, Execution execution) {
+        return batch.future() != null ? get(batch.future(), batch.result().getQuery())
+                                      : fill(batch.result(), summaryClass, chain, execution);
+    }
+
+    /** Returns the hits of the given batch, without rank features unless they are requested by the query */
+    private static List<Hit> hitsOf(Batch batch, Query query) {
+        List<Hit> batchHits = new ArrayList<>(batch.hits());
+        if ( ! query.getRanking().getListFeatures())
+            batchHits.forEach(hit -> hit.removeField(Hit.RANKFEATURES_FIELD));
+        return batchHits;
+    }
+
+    private static Result get(FutureResult future, Query query) {
+        Result filled = future.get(Math.max(0, query.getTimeLeft()), TimeUnit.MILLISECONDS);
+        if ( ! future.isDone())
+            future.cancel(false);
+        return filled;
+    }
+
+    private static Result fill(Result batch, String summaryClass, Chain<? extends Searcher> chain, Execution execution) {
+        if (batch.getQuery().getTimeLeft() <= 0) {
+            batch.hits().addError(ErrorMessage.createTimeout("Timed out before filling hits " + batch.hits().asList()));
+            return batch;
+        }
+        try {
+            new Execution(chain, execution.context()).fill(batch, summaryClass);
+        } catch (RuntimeException e) {
+            batch.hits().addError(ErrorMessage.createUnspecifiedError("Failed filling hits", e));
+        }
+        return batch;
+    }
+
+    /** A batch of hits, with the future result of filling them if they are filled in parallel */
+    private record Batch(List<Hit> hits, Result result, FutureResult future) {}
+
+}
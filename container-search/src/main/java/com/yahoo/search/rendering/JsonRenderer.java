@@ -13,6 +13,7 @@ import com.yahoo.container.logging.TraceRenderer;
 import com.yahoo.data.JsonProducer;
 import com.yahoo.data.access.Inspectable;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.ObjectTraverser;
 import com.yahoo.data.access.Type;
 import com.yahoo.data.access.simple.JsonRender;
 import com.yahoo.data.access.simple.Value;
@@ -79,6 +80,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final CompoundName WRAP_DEEP_MAPS = CompoundName.from("renderer.json.jsonMaps");
     private static final CompoundName WRAP_WSETS = CompoundName.from("renderer.json.jsonWsets");
     private static final CompoundName DEBUG_RENDERING_KEY = CompoundName.from("renderer.json.debug");
+    private static final CompoundName DIRECT_SUMMARIES = CompoundName.from("renderer.json.directSummaries");
     private static final CompoundName JSON_CALLBACK = CompoundName.from("jsoncallback");
 
     // if this must be optimized, simply use com.fasterxml.jackson.core.SerializableString
@@ -119,6 +121,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final String TYPES = "types";
     private static final String GROUPING_VALUE = "value";
     private static final String VESPA_HIDDEN_FIELD_PREFIX = "$";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     private static final JsonFactory generatorFactory = createGeneratorFactory();
 
@@ -134,6 +137,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         volatile boolean jsonWsetsAll = false;
         volatile boolean tensorShortForm = true;
         volatile boolean tensorDirectValues = false;
+        volatile boolean directSummaries = false;
         boolean convertDeep() { return (jsonDeepMaps || jsonWsets); }
         void init() {
             this.debugRendering = false;
@@ -143,6 +147,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             this.jsonWsetsAll = true;
             this.tensorShortForm = true;
             this.tensorDirectValues = false;
+            this.directSummaries = false;
         }
         void getSettings(Query q) {
             if (q == null) {
@@ -158,7 +163,8 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             this.jsonWsetsAll = props.getBoolean(WRAP_WSETS, true);
             this.tensorShortForm = q.getPresentation().getTensorShortForm();
             this.tensorDirectValues = q.getPresentation().getTensorDirectValues();
-            }
+            this.directSummaries = props.getBoolean(DIRECT_SUMMARIES, false);
+        }
     }
 
     private volatile FieldConsumerSettings fieldConsumerSettings;
@@ -626,6 +632,33 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             }
         }
 
+        /**
+         * Returns true if direct rendering of summaries is requested by setting renderer.json.directSummaries,
+         * in which case docsum fields are written directly from the docsum data to the generator
+         * where possible, instead of first being converted to Java objects.
+         * Such fields are passed to {@link #shouldRender(String, Object)} as {@link Inspector} values.
+         * Feature data (summary and match features) and tensors are always converted,
+         * as they are rendered differently from their docsum form.
+         */
+        @Override
+        public boolean acceptsInspectors() {
+            return settings.directSummaries;
+        }
+
+        @Override
+        public void acceptInspector(String name, Inspector value) {
+            try {
+                if (shouldRender(name, value)) {
+                    ensureFieldsField();
+                    generator().writeFieldName(name);
+                    writeInspector(value);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         protected boolean shouldRender(String name, Object value) {
             if (settings.debugRendering) return true;
             if (name.startsWith(VESPA_HIDDEN_FIELD_PREFIX)) return false;
@@ -633,6 +666,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             // StringFieldValue cannot hold a null, so checking length directly is OK:
             if (value instanceof StringFieldValue && ((StringFieldValue) value).getString().isEmpty()) return false;
             if (value instanceof NanNumber) return false;
+            if (value instanceof Inspector inspector && inspector.type() == Type.STRING && inspector.asString().isEmpty()) return false;
             return true;
         }
 
@@ -643,6 +677,173 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             return true;
         }
 
+        /**
+         * Writes the given data to the generator as renderInspector does,
+         * but without creating intermediate objects or strings.
+         */
+        private void writeInspector(Inspector data) throws IOException {
+            if (data.type() == Type.ARRAY && data.entryCount() > 0) {
+                if (isMap(data))
+                    writeMap(data);
+                else if (settings.jsonWsets && isWset(data))
+                    writeWset(data);
+                else if (settings.convertDeep())
+                    writeArrayDeep(data);
+                else
+                    writePlain(data);
+            }
+            else if (settings.convertDeep() && data.type() == Type.OBJECT) {
+                writeObjectDeep(data);
+            }
+            else {
+                writePlain(data);
+            }
+        }
+
+        /** Writes the given data as deepMaybeConvert would convert it */
+        private void writeDeep(Inspector data) throws IOException {
+            if (data.type() == Type.ARRAY && settings.jsonDeepMaps && isMap(data))
+                writeMap(data);
+            else if (data.type() == Type.ARRAY && settings.jsonWsets && isWset(data))
+                writeWset(data);
+            else if (data.type() == Type.OBJECT)
+                writeObjectDeep(data);
+            else
+                writePlain(data);
+        }
+
+        /** Returns whether maybeConvertMap would convert this array */
+        private boolean isMap(Inspector data) {
+            for (int i = 0; i < data.entryCount(); i++) {
+                Inspector obj = data.entry(i);
+                if (obj.type() != Type.OBJECT || obj.fieldCount() != 2) return false;
+                Inspector key = obj.field("key");
+                if ( ! key.valid() || ! obj.field("value").valid()) return false;
+                if (key.type() != Type.STRING && ! settings.jsonMapsAll) return false;
+            }
+            return true;
+        }
+
+        /** Returns whether maybeConvertWset would convert this array */
+        private boolean isWset(Inspector data) {
+            for (int i = 0; i < data.entryCount(); i++) {
+                Inspector obj = data.entry(i);
+                if (obj.type() != Type.OBJECT || obj.fieldCount() != 2) return false;
+                Inspector item = obj.field("item");
+                Inspector weight = obj.field("weight");
+                if ( ! item.valid() || ! weight.valid()) return false;
+                if (weight.type() != Type.LONG) return false;
+                if (item.type() != Type.STRING && ! settings.jsonWsetsAll) return false;
+            }
+            return true;
+        }
+
+        private void writeMap(Inspector data) throws IOException {
+            generator().writeStartObject();
+            for (int i = 0; i < data.entryCount(); i++) {
+                Inspector obj = data.entry(i);
+                writeKey(obj.field("key"));
+                if (settings.convertDeep())
+                    writeDeep(obj.field("value"));
+                else
+                    writePlain(obj.field("value"));
+            }
+            generator().writeEndObject();
+        }
+
+        private void writeWset(Inspector data) throws IOException {
+            generator().writeStartObject();
+            for (int i = 0; i < data.entryCount(); i++) {
+                Inspector obj = data.entry(i);
+                writeKey(obj.field("item"));
+                generator().writeNumber(obj.field("weight").asLong());
+            }
+            generator().writeEndObject();
+        }
+
+        private void writeKey(Inspector key) throws IOException {
+            if (key.type() == Type.STRING)
+                generator().writeFieldName(key.asString());
+            else
+                generator().writeFieldName(JsonRender.render(key, new StringBuilder(), true).toString());
+        }
+
+        private void writeArrayDeep(Inspector data) throws IOException {
+            generator().writeStartArray();
+            for (int i = 0; i < data.entryCount(); i++)
+                writeDeep(data.entry(i));
+            generator().writeEndArray();
+        }
+
+        private void writeObjectDeep(Inspector data) throws IOException {
+            generator().writeStartObject();
+            writeFields(data, true);
+            generator().writeEndObject();
+        }
+
+        /** Writes the given data as JsonRender would, but directly to the generator */
+        private void writePlain(Inspector data) throws IOException {
+            switch (data.type()) {
+                case EMPTY -> generator().writeNull();
+                case BOOL -> generator().writeBoolean(data.asBool());
+                case LONG -> generator().writeNumber(data.asLong());
+                case DOUBLE -> {
+                    if (Double.isFinite(data.asDouble()))
+                        generator().writeNumber(data.asDouble());
+                    else
+                        generator().writeNull();
+                }
+                case STRING -> {
+                    byte[] utf8 = data.asUtf8();
+                    generator().writeUTF8String(utf8, 0, utf8.length);
+                }
+                case DATA -> writeData(data.asData());
+                case ARRAY -> {
+                    generator().writeStartArray();
+                    for (int i = 0; i < data.entryCount(); i++)
+                        writePlain(data.entry(i));
+                    generator().writeEndArray();
+                }
+                case OBJECT -> {
+                    generator().writeStartObject();
+                    writeFields(data, false);
+                    generator().writeEndObject();
+                }
+            }
+        }
+
+        /** Writes data as a hex string prefixed by "0x", as JsonRender does */
+        private void writeData(byte[] data) throws IOException {
+            char[] chars = new char[2 + data.length * 2];
+            chars[0] = '0';
+            chars[1] = 'x';
+            for (int i = 0; i < data.length; i++) {
+                chars[2 + i * 2] = HEX_DIGITS[(data[i] >> 4) & 0xf];
+                chars[3 + i * 2] = HEX_DIGITS[data[i] & 0xf];
+            }
+            generator().writeString(chars, 0, chars.length);
+        }
+
+        private void writeFields(Inspector data, boolean deep) throws IOException {
+            try {
+                data.traverse((ObjectTraverser) (name, value) -> {
+                    try {
+                        generator().writeFieldName(name);
+                        if (deep)
+                            writeDeep(value);
+                        else
+                            writePlain(value);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
         private Inspector maybeConvertMap(Inspector data) {
             var map = new Value.ObjectValue();
             for (int i = 0; i < data.entryCount(); i++) {
@@ -3,8 +3,10 @@ package com.yahoo.search.result;
 
 import com.yahoo.collections.ArraySet;
 import com.yahoo.component.provider.ListenableFreezableClass;
+import com.yahoo.data.access.Inspector;
 import com.yahoo.net.URI;
 import com.yahoo.prelude.hitfield.HitField;
+import com.yahoo.prelude.hitfield.JSONString;
 import com.yahoo.processing.Request;
 import com.yahoo.processing.response.Data;
 import com.yahoo.search.Query;
@@ -565,6 +567,14 @@ public class Hit extends ListenableFreezableClass implements Data, Comparable<Hi
         }
     }
 
+    /**
+     * Sets the query which produced this, also if a query is already set.
+     * This is used when a hit produced by one query is reused as the hit of another, equivalent query.
+     */
+    public final void replaceQuery(Query query) {
+        this.query = query;
+    }
+
     /**
      * Returns the features computed for this hit. This is never null but may be empty.
      * This default implementation always returns empty.
@@ -692,6 +702,33 @@ public class Hit extends ListenableFreezableClass implements Data, Comparable<Hi
          */
         void accept(String fieldName, byte[] utf8Data, int offset, int length);
 
+        /**
+         * Returns whether this wants to receive structured field values through
+         * acceptInspector(String, Inspector) when they are available in that form,
+         * instead of converted to Java objects and passed to accept(String, Object).
+         * This default implementation returns false.
+         */
+        default boolean acceptsInspectors() { return false; }
+
+        /**
+         * Called for fields which are available as structured data instead of accept(String, Object),
+         * if this returns true from {@link #acceptsInspectors}.
+         * This default implementation passes the value to accept(String, Object), as a Java primitive wrapper
+         * if it is a scalar, and as a {@link JSONString} otherwise.
+         *
+         * @param fieldName the name of the field
+         * @param value the value of the field, which is only valid during this call
+         */
+        default void acceptInspector(String fieldName, Inspector value) {
+            accept(fieldName, switch (value.type()) {
+                case BOOL -> value.asBool();
+                case LONG -> value.asLong();
+                case DOUBLE -> value.asDouble();
+                case STRING -> value.asString();
+                default -> new JSONString(value);
+            });
+        }
+
     }
 
 }
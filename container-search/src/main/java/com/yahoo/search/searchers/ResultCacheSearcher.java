@@ -0,0 +1,211 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchers;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.component.annotation.Inject;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.config.ResultCacheConfig;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of first-phase (unfilled) results in the container, which lets identical queries arriving
+ * close in time be answered without dispatching them to the content nodes again.
+ * <p>
+ * Results are keyed on the query tree, the rank properties and features, and all the properties of the query,
+ * except those listed in {@link #ignoredProperties} which do not influence the first-phase result.
+ * Summary fill requests of cached hits are passed down the chain as usual.
+ * <p>
+ * Cached results are not invalidated when documents are fed: Feeding happens through other containers,
+ * so this has no way to learn about it. A cached result may therefore be as stale as the <code>maxAge</code>
+ * config value. Components which do know that the content has changed may call {@link #invalidate}, which makes
+ * all cached results in this container unreachable immediately.
+ * <p>
+ * Queries are not cached (and the cache is not consulted) when
+ * <ul>
+ *     <li><code>noCache</code> or <code>resultcache.bypass</code> is set,
+ *     <li>they contain grouping requests, or
+ *     <li>tracing is enabled.
+ * </ul>
+ * Results containing errors or having less than full coverage are not cached.
+ * <p>
+ * Metrics: This emits the count metrics result_cache.hits, result_cache.misses and result_cache.evictions.
+ *
+ * @author agent
+ */
+public class ResultCacheSearcher extends Searcher {
+
+    public static final CompoundName bypassKey = CompoundName.from("resultcache.bypass");
+
+    /**
+     * Properties which do not influence the first-phase result, and properties with these prefixes.
+     * Timeouts are included since results with less than full coverage are not cached.
+     */
+    static final Set<String> ignoredProperties = Set.of(Query.TIMEOUT.toString(), Query.NO_CACHE.toString(),
+                                                        Query.TRACE_LEVEL.toString(), Query.EXPLAIN_LEVEL.toString(),
+                                                        bypassKey.toString(), "trace.", "presentation.", "fill.");
+
+    private final Cache cache;
+    private final long maxAgeMillis;
+    private final Clock clock;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Inject
+    public ResultCacheSearcher(ResultCacheConfig config, MetricReceiver metric) {
+        this(config, metric, Clock.systemUTC());
+    }
+
+    /** For testing - allows injection of a timer to avoid depending on the system clock */
+    public ResultCacheSearcher(ResultCacheConfig config, MetricReceiver metric, Clock clock) {
+        this.maxAgeMillis = (long)(config.maxAge() * 1000);
+        this.clock = clock;
+        this.hitCounter = metric.declareCounter(ContainerMetrics.RESULT_CACHE_HITS.baseName());
+        this.missCounter = metric.declareCounter(ContainerMetrics.RESULT_CACHE_MISSES.baseName());
+        this.cache = new Cache(config.maxEntries(),
+                               metric.declareCounter(ContainerMetrics.RESULT_CACHE_EVICTIONS.baseName()));
+    }
+
+    @Override
+    public Result search(Query query, Execution execution) {
+        if ( ! isCacheable(query)) return execution.search(query);
+
+        CacheKey key = new CacheKey(query, generation.get());
+        long now = clock.millis();
+        Result cached = cache.get(key, now);
+        if (cached != null) {
+            hitCounter.add(1);
+            query.trace("Returning result from the result cache", 4);
+            return copyFor(query, cached);
+        }
+
+        missCounter.add(1);
+        Result result = execution.search(query);
+        if (isCacheable(result))
+            cache.put(key, result.clone(), now + maxAgeMillis);
+        return result;
+    }
+
+    /** Makes all results currently in this cache unreachable. */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /** Returns the number of results currently in this cache, including expired ones not yet removed */
+    public int size() { return cache.size(); }
+
+    private boolean isCacheable(Query query) {
+        if (query.getNoCache()) return false;
+        if (query.properties().getBoolean(bypassKey, false)) return false;
+        if ( ! query.getSelect().getGrouping().isEmpty()) return false;
+        if (query.getTrace().getLevel() > 0) return false;
+        return true;
+    }
+
+    private boolean isCacheable(Result result) {
+        if (result.hits().getError() != null) return false;
+        Coverage coverage = result.getCoverage(false);
+        return coverage == null || coverage.getFull();
+    }
+
+    private Result copyFor(Query query, Result cached) {
+        Result result = cached.clone();
+        result.setQuery(query);
+        for (Iterator<Hit> i = result.hits().unorderedDeepIterator(); i.hasNext(); ) {
+            Hit hit = i.next();
+            hit.replaceQuery(query); // so that fill requests use the timeout and summary settings of this query
+            hit.setCached(true);
+        }
+        return result;
+    }
+
+    /** A size bounded LRU map from cache keys to results, where entries also expire after a given time. */
+    private static class Cache {
+
+        private final Map<CacheKey, Entry> entries;
+
+        Cache(int maxEntries, Counter evictionCounter) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                    if (size() <= maxEntries) return false;
+                    evictionCounter.add(1);
+                    return true;
+                }
+            };
+        }
+
+        synchronized Result get(CacheKey key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) return null;
+            if (entry.expiresAt() <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.result();
+        }
+
+        synchronized void put(CacheKey key, Result result, long expiresAt) {
+            entries.put(key, new Entry(result, expiresAt));
+        }
+
+        synchronized void clear() { entries.clear(); }
+
+        synchronized int size() { return entries.size(); }
+
+    }
+
+    private record Entry(Result result, long expiresAt) {}
+
+    private static boolean isIgnored(String property) {
+        for (String ignored : ignoredProperties) {
+            if (ignored.endsWith(".") ? property.startsWith(ignored) : property.equals(ignored)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The parts of a query which determine the first-phase result returned from the content nodes:
+     * The query tree, the rank properties and features, which may be set without being query properties,
+     * and all query properties which are not ignored.
+     */
+    private record CacheKey(String queryTree, String rankProperties, String rankFeatures,
+                            Map<String, String> properties, long generation) {
+
+        CacheKey(Query query, long generation) {
+            this(query.getModel().getQueryTree().toString(),
+                 query.getRanking().getProperties().toString(),
+                 query.getRanking().getFeatures().toString(),
+                 propertiesOf(query),
+                 generation);
+        }
+
+        private static Map<String, String> propertiesOf(Query query) {
+            Map<String, String> properties = new TreeMap<>();
+            for (Map.Entry<String, Object> property : query.properties().listProperties().entrySet()) {
+                if (isIgnored(property.getKey())) continue;
+                properties.put(property.getKey(), String.valueOf(property.getValue()));
+            }
+            return properties;
+        }
+
+    }
+
+}
@@ -293,6 +293,15 @@ public class SlimeSummaryTestCase {
         Map<String, Object> traversedUtf8 = new HashMap<>();
         hit.forEachFieldAsRaw(new Utf8FieldTraverser(traversedUtf8));
         assertEquals(expected, traversedUtf8);
+        // raw utf8 field traverser accepting inspectors, using the default acceptInspector
+        Map<String, Object> traversedInspectors = new HashMap<>();
+        hit.forEachFieldAsRaw(new Utf8FieldTraverser(traversedInspectors) {
+            @Override public boolean acceptsInspectors() { return true; }
+        });
+        assertEquals(expected.keySet(), traversedInspectors.keySet());
+        for (var expectedEntry : expected.entrySet())
+            assertEquals(String.valueOf(expectedEntry.getValue()), String.valueOf(traversedInspectors.get(expectedEntry.getKey())),
+                         "Key '" + expectedEntry.getKey() + "'");
         // fieldKeys
         int fieldNameIteratorFieldCount = 0;
         for (Iterator<String> i = hit.fieldKeys().iterator(); i.hasNext(); ) {
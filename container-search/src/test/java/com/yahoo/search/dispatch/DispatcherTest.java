@@ -18,6 +18,8 @@ import com.yahoo.search.dispatch.searchcluster.Pinger;
 import com.yahoo.search.dispatch.searchcluster.PongHandler;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
 import com.yahoo.search.dispatch.searchcluster.SearchGroups;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
 import com.yahoo.vespa.config.search.DispatchConfig;
 import com.yahoo.vespa.config.search.DispatchNodesConfig;
 import com.yahoo.yolean.UncheckedInterruptedException;
@@ -31,6 +33,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -46,6 +49,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -174,6 +178,136 @@ public class DispatcherTest {
         dispatcher.deconstruct();
     }
 
+    @Test
+    void testSlowOrFailingGroupIsHedged() throws IOException {
+        SearchCluster cluster = new MockSearchCluster("1", 2, 1);
+        DispatchConfig config = new DispatchConfig.Builder(dispatchConfig).hedgeSearches(true).hedgeMinDelay(0.001)
+                                                                          .hedgeMaxFraction(1.0).build();
+        Map<Integer, GroupInvoker.Behavior> behaviors = new ConcurrentHashMap<>();
+        List<GroupInvoker> invokers = new CopyOnWriteArrayList<>();
+        Dispatcher dispatcher = new Dispatcher(new ClusterMonitor<>(cluster, false), cluster, config,
+                                               new GroupInvokerFactory(cluster, config, behaviors, invokers));
+        cluster.pingIterationCompleted();
+
+        // Build up latency history for both groups, which is needed to hedge
+        for (int i = 0; i < 2 * LatencyHistory.DEFAULT_MIN_SAMPLES; i++)
+            assertEquals(1, search(dispatcher).getConcreteHitCount());
+        assertEquals(2 * LatencyHistory.DEFAULT_MIN_SAMPLES, invokers.size(), "No hedging before latencies are known");
+        invokers.clear();
+
+        for (GroupInvoker.Behavior behavior : List.of(GroupInvoker.Behavior.ignore, GroupInvoker.Behavior.fail)) {
+            behaviors.put(0, behavior);
+            for (int i = 0; i < 4; i++) {
+                Result result = search(dispatcher);
+                assertNull(result.hits().getError(), "Group 1 is used when group 0 does not " + behavior);
+                assertEquals("group1", result.hits().get(0).getId().toString());
+            }
+            assertEquals(8, invokers.size(), "Each search to group 0 is hedged to group 1 when group 0 does not " + behavior);
+            for (GroupInvoker invoker : invokers)
+                assertEquals(invoker.group == 0, invoker.aborted, "Only the requests of the losers are aborted");
+            invokers.clear();
+        }
+        dispatcher.deconstruct();
+    }
+
+    @Test
+    void testHedgingStopsWhenTheBudgetIsSpent() throws IOException {
+        SearchCluster cluster = new MockSearchCluster("1", 2, 1);
+        DispatchConfig config = new DispatchConfig.Builder(dispatchConfig).hedgeSearches(true).hedgeMinDelay(0.001)
+                                                                          .hedgeMaxFraction(0.0).build();
+        Map<Integer, GroupInvoker.Behavior> behaviors = new ConcurrentHashMap<>();
+        List<GroupInvoker> invokers = new CopyOnWriteArrayList<>();
+        Dispatcher dispatcher = new Dispatcher(new ClusterMonitor<>(cluster, false), cluster, config,
+                                               new GroupInvokerFactory(cluster, config, behaviors, invokers));
+        cluster.pingIterationCompleted();
+        for (int i = 0; i < 2 * LatencyHistory.DEFAULT_MIN_SAMPLES; i++)
+            search(dispatcher);
+        invokers.clear();
+
+        behaviors.put(0, GroupInvoker.Behavior.fail);
+        int failed = 0;
+        for (int i = 0; i < 4; i++)
+            if (search(dispatcher).hits().getError() != null)
+                failed++;
+        assertEquals(2, failed, "Searches to group 0 fail");
+        assertEquals(4, invokers.size(), "No searches are hedged");
+        dispatcher.deconstruct();
+    }
+
+    private static Result search(Dispatcher dispatcher) throws IOException {
+        Query query = new Query("?timeout=20s");
+        try (SearchInvoker invoker = dispatcher.getSearchInvoker(query, null)) {
+            return invoker.search(query);
+        }
+    }
+
+    /** Creates group invokers with the behavior set for each group, and collects them */
+    private static class GroupInvokerFactory extends MockInvokerFactory {
+
+        private final Map<Integer, GroupInvoker.Behavior> behaviors;
+        private final List<GroupInvoker> created;
+
+        GroupInvokerFactory(SearchCluster cluster, DispatchConfig config,
+                            Map<Integer, GroupInvoker.Behavior> behaviors, List<GroupInvoker> created) {
+            super(cluster.groupList(), config);
+            this.behaviors = behaviors;
+            this.created = created;
+        }
+
+        @Override
+        public Optional<SearchInvoker> createSearchInvoker(VespaBackend searcher, Query query, List<Node> nodes,
+                                                           boolean acceptIncompleteCoverage, int maxHitsPerNode) {
+            int group = nodes.get(0).group();
+            GroupInvoker invoker = new GroupInvoker(group, behaviors.getOrDefault(group, GroupInvoker.Behavior.respond));
+            created.add(invoker);
+            return Optional.of(invoker);
+        }
+
+    }
+
+    /** An invoker returning a single hit identifying its group, which it may respond with normally, as an error, or not at all */
+    private static class GroupInvoker extends SearchInvoker {
+
+        enum Behavior { respond, fail, ignore }
+
+        private final int group;
+        private final Behavior behavior;
+        private Query query;
+        private boolean aborted = false;
+
+        GroupInvoker(int group, Behavior behavior) {
+            super(Optional.empty());
+            this.group = group;
+            this.behavior = behavior;
+        }
+
+        @Override
+        protected Object sendSearchRequest(Query query, Object context) {
+            this.query = query;
+            if (behavior != Behavior.ignore)
+                responseAvailable();
+            return context;
+        }
+
+        @Override
+        protected InvokerResult getSearchResult() {
+            if (behavior == Behavior.fail)
+                return errorResult(query, ErrorMessage.createBackendCommunicationError("group" + group + " failed"));
+            if (behavior == Behavior.ignore)
+                return errorResult(query, ErrorMessage.createTimeout("group" + group + " timed out"));
+            InvokerResult result = new InvokerResult(query, 1);
+            result.getResult().hits().add(new Hit("group" + group));
+            return result;
+        }
+
+        @Override
+        protected void abort() { aborted = true; }
+
+        @Override
+        protected void release() { }
+
+    }
+
     @Test
     void testRpcResourceShutdownOnReconfiguration() throws InterruptedException, ExecutionException, IOException {
         // Ping factory lets us tick each ping, so we may delay shutdown, due to monitor thread RPC usage.
@@ -0,0 +1,51 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author agent
+ */
+public class HedgeBudgetTest {
+
+    @Test
+    void testHedgesAreLimitedToTheFractionOfSearches() {
+        HedgeBudget budget = new HedgeBudget(0.1);
+        assertFalse(budget.tryHedge(), "Nothing is earned before searching");
+        int hedges = 0;
+        for (int i = 0; i < 1000; i++) {
+            budget.searched();
+            if (budget.tryHedge()) hedges++;
+        }
+        assertEquals(100, hedges);
+    }
+
+    @Test
+    void testSavedHedgesAreCapped() {
+        HedgeBudget budget = new HedgeBudget(0.5);
+        for (int i = 0; i < 1000; i++)
+            budget.searched();
+        int hedges = 0;
+        while (budget.tryHedge())
+            hedges++;
+        assertEquals(HedgeBudget.MAX_BALANCE, hedges);
+    }
+
+    @Test
+    void testNoHedgesWithZeroFraction() {
+        HedgeBudget budget = new HedgeBudget(0);
+        for (int i = 0; i < 1000; i++)
+            budget.searched();
+        assertFalse(budget.tryHedge());
+    }
+
+    @Test
+    void testFractionMustBeValid() {
+        assertThrows(IllegalArgumentException.class, () -> new HedgeBudget(1.5));
+    }
+
+}
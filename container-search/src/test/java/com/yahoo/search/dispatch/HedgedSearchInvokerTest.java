@@ -0,0 +1,152 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class HedgedSearchInvokerTest {
+
+    @Test
+    void testNoHedgingWhenPrimaryRespondsInTime() throws IOException {
+        ControlledInvoker primary = new ControlledInvoker("primary", true);
+        ControlledInvoker hedge = new ControlledInvoker("hedge", true);
+        AtomicInteger used = new AtomicInteger();
+        HedgedSearchInvoker invoker = new HedgedSearchInvoker(primary, Duration.ofSeconds(10),
+                                                              () -> Optional.of(new HedgedSearchInvoker.Hedge(hedge, used::incrementAndGet)));
+        Result result = invoker.search(new Query("?timeout=20s"));
+        assertEquals("primary", result.hits().get(0).getId().toString());
+        assertFalse(invoker.hedged());
+        assertFalse(hedge.sent);
+        assertEquals(0, used.get());
+        invoker.close();
+        assertTrue(primary.closed);
+    }
+
+    @Test
+    void testHedgeIsUsedWhenPrimaryIsSlow() throws IOException {
+        ControlledInvoker primary = new ControlledInvoker("primary", false);
+        ControlledInvoker hedge = new ControlledInvoker("hedge", true);
+        AtomicInteger used = new AtomicInteger();
+        HedgedSearchInvoker invoker = new HedgedSearchInvoker(primary, Duration.ofMillis(1),
+                                                              () -> Optional.of(new HedgedSearchInvoker.Hedge(hedge, used::incrementAndGet)));
+        Result result = invoker.search(new Query("?timeout=20s"));
+        assertEquals("hedge", result.hits().get(0).getId().toString());
+        assertTrue(invoker.hedged());
+        assertTrue(primary.closed, "The slow primary is closed when the hedge wins");
+        assertTrue(primary.aborted, "The request of the slow primary is aborted");
+        assertFalse(hedge.aborted);
+        assertEquals(1, used.get());
+        invoker.close();
+        assertTrue(hedge.closed);
+    }
+
+    @Test
+    void testHedgeIsUsedWhenPrimaryRespondsWithErrorsOnly() throws IOException {
+        ControlledInvoker primary = new ControlledInvoker("primary", true, true);
+        ControlledInvoker hedge = new ControlledInvoker("hedge", true);
+        AtomicInteger used = new AtomicInteger();
+        HedgedSearchInvoker invoker = new HedgedSearchInvoker(primary, Duration.ofSeconds(10),
+                                                              () -> Optional.of(new HedgedSearchInvoker.Hedge(hedge, used::incrementAndGet)));
+        Result result = invoker.search(new Query("?timeout=20s"));
+        assertNull(result.hits().getError());
+        assertEquals("hedge", result.hits().get(0).getId().toString());
+        assertTrue(invoker.hedged(), "The hedge is sent without waiting for the delay when the primary fails");
+        assertTrue(primary.closed);
+        assertEquals(1, used.get());
+        invoker.close();
+    }
+
+    @Test
+    void testPrimaryErrorIsUsedWhenHedgeAlsoFails() throws IOException {
+        ControlledInvoker primary = new ControlledInvoker("primary", true, true);
+        ControlledInvoker hedge = new ControlledInvoker("hedge", true, true);
+        AtomicInteger used = new AtomicInteger();
+        HedgedSearchInvoker invoker = new HedgedSearchInvoker(primary, Duration.ofSeconds(10),
+                                                              () -> Optional.of(new HedgedSearchInvoker.Hedge(hedge, used::incrementAndGet)));
+        Result result = invoker.search(new Query("?timeout=20s"));
+        assertEquals("primary failed", result.hits().getError().getDetailedMessage());
+        assertTrue(invoker.hedged());
+        assertTrue(hedge.closed);
+        assertEquals(0, used.get());
+        invoker.close();
+    }
+
+    @Test
+    void testPrimaryIsUsedWhenNoHedgeIsAvailable() throws IOException {
+        ControlledInvoker primary = new ControlledInvoker("primary", false);
+        HedgedSearchInvoker invoker = new HedgedSearchInvoker(primary, Duration.ofMillis(1), Optional::empty);
+        Result result = invoker.search(new Query("?timeout=20s"));
+        assertEquals("primary", result.hits().get(0).getId().toString());
+        assertFalse(invoker.hedged());
+        invoker.close();
+    }
+
+    /** An invoker which signals a response on send if told to, and never otherwise, and which may respond with an error */
+    private static class ControlledInvoker extends SearchInvoker {
+
+        private final String name;
+        private final boolean respond;
+        private final boolean fail;
+        private Query query;
+        boolean sent = false;
+        boolean aborted = false;
+        boolean closed = false;
+
+        ControlledInvoker(String name, boolean respond) {
+            this(name, respond, false);
+        }
+
+        ControlledInvoker(String name, boolean respond, boolean fail) {
+            super(Optional.empty());
+            this.name = name;
+            this.respond = respond;
+            this.fail = fail;
+        }
+
+        @Override
+        protected Object sendSearchRequest(Query query, Object context) {
+            this.query = query;
+            sent = true;
+            if (respond)
+                responseAvailable();
+            return context;
+        }
+
+        @Override
+        protected InvokerResult getSearchResult() {
+            if (fail)
+                return errorResult(query, ErrorMessage.createBackendCommunicationError(name + " failed"));
+            InvokerResult result = new InvokerResult(query, 10);
+            result.getResult().hits().add(new Hit(name));
+            return result;
+        }
+
+        @Override
+        protected void abort() {
+            aborted = true;
+        }
+
+        @Override
+        protected void release() {
+            closed = true;
+        }
+
+    }
+
+}
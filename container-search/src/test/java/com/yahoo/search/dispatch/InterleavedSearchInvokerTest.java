@@ -4,6 +4,7 @@ package com.yahoo.search.dispatch;
 import com.yahoo.concurrent.Timer;
 import com.yahoo.document.GlobalId;
 import com.yahoo.document.idstring.IdString;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.prelude.fastsearch.GroupingListHit;
 import com.yahoo.search.Query;
@@ -208,7 +209,12 @@ public class InterleavedSearchInvokerTest {
     private static final List<Double> B5Aux = List.of(9.0,8.0,-3.0,7.0,6.0,1.0, -1.0);
 
     private void validateThatTopKProbabilityOverrideTakesEffect(Double topKProbability, int expectedK, Group group) throws IOException {
-        try (InterleavedSearchInvoker invoker = createInterLeavedTestInvoker(A5, B5, group)) {
+        validateThatTopKProbabilityOverrideTakesEffect(topKProbability, expectedK, group, new TopKEstimator(30, 0.9999, 0.05));
+    }
+
+    private void validateThatTopKProbabilityOverrideTakesEffect(Double topKProbability, int expectedK, Group group,
+                                                                TopKEstimator hitEstimator) throws IOException {
+        try (InterleavedSearchInvoker invoker = createInterLeavedTestInvoker(A5, B5, group, hitEstimator)) {
             query.setHits(8);
             query.properties().set(Dispatcher.topKProbability, topKProbability);
             SearchInvoker[] invokers = invoker.invokers().toArray(new SearchInvoker[0]);
@@ -259,6 +265,20 @@ public class InterleavedSearchInvokerTest {
         validateThatTopKProbabilityOverrideTakesEffect(0.8, 8, group);
     }
 
+    @Test
+    void requireThatAdaptiveEstimatesAreOnlyUsedForBalancedGroupsUntilSharesAreLearned() throws IOException {
+        TopKEstimator adaptive = new TopKEstimator(30, 0.9999, 0.05, true, 0.5, MetricReceiver.nullImplementation);
+        validateThatTopKProbabilityOverrideTakesEffect(0.8, 7, new Group(0, List.of()), adaptive);
+
+        Node node0 = new Node("test", 0, "host0", 0);
+        Node node1 = new Node("test", 1, "host1", 0);
+        Group group = new Group(0, List.of(node0, node1));
+        node0.setActiveDocuments(1000000);
+        node1.setActiveDocuments(1100000);
+        group.aggregateNodeValues();
+        validateThatTopKProbabilityOverrideTakesEffect(0.8, 8, group, adaptive);
+    }
+
     @Test
     void requireThatMergeOfConcreteHitsObeySorting() throws IOException {
         try (InterleavedSearchInvoker invoker = createInterLeavedTestInvoker(A5, B5, new Group(0, List.of()))) {
@@ -367,8 +387,12 @@ public class InterleavedSearchInvokerTest {
     }
 
     private static InterleavedSearchInvoker createInterLeavedTestInvoker(List<Double> a, List<Double> b, Group group) {
+        return createInterLeavedTestInvoker(a, b, group, new TopKEstimator(30, new DispatchConfig.Builder().build().topKProbability(), 0.05));
+    }
+
+    private static InterleavedSearchInvoker createInterLeavedTestInvoker(List<Double> a, List<Double> b, Group group,
+                                                                         TopKEstimator hitEstimator) {
         DispatchConfig dispatchConfig = new DispatchConfig.Builder().build();
-        TopKEstimator hitEstimator = new TopKEstimator(30, dispatchConfig.topKProbability(), 0.05);
         List<SearchInvoker> invokers = new ArrayList<>();
         invokers.add(createInvoker(a, 0));
         invokers.add(createInvoker(b, 1));
@@ -0,0 +1,111 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the cost of merging the hits from 10 to 200 partitions with {@link LeanHitMerger},
+ * compared to merging each partition into the hits merged so far, as done previously.
+ *
+ * @author agent
+ */
+public class LeanHitMergerBenchmark {
+
+    private static final int[] partitionCounts = { 10, 50, 100, 200 };
+    private static final int[] neededCounts = { 100, 1000, 5000 };
+    private static final long minNanos = 500_000_000L;
+
+    public void run() {
+        out(String.format(Locale.ENGLISH, "%10s %8s %14s %14s", "partitions", "needed", "pairwise us", "tournament us"));
+        for (int partitions : partitionCounts) {
+            for (int needed : neededCounts) {
+                List<List<LeanHit>> lists = createLists(partitions, needed);
+                measure(() -> mergePairwise(lists, needed)); // Warmup
+                measure(() -> LeanHitMerger.merge(lists, needed));
+                double pairwise = measure(() -> mergePairwise(lists, needed));
+                double tournament = measure(() -> LeanHitMerger.merge(lists, needed));
+                out(String.format(Locale.ENGLISH, "%10d %8d %14.1f %14.1f", partitions, needed, pairwise / 1000, tournament / 1000));
+            }
+        }
+    }
+
+    /** Returns the average nanoseconds spent per merge */
+    private double measure(Merge merge) {
+        long checksum = 0;
+        int iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            checksum += merge.merge().size();
+            iterations++;
+        } while ((elapsed = System.nanoTime() - start) < minNanos);
+        if (checksum == 0) out("No hits"); // Use the result
+        return (double) elapsed / iterations;
+    }
+
+    /** Creates lists of hits as returned from partitions, where each partition returns the number of hits needed */
+    private static List<List<LeanHit>> createLists(int partitions, int needed) {
+        Random random = new Random(partitions * 31L + needed);
+        List<List<LeanHit>> lists = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            List<LeanHit> hits = new ArrayList<>(needed);
+            for (int i = 0; i < needed; i++)
+                hits.add(new LeanHit(gid(random), partition, partition, random.nextDouble()));
+            hits.sort(LeanHit::compareTo);
+            lists.add(hits);
+        }
+        return lists;
+    }
+
+    private static byte[] gid(Random random) {
+        return ByteBuffer.allocate(12).putLong(random.nextLong()).putInt(random.nextInt()).array();
+    }
+
+    /** Merges as done before LeanHitMerger: Each list in turn is merged with the hits merged so far */
+    private static List<LeanHit> mergePairwise(List<List<LeanHit>> lists, int needed) {
+        List<LeanHit> current = List.of();
+        for (List<LeanHit> partial : lists) {
+            if (current.isEmpty()) {
+                current = partial;
+                continue;
+            }
+            List<LeanHit> merged = new ArrayList<>(needed);
+            int indexCurrent = 0;
+            int indexPartial = 0;
+            while (indexCurrent < current.size() && indexPartial < partial.size() && merged.size() < needed) {
+                int cmpRes = current.get(indexCurrent).compareTo(partial.get(indexPartial));
+                if (cmpRes < 0) {
+                    merged.add(current.get(indexCurrent++));
+                } else if (cmpRes > 0) {
+                    merged.add(partial.get(indexPartial++));
+                } else {
+                    merged.add(current.get(indexCurrent++));
+                    indexPartial++;
+                }
+            }
+            while (indexCurrent < current.size() && merged.size() < needed)
+                merged.add(current.get(indexCurrent++));
+            while (indexPartial < partial.size() && merged.size() < needed)
+                merged.add(partial.get(indexPartial++));
+            current = merged;
+        }
+        return current;
+    }
+
+    private interface Merge {
+        List<LeanHit> merge();
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) {
+        new LeanHitMergerBenchmark().run();
+    }
+
+}
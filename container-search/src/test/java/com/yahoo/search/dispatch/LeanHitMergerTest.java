@@ -0,0 +1,88 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author agent
+ */
+public class LeanHitMergerTest {
+
+    @Test
+    void testMergeByRelevance() {
+        List<List<LeanHit>> lists = List.of(List.of(hit(1, 0.9), hit(2, 0.5), hit(3, 0.1)),
+                                            List.of(),
+                                            List.of(hit(4, 0.8), hit(5, 0.5), hit(6, 0.4)),
+                                            List.of(hit(7, 1.0)));
+        assertEquals(List.of(7, 1, 4, 2, 5), ids(LeanHitMerger.merge(lists, 5)));
+        assertEquals(List.of(7, 1, 4, 2, 5, 6, 3), ids(LeanHitMerger.merge(lists, 100)));
+    }
+
+    @Test
+    void testMergeBySortData() {
+        List<List<LeanHit>> lists = List.of(List.of(hit(1, 0.1, 1), hit(2, 0.2, 4)),
+                                            List.of(hit(3, 0.3, 2), hit(4, 0.4, 3)));
+        assertEquals(List.of(1, 3, 4, 2), ids(LeanHitMerger.merge(lists, 10)));
+    }
+
+    @Test
+    void testDuplicatesAreRemoved() {
+        List<List<LeanHit>> lists = List.of(List.of(hit(1, 0.9), hit(2, 0.5)),
+                                            List.of(hit(1, 0.9), hit(3, 0.7)),
+                                            List.of(hit(2, 0.5)));
+        assertEquals(List.of(1, 3, 2), ids(LeanHitMerger.merge(lists, 10)));
+    }
+
+    @Test
+    void testSingleListIsReturnedAsIs() {
+        List<LeanHit> list = List.of(hit(1, 0.9), hit(2, 0.5));
+        assertSame(list, LeanHitMerger.merge(List.of(List.of(), list), 10));
+        assertEquals(List.of(), LeanHitMerger.merge(List.of(List.of(), List.of()), 10));
+    }
+
+    @Test
+    void testMergeEqualsSortingAllHits() {
+        Random random = new Random(13);
+        for (int listCount = 1; listCount <= 33; listCount += 4) {
+            List<List<LeanHit>> lists = new ArrayList<>();
+            List<LeanHit> all = new ArrayList<>();
+            int id = 0;
+            for (int i = 0; i < listCount; i++) {
+                List<LeanHit> list = new ArrayList<>();
+                int size = random.nextInt(20);
+                for (int j = 0; j < size; j++)
+                    list.add(hit(id++, random.nextInt(10) / 10.0)); // Many equal relevance values
+                list.sort(LeanHit::compareTo);
+                lists.add(list);
+                all.addAll(list);
+            }
+            all.sort(LeanHit::compareTo);
+            assertEquals(ids(all.subList(0, Math.min(30, all.size()))), ids(LeanHitMerger.merge(lists, 30)));
+        }
+    }
+
+    private static LeanHit hit(int id, double relevance) {
+        return new LeanHit(gid(id), 0, 0, relevance);
+    }
+
+    private static LeanHit hit(int id, double relevance, int sortValue) {
+        return new LeanHit(gid(id), 0, 0, relevance, new byte[] { (byte)sortValue });
+    }
+
+    private static byte[] gid(int id) {
+        return ByteBuffer.allocate(12).putInt(8, id).array();
+    }
+
+    private static List<Integer> ids(List<LeanHit> hits) {
+        return hits.stream().map(hit -> ByteBuffer.wrap(hit.getGid()).getInt(8)).toList();
+    }
+
+}
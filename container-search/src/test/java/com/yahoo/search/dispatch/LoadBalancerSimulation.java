@@ -0,0 +1,204 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.dispatch.searchcluster.Group;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Simulates dispatching queries to groups with each load balancer policy, and prints the resulting
+ * query latency distribution of each.
+ * <p>
+ * The search latencies of the groups are replayed from a trace file if one is given as argument.
+ * The trace contains one line per recorded search, with the group id and the latency in milliseconds
+ * separated by whitespace. The latencies of each group are replayed in order, repeating when exhausted.
+ * If no trace file is given, latencies are generated such that one group periodically has pauses
+ * (as during gc or merges) where a fraction of its searches is very slow.
+ * <p>
+ * Each group executes a fixed number of searches concurrently, and queues the rest.
+ *
+ * @author agent
+ */
+public class LoadBalancerSimulation {
+
+    private static final int concurrencyPerGroup = 8;
+    private static final double queriesPerSecond = 1500;
+    private static final int queries = 300_000;
+
+    private final Trace trace;
+
+    public LoadBalancerSimulation(Trace trace) {
+        this.trace = trace;
+    }
+
+    public void run() {
+        out(String.format(Locale.ENGLISH, "%-32s %8s %8s %8s %8s %8s", "policy", "mean", "p50", "p95", "p99", "p99.9"));
+        for (LoadBalancer.Policy policy : LoadBalancer.Policy.values()) {
+            double[] latencies = simulate(policy);
+            Arrays.sort(latencies);
+            out(String.format(Locale.ENGLISH, "%-32s %8.1f %8.1f %8.1f %8.1f %8.1f",
+                              policy, Arrays.stream(latencies).average().orElse(0),
+                              percentile(latencies, 50), percentile(latencies, 95),
+                              percentile(latencies, 99), percentile(latencies, 99.9)));
+        }
+    }
+
+    /** Returns the latencies in milliseconds of all the simulated queries */
+    private double[] simulate(LoadBalancer.Policy policy) {
+        trace.reset();
+        Random random = new Random(7);
+        List<Group> groups = new ArrayList<>();
+        List<PriorityQueue<Double>> freeAt = new ArrayList<>();
+        for (int i = 0; i < trace.groups(); i++) {
+            groups.add(new Group(i, List.of()) {
+                @Override
+                public boolean hasSufficientCoverage() { return true; }
+            });
+            PriorityQueue<Double> slots = new PriorityQueue<>();
+            for (int j = 0; j < concurrencyPerGroup; j++)
+                slots.add(0.0);
+            freeAt.add(slots);
+        }
+        LoadBalancer loadBalancer = new LoadBalancer(groups, policy);
+
+        PriorityQueue<Completion> completions = new PriorityQueue<>();
+        double[] latencies = new double[queries];
+        double now = 0;
+        for (int i = 0; i < queries; i++) {
+            now += -Math.log(1 - random.nextDouble()) / queriesPerSecond * 1000;
+            while ( ! completions.isEmpty() && completions.peek().end() <= now)
+                completions.poll().release(loadBalancer);
+
+            Group group = loadBalancer.takeGroup(null).orElseThrow();
+            PriorityQueue<Double> slots = freeAt.get(group.id());
+            double start = Math.max(now, slots.poll());
+            double end = start + trace.latencyMs(group.id(), start);
+            slots.add(end);
+            completions.add(new Completion(group, now, end));
+            latencies[i] = end - now;
+        }
+        while ( ! completions.isEmpty())
+            completions.poll().release(loadBalancer);
+        return latencies;
+    }
+
+    private static double percentile(double[] sorted, double percentile) {
+        int index = (int)Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private record Completion(Group group, double arrival, double end) implements Comparable<Completion> {
+
+        void release(LoadBalancer loadBalancer) {
+            Instant arrivalTime = Instant.EPOCH.plusNanos((long)(arrival * 1_000_000));
+            loadBalancer.releaseGroup(group, true,
+                                      RequestDuration.of(arrivalTime, Duration.ofNanos((long)((end - arrival) * 1_000_000))));
+        }
+
+        @Override
+        public int compareTo(Completion other) { return Double.compare(end, other.end); }
+
+    }
+
+    /** The search latencies of groups */
+    public interface Trace {
+
+        int groups();
+
+        /** Returns the latency in milliseconds of a search started at the given time to the given group */
+        double latencyMs(int group, double timeMs);
+
+        /** Restarts this trace from the beginning */
+        void reset();
+
+    }
+
+    /** A trace of recorded latencies */
+    public static class RecordedTrace implements Trace {
+
+        private final double[][] latencies;
+        private final int[] next;
+
+        public RecordedTrace(Path file) throws IOException {
+            TreeMap<Integer, List<Double>> latenciesByGroup = new TreeMap<>();
+            for (String line : Files.readAllLines(file)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                if (parts.length != 2)
+                    throw new IllegalArgumentException("Expected 'group latencyMs', got '" + line + "'");
+                latenciesByGroup.computeIfAbsent(Integer.parseInt(parts[0]), __ -> new ArrayList<>())
+                                .add(Double.parseDouble(parts[1]));
+            }
+            if (latenciesByGroup.isEmpty() || latenciesByGroup.lastKey() != latenciesByGroup.size() - 1)
+                throw new IllegalArgumentException("Expected latencies for groups 0 to n in " + file);
+            latencies = latenciesByGroup.values().stream()
+                                        .map(l -> l.stream().mapToDouble(Double::doubleValue).toArray())
+                                        .toArray(double[][]::new);
+            next = new int[latencies.length];
+        }
+
+        @Override
+        public int groups() { return latencies.length; }
+
+        @Override
+        public double latencyMs(int group, double timeMs) {
+            double latency = latencies[group][next[group]];
+            next[group] = (next[group] + 1) % latencies[group].length;
+            return latency;
+        }
+
+        @Override
+        public void reset() { Arrays.fill(next, 0); }
+
+    }
+
+    /**
+     * A generated trace of log-normally distributed latencies, where group 0 has a pause of 1 second
+     * every 10 seconds, during which 20% of its searches take 250 ms.
+     */
+    public static class GeneratedTrace implements Trace {
+
+        private static final double medianMs = 8;
+        private static final int groups = 4;
+
+        private Random random;
+
+        public GeneratedTrace() { reset(); }
+
+        @Override
+        public int groups() { return groups; }
+
+        @Override
+        public double latencyMs(int group, double timeMs) {
+            if (group == 0 && timeMs % 10_000 < 1000 && random.nextDouble() < 0.2)
+                return 250;
+            return medianMs * Math.exp(0.4 * random.nextGaussian());
+        }
+
+        @Override
+        public void reset() { random = new Random(42); }
+
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Trace trace = args.length > 0 ? new RecordedTrace(Path.of(args[0])) : new GeneratedTrace();
+        new LoadBalancerSimulation(trace).run();
+    }
+
+}
@@ -4,6 +4,7 @@ package com.yahoo.search.dispatch;
 import com.yahoo.search.dispatch.LoadBalancer.AdaptiveScheduler;
 import com.yahoo.search.dispatch.LoadBalancer.BestOfRandom2;
 import com.yahoo.search.dispatch.LoadBalancer.GroupStatus;
+import com.yahoo.search.dispatch.LoadBalancer.LatencyPercentileScheduler;
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.Node;
 import org.junit.jupiter.api.Test;
@@ -15,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -231,6 +233,79 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    void requireThatLatencyPercentilesAreComputedFromSuccessfulSearches() {
+        Node n1 = new Node("test", 0, "test-node1", 0);
+        Node n2 = new Node("test", 1, "test-node2", 1);
+        Group group0 = new Group(0, List.of(n1));
+        LoadBalancer lb = new LoadBalancer(List.of(group0, new Group(1, List.of(n2))), LoadBalancer.Policy.ROUNDROBIN);
+
+        for (int i = 1; i < LatencyHistory.DEFAULT_MIN_SAMPLES; i++)
+            lb.releaseGroup(lb.takeGroup(Set.of(1)).get(), true, RequestDuration.of(Duration.ofMillis(i)));
+        assertEquals(Optional.empty(), lb.latencyPercentile(group0, 95), "Too few samples");
+
+        lb.releaseGroup(lb.takeGroup(Set.of(1)).get(), true, RequestDuration.of(Duration.ofMillis(LatencyHistory.DEFAULT_MIN_SAMPLES)));
+        lb.releaseGroup(lb.takeGroup(Set.of(1)).get(), false, RequestDuration.of(Duration.ofMillis(1000)));
+        assertEquals(Optional.of(Duration.ofMillis(16)), lb.latencyPercentile(group0, 100));
+        assertEquals(Optional.of(Duration.ofMillis(8)), lb.latencyPercentile(group0, 50));
+        assertEquals(Optional.of(Duration.ofMillis(1)), lb.latencyPercentile(group0, 0));
+    }
+
+    @Test
+    void requireThatFailedSearchesAreRecordedAsLastingAtLeastTheTimeout() {
+        Group group0 = new Group(0, List.of(new Node("test", 0, "test-node1", 0)));
+        Group group1 = new Group(1, List.of(new Node("test", 1, "test-node2", 1)));
+        LoadBalancer lb = new LoadBalancer(List.of(group0, group1), LoadBalancer.Policy.LATENCY_PERCENTILES);
+        Duration timeout = Duration.ofMillis(500);
+        for (int i = 0; i < LatencyHistory.DEFAULT_MIN_SAMPLES; i++) {
+            lb.releaseGroup(lb.takeGroup(Set.of(1)).get(), true, RequestDuration.of(Duration.ofMillis(10)), timeout);
+            lb.releaseGroup(lb.takeGroup(Set.of(0)).get(), true, RequestDuration.of(Duration.ofMillis(10)), timeout);
+        }
+        for (int i = 0; i < LatencyHistory.DEFAULT_MIN_SAMPLES; i++) {
+            lb.releaseGroup(lb.takeGroup(Set.of(1)).get(), false, RequestDuration.of(Duration.ofMillis(1)), timeout);
+            lb.releaseGroup(lb.takeGroup(Set.of(0)).get(), true, RequestDuration.of(Duration.ofMillis(10)), timeout);
+        }
+        assertEquals(Optional.of(timeout), lb.latencyPercentile(group0, 99), "Fast failures count as timeouts");
+        assertEquals(Optional.of(Duration.ofMillis(10)), lb.latencyPercentile(group1, 99));
+        for (int i = 0; i < 10; i++) {
+            Group selected = lb.takeGroup(null).get();
+            assertEquals(1, selected.id(), "The failing group is avoided");
+            lb.releaseGroup(selected, true, RequestDuration.of(Duration.ofMillis(10)), timeout);
+        }
+    }
+
+    @Test
+    void requireThatLatencyPercentileSchedulerAvoidsLongTailsAndQueues() {
+        GroupStatus tailing = newGroupStatus(0);
+        GroupStatus steady = newGroupStatus(1);
+        for (int i = 0; i < 100; i++) {
+            updateSearchTime(tailing, RequestDuration.of(Duration.ofMillis(i < 2 ? 205 : 10)));
+            updateSearchTime(steady, RequestDuration.of(Duration.ofMillis(20)));
+        }
+        assertEquals(0.205, tailing.estimatedCompletionTime(), delta);
+        assertEquals(0.02, steady.estimatedCompletionTime(), delta);
+
+        Map<Integer, GroupStatus> scoreboard = new HashMap<>();
+        scoreboard.put(0, tailing);
+        scoreboard.put(1, steady);
+        LatencyPercentileScheduler sched = new LatencyPercentileScheduler(sequence(0.0, 0.5), scoreboard);
+        for (int i = 0; i < 10; i++) {
+            GroupStatus selected = sched.takeNextGroup(null).get();
+            assertEquals(1, selected.groupId(), "Group with the lower tail is preferred while its queue is short");
+            selected.allocate();
+        }
+        assertEquals(0, sched.takeNextGroup(null).get().groupId(), "Queued work on the steady group exceeds the tail");
+        assertEquals(0, sched.takeNextGroup(Set.of(1)).get().groupId());
+    }
+
+    @Test
+    void requireThatLatencyPercentileSchedulerHandlesNoGroups() {
+        LatencyPercentileScheduler sched = new LatencyPercentileScheduler(new Random(), Map.of());
+        assertEquals(Optional.empty(), sched.takeNextGroup(null));
+        LoadBalancer lb = new LoadBalancer(List.of(), LoadBalancer.Policy.LATENCY_PERCENTILES);
+        assertEquals(Optional.empty(), lb.takeGroup(null));
+    }
+
     private static void updateSearchTime(GroupStatus gs, RequestDuration time) {
         gs.allocate();
         gs.release(true, time);
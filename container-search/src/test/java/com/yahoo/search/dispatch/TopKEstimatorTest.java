@@ -1,11 +1,22 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch;
 
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.metrics.simple.Bucket;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.metrics.simple.UntypedMetric;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TopKEstimatorTest {
     @Test
@@ -166,4 +177,81 @@ public class TopKEstimatorTest {
         return sb.toString();
     }
 
+
+    @Test
+    void requireThatAdaptiveEstimatesFollowTheLearnedShareOfEachNode() {
+        TopKEstimator estimator = new TopKEstimator(30, 0.9999, 0.0, true, 0.5, MetricReceiver.nullImplementation);
+        int uniform = estimator.estimateK(200, 10, 0.9999);
+        assertEquals(42, uniform);
+        Map<Integer, Integer> requested = new HashMap<>();
+        for (int node = 0; node < 10; node++)
+            requested.put(node, 200);
+
+        // Node 0 contributes half the top hits, node 9 none, and the others the rest evenly
+        List<LeanHit> topK = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            topK.add(new LeanHit(new byte[12], 0, i < 100 ? 0 : 1 + i % 8, 1.0 - i / 1000.0));
+        for (int i = 0; i < TopKEstimator.MIN_SAMPLES - 1; i++)
+            estimator.learn(topK, requested);
+        assertEquals(uniform, estimator.estimateK(200, 10, 0, 0.9999), "Not learned yet");
+
+        estimator.learn(topK, requested);
+        assertEquals(136, estimator.estimateK(200, 10, 0, 0.9999));
+        assertEquals(29, estimator.estimateK(200, 10, 1, 0.9999));
+        assertEquals(26, estimator.estimateK(200, 10, 9, 0.9999), "The minimum share is used");
+        assertEquals(uniform, estimator.estimateK(200, 10, 10, 0.9999), "Unknown node");
+        assertEquals(200, estimator.estimateK(200, 10, 0, 1.0), "No estimate with probability 1");
+    }
+
+    @Test
+    void requireThatAdaptiveEstimatesGrowWhenNodesReturnAllRequestedHits() {
+        TopKEstimator estimator = new TopKEstimator(30, 0.9999, 0.0, true, 0.5, MetricReceiver.nullImplementation);
+        List<LeanHit> topK = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            topK.add(new LeanHit(new byte[12], 0, i < 10 ? 0 : 1, 1.0 - i / 1000.0));
+        for (int i = 0; i < TopKEstimator.MIN_SAMPLES; i++)
+            estimator.learn(topK, Map.of(0, 10, 1, 100));
+        assertEquals(38, estimator.estimateK(100, 2, 0, 0.9999), "Limited by the request, so its share is taken to be 20%");
+    }
+
+    @Test
+    void requireThatShareMetricsAreAveragedAndSampledPeriodically() {
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        AtomicLong now = new AtomicLong();
+        TopKEstimator estimator = new TopKEstimator(30, 0.9999, 0.0, true, 0.5, metric, now::get);
+        List<LeanHit> topK = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            topK.add(new LeanHit(new byte[12], 0, i < 75 ? 0 : 1, 1.0 - i / 1000.0));
+        for (int i = 0; i < 10; i++)
+            estimator.learn(topK, Map.of(0, 100, 1, 100));
+        assertTrue(metric.getSnapshot().getMapForMetric(ContainerMetrics.DISPATCH_TOPK_ACTUAL_SHARE.baseName()).isEmpty(),
+                   "Not sampled before the interval has passed");
+
+        now.addAndGet(TopKEstimator.METRICS_SAMPLE_INTERVAL_MILLIS);
+        estimator.learn(topK, Map.of(0, 100, 1, 100));
+        Bucket snapshot = metric.getSnapshot();
+        Map<Point, UntypedMetric> predicted = snapshot.getMapForMetric(ContainerMetrics.DISPATCH_TOPK_PREDICTED_SHARE.baseName());
+        Map<Point, UntypedMetric> actual = snapshot.getMapForMetric(ContainerMetrics.DISPATCH_TOPK_ACTUAL_SHARE.baseName());
+        Point node0 = metric.pointBuilder().set("node", 0).build();
+        Point node1 = metric.pointBuilder().set("node", 1).build();
+        assertEquals(1, predicted.get(node0).getCount(), "One sample per node per interval");
+        assertEquals(0.5, predicted.get(node0).getLast(), 1e-9, "An even share is predicted until learned");
+        assertEquals(0.75, actual.get(node0).getLast(), 1e-9);
+        assertEquals(0.25, actual.get(node1).getLast(), 1e-9);
+
+        estimator.learn(topK, Map.of(0, 100, 1, 100));
+        assertTrue(metric.getSnapshot().getMapForMetric(ContainerMetrics.DISPATCH_TOPK_ACTUAL_SHARE.baseName()).isEmpty());
+    }
+
+    @Test
+    void requireThatNonAdaptiveEstimatorDoesNotLearn() {
+        TopKEstimator estimator = new TopKEstimator(30, 0.9999);
+        List<LeanHit> topK = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            topK.add(new LeanHit(new byte[12], 0, 0, 1.0 - i / 1000.0));
+        for (int i = 0; i < TopKEstimator.MIN_SAMPLES; i++)
+            estimator.learn(topK, Map.of(0, 200, 1, 200));
+        assertEquals(estimator.estimateK(200, 2, 0.9999), estimator.estimateK(200, 2, 1, 0.9999));
+    }
+
 }
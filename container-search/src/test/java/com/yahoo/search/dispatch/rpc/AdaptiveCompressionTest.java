@@ -0,0 +1,125 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.search.dispatch.rpc.CompressPayload.PayloadKind;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class AdaptiveCompressionTest {
+
+    private static final byte[] payload = "compressible payload ".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testTransferTimeEstimate() {
+        var transferTime = new AdaptiveCompression.TransferTime();
+        for (int i = 0; i < AdaptiveCompression.minSamples - 1; i++)
+            add(transferTime, 1000 + i * 100, i % 3);
+        assertEquals(-1, transferTime.slope(), "Too few samples");
+        add(transferTime, 10_000, 0);
+        assertEquals(10.0, transferTime.slope(), 1e-6, "Processing time growing with the payload is not counted as transfer time");
+
+        var sameRatio = new AdaptiveCompression.TransferTime();
+        for (int i = 0; i < 100; i++)
+            add(sameRatio, 1000 + i * 100, 0);
+        assertEquals(-1, sameRatio.slope(), "Slope is unknown when transfers are proportional to payloads");
+
+        var samePayload = new AdaptiveCompression.TransferTime();
+        for (int i = 0; i < 100; i++)
+            add(samePayload, 1000, i % 3);
+        assertEquals(10.0, samePayload.slope(), 1e-6);
+
+        var sameSize = new AdaptiveCompression.TransferTime();
+        for (int i = 0; i < 100; i++)
+            sameSize.add(1000, 1000, 50_000 + i);
+        assertEquals(-1, sameSize.slope(), "Slope is unknown when all transfers have the same size");
+    }
+
+    /** Adds a transfer taking 10 nanos per byte transferred, of a payload taking 20 nanos per byte to process */
+    private static void add(AdaptiveCompression.TransferTime transferTime, long payloadBytes, int compression) {
+        long transferredBytes = payloadBytes / (1 + compression);
+        transferTime.add(payloadBytes, transferredBytes, 50_000 + 20 * payloadBytes + 10 * transferredBytes);
+    }
+
+    @Test
+    void testCompressionIsChosenPerNode() {
+        AdaptiveCompression compression = adaptiveCompression();
+        measureAllTypes(compression, 0);
+        measureAllTypes(compression, 1);
+        transfer(compression, 0, 10);
+        transfer(compression, 1, 0.01);
+        assertTrue(count(compression, 0, CompressionType.NONE) < 20);
+        assertTrue(count(compression, 1, CompressionType.NONE) > 180);
+    }
+
+    @Test
+    void testNoCompressionOnFastNetwork() {
+        AdaptiveCompression compression = adaptiveCompression();
+        measureAllTypes(compression, 0);
+        transfer(compression, 0, 0.01);
+        assertTrue(count(compression, 0, CompressionType.NONE) > 180);
+    }
+
+    @Test
+    void testCompressionOnSlowNetwork() {
+        AdaptiveCompression compression = adaptiveCompression();
+        measureAllTypes(compression, 0);
+        transfer(compression, 0, 10);
+        assertTrue(count(compression, 0, CompressionType.NONE) < 20);
+    }
+
+    @Test
+    void testDefaultCompressionUntilTransferTimeIsKnown() {
+        AdaptiveCompression compression = adaptiveCompression();
+        measureAllTypes(compression, 0);
+        assertEquals(200, count(compression, 0, CompressionType.LZ4));
+    }
+
+    @Test
+    void testSmallPayloadsAreNotCompressed() {
+        AdaptiveCompression compression = adaptiveCompression();
+        assertEquals(CompressionType.INCOMPRESSIBLE, compression.compress(new byte[100], 0, PayloadKind.SEARCH).type());
+    }
+
+    private static AdaptiveCompression adaptiveCompression() {
+        AtomicLong nanoClock = new AtomicLong();
+        return new AdaptiveCompression(new Compressor(CompressionType.LZ4, 5, 0.95, 256), MetricReceiver.nullImplementation,
+                                       () -> nanoClock.addAndGet(1000)); // Compressing always takes 1 microsecond
+    }
+
+    private static void measureAllTypes(AdaptiveCompression compression, int nodeId) {
+        for (int i = 0; i < 2 * AdaptiveCompression.minSamples; i++)
+            compression.compress(payload, nodeId, PayloadKind.DOCSUM);
+    }
+
+    /** Transfers payloads which take 20 nanos per byte to process, compressed to varying degrees */
+    private static void transfer(AdaptiveCompression compression, int nodeId, double nanosPerByte) {
+        for (int i = 0; i < 100; i++) {
+            int payloadBytes = 1000 + i * 100;
+            int transferredBytes = payloadBytes / (1 + i % 3);
+            compression.transferred(nodeId, payloadBytes, transferredBytes,
+                                    (long)(100_000 + 20 * payloadBytes + nanosPerByte * transferredBytes));
+        }
+        assertEquals(nanosPerByte, compression.transferNanosPerByte(nodeId), Math.max(nanosPerByte / 100, 0.001));
+    }
+
+    private static int count(AdaptiveCompression compression, int nodeId, CompressionType type) {
+        int count = 0;
+        for (int i = 0; i < 200; i++) {
+            if (compression.compress(payload, nodeId, PayloadKind.DOCSUM).type() == type)
+                count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,46 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
+import com.google.protobuf.ByteString;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.Slime;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class RpcProtobufFillInvokerTest {
+
+    @Test
+    void testInspectingSummariesWithoutCopying() throws IOException {
+        Slime slime = new Slime();
+        Cursor docsums = slime.setObject().setArray("docsums");
+        for (int i = 0; i < 3; i++) {
+            Cursor docsum = docsums.addObject().setObject("docsum");
+            docsum.setLong("number", i);
+            docsum.setString("title", "title " + i);
+        }
+        byte[] payload = SearchProtocol.DocsumReply.newBuilder()
+                                                   .setSlimeSummaries(ByteString.copyFrom(BinaryFormat.encode(slime)))
+                                                   .addErrors(SearchProtocol.Error.newBuilder().setMessage("error 1"))
+                                                   .addErrors(SearchProtocol.Error.newBuilder().setMessage("error 2"))
+                                                   .build().toByteArray();
+
+        List<SearchProtocol.Error> errors = new ArrayList<>();
+        Inspector root = RpcProtobufFillInvoker.inspectSummaries(payload, errors);
+        assertTrue(slime.get().equalTo(root));
+        assertEquals(2, root.field("docsums").entry(2).field("docsum").field("number").asLong());
+        assertEquals(List.of("error 1", "error 2"), errors.stream().map(SearchProtocol.Error::getMessage).toList());
+    }
+
+}
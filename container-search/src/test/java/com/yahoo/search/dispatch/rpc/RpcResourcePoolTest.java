@@ -0,0 +1,182 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.metrics.simple.Bucket;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.metrics.simple.UntypedMetric;
+import com.yahoo.vespa.config.search.DispatchConfig;
+import com.yahoo.vespa.config.search.DispatchNodesConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class RpcResourcePoolTest {
+
+    @Test
+    void testRequestsAreSentOnTheLeastBusyConnection() {
+        FakeClient client = new FakeClient();
+        RpcResourcePool pool = new RpcResourcePool(client, dispatchConfig(false, 2), nodesConfig(), MetricReceiver.nullImplementation,
+                                                   new AtomicLong()::get);
+        client.connections.get(0).inflightBytes = 1000;
+        for (int i = 0; i < 10; i++)
+            assertSame(client.connections.get(1), pool.getConnection(0));
+        assertEquals(2, pool.connectionCount(0));
+    }
+
+    @Test
+    void testAdaptiveConnectionsGrowWhenBusyAndShrinkWhenIdle() {
+        FakeClient client = new FakeClient();
+        AtomicLong nanoClock = new AtomicLong();
+        RpcResourcePool pool = new RpcResourcePool(client, dispatchConfig(true, 1), nodesConfig(), MetricReceiver.nullImplementation,
+                                                   nanoClock::get);
+        assertEquals(1, pool.connectionCount(0));
+        client.connections.get(0).inflightBytes = 2000;
+        FakeConnection added = (FakeConnection)pool.getConnection(0);
+        assertEquals(2, pool.connectionCount(0));
+        assertSame(client.connections.get(1), added);
+        added.inflightBytes = 2000;
+        pool.getConnection(0);
+        pool.getConnection(0);
+        assertEquals(3, pool.connectionCount(0), "Capped by maxJrtConnectionsPerNode");
+
+        for (FakeConnection connection : client.connections)
+            connection.inflightBytes = 0;
+        nanoClock.addAndGet(Duration.ofSeconds(1).toNanos());
+        pool.getConnection(0);
+        assertEquals(2, pool.connectionCount(0), "An idle connection is retired");
+        assertEquals(0, closed(client));
+
+        client.connections.forEach(connection -> connection.inflightRequests = 0);
+        nanoClock.addAndGet(Duration.ofSeconds(1).toNanos());
+        pool.getConnection(0);
+        assertEquals(1, pool.connectionCount(0));
+        assertEquals(1, closed(client), "The first retired connection is closed when idle after the grace period");
+
+        nanoClock.addAndGet(Duration.ofSeconds(10).toNanos());
+        pool.getConnection(0);
+        assertEquals(1, pool.connectionCount(0), "Does not shrink below numJrtConnectionsPerNode");
+
+        pool.close();
+        assertEquals(3, closed(client));
+        assertTrue(client.closed);
+    }
+
+    @Test
+    void testConnectionsAndInflightBytesAreSampledPerNode() {
+        FakeClient client = new FakeClient();
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        RpcResourcePool pool = new RpcResourcePool(client, dispatchConfig(false, 2), nodesConfig(), metric, new AtomicLong()::get);
+        client.connections.get(0).inflightBytes = 1000;
+        client.connections.get(1).inflightBytes = 500;
+        pool.sampleMetrics();
+
+        Point node0 = metric.pointBuilder().set("node", 0).build();
+        Bucket snapshot = metric.getSnapshot();
+        Map<Point, UntypedMetric> connections = snapshot.getMapForMetric(ContainerMetrics.DISPATCH_RPC_CONNECTIONS.baseName());
+        assertEquals(2, connections.get(node0).getLast(), 1e-9);
+        Map<Point, UntypedMetric> inflightBytes = snapshot.getMapForMetric(ContainerMetrics.DISPATCH_RPC_INFLIGHT_BYTES.baseName());
+        assertEquals(1500, inflightBytes.get(node0).getLast(), 1e-9);
+        pool.close();
+    }
+
+    @Test
+    void testQueueDelaysAreRecordedAsAHistogramPerNode() {
+        FakeClient client = new FakeClient();
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        RpcResourcePool pool = new RpcResourcePool(client, dispatchConfig(true, 1), nodesConfig(), metric, new AtomicLong()::get);
+        client.connections.get(0).queueDelayListener.accept(Duration.ofMillis(3).toNanos());
+        client.connections.get(0).inflightBytes = 2000;
+        FakeConnection added = (FakeConnection)pool.getConnection(0);
+        added.queueDelayListener.accept(Duration.ofMillis(5).toNanos());
+
+        Point node0 = metric.pointBuilder().set("node", 0).build();
+        UntypedMetric queueDelay = metric.getSnapshot().getMapForMetric(ContainerMetrics.DISPATCH_RPC_QUEUE_DELAY.baseName()).get(node0);
+        assertEquals(2, queueDelay.getCount());
+        assertEquals(3, queueDelay.getMin(), 1e-9);
+        assertEquals(5, queueDelay.getMax(), 1e-9);
+        assertNotNull(queueDelay.getHistogram(), "Recorded as a histogram");
+        pool.close();
+    }
+
+    private static long closed(FakeClient client) {
+        return client.connections.stream().filter(connection -> connection.closed).count();
+    }
+
+    private static DispatchConfig dispatchConfig(boolean adaptive, int connections) {
+        return new DispatchConfig.Builder().numJrtConnectionsPerNode(connections)
+                                           .adaptiveJrtConnections(adaptive)
+                                           .maxJrtConnectionsPerNode(3)
+                                           .maxInflightBytesPerConnection(1000)
+                                           .build();
+    }
+
+    private static DispatchNodesConfig nodesConfig() {
+        return new DispatchNodesConfig.Builder().node(new DispatchNodesConfig.Node.Builder().key(0).group(0).host("host0").port(0))
+                                                .build();
+    }
+
+    private static class FakeClient implements Client {
+
+        final List<FakeConnection> connections = new ArrayList<>();
+        boolean closed = false;
+
+        @Override
+        public NodeConnection createConnection(String hostname, int port) {
+            FakeConnection connection = new FakeConnection();
+            connections.add(connection);
+            return connection;
+        }
+
+        @Override
+        public void close() { closed = true; }
+
+    }
+
+    private static class FakeConnection implements Client.NodeConnection {
+
+        long inflightBytes = 0;
+        int inflightRequests = 1;
+        boolean closed = false;
+        LongConsumer queueDelayListener = null;
+
+        @Override
+        public void request(String rpcMethod, CompressionType compression, int uncompressedLength, byte[] compressedPayload,
+                            Client.ResponseReceiver responseReceiver, double timeoutSeconds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int inflightRequests() { return inflightRequests; }
+
+        @Override
+        public long inflightBytes() { return inflightBytes; }
+
+        @Override
+        public void setQueueDelayListener(LongConsumer listener) { queueDelayListener = listener; }
+
+        @Override
+        public void close() {
+            assertFalse(closed);
+            closed = true;
+        }
+
+    }
+
+}
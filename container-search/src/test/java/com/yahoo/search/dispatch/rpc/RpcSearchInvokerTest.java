@@ -5,6 +5,7 @@ package com.yahoo.search.dispatch.rpc;
 import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
 import com.google.common.collect.ImmutableMap;
 import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
 import com.yahoo.prelude.fastsearch.ClusterParams;
 import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.search.Query;
@@ -37,8 +38,8 @@ public class RpcSearchInvokerTest {
 
         Query q = new Query("search/?query=test&hits=10&offset=3");
         RpcSearchInvoker.RpcContext context = (RpcSearchInvoker.RpcContext) invoker.sendSearchRequest(q, null);
-        assertEquals(lengthHolder.get(), context.compressedPayload.uncompressedSize());
-        assertSame(context.compressedPayload.data(), payloadHolder.get());
+        assertEquals(lengthHolder.get(), context.compressedPayload(7).uncompressedSize());
+        assertSame(context.compressedPayload(7).data(), payloadHolder.get());
 
         var bytes = compressor.compressor().decompress(payloadHolder.get(), compressionTypeHolder.get(), lengthHolder.get());
         var request = SearchProtocol.SearchRequest.newBuilder().mergeFrom(bytes).build();
@@ -50,8 +51,8 @@ public class RpcSearchInvokerTest {
         var invoker2 = new RpcSearchInvoker(mockSearcher(), compressor, new Node("test", 8, "eight", 1), mockPool, 1000);
         RpcSearchInvoker.RpcContext context2 = (RpcSearchInvoker.RpcContext) invoker2.sendSearchRequest(q, context);
         assertSame(context, context2);
-        assertEquals(lengthHolder.get(), context.compressedPayload.uncompressedSize());
-        assertSame(context.compressedPayload.data(), payloadHolder.get());
+        assertEquals(lengthHolder.get(), context.compressedPayload(7).uncompressedSize());
+        assertSame(context.compressedPayload(7).data(), payloadHolder.get());
     }
 
     @Test
@@ -73,6 +74,38 @@ public class RpcSearchInvokerTest {
         assertEquals(maxHits, request.getHits());
     }
 
+    @Test
+    void testSearchPayloadIsCompressedAsChosenForEachNode() {
+        var compressionTypeHolder = new AtomicReference<CompressionType>();
+        var payloadHolder = new AtomicReference<byte[]>();
+        var lengthHolder = new AtomicInteger();
+        var mockClient = parameterCollectorClient(compressionTypeHolder, payloadHolder, lengthHolder);
+        var mockPool = new RpcResourcePool(ImmutableMap.of(7, mockClient.createConnection("foo", 123),
+                                                           8, mockClient.createConnection("foo", 124),
+                                                           9, mockClient.createConnection("foo", 125)));
+        var compressions = new AtomicInteger();
+        CompressPayload perNode = new CompressService() {
+            @Override
+            public CompressionType compressionType(Query query, int size, int nodeId, PayloadKind kind) {
+                return nodeId == 8 ? CompressionType.NONE : CompressionType.ZSTD;
+            }
+            @Override
+            public Compressor.Compression compress(CompressionType type, byte[] payload, int nodeId, PayloadKind kind) {
+                compressions.incrementAndGet();
+                return super.compress(type, payload, nodeId, kind);
+            }
+        };
+
+        Query q = new Query("search/?query=test&hits=10&offset=3");
+        var context = new RpcSearchInvoker(mockSearcher(), perNode, new Node("test", 7, "seven", 1), mockPool, 1000).sendSearchRequest(q, null);
+        assertEquals(CompressionType.ZSTD, compressionTypeHolder.get());
+        new RpcSearchInvoker(mockSearcher(), perNode, new Node("test", 8, "eight", 1), mockPool, 1000).sendSearchRequest(q, context);
+        assertEquals(CompressionType.NONE, compressionTypeHolder.get());
+        new RpcSearchInvoker(mockSearcher(), perNode, new Node("test", 9, "nine", 1), mockPool, 1000).sendSearchRequest(q, context);
+        assertEquals(CompressionType.ZSTD, compressionTypeHolder.get());
+        assertEquals(2, compressions.get(), "Each compression type is applied once");
+    }
+
     void verifyConnections(RpcResourcePool rpcResourcePool, int numGroups, int nodesPerGroup, int expectNeedCloseCount) {
         var toClose = rpcResourcePool.updateNodes(createNodesConfig(numGroups,nodesPerGroup));
         assertEquals(expectNeedCloseCount, toClose.size());
@@ -0,0 +1,168 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.handler;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.container.jdisc.VespaHeaders;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class StreamingFillTest {
+
+    @Test
+    void testStreamingFill() throws Exception {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher());
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?fill.streaming=true&fill.streamingBatchSize=3"));
+        result.hits().addError(ErrorMessage.createUnspecifiedError("Search error"));
+
+        assertTrue(StreamingFill.start(result, "default", chain, execution));
+        result.hits().completeFuture().get();
+        assertEquals(10, result.getConcreteHitCount());
+        for (int i = 0; i < 10; i++) {
+            Hit hit = result.hits().get(i);
+            assertEquals("hit:" + i, hit.getId().toString(), "Hits are added in rank order");
+            assertEquals(true, hit.getField("filled"));
+        }
+        assertNotNull(result.hits().getErrorHit());
+        assertEquals("Search error", result.hits().getError().getMessage());
+    }
+
+    @Test
+    void testSequentialStreamingFill() throws Exception {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher());
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?fill.streaming=true&fill.streamingBatchSize=3&fill.streamingParallel=false"));
+
+        assertTrue(StreamingFill.start(result, "default", chain, execution));
+        result.hits().completeFuture().get();
+        assertEquals(10, result.getConcreteHitCount());
+        for (int i = 0; i < 10; i++) {
+            Hit hit = result.hits().get(i);
+            assertEquals("hit:" + i, hit.getId().toString(), "Hits are added in rank order");
+            assertEquals(true, hit.getField("filled"));
+        }
+    }
+
+    @Test
+    void testErrorsFromTheFirstBatchDecideTheStatus() throws Exception {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher("hit:1"));
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?fill.streaming=true&fill.streamingBatchSize=3"));
+
+        assertTrue(StreamingFill.start(result, "default", chain, execution));
+        assertEquals("Failed filling", result.hits().getError().getMessage(), "Errors of the first batch are added when starting");
+        assertNotEquals(200, status(result));
+        result.hits().completeFuture().get();
+        assertEquals(10, result.getConcreteHitCount());
+    }
+
+    @Test
+    void testErrorsFromLaterBatchesAreRenderedButDoNotChangeTheStatus() throws Exception {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher("hit:9"));
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?fill.streaming=true&fill.streamingBatchSize=3"));
+
+        assertTrue(StreamingFill.start(result, "default", chain, execution));
+        assertNull(result.hits().getError());
+        assertEquals(200, status(result), "The status is decided before later batches are filled");
+        result.hits().completeFuture().get();
+        assertEquals(10, result.getConcreteHitCount());
+        assertFalse(result.hits().get("hit:9").isFilled("default"));
+        assertEquals("Failed filling", result.hits().getError().getMessage(), "The error is added with its batch");
+    }
+
+    private static int status(Result result) {
+        return VespaHeaders.getStatus(SearchResponse.isSuccess(result), result.hits().getError(),
+                                      SearchResponse.getErrorIterator(result.hits().getErrorHit()));
+    }
+
+    @Test
+    void testStreamedHitsAreTrimmedAndStrippedOfRankFeatures() throws Exception {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher());
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?hits=4&fill.streaming=true&fill.streamingBatchSize=3"));
+        assertEquals(10, result.getConcreteHitCount());
+
+        assertTrue(StreamingFill.start(result, "default", chain, execution));
+        result.hits().completeFuture().get();
+        assertEquals(4, result.getConcreteHitCount());
+        for (int i = 0; i < 4; i++) {
+            Hit hit = result.hits().get(i);
+            assertEquals("hit:" + i, hit.getId().toString());
+            assertEquals(true, hit.getField("filled"));
+            assertNull(hit.getField(Hit.RANKFEATURES_FIELD));
+        }
+    }
+
+    @Test
+    void testRankFeaturesAreKeptWhenListed() throws Exception {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher());
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?fill.streaming=true&ranking.listFeatures=true"));
+
+        assertTrue(StreamingFill.start(result, "default", chain, execution));
+        result.hits().completeFuture().get();
+        assertEquals(10, result.getConcreteHitCount());
+        assertNotNull(result.hits().get(0).getField(Hit.RANKFEATURES_FIELD));
+    }
+
+    @Test
+    void testNoStreamingUnlessRequested() {
+        Chain<Searcher> chain = new Chain<>(new FillingSearcher());
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+        Result result = execution.search(new Query("?query=test"));
+        assertFalse(StreamingFill.start(result, "default", chain, execution));
+        assertTrue(result.hits().incoming().isComplete());
+    }
+
+    private static class FillingSearcher extends Searcher {
+
+        /** The id of a hit which fails the fill of its batch, or null if none */
+        private final String failing;
+
+        FillingSearcher() { this(null); }
+
+        FillingSearcher(String failing) { this.failing = failing; }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            Result result = new Result(query);
+            for (int i = 0; i < 10; i++) {
+                Hit hit = new Hit("hit:" + i, 1.0 - i / 100.0);
+                hit.setFillable();
+                hit.setField(Hit.RANKFEATURES_FIELD, "features");
+                result.hits().add(hit);
+            }
+            return result;
+        }
+
+        @Override
+        public void fill(Result result, String summaryClass, Execution execution) {
+            if (failing != null && result.hits().get(failing) != null) {
+                result.hits().addError(ErrorMessage.createUnspecifiedError("Failed filling"));
+                return;
+            }
+            for (Hit hit : result.hits()) {
+                hit.setField("filled", true);
+                hit.setFilled(summaryClass);
+            }
+        }
+
+    }
+
+}
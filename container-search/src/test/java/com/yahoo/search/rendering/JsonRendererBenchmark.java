@@ -0,0 +1,146 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.schema.DocumentSummary;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Measures the cost per hit of rendering results of summary hits to JSON,
+ * with and without renderer.json.directSummaries.
+ *
+ * @author agent
+ */
+public class JsonRendererBenchmark {
+
+    private static final int hitCount = 400;
+    private static final int warmupIterations = 2000;
+    private static final int iterations = 5000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final JsonRenderer blueprint = new JsonRenderer(executor);
+
+    public void run() throws Exception {
+        for (Shape shape : Shape.values()) {
+            for (boolean direct : new boolean[] { false, true }) {
+                Query query = new Query("?query=test&hits=" + hitCount + "&renderer.json.directSummaries=" + direct);
+                render(shape, query, warmupIterations);
+                long startTime = System.nanoTime();
+                render(shape, query, iterations);
+                long elapsed = System.nanoTime() - startTime;
+                out(String.format(Locale.ENGLISH, "%-8s direct=%-5s %8.1f ns/hit",
+                                  shape, direct, (double) elapsed / iterations / hitCount));
+            }
+        }
+        blueprint.deconstruct();
+        executor.shutdown();
+    }
+
+    private void render(Shape shape, Query query, int times) throws Exception {
+        Result result = createResult(shape, query);
+        Execution execution = new Execution(Execution.Context.createContextStub());
+        for (int i = 0; i < times; i++) {
+            JsonRenderer renderer = (JsonRenderer) blueprint.clone();
+            renderer.init();
+            renderer.renderResponse(OutputStream.nullOutputStream(), result, execution, null).get();
+            renderer.deconstruct();
+        }
+    }
+
+    private Result createResult(Shape shape, Query query) {
+        DocsumDefinition docsum = shape.docsum();
+        Result result = new Result(query);
+        for (int i = 0; i < hitCount; i++) {
+            FastHit hit = new FastHit("id:test:test::" + i, 1.0 / (i + 1));
+            hit.addSummary(docsum, new SlimeAdapter(shape.summary(i).get()));
+            result.hits().add(hit);
+        }
+        result.setTotalHitCount(hitCount);
+        return result;
+    }
+
+    private enum Shape {
+
+        /** A few scalar attributes and a title */
+        scalars {
+            DocsumDefinition docsum() {
+                return new DocsumDefinition(new DocumentSummary.Builder("default")
+                                                    .addField("title", "string")
+                                                    .addField("year", "integer")
+                                                    .addField("popularity", "double")
+                                                    .addField("id", "int64")
+                                                    .addField("available", "bool").build());
+            }
+            Slime summary(int i) {
+                Slime slime = new Slime();
+                Cursor root = slime.setObject();
+                root.setString("title", "Title of document number " + i);
+                root.setLong("year", 1970 + i % 50);
+                root.setDouble("popularity", 1.0 / (i + 1));
+                root.setLong("id", 1000000000L + i);
+                root.setBool("available", i % 2 == 0);
+                return slime;
+            }
+        },
+
+        /** A map, a weighted set and an array of structs */
+        structured {
+            DocsumDefinition docsum() {
+                return new DocsumDefinition(new DocumentSummary.Builder("default")
+                                                    .addField("title", "string")
+                                                    .addField("attributes", "jsonstring")
+                                                    .addField("tags", "jsonstring")
+                                                    .addField("offers", "jsonstring").build());
+            }
+            Slime summary(int i) {
+                Slime slime = new Slime();
+                Cursor root = slime.setObject();
+                root.setString("title", "Title of document number " + i);
+                Cursor attributes = root.setArray("attributes");
+                for (int j = 0; j < 10; j++) {
+                    Cursor entry = attributes.addObject();
+                    entry.setString("key", "attribute" + j);
+                    entry.setString("value", "value " + (i + j));
+                }
+                Cursor tags = root.setArray("tags");
+                for (int j = 0; j < 10; j++) {
+                    Cursor entry = tags.addObject();
+                    entry.setString("item", "tag" + j);
+                    entry.setLong("weight", i + j);
+                }
+                Cursor offers = root.setArray("offers");
+                for (int j = 0; j < 5; j++) {
+                    Cursor offer = offers.addObject();
+                    offer.setString("seller", "seller" + j);
+                    offer.setDouble("price", 9.95 + j);
+                    offer.setLong("stock", j * 3);
+                }
+                return slime;
+            }
+        };
+
+        abstract DocsumDefinition docsum();
+        abstract Slime summary(int i);
+
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new JsonRendererBenchmark().run();
+    }
+
+}
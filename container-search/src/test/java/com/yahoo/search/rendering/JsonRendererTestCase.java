@@ -2,6 +2,7 @@
 package com.yahoo.search.rendering;
 
 import com.yahoo.json.Jackson;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.yahoo.component.ComponentId;
 import com.yahoo.component.chain.Chain;
@@ -21,6 +22,7 @@ import com.yahoo.prelude.Index;
 import com.yahoo.prelude.IndexFacts;
 import com.yahoo.prelude.IndexModel;
 import com.yahoo.prelude.SearchDefinition;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.prelude.hitfield.JSONString;
 import com.yahoo.prelude.hitfield.RawData;
@@ -43,6 +45,7 @@ import com.yahoo.search.result.HitGroup;
 import com.yahoo.search.result.NanNumber;
 import com.yahoo.search.result.Relevance;
 import com.yahoo.search.result.StructuredData;
+import com.yahoo.search.schema.DocumentSummary;
 import com.yahoo.search.searchchain.Execution;
 import com.yahoo.search.searchchain.testutil.DocumentSourceSearcher;
 import com.yahoo.search.statistics.ElapsedTimeTestCase;
@@ -1419,6 +1422,68 @@ public class JsonRendererTestCase {
         assertEqualJsonContent(expected, summary);
     }
 
+    @Test
+    @Timeout(300)
+    void testDirectSummaryRendering() throws IOException, InterruptedException, ExecutionException {
+        DocsumDefinition docsum = new DocsumDefinition(new DocumentSummary.Builder("default")
+                                                               .addField("i", "integer")
+                                                               .addField("emptyInt", "integer")
+                                                               .addField("l", "int64")
+                                                               .addField("d", "double")
+                                                               .addField("b", "bool")
+                                                               .addField("s", "string")
+                                                               .addField("map", "jsonstring")
+                                                               .addField("wset", "jsonstring")
+                                                               .addField("struct", "jsonstring")
+                                                               .addField("$hidden", "integer")
+                                                               .build());
+        var summary = dataFromSimplified(
+                "{ i: 7, emptyInt: -2147483648, l: 12345678901, d: 17.75, b: true, s: 'string value'," +
+                "  map: [ { key: 'k1', value: 'v1' }, { key: 'k2', value: [ { key: 'k3', value: 'v3' } ] } ]," +
+                "  wset: [ { item: 'a', weight: 10 }, { item: 'b', weight: -2 } ]," +
+                "  struct: { f1: 'v1', f2: [ 1, 2.5 ], f3: { item: 'x', weight: 3 }, f4: [] }," +
+                "  '$hidden': 1," +
+                "  unknown: 'not in the summary definition' }");
+
+        String converted = render(resultWithSummary("/?query=a", docsum, summary));
+        String direct = render(resultWithSummary("/?query=a&renderer.json.directSummaries=true", docsum, summary));
+        assertEqualJsonContent(converted, direct);
+        assertTrue(direct.contains("\"map\":{\"k1\":\"v1\",\"k2\":{\"k3\":\"v3\"}}"), direct);
+        assertTrue(direct.contains("\"wset\":{\"a\":10,\"b\":-2}"), direct);
+    }
+
+    @Test
+    void testDirectSummaryFieldsAreFilteredLikeConvertedFields() throws IOException {
+        var settings = new JsonRenderer.FieldConsumerSettings();
+        settings.directSummaries = true;
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+        JsonGenerator generator = Jackson.mapper().getFactory().createGenerator(bs);
+        var consumer = new JsonRenderer.FieldConsumer(generator, settings) {
+            @Override
+            protected boolean shouldRender(String name, Object value) {
+                return ! name.equals("filtered") && super.shouldRender(name, value);
+            }
+        };
+        var summary = dataFromSimplified("{ kept: 1, filtered: 2, empty: '', '$hidden': 3 }");
+        generator.writeStartObject();
+        consumer.startHitFields();
+        for (String name : List.of("kept", "filtered", "empty", "$hidden"))
+            consumer.acceptInspector(name, summary.field(name));
+        consumer.endHitFields();
+        generator.writeEndObject();
+        generator.close();
+        assertEquals("{\"fields\":{\"kept\":1}}", Utf8.toString(bs.toByteArray()));
+    }
+
+    private Result resultWithSummary(String queryString, DocsumDefinition docsum, SlimeAdapter summary) {
+        Result result = new Result(new Query(queryString));
+        FastHit hit = new FastHit("summaryHit", 1.0);
+        hit.addSummary(docsum, summary);
+        result.hits().add(hit);
+        result.setTotalHitCount(1L);
+        return result;
+    }
+
     private static SlimeAdapter dataFromSimplified(String simplified) {
         var decoder = new com.yahoo.slime.JsonDecoder();
         var slime = decoder.decode(new Slime(), Utf8.toBytes(simplified));
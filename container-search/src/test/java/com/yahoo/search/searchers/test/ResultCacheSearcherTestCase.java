@@ -0,0 +1,169 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchers.test;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.UntypedMetric;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.config.ResultCacheConfig;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchers.ResultCacheSearcher;
+import com.yahoo.test.ManualClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class ResultCacheSearcherTestCase {
+
+    private final ManualClock clock = new ManualClock();
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+    private final BackendSearcher backend = new BackendSearcher();
+    private final ResultCacheSearcher cache = createCache(2, 1.0);
+    private final Chain<Searcher> chain = new Chain<>("test", cache, backend);
+
+    @Test
+    void testCaching() {
+        Result first = search("?query=foo");
+        assertEquals(1, backend.searches);
+        assertFalse(first.isCached());
+
+        Query query = new Query("?query=foo");
+        Result second = search(query);
+        assertEquals(1, backend.searches, "Identical query is served from the cache");
+        assertTrue(second.isCached());
+        assertEquals(first.hits().size(), second.hits().size());
+        assertSame(query, second.getQuery());
+        assertSame(query, second.hits().get(0).getQuery(), "Cached hits are tagged with the new query");
+
+        search("?query=foo&hits=5");
+        search("?query=foo&ranking=other");
+        search("?query=foo&ranking.features.query(x)=1");
+        search("?query=bar");
+        assertEquals(5, backend.searches, "Queries differing in the key are not served from the cache");
+
+        assertEquals(1, count("result_cache.hits"));
+        assertEquals(5, count("result_cache.misses"));
+        assertEquals(3, count("result_cache.evictions"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testAllPropertiesExceptIgnoredOnesAreInTheKey() {
+        ResultCacheSearcher cache = createCache(100, 1.0);
+        Chain<Searcher> chain = new Chain<>("test", cache, backend);
+        String[] differentResults = { "ranking.matchPhase.attribute=a",
+                                      "ranking.matchPhase.maxHits=100",
+                                      "ranking.globalPhase.rerankCount=10",
+                                      "ranking.softtimeout.enable=false",
+                                      "ranking.listFeatures=true",
+                                      "model.searchPath=0/0",
+                                      "model.type=all",
+                                      "language=fr",
+                                      "locale=fr-FR",
+                                      "custom=1" };
+        search("?query=foo", chain);
+        for (String property : differentResults)
+            search("?query=foo&" + property, chain);
+        assertEquals(1 + differentResults.length, backend.searches);
+
+        search("?query=foo&timeout=20s&presentation.summary=other&format=xml&trace.timestamps=true", chain);
+        assertEquals(1 + differentResults.length, backend.searches, "Ignored properties are not in the key");
+    }
+
+    @Test
+    void testExpiry() {
+        search("?query=foo");
+        clock.advance(Duration.ofMillis(999));
+        search("?query=foo");
+        assertEquals(1, backend.searches);
+        clock.advance(Duration.ofMillis(1));
+        search("?query=foo");
+        assertEquals(2, backend.searches, "Expired result is not returned");
+    }
+
+    @Test
+    void testInvalidation() {
+        search("?query=foo");
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        search("?query=foo");
+        assertEquals(2, backend.searches);
+    }
+
+    @Test
+    void testBypass() {
+        search("?query=foo&noCache=true");
+        search("?query=foo&noCache=true");
+        search("?query=foo&resultcache.bypass=true");
+        search("?query=foo&tracelevel=1");
+        search("?query=foo&tracelevel=1");
+        assertEquals(5, backend.searches);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testErrorsAreNotCached() {
+        backend.fail = true;
+        search("?query=foo");
+        backend.fail = false;
+        search("?query=foo");
+        assertEquals(2, backend.searches);
+    }
+
+    private Result search(String queryString) {
+        return search(new Query(queryString));
+    }
+
+    private Result search(Query query) {
+        return new Execution(chain, Execution.Context.createContextStub()).search(query);
+    }
+
+    private Result search(String queryString, Chain<Searcher> chain) {
+        return new Execution(chain, Execution.Context.createContextStub()).search(new Query(queryString));
+    }
+
+    private long count(String metricName) {
+        var values = metric.getSnapshot().getMapForMetric(metricName);
+        if (values == null) return 0;
+        return values.values().stream().mapToLong(UntypedMetric::getCount).sum();
+    }
+
+    private ResultCacheSearcher createCache(int maxEntries, double maxAge) {
+        ResultCacheConfig.Builder config = new ResultCacheConfig.Builder();
+        config.maxEntries(maxEntries);
+        config.maxAge(maxAge);
+        return new ResultCacheSearcher(new ResultCacheConfig(config), metric, clock);
+    }
+
+    private static class BackendSearcher extends Searcher {
+
+        int searches = 0;
+        boolean fail = false;
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            searches++;
+            if (fail)
+                return new Result(query, ErrorMessage.createBackendCommunicationError("Failed"));
+            Result result = new Result(query);
+            for (int i = 0; i < 3; i++)
+                result.hits().add(new Hit("hit:" + i, 1.0 / (i + 1), query));
+            result.setTotalHitCount(3);
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document;
+
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A put of a document which is already serialized in the head document format, e.g., directly from JSON.
+ * The document is deserialized only when it is accessed, so a put which is just passed on is sent as it is,
+ * without the document ever being created. Responses to such puts do not contain the document.
+ *
+ * @author agent
+ */
+public class SerializedDocumentPut extends DocumentPut {
+
+    private final DocumentId id;
+    private final byte[] serializedDocument;
+    private final DocumentTypeManager types;
+    private Document document = null;
+
+    /**
+     * Creates a put of a serialized document
+     *
+     * @param id the id of the serialized document
+     * @param serializedDocument the document, serialized in the head document format, which must not be modified
+     * @param types the document types to use when deserializing the document
+     */
+    public SerializedDocumentPut(DocumentId id, byte[] serializedDocument, DocumentTypeManager types) {
+        super((Document) null);
+        this.id = Objects.requireNonNull(id);
+        this.serializedDocument = Objects.requireNonNull(serializedDocument);
+        this.types = Objects.requireNonNull(types);
+    }
+
+    /** Returns the document of this, which is deserialized on the first invocation */
+    @Override
+    public synchronized Document getDocument() {
+        if (document == null)
+            document = Document.createDocument(DocumentDeserializerFactory.createHead(types, new GrowableByteBuffer(ByteBuffer.wrap(serializedDocument))));
+        return document;
+    }
+
+    @Override
+    public DocumentId getId() { return id; }
+
+    /**
+     * Returns the serialized document, or empty if the document has been deserialized,
+     * as the deserialized document may have been modified since.
+     */
+    public synchronized Optional<byte[]> serializedDocument() {
+        return document == null ? Optional.of(serializedDocument) : Optional.empty();
+    }
+
+    /** Returns the size of the serialized document */
+    public int serializedSize() { return serializedDocument.length; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SerializedDocumentPut that = (SerializedDocumentPut) o;
+        return Arrays.equals(serializedDocument, that.serializedDocument) &&
+               getCreateIfNonExistent() == that.getCreateIfNonExistent() &&
+               Objects.equals(getCondition(), that.getCondition());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(serializedDocument), getCondition());
+    }
+
+}
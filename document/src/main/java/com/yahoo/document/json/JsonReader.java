@@ -10,9 +10,11 @@ import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentType;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.SerializedDocumentPut;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.json.document.DocumentParser;
 import com.yahoo.document.json.readers.DocumentParseInfo;
+import com.yahoo.document.json.readers.SerializingPutReader;
 import com.yahoo.document.json.readers.VespaJsonDocumentReader;
 
 import java.io.IOException;
@@ -92,6 +94,20 @@ public class JsonReader {
      * @return the parsed document operation
      */
     public ParsedDocumentOperation readSingleDocumentStreaming(DocumentOperationType operationType, String docIdString) {
+        return readSingleDocumentStreaming(operationType, docIdString, false);
+    }
+
+    /**
+     * Reads a JSON which is expected to contain a single document operation,
+     * and where other parameters, like the document ID and operation type, are supplied by other means.
+     *
+     * @param operationType the type of operation (update or put)
+     * @param docIdString document ID
+     * @param serializePuts whether to read puts directly into a {@link SerializedDocumentPut}, when the document type allows it
+     * @return the parsed document operation
+     */
+    public ParsedDocumentOperation readSingleDocumentStreaming(DocumentOperationType operationType, String docIdString,
+                                                               boolean serializePuts) {
         try {
             DocumentId docId = new DocumentId(docIdString);
             DocumentParseInfo documentParseInfo = new DocumentParseInfo();
@@ -108,9 +124,15 @@ public class JsonReader {
                 switch (parser.currentName()) {
                     case FIELDS -> {
                         documentParseInfo.fieldsBuffer = new LazyTokenBuffer(parser);
-                        VespaJsonDocumentReader vespaJsonDocumentReader = new VespaJsonDocumentReader(typeManager.getIgnoreUndefinedFields());
-                        operation = vespaJsonDocumentReader.createDocumentOperation(
-                                getDocumentTypeFromString(documentParseInfo.documentId.getDocType(), typeManager), documentParseInfo);
+                        DocumentType documentType = getDocumentTypeFromString(documentParseInfo.documentId.getDocType(), typeManager);
+                        if (serializePuts && operationType == DocumentOperationType.PUT && SerializingPutReader.supports(documentType)) {
+                            operation = new SerializingPutReader(typeManager, typeManager.getIgnoreUndefinedFields())
+                                    .readPut(documentType, documentParseInfo);
+                        }
+                        else {
+                            VespaJsonDocumentReader vespaJsonDocumentReader = new VespaJsonDocumentReader(typeManager.getIgnoreUndefinedFields());
+                            operation = vespaJsonDocumentReader.createDocumentOperation(documentType, documentParseInfo);
+                        }
 
                         if ( ! documentParseInfo.fieldsBuffer.isEmpty())
                             throw new IllegalArgumentException("expected all content to be consumed by document parsing, but " +
@@ -49,6 +49,48 @@ public class LazyTokenBuffer extends TokenBuffer {
         };
     }
 
+    /** Reads the values which are not already buffered directly from the parser, without buffering them as tokens */
+    @Override
+    public void readArrayValues(ArrayValueConsumer consumer) {
+        if (current() != JsonToken.START_ARRAY || endIsBuffered()) {
+            super.readArrayValues(consumer);
+            return;
+        }
+        int nesting = 0;
+        for (Token token : tokens) {
+            nesting += nestingOffset(token.token);
+            acceptValue(token.token, token.text, consumer);
+        }
+        tokens.clear();
+        try {
+            while (nesting > 0) {
+                JsonToken token = parser.nextValue();
+                if (token == null)
+                    throw new IllegalStateException("no more JSON tokens");
+                nesting += nestingOffset(token);
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+                    consumer.number(parser.getDoubleValue());
+                else
+                    acceptValue(token, parser.getText(), consumer);
+            }
+            tokens.add(new Token(JsonToken.END_ARRAY, parser.currentName(), parser.getText()));
+            updateNesting(JsonToken.END_ARRAY);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("failed reading document JSON", e);
+        }
+    }
+
+    /** Returns whether the end of the array or object at the current token is buffered already */
+    private boolean endIsBuffered() {
+        int nesting = 0;
+        for (Token token : tokens) {
+            nesting += nestingOffset(token.token);
+            if (nesting == 0) return true;
+        }
+        return false;
+    }
+
     private Token nextToken() {
         try {
             JsonToken token = parser.nextValue();
@@ -111,12 +111,41 @@ public class TokenBuffer {
         return nesting;
     }
 
+    /**
+     * Reads the scalar values of the array at the current token, including those in nested arrays,
+     * and leaves this at the end of the array.
+     */
+    public void readArrayValues(ArrayValueConsumer consumer) {
+        int initNesting = nesting();
+        for (next(); nesting() >= initNesting; next())
+            acceptValue(current(), currentText(), consumer);
+    }
+
+    static void acceptValue(JsonToken token, String text, ArrayValueConsumer consumer) {
+        if (token == JsonToken.START_ARRAY || token == JsonToken.END_ARRAY) return;
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+            consumer.number(Double.parseDouble(text));
+        else
+            consumer.other(token, text);
+    }
+
     public void skipToRelativeNesting(int relativeNesting) {
         int initialNesting = nesting();
         do next();
         while (nesting() > initialNesting + relativeNesting);
     }
 
+    /** Receives the scalar values of an array read by {@link #readArrayValues} */
+    public interface ArrayValueConsumer {
+
+        /** Called for each number in the array */
+        void number(double value);
+
+        /** Called for each value in the array which is not a number or an array */
+        void other(JsonToken token, String text);
+
+    }
+
     public static final class Token {
 
         public final JsonToken token;
@@ -0,0 +1,257 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json.readers;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.SerializedDocumentPut;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.document.datatypes.TensorFieldValue;
+import com.yahoo.document.json.JsonReaderException;
+import com.yahoo.document.json.ParsedDocumentOperation;
+import com.yahoo.document.json.TokenBuffer;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.text.Text;
+import com.yahoo.text.Utf8;
+
+import java.util.Arrays;
+
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectArrayStart;
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectCompositeEnd;
+
+/**
+ * Reads the fields of a put directly into the serialized head document format, without creating a
+ * {@link Document} or any field values, except for tensors. This accepts and rejects exactly the same
+ * input as {@link VespaJsonDocumentReader}, and produces the same bytes as serializing the document it would create,
+ * but only supports document types whose fields are all {@link #supports(DocumentType) supported}.
+ *
+ * @author agent
+ */
+public class SerializingPutReader {
+
+    private final DocumentTypeManager types;
+    private final boolean ignoreUndefinedFields;
+
+    /** The serialized values of the fields read so far, with a field's last value overwriting any earlier ones */
+    private final GrowableByteBuffer values = new GrowableByteBuffer(4096, 2.0f);
+    private final GrowableByteBuffer arrayValues = new GrowableByteBuffer(1024, 2.0f);
+    private int[] fieldIds = new int[16];
+    private int[] valueStarts = new int[16];
+    private int[] valueLengths = new int[16];
+    private int fieldCount = 0;
+
+    public SerializingPutReader(DocumentTypeManager types, boolean ignoreUndefinedFields) {
+        this.types = types;
+        this.ignoreUndefinedFields = ignoreUndefinedFields;
+    }
+
+    /**
+     * Returns whether puts of the given document type can be read by this, which is the case when all its fields
+     * are of a numeric, string or bool type, an array of those, or a tensor.
+     */
+    public static boolean supports(DocumentType type) {
+        for (Field field : type.getFields()) {
+            DataType fieldType = field.getDataType();
+            if (fieldType instanceof ArrayDataType array) fieldType = array.getNestedType();
+            if ( ! isPrimitive(fieldType) && ! (field.getDataType() instanceof TensorDataType)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPrimitive(DataType type) {
+        return    type.equals(DataType.STRING) || type.equals(DataType.INT) || type.equals(DataType.LONG)
+               || type.equals(DataType.BYTE) || type.equals(DataType.FLOAT) || type.equals(DataType.DOUBLE)
+               || type.equals(DataType.BOOL);
+    }
+
+    /** Reads the put in the given parse info, which must be of a {@link #supports(DocumentType) supported} type */
+    public ParsedDocumentOperation readPut(DocumentType type, DocumentParseInfo documentParseInfo) {
+        try {
+            TokenBuffer buffer = documentParseInfo.fieldsBuffer;
+            if (buffer.isEmpty()) // no "fields" map
+                throw new IllegalArgumentException("put of document " + documentParseInfo.documentId + " is missing a 'fields' map");
+            if (buffer.current() != JsonToken.START_OBJECT)
+                throw new IllegalArgumentException("Expected '[' or '{'. Got '" + buffer.current() + "'.");
+
+            boolean fullyApplied = readFields(buffer, type);
+            expectCompositeEnd(buffer.current());
+            VespaJsonDocumentReader.verifyEndState(buffer, JsonToken.END_OBJECT);
+            SerializedDocumentPut put = new SerializedDocumentPut(documentParseInfo.documentId,
+                                                                  serialize(documentParseInfo.documentId, type),
+                                                                  types);
+            documentParseInfo.create.ifPresent(put::setCreateIfNonExistent);
+            return new ParsedDocumentOperation(put, fullyApplied);
+        }
+        catch (JsonReaderException e) {
+            throw JsonReaderException.addDocId(e, documentParseInfo.documentId);
+        }
+    }
+
+    /** Reads the fields object like {@link StructReader#fillStruct}, but serializes the values instead */
+    private boolean readFields(TokenBuffer buffer, DocumentType type) {
+        int initialNesting = buffer.nesting();
+        buffer.next();
+
+        boolean fullyApplied = true;
+        while (buffer.nesting() >= initialNesting) {
+            Field field = getField(type, buffer.currentName());
+            if (field == null) {
+                if ( ! ignoreUndefinedFields)
+                    throw new IllegalArgumentException("No field '" + buffer.currentName() + "' in the structure of type '" +
+                                                       type.getDataTypeName() + "', which has the fields: " + type.getFields());
+                buffer.skipToRelativeNesting(1);
+                fullyApplied = false;
+                continue;
+            }
+
+            try {
+                if (buffer.current() != JsonToken.VALUE_NULL) {
+                    int start = values.position();
+                    writeValue(buffer, field.getDataType(), values);
+                    setField(field.getId(), start, values.position() - start);
+                }
+                buffer.next();
+            } catch (IllegalArgumentException e) {
+                throw new JsonReaderException(field, e);
+            }
+        }
+        return fullyApplied;
+    }
+
+    /** Returns the field with the given name in the given type, looking in inherited types like {@link Document} does */
+    private static Field getField(DocumentType type, String name) {
+        Field field = type.getField(name);
+        if (field != null) return field;
+        for (DocumentType parent : type.getInheritedTypes()) {
+            field = parent.getField(name);
+            if (field != null) return field;
+        }
+        return null;
+    }
+
+    private void writeValue(TokenBuffer buffer, DataType type, GrowableByteBuffer out) {
+        if (type instanceof TensorDataType) {
+            TensorFieldValue tensor = (TensorFieldValue) type.createFieldValue();
+            TensorReader.fillTensor(buffer, tensor);
+            byte[] encoded = tensor.getSerializedTensor().orElse(new byte[0]);
+            out.putInt1_4Bytes(encoded.length);
+            out.put(encoded);
+        }
+        else if ( ! buffer.current().isScalarValue()) {
+            if (type instanceof ArrayDataType array)
+                writeArray(buffer, array.getNestedType(), out);
+            else
+                throw new IllegalArgumentException("Expected a " + type.getValueClass().getName() + " but got an " +
+                                                   (buffer.current() == JsonToken.START_OBJECT ? "object" : "array"));
+        }
+        else {
+            writePrimitive(buffer.currentText(), type, out);
+        }
+    }
+
+    /** Writes an array of primitives, like {@link ArrayReader#fillArray} reads them */
+    private void writeArray(TokenBuffer buffer, DataType elementType, GrowableByteBuffer out) {
+        int initNesting = buffer.nesting();
+        expectArrayStart(buffer.current());
+        buffer.next();
+        arrayValues.clear();
+        int size = 0;
+        while (buffer.nesting() >= initNesting) {
+            Preconditions.checkArgument(buffer.current() != JsonToken.VALUE_NULL, "Illegal null value for array entry");
+            writeValue(buffer, elementType, arrayValues);
+            size++;
+            buffer.next();
+        }
+        out.putInt1_2_4Bytes(size);
+        out.put(arrayValues.array(), arrayValues.arrayOffset(), arrayValues.position());
+    }
+
+    private static void writePrimitive(String text, DataType type, GrowableByteBuffer out) {
+        if (type.equals(DataType.STRING)) {
+            if ( ! Text.isValidTextString(text))
+                text = new StringFieldValue(text).getString(); // Throws or strips, as configured
+            byte[] utf8 = Utf8.toBytes(text);
+            out.put((byte) 0); // Coding: No span trees
+            out.putInt1_4Bytes(utf8.length + 1);
+            out.put(utf8);
+            out.put((byte) 0);
+        }
+        else if (type.equals(DataType.INT)) out.putInt(Integer.parseInt(text));
+        else if (type.equals(DataType.LONG)) out.putLong(Long.parseLong(text));
+        else if (type.equals(DataType.BYTE)) out.put(Byte.parseByte(text));
+        else if (type.equals(DataType.FLOAT)) out.putFloat(Float.parseFloat(text));
+        else if (type.equals(DataType.DOUBLE)) out.putDouble(Double.parseDouble(text));
+        else if (type.equals(DataType.BOOL)) out.put(Boolean.parseBoolean(text) ? (byte) 1 : (byte) 0);
+        else throw new IllegalArgumentException("Can not create a " + type + " value from '" + text + "'");
+    }
+
+    /** Sets the value of the given field to the given range in the values buffer, replacing any previous value */
+    private void setField(int fieldId, int start, int length) {
+        int index = 0;
+        while (index < fieldCount && fieldIds[index] != fieldId) index++;
+        if (index == fieldCount) {
+            if (fieldCount == fieldIds.length) {
+                fieldIds = Arrays.copyOf(fieldIds, fieldCount * 2);
+                valueStarts = Arrays.copyOf(valueStarts, fieldCount * 2);
+                valueLengths = Arrays.copyOf(valueLengths, fieldCount * 2);
+            }
+            fieldCount++;
+        }
+        fieldIds[index] = fieldId;
+        valueStarts[index] = start;
+        valueLengths[index] = length;
+    }
+
+    /** Writes the document like {@link com.yahoo.document.serialization.VespaDocumentSerializer6#write(Document)} */
+    private byte[] serialize(DocumentId id, DocumentType type) {
+        int[] order = sortedFieldIndices();
+        int dataLength = 0;
+        for (int i = 0; i < fieldCount; i++) dataLength += valueLengths[i];
+
+        GrowableByteBuffer out = new GrowableByteBuffer(dataLength + 64 + 8 * fieldCount, 2.0f);
+        out.putShort(Document.SERIALIZED_VERSION);
+        out.putInt(0); // Length, filled in at the end
+        out.put(id.getScheme().toUtf8().getBytes());
+        out.put((byte) 0);
+        out.put(fieldCount == 0 ? (byte) 0x01 : (byte) 0x03); // Has document type, and maybe a header struct
+        out.put(Utf8.toBytes(type.getName()));
+        out.put((byte) 0);
+        out.putShort((short) 0); // Document type version, always 0
+
+        if (fieldCount > 0) {
+            out.putInt(dataLength);
+            out.put(CompressionType.NONE.getCode());
+            out.putInt1_4Bytes(fieldCount);
+            for (int i : order) {
+                out.putInt1_4Bytes(fieldIds[i]);
+                out.putInt2_4_8Bytes(valueLengths[i]);
+            }
+            for (int i : order)
+                out.put(values.array(), values.arrayOffset() + valueStarts[i], valueLengths[i]);
+        }
+        int length = out.position();
+        out.putInt(2, length - 6); // Don't include the length itself or the version
+        return Arrays.copyOf(out.array(), length);
+    }
+
+    /** Returns the indices of the fields read, in the order of their ids, which is the order in which a struct writes them */
+    private int[] sortedFieldIndices() {
+        long[] idsAndIndices = new long[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+            idsAndIndices[i] = ((long) fieldIds[i] << 32) | i;
+        Arrays.sort(idsAndIndices);
+        int[] order = new int[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+            order[i] = (int) idsAndIndices[i];
+        return order;
+    }
+
+}
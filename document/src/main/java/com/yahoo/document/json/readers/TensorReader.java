@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.yahoo.document.datatypes.TensorFieldValue;
 import com.yahoo.document.json.TokenBuffer;
 import com.yahoo.document.json.TokenBuffer.Token;
+import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.MixedTensor;
 import com.yahoo.tensor.Tensor;
@@ -16,6 +17,7 @@ import java.util.function.Supplier;
 
 import static com.yahoo.document.json.readers.JsonParserHelpers.*;
 import static com.yahoo.tensor.serialization.JsonFormat.decodeHexString;
+import static com.yahoo.tensor.serialization.JsonFormat.decodeHexStringToFloats;
 import static com.yahoo.tensor.serialization.JsonFormat.decodeNumberString;
 
 /**
@@ -36,34 +38,33 @@ public class TensorReader {
 
     // MUST be kept in sync with com.yahoo.tensor.serialization.JsonFormat.decode in vespajlib
     static void fillTensor(TokenBuffer buffer, TensorFieldValue tensorFieldValue) {
-        Tensor.Builder builder = Tensor.Builder.of(tensorFieldValue.getDataType().getTensorType());
-        if (buffer.current() == JsonToken.VALUE_STRING
-            && builder instanceof IndexedTensor.BoundBuilder indexedBuilder)
-        {
-            double[] decoded = decodeHexString(buffer.currentText(), builder.type().valueType());
-            if (decoded.length == 0)
-                throw new IllegalArgumentException("Bad string input for tensor with type " + builder.type());
-            for (int i = 0; i < decoded.length; i++) {
-                indexedBuilder.cellByDirectIndex(i, decoded[i]);
-            }
-            tensorFieldValue.assign(builder.build());
+        TensorType type = tensorFieldValue.getDataType().getTensorType();
+        if (buffer.current() == JsonToken.VALUE_STRING && type.hasOnlyIndexedBoundDimensions()) {
+            DenseValues values = DenseValues.of(type);
+            values.decodeHex(buffer.currentText());
+            if (values.count() == 0)
+                throw new IllegalArgumentException("Bad string input for tensor with type " + type);
+            tensorFieldValue.assign(values.builder(null).build());
             return;
         }
         expectOneOf(buffer.current(), JsonToken.START_OBJECT, JsonToken.START_ARRAY);
+        Tensor.Builder builder = null; // Created when needed, as dense values are read into an array owned by the builder
         int initNesting = buffer.nesting();
         while (true) {
             Supplier<Token> lookahead = buffer.lookahead();
             Token next = lookahead.get();
             if (TENSOR_CELLS.equals(next.name) && ! primitiveContent(next.token, lookahead.get().token)) {
                 buffer.next();
+                builder = builderOf(builder, type);
                 readTensorCells(buffer, builder);
             }
-            else if (TENSOR_VALUES.equals(next.name) && builder.type().dimensions().stream().allMatch(Dimension::isIndexed)) {
+            else if (TENSOR_VALUES.equals(next.name) && type.dimensions().stream().allMatch(Dimension::isIndexed)) {
                 buffer.next();
-                readTensorValues(buffer, builder);
+                builder = readTensorValues(buffer, builder, type);
             }
             else if (TENSOR_BLOCKS.equals(next.name)) {
                 buffer.next();
+                builder = builderOf(builder, type);
                 readTensorBlocks(buffer, builder);
             }
             else if (TENSOR_TYPE.equals(next.name) && next.token == JsonToken.VALUE_STRING) {
@@ -75,12 +76,16 @@ public class TensorReader {
                 break;
             }
             else {
-                readDirectTensorValue(buffer, builder);
+                builder = readDirectTensorValue(buffer, builder, type);
                 break;
             }
         }
         expectOneOf(buffer.current(), JsonToken.END_OBJECT, JsonToken.END_ARRAY);
-        tensorFieldValue.assign(builder.build());
+        tensorFieldValue.assign(builderOf(builder, type).build());
+    }
+
+    private static Tensor.Builder builderOf(Tensor.Builder builder, TensorType type) {
+        return builder != null ? builder : Tensor.Builder.of(type);
     }
 
     static boolean primitiveContent(JsonToken current, JsonToken next) {
@@ -131,28 +136,28 @@ public class TensorReader {
         builder.cell(address, value);
     }
 
-    private static void readTensorValues(TokenBuffer buffer, Tensor.Builder builder) {
-        if ( ! (builder instanceof IndexedTensor.BoundBuilder indexedBuilder))
+    /**
+     * Reads the values of a dense tensor with bound dimensions into an array of the value type of the tensor,
+     * and returns a builder of a tensor with these values if the given builder is null,
+     * or the given builder with these values added otherwise.
+     */
+    private static Tensor.Builder readTensorValues(TokenBuffer buffer, Tensor.Builder builder, TensorType type) {
+        if ( ! type.hasOnlyIndexedBoundDimensions())
             throw new IllegalArgumentException("The 'values' field can only be used with dense tensors. " +
                                                "Use 'cells' or 'blocks' instead");
+        DenseValues values = DenseValues.of(type);
         if (buffer.current() == JsonToken.VALUE_STRING) {
-            double[] decoded = decodeHexString(buffer.currentText(), builder.type().valueType());
-            if (decoded.length == 0)
+            values.decodeHex(buffer.currentText());
+            if (values.count() == 0)
                 throw new IllegalArgumentException("The 'values' string does not contain any values");
-            for (int i = 0; i < decoded.length; i++) {
-                indexedBuilder.cellByDirectIndex(i, decoded[i]);
-            }
-            return;
         }
-        int index = 0;
-        int initNesting = buffer.nesting();
-        for (buffer.next(); buffer.nesting() >= initNesting; buffer.next()) {
-            if (buffer.current() == JsonToken.START_ARRAY || buffer.current() == JsonToken.END_ARRAY) continue; // nested arrays: Skip
-            indexedBuilder.cellByDirectIndex(index++, readDouble(buffer));
+        else {
+            buffer.readArrayValues(values);
+            if (values.count() == 0)
+                throw new IllegalArgumentException("The 'values' array does not contain any values");
+            expectCompositeEnd(buffer.current());
         }
-        if (index == 0)
-            throw new IllegalArgumentException("The 'values' array does not contain any values");
-        expectCompositeEnd(buffer.current());
+        return values.builder(builder);
     }
 
     static void readTensorBlocks(TokenBuffer buffer, Tensor.Builder builder) {
@@ -203,18 +208,21 @@ public class TensorReader {
     }
 
     /** Reads a tensor value directly at the root, where the format is decided by the tensor type. */
-    private static void readDirectTensorValue(TokenBuffer buffer, Tensor.Builder builder) {
-        boolean hasIndexed = builder.type().dimensions().stream().anyMatch(TensorType.Dimension::isIndexed);
-        boolean hasMapped = builder.type().dimensions().stream().anyMatch(TensorType.Dimension::isMapped);
+    private static Tensor.Builder readDirectTensorValue(TokenBuffer buffer, Tensor.Builder builder, TensorType type) {
+        boolean hasIndexed = type.dimensions().stream().anyMatch(TensorType.Dimension::isIndexed);
+        boolean hasMapped = type.dimensions().stream().anyMatch(TensorType.Dimension::isMapped);
+
+        if ( ! isArrayOfObjects(buffer) && ! hasMapped)
+            return readTensorValues(buffer, builder, type);
 
+        builder = builderOf(builder, type);
         if (isArrayOfObjects(buffer))
             readTensorCells(buffer, builder);
-        else if ( ! hasMapped)
-            readTensorValues(buffer, builder);
         else if (hasIndexed)
             readTensorBlocks(buffer, builder);
         else
             readTensorCells(buffer, builder);
+        return builder;
     }
 
     private static boolean isArrayOfObjects(TokenBuffer buffer) {
@@ -266,14 +274,18 @@ public class TensorReader {
     }
 
     private static double readDouble(TokenBuffer buffer) {
+        return readDouble(buffer.current(), buffer.currentText());
+    }
+
+    private static double readDouble(JsonToken token, String text) {
         try {
-            if (buffer.current() == JsonToken.VALUE_STRING) {
-                return decodeNumberString(buffer.currentText());
+            if (token == JsonToken.VALUE_STRING) {
+                return decodeNumberString(text);
             }
-            return Double.parseDouble(buffer.currentText());
+            return Double.parseDouble(text);
         }
         catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Expected a number but got '" + buffer.currentText() + "'");
+            throw new IllegalArgumentException("Expected a number but got '" + text + "'");
         }
     }
 
@@ -283,4 +295,166 @@ public class TensorReader {
         return new TensorAddress.Builder(type).add(type.dimensions().get(0).name(), label).build();
     }
 
+    /**
+     * The values of a dense tensor with bound dimensions, read directly into an array of the value type
+     * used by the tensor, which is handed over to the tensor when no other builder is involved.
+     */
+    private static abstract class DenseValues implements TokenBuffer.ArrayValueConsumer {
+
+        /** The number of values in a tensor of the type */
+        final int size;
+
+        /** The number of values read, which may be larger than size if there are too many values */
+        int count = 0;
+
+        DenseValues(int size) {
+            this.size = size;
+        }
+
+        static DenseValues of(TensorType type) {
+            int size = (int) DimensionSizes.of(type).totalSize();
+            return switch (type.valueType()) {
+                case DOUBLE -> new DoubleValues(type, size);
+                case INT8 -> new Int8Values(type, size);
+                default -> new FloatValues(type, size);
+            };
+        }
+
+        int count() { return count; }
+
+        @Override
+        public void other(JsonToken token, String text) {
+            number(readDouble(token, text));
+        }
+
+        /** Decodes values given as a hex string */
+        abstract void decodeHex(String text);
+
+        /**
+         * Returns a builder of a tensor with these values, which is the given builder with these values added,
+         * or a new builder owning the value array of this if the given builder is null.
+         */
+        Tensor.Builder builder(Tensor.Builder builder) {
+            if (count > size)
+                throw new IllegalArgumentException("Expected " + size + " values, but got " + count);
+            if (builder == null) return newBuilder();
+
+            IndexedTensor.BoundBuilder indexedBuilder = (IndexedTensor.BoundBuilder) builder;
+            for (int i = 0; i < count; i++)
+                setIn(indexedBuilder, i);
+            return builder;
+        }
+
+        abstract Tensor.Builder newBuilder();
+
+        abstract void setIn(IndexedTensor.BoundBuilder builder, int index);
+
+    }
+
+    private static final class FloatValues extends DenseValues {
+
+        private final TensorType type;
+        private float[] values;
+
+        FloatValues(TensorType type, int size) {
+            super(size);
+            this.type = type;
+            this.values = new float[size];
+        }
+
+        @Override
+        public void number(double value) {
+            if (count < size)
+                values[count] = (float) value;
+            count++;
+        }
+
+        @Override
+        void decodeHex(String text) {
+            float[] decoded = decodeHexStringToFloats(text, type.valueType());
+            if (decoded.length == size)
+                values = decoded;
+            else
+                System.arraycopy(decoded, 0, values, 0, Math.min(size, decoded.length));
+            count = decoded.length;
+        }
+
+        @Override
+        Tensor.Builder newBuilder() { return IndexedTensor.Builder.of(type, values); }
+
+        @Override
+        void setIn(IndexedTensor.BoundBuilder builder, int index) { builder.cellByDirectIndex(index, values[index]); }
+
+    }
+
+    private static final class Int8Values extends DenseValues {
+
+        private final TensorType type;
+        private final byte[] values;
+
+        Int8Values(TensorType type, int size) {
+            super(size);
+            this.type = type;
+            this.values = new byte[size];
+        }
+
+        @Override
+        public void number(double value) {
+            if (count < size)
+                values[count] = (byte) value;
+            count++;
+        }
+
+        @Override
+        void decodeHex(String text) {
+            float[] decoded = decodeHexStringToFloats(text, type.valueType());
+            for (int i = 0; i < Math.min(size, decoded.length); i++)
+                values[i] = (byte) decoded[i];
+            count = decoded.length;
+        }
+
+        @Override
+        Tensor.Builder newBuilder() { return IndexedTensor.Builder.of(type, DimensionSizes.of(type), values); }
+
+        @Override
+        void setIn(IndexedTensor.BoundBuilder builder, int index) { builder.cellByDirectIndex(index, values[index]); }
+
+    }
+
+    private static final class DoubleValues extends DenseValues {
+
+        private final TensorType type;
+        private double[] values;
+
+        DoubleValues(TensorType type, int size) {
+            super(size);
+            this.type = type;
+            this.values = new double[size];
+        }
+
+        @Override
+        public void number(double value) {
+            if (count < size)
+                values[count] = value;
+            count++;
+        }
+
+        @Override
+        void decodeHex(String text) {
+            double[] decoded = decodeHexString(text, type.valueType());
+            if (decoded.length == size)
+                values = decoded;
+            else
+                System.arraycopy(decoded, 0, values, 0, Math.min(size, decoded.length));
+            count = decoded.length;
+        }
+
+        @Override
+        Tensor.Builder newBuilder() { return IndexedTensor.Builder.of(type, values); }
+
+        @Override
+        void setIn(IndexedTensor.BoundBuilder builder, int index) { builder.cellByDirectIndex(index, values[index]); }
+
+    }
+
 }
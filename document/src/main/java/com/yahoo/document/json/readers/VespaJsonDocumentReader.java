@@ -233,7 +233,7 @@ public class VespaJsonDocumentReader {
         return field.matches("^.*?[.\\[{].*$");
     }
 
-    private static void verifyEndState(TokenBuffer buffer, JsonToken expectedFinalToken) {
+    static void verifyEndState(TokenBuffer buffer, JsonToken expectedFinalToken) {
         Preconditions.checkState(buffer.current() == expectedFinalToken,
                                  "Expected end of JSON struct (%s), got %s", expectedFinalToken, buffer.current());
         Preconditions.checkState(buffer.nesting() == 0, "Nesting not zero at end of operation");
@@ -0,0 +1,110 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorAddress;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.serialization.JsonFormat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the throughput of parsing document puts with a single 768 cell dense tensor,
+ * for each cell value type, with the cells given as a values array and as a hex string.
+ *
+ * @author agent
+ */
+public class DenseTensorParsingBenchmark {
+
+    private static final int cells = 768;
+    private static final long minNanos = 2_000_000_000L;
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+    private final JsonFactory factory = new JsonFactory();
+
+    public DenseTensorParsingBenchmark() {
+        DocumentType type = new DocumentType("bench");
+        for (TensorType.Value valueType : TensorType.Value.values())
+            type.addField(new Field(fieldName(valueType), new TensorDataType(tensorType(valueType))));
+        types.registerDocumentType(type);
+    }
+
+    public void run() {
+        out(String.format(Locale.ENGLISH, "%10s %8s %10s %12s %14s", "cell type", "format", "bytes/doc", "docs/s", "cells/s"));
+        for (TensorType.Value valueType : TensorType.Value.values()) {
+            Tensor tensor = randomTensor(valueType);
+            measure(valueType, "values", "{ \"values\": " + new String(JsonFormat.encode(tensor, true, true), StandardCharsets.UTF_8) + " }");
+            measure(valueType, "hex", "\"" + hex(tensor) + "\"");
+        }
+    }
+
+    private void measure(TensorType.Value valueType, String format, String tensorJson) {
+        byte[] body = ("{ \"fields\": { \"" + fieldName(valueType) + "\": " + tensorJson + " } }").getBytes(StandardCharsets.UTF_8);
+        measure(body); // Warmup
+        double docsPerSecond = measure(body);
+        out(String.format(Locale.ENGLISH, "%10s %8s %10d %12.0f %14.0f",
+                          valueType, format, body.length, docsPerSecond, docsPerSecond * cells));
+    }
+
+    /** Returns the number of documents parsed per second */
+    private double measure(byte[] body) {
+        long count = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            new JsonReader(types, new ByteArrayInputStream(body), factory)
+                    .readSingleDocumentStreaming(DocumentOperationType.PUT, "id:test:bench::" + count);
+            count++;
+        } while ((elapsed = System.nanoTime() - start) < minNanos);
+        return count * 1e9 / elapsed;
+    }
+
+    private static Tensor randomTensor(TensorType.Value valueType) {
+        Random random = new Random(1);
+        Tensor.Builder builder = Tensor.Builder.of(tensorType(valueType));
+        for (int i = 0; i < cells; i++) {
+            double value = valueType == TensorType.Value.INT8 ? random.nextInt(256) - 128 : random.nextDouble() * 2 - 1;
+            builder.cell(value, i);
+        }
+        return builder.build();
+    }
+
+    private static String hex(Tensor tensor) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < cells; i++) {
+            double value = tensor.get(TensorAddress.of(i));
+            switch (tensor.type().valueType()) {
+                case INT8 -> b.append(String.format("%02x", (byte) value));
+                case BFLOAT16 -> b.append(String.format("%04x", Float.floatToRawIntBits((float) value) >>> 16));
+                case FLOAT -> b.append(String.format("%08x", Float.floatToRawIntBits((float) value)));
+                case DOUBLE -> b.append(String.format("%016x", Double.doubleToRawLongBits(value)));
+            }
+        }
+        return b.toString();
+    }
+
+    private static TensorType tensorType(TensorType.Value valueType) {
+        return new TensorType.Builder(valueType).indexed("x", cells).build();
+    }
+
+    private static String fieldName(TensorType.Value valueType) {
+        return "embedding_" + valueType.id();
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) {
+        new DenseTensorParsingBenchmark().run();
+    }
+
+}
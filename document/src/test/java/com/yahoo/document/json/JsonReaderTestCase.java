@@ -48,6 +48,7 @@ import com.yahoo.document.update.TensorModifyUpdate;
 import com.yahoo.document.update.TensorRemoveUpdate;
 import com.yahoo.document.update.ValueUpdate;
 import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.MappedTensor;
 import com.yahoo.tensor.MixedTensor;
@@ -2024,6 +2025,31 @@ public class JsonReaderTestCase {
         }
     }
 
+    @Test
+    public void testParsingOfDenseTensorValuesOfEachCellType() {
+        Tensor int8Tensor = assertTensorField("tensor<int8>(x[2],y[3]):[[1,2,3],[4,5,-6]]", "dense_int8_tensor",
+                                              "{ 'values': [[1, 2, 3], [4, 5, -6]] }");
+        assertHoldsInt8Values(int8Tensor);
+        assertHoldsInt8Values(assertTensorField("tensor<int8>(x[2],y[3]):[[1,2,3],[4,5,-6]]", "dense_int8_tensor",
+                                                "{ 'values': '0102030405fa' }"));
+        assertTensorField("tensor<float>(y[3]):[0.5,-1.25,3]", "dense_float_tensor",
+                          "[0.5, -1.25, 3]");
+        assertTensorField("tensor(x[2],y[3]):[[0.1,0.2,0.3],[0.4,0.5,0.6]]", "dense_tensor",
+                          "{ 'type': 'tensor(x[2],y[3])', 'values': [0.1, 0.2, 0.3, 0.4, 0.5, 0.6] }");
+        Tensor tensor = assertTensorField("tensor(x[2],y[3]):[[2,3,0],[0,0,0]]", "dense_tensor",
+                                          "{ 'values': [2, 3] }");
+        assertTrue(tensor instanceof IndexedTensor);
+        assertTensorField("tensor(x[2],y[3]):[[2,3,4],[5,6,7]]", "dense_tensor",
+                          "{ 'values': '400000000000000040080000000000004010000000000000" +
+                          "40140000000000004018000000000000401c000000000000' }");
+        assertCreatePutFails(inputJson("{ 'values': [1, 2, 3, 4, 5, 6, 7] }"), "dense_tensor",
+                             "Expected 6 values, but got 7");
+        assertCreatePutFails(inputJson("{ 'values': '01020304050607' }"), "dense_int8_tensor",
+                             "Expected 6 values, but got 7");
+        assertCreatePutFails(inputJson("{ 'values': [1, 'foo'] }"), "dense_float_tensor",
+                             "Expected a number but got 'foo'");
+    }
+
     @Test
     public void testParsingOfMixedTensorHexFormat() {
         Tensor.Builder builder = Tensor.Builder.of(TensorType.fromSpec("tensor<bfloat16>(x{},y[3])"));
@@ -2776,6 +2802,13 @@ public class JsonReaderTestCase {
     private DocumentPut createPutWithSparseTensor(String inputTensor) {
         return createPutWithTensor(inputTensor, "sparse_tensor");
     }
+    /** Int8 values should be held as bytes, not widened to floats */
+    private static void assertHoldsInt8Values(Tensor tensor) {
+        TensorType type = tensor.type();
+        assertEquals(IndexedTensor.Builder.of(type, DimensionSizes.of(type), new byte[(int)tensor.size()]).build().getClass(),
+                     tensor.getClass());
+    }
+
     private DocumentPut createPutWithTensor(String inputTensor, String tensorFieldName) {
         JsonReader streaming = createReader("""
                                          {
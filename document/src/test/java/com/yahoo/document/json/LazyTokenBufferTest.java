@@ -7,6 +7,8 @@ import com.yahoo.document.json.TokenBuffer.Token;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
@@ -129,4 +131,37 @@ public class LazyTokenBufferTest {
         assertNull(buffer.next());
     }
 
+    @Test
+    public void testReadArrayValues() throws IOException {
+        String json = """
+                      {
+                        "fields": {
+                          "values": [[1, 2.5], ["inf", null]],
+                          "after": "foo"
+                        }
+                      }""";
+        JsonParser parser = new JsonFactory().createParser(json);
+        parser.nextValue();
+        parser.nextValue();
+        LazyTokenBuffer buffer = new LazyTokenBuffer(parser);
+
+        assertEquals(JsonToken.START_ARRAY, buffer.next());
+        assertEquals(2, buffer.nesting());
+        buffer.lookahead().get(); // Buffer the start of the first nested array
+        List<String> values = new ArrayList<>();
+        buffer.readArrayValues(new TokenBuffer.ArrayValueConsumer() {
+            @Override public void number(double value) { values.add(String.valueOf(value)); }
+            @Override public void other(JsonToken token, String text) { values.add(token + ":" + text); }
+        });
+        assertEquals(List.of("1.0", "2.5", "VALUE_STRING:inf", "VALUE_NULL:null"), values);
+        assertEquals(JsonToken.END_ARRAY, buffer.current());
+        assertEquals(1, buffer.nesting());
+
+        assertEquals(JsonToken.VALUE_STRING, buffer.next());
+        assertEquals("after", buffer.currentName());
+        assertEquals("foo", buffer.currentText());
+        assertEquals(JsonToken.END_OBJECT, buffer.next());
+        assertEquals(0, buffer.nesting());
+    }
+
 }
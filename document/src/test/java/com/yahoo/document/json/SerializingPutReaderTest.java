@@ -0,0 +1,197 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.SerializedDocumentPut;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.serialization.DocumentSerializer;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that puts read directly into their serialized form are exactly the same as
+ * puts read into documents and then serialized.
+ *
+ * @author agent
+ */
+public class SerializingPutReaderTest {
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+
+    public SerializingPutReaderTest() {
+        DocumentType simple = new DocumentType("simple");
+        simple.addField(new Field("title", DataType.STRING));
+        simple.addField(new Field("count", DataType.INT));
+        simple.addField(new Field("timestamp", DataType.LONG));
+        simple.addField(new Field("flags", DataType.BYTE));
+        simple.addField(new Field("score", DataType.FLOAT));
+        simple.addField(new Field("weight", DataType.DOUBLE));
+        simple.addField(new Field("active", DataType.BOOL));
+        simple.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+        simple.addField(new Field("ratings", new ArrayDataType(DataType.INT)));
+        simple.addField(new Field("embedding", DataType.getTensor(TensorType.fromSpec("tensor<float>(x[3])"))));
+        simple.addField(new Field("weights", DataType.getTensor(TensorType.fromSpec("tensor(key{})"))));
+        types.registerDocumentType(simple);
+
+        DocumentType complex = new DocumentType("complex");
+        complex.addField(new Field("title", DataType.STRING));
+        complex.addField(new Field("tags", new WeightedSetDataType(DataType.STRING, true, true)));
+        types.registerDocumentType(complex);
+    }
+
+    @Test
+    public void testSerializedPutIsEqualToSerializedDocument() {
+        assertSameSerialization("""
+                                {
+                                  "fields": {
+                                    "title": "Smörgåsbord with \\"quotes\\" and 🙂",
+                                    "count": 42,
+                                    "timestamp": "-1234567890123",
+                                    "flags": 7,
+                                    "score": 1.5,
+                                    "weight": -2.25e10,
+                                    "active": true,
+                                    "tags": [ "a", "", "c" ],
+                                    "ratings": [ 1, -2, 3 ],
+                                    "embedding": { "values": [ 1.0, 2.0, 3.0 ] },
+                                    "weights": { "cells": { "a": 1.0, "b": 2.0 } }
+                                  }
+                                }
+                                """);
+    }
+
+    @Test
+    public void testFieldsAreWrittenInTheOrderOfTheirIds() {
+        assertSameSerialization("""
+                                { "fields": { "weights": { "cells": { "a": 1.0 } }, "active": false, "title": "last" } }
+                                """);
+    }
+
+    @Test
+    public void testDuplicateFieldsOverwriteAndNullFieldsAreIgnored() {
+        assertSameSerialization("""
+                                { "fields": { "count": 1, "title": "first", "count": 2, "title": null, "tags": [] } }
+                                """);
+    }
+
+    @Test
+    public void testEmptyFields() {
+        assertSameSerialization("""
+                                { "fields": { } }
+                                """);
+        assertSameSerialization("""
+                                { "fields": { "title": null } }
+                                """);
+    }
+
+    @Test
+    public void testCreateAndCondition() {
+        DocumentPut put = (DocumentPut) read("""
+                                             { "fields": { "title": "t" }, "create": true, "condition": "simple.count > 1" }
+                                             """, "id:ns:simple::1", true).operation();
+        assertTrue(put instanceof SerializedDocumentPut);
+        assertTrue(put.getCreateIfNonExistent());
+        assertEquals("simple.count > 1", put.getCondition().getSelection());
+    }
+
+    @Test
+    public void testUnsupportedTypesAreReadIntoDocuments() {
+        ParsedDocumentOperation parsed = read("""
+                                              { "fields": { "title": "t", "tags": { "a": 1 } } }
+                                              """, "id:ns:complex::1", true);
+        assertFalse(parsed.operation() instanceof SerializedDocumentPut);
+        assertEquals(read("""
+                          { "fields": { "title": "t", "tags": { "a": 1 } } }
+                          """, "id:ns:complex::1", false).operation(),
+                     parsed.operation());
+    }
+
+    @Test
+    public void testUndefinedFields() {
+        assertSameFailure("""
+                          { "fields": { "title": "t", "nonexisting": [ { "x": 1 } ] } }
+                          """);
+
+        types.setIgnoreUndefinedFields(true);
+        ParsedDocumentOperation parsed = assertSameSerialization("""
+                                                                 { "fields": { "nonexisting": [ { "x": 1 } ], "title": "t" } }
+                                                                 """);
+        assertFalse(parsed.fullyApplied());
+    }
+
+    @Test
+    public void testInvalidValues() {
+        assertSameFailure("""
+                          { "fields": { "count": "many" } }
+                          """);
+        assertSameFailure("""
+                          { "fields": { "count": 3000000000 } }
+                          """);
+        assertSameFailure("""
+                          { "fields": { "title": { "text": "t" } } }
+                          """);
+        assertSameFailure("""
+                          { "fields": { "ratings": [ 1, null ] } }
+                          """);
+        assertSameFailure("""
+                          { "fields": { "ratings": [ 1, [ 2 ] ] } }
+                          """);
+        assertSameFailure("""
+                          { "fields": { "title": "\\u0000" } }
+                          """);
+        assertSameFailure("""
+                          { "fields": { "embedding": { "values": [ "one" ] } } }
+                          """);
+    }
+
+    private ParsedDocumentOperation assertSameSerialization(String json) {
+        String id = "id:ns:simple::1";
+        ParsedDocumentOperation parsed = read(json, id, true);
+        SerializedDocumentPut serializedPut = (SerializedDocumentPut) parsed.operation();
+        Document expected = ((DocumentPut) read(json, id, false).operation()).getDocument();
+        byte[] serialized = serializedPut.serializedDocument().get();
+        assertArrayEquals(serialize(expected), serialized);
+        assertEquals(expected, serializedPut.getDocument());
+        assertTrue("The document may be modified after being deserialized", serializedPut.serializedDocument().isEmpty());
+        return parsed;
+    }
+
+    private void assertSameFailure(String json) {
+        String id = "id:ns:simple::1";
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class, () -> read(json, id, false));
+        IllegalArgumentException actual = assertThrows(IllegalArgumentException.class, () -> read(json, id, true));
+        assertEquals(expected.getMessage(), actual.getMessage());
+    }
+
+    private ParsedDocumentOperation read(String json, String id, boolean serializePuts) {
+        return new JsonReader(types, new ByteArrayInputStream(Utf8.toBytes(json)), new JsonFactory())
+                .readSingleDocumentStreaming(DocumentOperationType.PUT, id, serializePuts);
+    }
+
+    private static byte[] serialize(Document document) {
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializer serializer = DocumentSerializerFactory.createHead(buffer);
+        document.serialize(serializer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+}
@@ -6,6 +6,7 @@ import com.yahoo.document.DocumentId;
 import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.SerializedDocumentPut;
 import com.yahoo.document.fieldset.DocumentOnly;
 import com.yahoo.documentapi.AsyncParameters;
 import com.yahoo.documentapi.AsyncSession;
@@ -292,7 +293,7 @@ public class MessageBusAsyncSession implements MessageBusSession, AsyncSession {
         Response.Outcome outcome = toOutcome(reply);
         return switch (msg.getType()) {
             case DocumentProtocol.MESSAGE_PUTDOCUMENT ->
-                    new DocumentResponse(reqId, ((PutDocumentMessage) msg).getDocumentPut().getDocument(), err, outcome, reply.getTrace());
+                    new DocumentResponse(reqId, responseDocument((PutDocumentMessage) msg), err, outcome, reply.getTrace());
             case DocumentProtocol.MESSAGE_UPDATEDOCUMENT ->
                     new DocumentUpdateResponse(reqId, ((UpdateDocumentMessage) msg).getDocumentUpdate(), err, outcome, reply.getTrace());
             case DocumentProtocol.MESSAGE_REMOVEDOCUMENT ->
@@ -303,6 +304,13 @@ public class MessageBusAsyncSession implements MessageBusSession, AsyncSession {
         };
     }
 
+    /** Returns the document of the given put, or null if it is still serialized, to avoid deserializing it only for the response */
+    private static Document responseDocument(PutDocumentMessage msg) {
+        DocumentPut put = msg.getDocumentPut();
+        if (put instanceof SerializedDocumentPut serializedPut && serializedPut.serializedDocument().isPresent()) return null;
+        return put.getDocument();
+    }
+
     private static Response toSuccess(Reply reply, long reqId) {
         switch (reply.getType()) {
             case DocumentProtocol.REPLY_GETDOCUMENT:
@@ -317,7 +325,7 @@ public class MessageBusAsyncSession implements MessageBusSession, AsyncSession {
             case DocumentProtocol.REPLY_UPDATEDOCUMENT:
                 return new UpdateResponse(reqId, ((UpdateDocumentReply)reply).wasFound(), reply.getTrace());
             case DocumentProtocol.REPLY_PUTDOCUMENT:
-                return new DocumentResponse(reqId, ((PutDocumentMessage)reply.getMessage()).getDocumentPut().getDocument(), reply.getTrace());
+                return new DocumentResponse(reqId, responseDocument((PutDocumentMessage) reply.getMessage()), null, SUCCESS, reply.getTrace());
             default:
                 return new Response(reqId, null, SUCCESS, reply.getTrace());
         }
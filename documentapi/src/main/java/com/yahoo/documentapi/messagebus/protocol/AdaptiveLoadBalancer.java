@@ -3,22 +3,30 @@ package com.yahoo.documentapi.messagebus.protocol;
 
 import com.yahoo.jrt.slobrok.api.Mirror;
 
+import java.time.Clock;
 import java.util.List;
 import java.util.Random;
 
 /**
- * Will pick 2 random candidates and select the one with the least pending operations.
+ * Will pick 2 random candidates and select the one with the least load. The load of a node is the larger of
+ * the operations pending from this, and the queue depth the node reports in replies, which includes operations
+ * from other clients. Reported queue depths decay over time, so nodes which were busy get tried again.
  *
  * @author baldersheim
  */
 class AdaptiveLoadBalancer extends LoadBalancer {
     private final Random random;
+    private final Clock clock;
     AdaptiveLoadBalancer(String cluster) {
         this(cluster, new Random());
     }
     AdaptiveLoadBalancer(String cluster, Random random) {
+        this(cluster, random, Clock.systemUTC());
+    }
+    AdaptiveLoadBalancer(String cluster, Random random, Clock clock) {
         super(cluster);
         this.random = random;
+        this.clock = clock;
     }
 
     @Override
@@ -39,7 +47,8 @@ class AdaptiveLoadBalancer extends LoadBalancer {
             Mirror.Entry entryB = choices.get(candB);
             metrics = getNodeMetrics(entry);
             NodeMetrics metricsB = getNodeMetrics(entryB);
-            if (metrics.pending() > metricsB.pending()) {
+            long now = clock.millis();
+            if (load(metrics, now) > load(metricsB, now)) {
                 entry = entryB;
                 metrics = metricsB;
             }
@@ -48,11 +57,18 @@ class AdaptiveLoadBalancer extends LoadBalancer {
         return new Node(entry, metrics);
     }
 
+    private static double load(NodeMetrics metrics, long now) {
+        return Math.max(metrics.pending(), metrics.queueDepth(now));
+    }
+
     @Override
-    void received(Node node, boolean busy) {
+    void received(Node node, boolean busy, int queueDepth) {
         node.metrics.incReceived();
         if (busy) {
             node.metrics.incBusy();
         }
+        if (queueDepth >= 0) {
+            node.metrics.reportQueueDepth(queueDepth, clock.millis());
+        }
     }
 }
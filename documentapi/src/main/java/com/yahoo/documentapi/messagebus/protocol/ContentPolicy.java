@@ -341,7 +341,7 @@ public class ContentPolicy extends SlobrokPolicy {
         private BucketId getBucketId(Message msg) {
             return switch (msg.getType()) {
                 case DocumentProtocol.MESSAGE_PUTDOCUMENT ->
-                        factory.getBucketId(((PutDocumentMessage) msg).getDocumentPut().getDocument().getId());
+                        factory.getBucketId(((PutDocumentMessage) msg).getDocumentPut().getId());
                 case DocumentProtocol.MESSAGE_GETDOCUMENT ->
                         factory.getBucketId(((GetDocumentMessage) msg).getDocumentId());
                 case DocumentProtocol.MESSAGE_REMOVEDOCUMENT ->
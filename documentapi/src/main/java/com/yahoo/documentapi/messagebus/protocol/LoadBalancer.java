@@ -11,18 +11,39 @@ import java.util.concurrent.atomic.AtomicLong;
 
 abstract class LoadBalancer {
     static class NodeMetrics {
+        /** The time it takes for a reported queue depth to decay to half its value, when no new reports arrive */
+        static final long queueDepthHalfLifeMillis = 1000;
+
         private AtomicLong sent = new AtomicLong(0);
         private AtomicLong received = new AtomicLong(0);
         private AtomicLong busy = new AtomicLong(0);
+        private double queueDepth = 0;
+        private long queueDepthMillis = 0;
         long pending() { return sent.get() - received.get(); }
         void incSend() { sent.incrementAndGet(); }
         void incReceived() { received.incrementAndGet(); }
         void incBusy() { busy.incrementAndGet(); }
         long sent() { return sent.get(); }
+
+        /** Adds a queue depth reported by this node, which is averaged with the previous, decayed ones */
+        synchronized void reportQueueDepth(int depth, long nowMillis) {
+            queueDepth = (queueDepth(nowMillis) + depth) / 2;
+            queueDepthMillis = nowMillis;
+        }
+
+        /** Returns the estimated queue depth of this node, which decays towards 0 as reports get older */
+        synchronized double queueDepth(long nowMillis) {
+            if (queueDepth == 0) return 0;
+            return queueDepth * Math.pow(0.5, Math.max(0, nowMillis - queueDepthMillis) / (double) queueDepthHalfLifeMillis);
+        }
+
         void reset() {
             sent.set(0);
             received.set(0);
             busy.set(0);
+            synchronized (this) {
+                queueDepth = 0;
+            }
         }
     }
     static class Node {
@@ -80,5 +101,17 @@ abstract class LoadBalancer {
         return new NodeMetrics();
     }
     abstract Node getRecipient(List<Mirror.Entry> choices);
-    abstract void received(Node node, boolean busy);
+
+    /**
+     * Called when a reply is received from a node.
+     *
+     * @param node the node replying
+     * @param busy whether the reply says the node is busy
+     * @param queueDepth the number of operations queued at the node, or -1 if not reported
+     */
+    abstract void received(Node node, boolean busy, int queueDepth);
+
+    final void received(Node node, boolean busy) {
+        received(node, busy, -1);
+    }
 }
@@ -85,7 +85,8 @@ public class LoadBalancerPolicy extends SlobrokPolicy {
                 busy = true;
             }
         }
-        loadBalancer.received(target, busy);
+        int queueDepth = reply instanceof WriteDocumentReply writeReply ? writeReply.getQueueDepth() : -1;
+        loadBalancer.received(target, busy, queueDepth);
 
         context.setReply(reply);
     }
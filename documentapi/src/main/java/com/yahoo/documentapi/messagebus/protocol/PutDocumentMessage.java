@@ -3,6 +3,7 @@ package com.yahoo.documentapi.messagebus.protocol;
 
 import com.yahoo.api.annotations.Beta;
 import com.yahoo.document.DocumentPut;
+import com.yahoo.document.SerializedDocumentPut;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.serialization.DocumentDeserializer;
 
@@ -145,6 +146,9 @@ public class PutDocumentMessage extends TestAndSetMessage {
         if (buffer != null) {
             return buffer.getBuf().remaining();
         }
+        if (put instanceof SerializedDocumentPut serializedPut) {
+            return serializedPut.serializedSize();
+        }
         return put.getDocument().getApproxSize();
     }
 
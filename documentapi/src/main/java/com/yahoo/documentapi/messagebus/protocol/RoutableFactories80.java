@@ -15,6 +15,7 @@ import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
 import com.yahoo.document.GlobalId;
+import com.yahoo.document.SerializedDocumentPut;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.serialization.DocumentDeserializer;
 import com.yahoo.document.serialization.DocumentDeserializerFactory;
@@ -205,6 +206,15 @@ abstract class RoutableFactories80 {
         return toProtoDocument(serializeDoc(doc));
     }
 
+    private static DocapiCommon.Document toProtoDocument(DocumentPut put) {
+        if (put instanceof SerializedDocumentPut serializedPut) {
+            var serialized = serializedPut.serializedDocument();
+            if (serialized.isPresent())
+                return toProtoDocument(ByteBuffer.wrap(serialized.get()));
+        }
+        return toProtoDocument(put.getDocument());
+    }
+
     private static DocapiCommon.Document toProtoDocument(ByteBuffer rawDocData) {
         return DocapiCommon.Document.newBuilder()
                 .setPayload(ByteString.copyFrom(rawDocData))
@@ -232,6 +242,12 @@ abstract class RoutableFactories80 {
         return new TestAndSetCondition(protoTasCond.getSelection());
     }
 
+    private static DocapiFeed.QueueDepth toProtoQueueDepth(int operations) {
+        return DocapiFeed.QueueDepth.newBuilder()
+                .setOperations(operations)
+                .build();
+    }
+
     private static ByteBuffer serializeUpdate(DocumentUpdate update) {
         var buf = new GrowableByteBuffer(4 * 1024, 2.0f);
         update.serialize(DocumentSerializerFactory.createHead(buf));
@@ -339,7 +355,7 @@ abstract class RoutableFactories80 {
                             .setForceAssignTimestamp(apiMsg.getTimestamp())
                             .setPersistedTimestamp(apiMsg.getPersistedTimestamp())
                             .setCreateIfMissing(apiMsg.getCreateIfNonExistent())
-                            .setDocument(toProtoDocument(apiMsg.getDocumentPut().getDocument()));
+                            .setDocument(toProtoDocument(apiMsg.getDocumentPut()));
                     if (apiMsg.getCondition().isPresent()) {
                         builder.setCondition(toProtoTasCondition(apiMsg.getCondition()));
                     }
@@ -362,13 +378,20 @@ abstract class RoutableFactories80 {
     static RoutableFactory createPutDocumentReplyFactory() {
         return ProtobufCodecBuilder
                 .of(WriteDocumentReply.class, DocapiFeed.PutDocumentResponse.class)
-                .encoder((apiReply) ->
-                        DocapiFeed.PutDocumentResponse.newBuilder()
-                                .setModificationTimestamp(apiReply.getHighestModificationTimestamp())
-                                .build())
+                .encoder((apiReply) -> {
+                    var builder = DocapiFeed.PutDocumentResponse.newBuilder()
+                            .setModificationTimestamp(apiReply.getHighestModificationTimestamp());
+                    if (apiReply.getQueueDepth() >= 0) {
+                        builder.setQueueDepth(toProtoQueueDepth(apiReply.getQueueDepth()));
+                    }
+                    return builder.build();
+                })
                 .decoder(DocapiFeed.PutDocumentResponse.parser(), (protoReply) -> {
                     var reply = new WriteDocumentReply(DocumentProtocol.REPLY_PUTDOCUMENT);
                     reply.setHighestModificationTimestamp(protoReply.getModificationTimestamp());
+                    if (protoReply.hasQueueDepth()) {
+                        reply.setQueueDepth(protoReply.getQueueDepth().getOperations());
+                    }
                     return reply;
                 })
                 .build();
@@ -410,15 +433,22 @@ abstract class RoutableFactories80 {
     static RoutableFactory createUpdateDocumentReplyFactory() {
         return ProtobufCodecBuilder
                 .of(UpdateDocumentReply.class, DocapiFeed.UpdateDocumentResponse.class)
-                .encoder((apiReply) ->
-                        DocapiFeed.UpdateDocumentResponse.newBuilder()
-                                .setModificationTimestamp(apiReply.getHighestModificationTimestamp())
-                                .setWasFound(apiReply.wasFound())
-                                .build())
+                .encoder((apiReply) -> {
+                    var builder = DocapiFeed.UpdateDocumentResponse.newBuilder()
+                            .setModificationTimestamp(apiReply.getHighestModificationTimestamp())
+                            .setWasFound(apiReply.wasFound());
+                    if (apiReply.getQueueDepth() >= 0) {
+                        builder.setQueueDepth(toProtoQueueDepth(apiReply.getQueueDepth()));
+                    }
+                    return builder.build();
+                })
                 .decoder(DocapiFeed.UpdateDocumentResponse.parser(), (protoReply) -> {
                     var reply = new UpdateDocumentReply();
                     reply.setHighestModificationTimestamp(protoReply.getModificationTimestamp());
                     reply.setWasFound(protoReply.getWasFound());
+                    if (protoReply.hasQueueDepth()) {
+                        reply.setQueueDepth(protoReply.getQueueDepth().getOperations());
+                    }
                     return reply;
                 })
                 .build();
@@ -454,15 +484,22 @@ abstract class RoutableFactories80 {
     static RoutableFactory createRemoveDocumentReplyFactory() {
         return ProtobufCodecBuilder
                 .of(RemoveDocumentReply.class, DocapiFeed.RemoveDocumentResponse.class)
-                .encoder((apiReply) ->
-                        DocapiFeed.RemoveDocumentResponse.newBuilder()
-                                .setWasFound(apiReply.wasFound())
-                                .setModificationTimestamp(apiReply.getHighestModificationTimestamp())
-                                .build())
+                .encoder((apiReply) -> {
+                    var builder = DocapiFeed.RemoveDocumentResponse.newBuilder()
+                            .setWasFound(apiReply.wasFound())
+                            .setModificationTimestamp(apiReply.getHighestModificationTimestamp());
+                    if (apiReply.getQueueDepth() >= 0) {
+                        builder.setQueueDepth(toProtoQueueDepth(apiReply.getQueueDepth()));
+                    }
+                    return builder.build();
+                })
                 .decoder(DocapiFeed.RemoveDocumentResponse.parser(), (protoReply) -> {
                     var reply = new RemoveDocumentReply();
                     reply.setWasFound(protoReply.getWasFound());
                     reply.setHighestModificationTimestamp(protoReply.getModificationTimestamp());
+                    if (protoReply.hasQueueDepth()) {
+                        reply.setQueueDepth(protoReply.getQueueDepth().getOperations());
+                    }
                     return reply;
                 })
                 .build();
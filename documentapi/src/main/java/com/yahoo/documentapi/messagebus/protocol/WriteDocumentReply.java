@@ -8,6 +8,7 @@ package com.yahoo.documentapi.messagebus.protocol;
 public class WriteDocumentReply extends DocumentAcceptedReply {
 
     private long highestModificationTimestamp = 0;
+    private int queueDepth = -1;
 
     public WriteDocumentReply(int type) {
         super(type);
@@ -31,4 +32,19 @@ public class WriteDocumentReply extends DocumentAcceptedReply {
         this.highestModificationTimestamp = timestamp;
     }
 
+    /**
+     * Returns the number of operations which were queued at the node sending this reply when it was sent,
+     * including any from other clients, or -1 if this was not reported.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Sets the number of operations queued at the node sending this reply, or -1 to not report it.
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
 }
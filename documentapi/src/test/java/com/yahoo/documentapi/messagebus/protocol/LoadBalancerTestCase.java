@@ -4,6 +4,13 @@ package com.yahoo.documentapi.messagebus.protocol;
 import com.yahoo.jrt.slobrok.api.Mirror;
 import org.junit.Test;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Random;
 
@@ -124,4 +131,96 @@ public class LoadBalancerTestCase {
     public void testLoadBalancerOneItemOnly() {
         verifyLoadBalancerOneItemOnly(new AdaptiveLoadBalancer("foo"));
     }
+
+    @Test
+    public void testReportedQueueDepthDecays() {
+        SimulatedClock clock = new SimulatedClock();
+        LoadBalancer lb = new AdaptiveLoadBalancer("foo", new Random(1), clock);
+        List<Mirror.Entry> entries = List.of(new Mirror.Entry("foo/0/default", "tcp/bar:1"));
+        LoadBalancer.Node node = lb.getRecipient(entries);
+        LoadBalancer.NodeMetrics metrics = lb.getNodeWeights().get(0);
+        assertEquals(0, metrics.queueDepth(clock.millis()), 0);
+
+        lb.received(node, false, 100);
+        assertEquals(50, metrics.queueDepth(clock.millis()), 1e-9);
+        lb.received(node, false, 100);
+        assertEquals(75, metrics.queueDepth(clock.millis()), 1e-9);
+
+        clock.advance(LoadBalancer.NodeMetrics.queueDepthHalfLifeMillis);
+        assertEquals(37.5, metrics.queueDepth(clock.millis()), 1e-9);
+        lb.received(node, false, -1); // Not reported
+        assertEquals(37.5, metrics.queueDepth(clock.millis()), 1e-9);
+        lb.received(node, false, 0);
+        assertEquals(18.75, metrics.queueDepth(clock.millis()), 1e-9);
+
+        metrics.reset();
+        assertEquals(0, metrics.queueDepth(clock.millis()), 0);
+    }
+
+    /**
+     * Simulates many clients which each send little, to nodes where one also gets load from elsewhere.
+     * The operations pending from each client are too few to tell the nodes apart, but the queue depths
+     * reported by the nodes are not.
+     */
+    @Test
+    public void testReportedQueueDepthMovesLoadAwayFromBusyNode() {
+        long[] without = simulateLatencies(false);
+        long[] with = simulateLatencies(true);
+        System.out.println("Without queue depth: p50=" + percentile(without, 0.5) + " p99=" + percentile(without, 0.99) + " ticks");
+        System.out.println("With queue depth:    p50=" + percentile(with, 0.5) + " p99=" + percentile(with, 0.99) + " ticks");
+        assertTrue(percentile(with, 0.99) * 4 < percentile(without, 0.99));
+    }
+
+    private static long[] simulateLatencies(boolean reportQueueDepth) {
+        int ticks = 20000, clients = 40, capacityPerTick = 10, externalLoadPerTick = 8;
+        double sendProbability = 0.4;
+        Random random = new Random(1);
+        SimulatedClock clock = new SimulatedClock();
+        List<Mirror.Entry> entries = List.of(new Mirror.Entry("foo/0/default", "tcp/bar:1"),
+                                             new Mirror.Entry("foo/1/default", "tcp/bar:2"),
+                                             new Mirror.Entry("foo/2/default", "tcp/bar:3"));
+        List<LoadBalancer> balancers = new ArrayList<>();
+        for (int i = 0; i < clients; i++)
+            balancers.add(new AdaptiveLoadBalancer("foo", new Random(i), clock));
+        List<Deque<Operation>> queues = List.of(new ArrayDeque<>(), new ArrayDeque<>(), new ArrayDeque<>());
+        List<Long> latencies = new ArrayList<>();
+        for (int tick = 0; tick < ticks; tick++, clock.advance(1)) {
+            for (int i = 0; i < externalLoadPerTick; i++)
+                queues.get(0).add(new Operation(null, null, tick));
+            for (LoadBalancer balancer : balancers) {
+                if (random.nextDouble() >= sendProbability) continue;
+                LoadBalancer.Node node = balancer.getRecipient(entries);
+                queues.get(balancer.getIndex(node.entry.getName())).add(new Operation(balancer, node, tick));
+            }
+            for (Deque<Operation> queue : queues) {
+                for (int i = 0; i < capacityPerTick && ! queue.isEmpty(); i++) {
+                    Operation operation = queue.poll();
+                    if (operation.balancer == null) continue;
+                    latencies.add(tick - operation.sentTick);
+                    operation.balancer.received(operation.node, false, reportQueueDepth ? queue.size() : -1);
+                }
+            }
+        }
+        return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[(int) (quantile * (sorted.length - 1))];
+    }
+
+    private record Operation(LoadBalancer balancer, LoadBalancer.Node node, long sentTick) { }
+
+    private static class SimulatedClock extends Clock {
+
+        private long millis = 0;
+
+        void advance(long millis) { this.millis += millis; }
+
+        @Override public long millis() { return millis; }
+        @Override public Instant instant() { return Instant.ofEpochMilli(millis); }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+
+    }
+
 }
@@ -8,17 +8,23 @@ import com.yahoo.document.DocumentId;
 import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentUpdate;
 import com.yahoo.document.GlobalId;
+import com.yahoo.document.SerializedDocumentPut;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.fieldpathupdate.RemoveFieldPathUpdate;
 import com.yahoo.document.idstring.IdString;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
 import com.yahoo.messagebus.Routable;
 import com.yahoo.text.Utf8;
 import com.yahoo.vdslib.SearchResult;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -161,6 +167,21 @@ public class Messages80TestCase extends MessagesTestBase {
                 assertEquals(0x1badcafef000000dL, deserializedMsg.getPersistedTimestamp());
             });
             verifyCreateIfNonExistentFlag();
+            verifySerializedDocumentIsEncodedAsIs();
+        }
+
+        void verifySerializedDocumentIsEncodedAsIs() {
+            var document = new Document(protocol.getDocumentTypeManager().getDocumentType("testdoc"), "id:ns:testdoc::");
+            var buffer = new GrowableByteBuffer();
+            document.serialize(DocumentSerializerFactory.createHead(buffer));
+            var serialized = new SerializedDocumentPut(document.getId(), Arrays.copyOf(buffer.array(), buffer.position()),
+                                                       protocol.getDocumentTypeManager());
+            var serializedMsg = new PutDocumentMessage(serialized);
+            serializedMsg.setTimestamp(666);
+            var msg = new PutDocumentMessage(new DocumentPut(document));
+            msg.setTimestamp(666);
+            assertArrayEquals(encode(msg), encode(serializedMsg));
+            assertTrue(serialized.serializedDocument().isPresent());
         }
     }
 
@@ -173,7 +194,20 @@ public class Messages80TestCase extends MessagesTestBase {
             forEachLanguage((lang) -> {
                 var obj = (WriteDocumentReply)deserialize("PutDocumentReply", DocumentProtocol.REPLY_PUTDOCUMENT, lang);
                 assertEquals(30, obj.getHighestModificationTimestamp());
+                assertEquals(-1, obj.getQueueDepth());
             });
+            verifyQueueDepthIsPropagated();
+        }
+
+        void verifyQueueDepthIsPropagated() {
+            for (var reply : List.of(new WriteDocumentReply(DocumentProtocol.REPLY_PUTDOCUMENT),
+                                     new UpdateDocumentReply(),
+                                     new RemoveDocumentReply())) {
+                reply.setQueueDepth(17);
+                assertEquals(17, ((WriteDocumentReply)decode(encode(reply))).getQueueDepth());
+                reply.setQueueDepth(0);
+                assertEquals(0, ((WriteDocumentReply)decode(encode(reply))).getQueueDepth());
+            }
         }
     }
 
@@ -20,6 +20,7 @@ import com.yahoo.vespa.indexinglanguage.expressions.*;
 import com.yahoo.vespa.indexinglanguage.parser.ParseException;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -317,7 +318,8 @@ public class ScriptTestCase {
     /** Multiple paragraphs */
     @Test
     public void testArrayEmbedTo2dMixedTensor() throws ParseException {
-        Map<String, Embedder> embedders = Map.of("emb1", new MockIndexedEmbedder("myDocument.mySparseTensor"));
+        var embedder = new MockIndexedEmbedder("myDocument.mySparseTensor");
+        Map<String, Embedder> embedders = Map.of("emb1", embedder);
 
         TensorType tensorType = TensorType.fromSpec("tensor(passage{}, d[4])");
         var expression = Expression.fromString("input myTextArray | embed | attribute 'mySparseTensor'",
@@ -347,6 +349,7 @@ public class ScriptTestCase {
         var sparseTensor = (TensorFieldValue)adapter.values.get("mySparseTensor");
         assertEquals(Tensor.from(tensorType, "{ '0':[102, 105, 114, 115], '1':[115, 101,  99, 111]}"),
                      sparseTensor.getTensor().get());
+        assertEquals("The array is embedded in one batch", List.of(List.of("first", "second")), embedder.batches);
     }
 
     /** Multiple paragraphs, and each paragraph leading to multiple vectors (ColBert style) */
@@ -599,6 +602,9 @@ public class ScriptTestCase {
             this(expectedDestination, 0);
         }
 
+        /** The texts of each call to embed a list of texts */
+        final List<List<String>> batches = new ArrayList<>();
+
         public MockIndexedEmbedder(String expectedDestination, int addition) {
             super(expectedDestination, addition);
         }
@@ -612,6 +618,12 @@ public class ScriptTestCase {
             return b.build();
         }
 
+        @Override
+        public List<Tensor> embed(List<String> texts, Embedder.Context context, TensorType tensorType) {
+            batches.add(texts);
+            return super.embed(texts, context, tensorType);
+        }
+
     }
 
     /** An embedder which returns the char value of each letter in the input as a 1d mapped tensor. */
@@ -330,6 +330,7 @@ class Connection extends Target {
                 ByteBuffer wb = output.getWritable(info.packetLength());
                 owner.writePacket(info);
                 info.encodePacket(packet, wb);
+                packet.written();
             }
             ByteBuffer rb = output.getReadable();
             if (rb.remaining() == 0) {
@@ -28,7 +28,8 @@ class InvocationClient implements ReplyHandler, Runnable {
         if (!conn.postPacket(new RequestPacket(0,
                                                replyKey.intValue(),
                                                req.methodName(),
-                                               req.parameters()), this)) {
+                                               req.parameters(),
+                                               req.sentHandler()), this)) {
             req.setError(ErrorCode.CONNECTION, "Connection error");
             reqWaiter.handleRequestDone(req);
             return;
@@ -44,6 +44,9 @@ abstract class Packet
     public abstract int packetCode();
     public abstract void encode(ByteBuffer dst);
 
+    /** Called by the transport thread when this has been taken from the queue of its connection and encoded for writing */
+    public void written() {}
+
     public PacketInfo getPacketInfo() {
         return new PacketInfo(bytes(), flags, packetCode(), requestId);
     }
@@ -24,6 +24,7 @@ public class Request
     private String  errorMessage = null;
     private boolean detached     = false;
     private Object  context      = null;
+    private Runnable sentHandler = null;
 
     private InvocationServer serverHandler;
     private InvocationClient clientHandler;
@@ -86,6 +87,28 @@ public class Request
         return context;
     }
 
+    /**
+     * Set a handler which is run when this request is taken from the
+     * queue of its connection to be written to the network. This lets
+     * clients measure how long requests wait for their connection.
+     * The handler is run by the transport thread, so it must be fast
+     * and must not throw.
+     *
+     * @param handler the handler to run when this request is sent
+     **/
+    public void setSentHandler(Runnable handler) {
+        this.sentHandler = handler;
+    }
+
+    /**
+     * Obtain the handler to run when this request is sent.
+     *
+     * @return the sent handler, or null if none
+     **/
+    Runnable sentHandler() {
+        return sentHandler;
+    }
+
     /**
      * Obtain the method name
      *
@@ -9,6 +9,7 @@ class RequestPacket extends Packet
 {
     private StringValue methodName;
     private Values      parameters;
+    private Runnable    sentHandler = null;
 
     public RequestPacket(int flags, int reqId,
                          String methodName,
@@ -19,6 +20,15 @@ class RequestPacket extends Packet
         this.parameters = parameters;
     }
 
+    public RequestPacket(int flags, int reqId,
+                         String methodName,
+                         Values parameters,
+                         Runnable sentHandler)
+    {
+        this(flags, reqId, methodName, parameters);
+        this.sentHandler = sentHandler;
+    }
+
     public RequestPacket(int flags, int reqId,
                          ByteBuffer src)
     {
@@ -42,6 +52,13 @@ class RequestPacket extends Packet
         parameters.encode(dst);
     }
 
+    @Override
+    public void written() {
+        if (sentHandler != null) {
+            sentHandler.run();
+        }
+    }
+
     public String methodName() {
         return methodName.asString();
     }
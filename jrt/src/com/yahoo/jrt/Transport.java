@@ -33,6 +33,8 @@ public final class Transport {
     private final TransportMetrics metrics = TransportMetrics.getInstance();
     private final List<TransportThread> threads = new ArrayList<>();
     private final Random rnd = new Random();
+    private final AtomicInteger nextThread = new AtomicInteger();
+    private volatile boolean roundRobin = false;
 
     /**
      * Creates a new Transport object with the given fatal error
@@ -79,8 +81,21 @@ public final class Transport {
     // Only for testing
     public Transport() { this("default"); }
 
-    /** Selects and returns a random transport thread. */
+    /**
+     * Makes this assign new connections to transport threads in round-robin order rather than at random.
+     * This spreads a small number of long-lived connections evenly over the threads.
+     *
+     * @return this
+     */
+    public Transport withRoundRobinThreadSelection() {
+        roundRobin = true;
+        return this;
+    }
+
+    /** Selects and returns a random transport thread, or the next one in order if this is round-robin. */
     public TransportThread selectThread() {
+        if (roundRobin)
+            return threads.get(Math.floorMod(nextThread.getAndIncrement(), threads.size()));
         return threads.get(rnd.nextInt(threads.size()));
     }
 
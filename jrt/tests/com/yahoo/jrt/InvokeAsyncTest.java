@@ -6,6 +6,8 @@ import org.junit.After;
 import org.junit.Before;
 
 import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -87,4 +89,25 @@ public class InvokeAsyncTest {
         assertTrue(filter.invoked);
     }
 
+    @org.junit.Test
+    public void testSentHandlerIsRunBeforeReply() {
+        Request req = new Request("concat");
+        req.parameters().add(new StringValue("abc"));
+        req.parameters().add(new StringValue("def"));
+        CountDownLatch sent = new CountDownLatch(1);
+        req.setSentHandler(sent::countDown);
+        Test.Waiter w = new Test.Waiter();
+        target.invokeAsync(req, Duration.ofSeconds(10), w);
+        try {
+            assertTrue(sent.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        assertFalse(w.isDone());
+        barrier.breakIt();
+        w.waitDone();
+        assertFalse(req.isError());
+        assertEquals("abcdef", req.returnValues().get(0).asString());
+    }
+
 }
@@ -7,6 +7,7 @@ import com.yahoo.language.Language;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -68,6 +69,23 @@ public interface Embedder {
      */
     Tensor embed(String text, Context context, TensorType tensorType);
 
+    /**
+     * Converts a list of texts into tensors. Embedders which can embed multiple texts more efficiently
+     * than one at the time, such as by evaluating a model for all the texts at once, should override this.
+     *
+     * @param texts the texts to embed
+     * @param context the context which may influence an embedder's behavior
+     * @param tensorType the type of the tensors to be returned
+     * @return the tensor embedding of each text, in the same order as the texts
+     * @throws IllegalArgumentException if the language or tensor type is not supported by this embedder
+     */
+    default List<Tensor> embed(List<String> texts, Context context, TensorType tensorType) {
+        List<Tensor> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts)
+            embeddings.add(embed(text, context, tensorType));
+        return embeddings;
+    }
+
     /**
      * Runtime that is injectable through {@link Embedder} constructor.
      */
@@ -1,10 +1,9 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.messagebus;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.ArrayDeque;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -12,6 +11,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * linked message handlers. Each message that carries a sequencing id is queued in an internal list of messages for that
  * id, and messages are only sent when they are at the front of their list. When a reply arrives, the current front of
  * the list is removed and the next message, if any, is sent.
+ * <p>
+ * The state of each id is only changed while holding the lock of the bin of a concurrent map which holds it,
+ * so sends and replies for different ids rarely contend.
  *
  * @author Simon Thoresen Hult
  */
@@ -19,7 +21,9 @@ public class Sequencer implements MessageHandler, ReplyHandler {
 
     private final AtomicBoolean destroyed = new AtomicBoolean(false);
     private final MessageHandler sender;
-    private final Map<Long, Queue<Message>> seqMap = new HashMap<>();
+    /** The messages queued for each id with a message in flight, or the empty inFlight queue if there are none */
+    private final ConcurrentHashMap<Long, Queue<Message>> seqMap = new ConcurrentHashMap<>();
+    private static final Queue<Message> inFlight = new ArrayDeque<>(0);
     private final Messenger msn;
     private final static ThreadLocal<Boolean> isSending = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
@@ -44,15 +48,13 @@ public class Sequencer implements MessageHandler, ReplyHandler {
      */
     public boolean destroy() {
         if (!destroyed.getAndSet(true)) {
-            synchronized (this) {
-                for (Queue<Message> queue : seqMap.values()) {
-                    if (queue != null) {
-                        for (Message msg : queue) {
-                            msg.discard();
-                        }
+            for (Long seqId : seqMap.keySet()) {
+                seqMap.computeIfPresent(seqId, (id, queue) -> {
+                    for (Message msg : queue) {
+                        msg.discard();
                     }
-                }
-                seqMap.clear();
+                    return null;
+                });
             }
             return true;
         }
@@ -71,19 +73,17 @@ public class Sequencer implements MessageHandler, ReplyHandler {
     private boolean filter(Message msg) {
         long seqId = msg.getSequenceId();
         msg.setContext(seqId);
-        synchronized (this) {
-            if (seqMap.containsKey(seqId)) {
-                Queue<Message> queue = seqMap.computeIfAbsent(seqId, k -> new LinkedList<>());
-                if (msg.getTrace().shouldTrace(TraceLevel.COMPONENT)) {
-                    msg.getTrace().trace(TraceLevel.COMPONENT,
-                                         "Sequencer queued message with sequence id '" + seqId + "'.");
-                }
-                queue.add(msg);
-                return false;
+        if (seqMap.putIfAbsent(seqId, inFlight) == null) return true;
+        return seqMap.compute(seqId, (id, queue) -> {
+            if (queue == null) return inFlight;
+            if (queue == inFlight) queue = new ArrayDeque<>();
+            if (msg.getTrace().shouldTrace(TraceLevel.COMPONENT)) {
+                msg.getTrace().trace(TraceLevel.COMPONENT,
+                                     "Sequencer queued message with sequence id '" + seqId + "'.");
             }
-            seqMap.put(seqId, null);
-        }
-        return true;
+            queue.add(msg);
+            return queue;
+        }) == inFlight;
     }
 
     /**
@@ -152,15 +152,14 @@ public class Sequencer implements MessageHandler, ReplyHandler {
     }
 
     private void sendNextInSequence(long seqId) {
-        Message msg = null;
-        synchronized (this) {
-            Queue<Message> queue = seqMap.get(seqId);
-            if (queue == null || queue.isEmpty()) {
-                seqMap.remove(seqId);
-            } else {
-                msg = queue.remove();
-            }
-        }
+        if (seqMap.remove(seqId, inFlight)) return;
+        Message[] next = new Message[1];
+        seqMap.computeIfPresent(seqId, (id, queue) -> {
+            if (queue.isEmpty()) return null;
+            next[0] = queue.remove();
+            return queue;
+        });
+        Message msg = next[0];
         if (msg != null) {
             Boolean alreadySending = isSending.get();
             if (alreadySending && (msn != null)) {
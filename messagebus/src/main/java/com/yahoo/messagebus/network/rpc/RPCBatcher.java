@@ -0,0 +1,122 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import com.yahoo.concurrent.ThreadFactoryFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects items to the same key, e.g., messages to the same target, into batches. A batch is passed to the sender
+ * when the size of its items reaches a maximum, or when its first item has waited for the batch window.
+ * Batches which are full are sent by the thread adding the last item, while those which time out are
+ * sent by the given executor.
+ *
+ * @author agent
+ */
+final class RPCBatcher<K, T> {
+
+    private final Map<K, Batch<T>> pending = new ConcurrentHashMap<>();
+    private final long windowNanos;
+    private final int maxBytes;
+    private final Executor executor;
+    private final BiConsumer<K, List<T>> sender;
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(ThreadFactoryFactory.getDaemonThreadFactory("mbus.batch"));
+
+    /**
+     * Creates a new batcher.
+     *
+     * @param window   the maximum time the first item in a batch waits for more items
+     * @param maxBytes the item size at which a batch is sent without waiting for the window to end
+     * @param executor the executor which sends batches which time out
+     * @param sender   receives each batch, with the key its items were added to
+     */
+    RPCBatcher(Duration window, int maxBytes, Executor executor, BiConsumer<K, List<T>> sender) {
+        this.windowNanos = window.toNanos();
+        this.maxBytes = maxBytes;
+        this.executor = executor;
+        this.sender = sender;
+    }
+
+    /** Adds an item of the given size to the current batch of the given key, and sends it if it becomes full */
+    void add(K key, T item, int bytes) {
+        List<Batch<T>> full = new ArrayList<>(1);
+        pending.compute(key, (k, batch) -> {
+            if (batch == null) {
+                batch = new Batch<>();
+                schedule(key, batch);
+            }
+            batch.add(item, bytes);
+            if (batch.bytes < maxBytes && batch.timeout != null) return batch;
+
+            full.add(batch);
+            return null;
+        });
+        for (Batch<T> batch : full) {
+            if (batch.timeout != null) batch.timeout.cancel(false);
+            sender.accept(key, batch.items);
+        }
+    }
+
+    /** Sends all pending batches */
+    void flush() {
+        for (K key : pending.keySet()) {
+            Batch<T> batch = pending.remove(key);
+            if (batch != null) sender.accept(key, batch.items);
+        }
+    }
+
+    /** Stops the timer and sends all pending batches. Items added after this are sent immediately. */
+    void destroy() {
+        timer.shutdownNow();
+        flush();
+    }
+
+    /** Returns the number of keys with a pending batch */
+    int pendingBatches() { return pending.size(); }
+
+    private void schedule(K key, Batch<T> batch) {
+        try {
+            batch.timeout = timer.schedule(() -> timeout(key, batch), windowNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // Destroyed: Leave the timeout unset so the batch is sent immediately
+        }
+    }
+
+    private void timeout(K key, Batch<T> batch) {
+        try {
+            executor.execute(() -> {
+                if (pending.remove(key, batch)) sender.accept(key, batch.items);
+            });
+        }
+        catch (RejectedExecutionException e) {
+            // Shutting down, and the batch is sent by destroy
+        }
+    }
+
+    private static class Batch<T> {
+
+        final List<T> items = new ArrayList<>();
+        int bytes = 0;
+        ScheduledFuture<?> timeout = null;
+
+        void add(T item, int bytes) {
+            items.add(item);
+            this.bytes += bytes;
+        }
+
+    }
+
+}
@@ -69,6 +69,8 @@ public class RPCNetwork implements Network, MethodHandler {
     private volatile NetworkOwner owner;
     private Version version = REPORTED_VERSION;
     private final SlobrokConfigSubscriber slobroksConfig;
+    private final Duration batchWindow;
+    private final int maxBatchBytes;
     private final LinkedHashMap<String, Route> lruRouteMap = new LinkedHashMap<>(10000, 0.5f, true);
     private final ExecutorService executor =
             new ThreadPoolExecutor(getNumThreads(), getNumThreads(), 0L, TimeUnit.SECONDS,
@@ -94,6 +96,8 @@ public class RPCNetwork implements Network, MethodHandler {
     private RPCNetwork(RPCNetworkParams params, SlobrokConfigSubscriber slobrokConfig) {
         this.slobroksConfig = slobrokConfig;
         identity = params.getIdentity();
+        batchWindow = params.getBatchWindow();
+        maxBatchBytes = params.getMaxBatchBytes();
         orb = new Supervisor(new Transport("mbus-rpc-" + identity.getServicePrefix(), params.getNumNetworkThreads(),
                 shouldEnableTcpNodelay(params.getOptimization()), params.getTransportEventsBeforeWakeup()));
         orb.setMaxInputBufferSize(params.getMaxInputBufferSize());
@@ -287,6 +291,11 @@ public class RPCNetwork implements Network, MethodHandler {
      */
     public boolean destroy() {
         if (!destroyed.getAndSet(true)) {
+            for (RPCSendAdapter adapter : sendAdapters.values()) {
+                if (adapter instanceof RPCSend send) {
+                    send.destroy();
+                }
+            }
             if (slobroksConfig != null) {
                 slobroksConfig.shutdown();
             }
@@ -401,6 +410,16 @@ public class RPCNetwork implements Network, MethodHandler {
         return executor;
     }
 
+    /** Returns the time a message may wait to be sent in a batch with others to the same target, or zero to not batch */
+    Duration getBatchWindow() {
+        return batchWindow;
+    }
+
+    /** Returns the payload size at which a batch is sent before the batch window ends */
+    int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
     private class SendTask implements Runnable {
 
         final Protocol protocol;
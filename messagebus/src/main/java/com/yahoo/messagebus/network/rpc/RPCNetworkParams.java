@@ -4,6 +4,8 @@ package com.yahoo.messagebus.network.rpc;
 import com.yahoo.messagebus.network.Identity;
 import com.yahoo.cloud.config.SlobroksConfig;
 
+import java.time.Duration;
+
 /**
  * To facilitate several configuration parameters to the {@link RPCNetwork} constructor, all parameters are held by this
  * class. This class has reasonable default values for each parameter.
@@ -23,6 +25,8 @@ public class RPCNetworkParams {
     private int numNetworkThreads = 2;
 
     private int transportEventsBeforeWakeup = 1;
+    private Duration batchWindow = Duration.ZERO;
+    private int maxBatchBytes = 64 * 1024;
     public enum Optimization {LATENCY, THROUGHPUT}
     Optimization optimization = Optimization.LATENCY;
 
@@ -49,6 +53,8 @@ public class RPCNetworkParams {
         numTargetsPerSpec = params.numTargetsPerSpec;
         numNetworkThreads = params.numNetworkThreads;
         optimization = params.optimization;
+        batchWindow = params.batchWindow;
+        maxBatchBytes = params.maxBatchBytes;
     }
 
     /**
@@ -227,4 +233,51 @@ public class RPCNetworkParams {
         this.transportEventsBeforeWakeup = transportEventsBeforeWakeup;
         return this;
     }
+
+    /**
+     * Returns the time a message may wait to be batched with other messages to the same target,
+     * where zero means messages are not batched.
+     *
+     * @return The batch window.
+     */
+    Duration getBatchWindow() {
+        return batchWindow;
+    }
+
+    /**
+     * Sets the time a message may wait to be batched with other messages to the same target, so they
+     * are sent in a single RPC request. This cuts the per message overhead when sending many small messages,
+     * at the cost of added latency. The default is zero, which means messages are not batched.
+     * Only Java nodes receive batches: Messages to C++ nodes, such as content node distributors, are sent one by one.
+     *
+     * @param batchWindow The batch window.
+     * @return This, to allow chaining.
+     */
+    public RPCNetworkParams setBatchWindow(Duration batchWindow) {
+        if (batchWindow.isNegative())
+            throw new IllegalArgumentException("The batch window cannot be negative, but was " + batchWindow);
+        this.batchWindow = batchWindow;
+        return this;
+    }
+
+    /**
+     * Returns the payload size at which a batch of messages is sent without waiting for the batch window to end.
+     *
+     * @return The maximum number of bytes.
+     */
+    int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the payload size at which a batch of messages is sent without waiting for the batch window to end.
+     *
+     * @param maxBatchBytes The maximum number of bytes.
+     * @return This, to allow chaining.
+     */
+    public RPCNetworkParams setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
 }
@@ -2,11 +2,13 @@
 package com.yahoo.messagebus.network.rpc;
 
 import com.yahoo.component.Version;
+import com.yahoo.concurrent.ThreadFactoryFactory;
 
 import com.yahoo.jrt.Method;
 import com.yahoo.jrt.MethodHandler;
 import com.yahoo.jrt.Request;
 import com.yahoo.jrt.RequestWaiter;
+import com.yahoo.jrt.Target;
 import com.yahoo.jrt.Values;
 import com.yahoo.messagebus.EmptyReply;
 import com.yahoo.messagebus.Error;
@@ -23,8 +25,27 @@ import com.yahoo.messagebus.routing.Route;
 import com.yahoo.messagebus.routing.RoutingNode;
 import com.yahoo.text.Utf8Array;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
 /**
  * Implements the request adapter for method "mbus.send1/mbus.slime".
+ * If the network has a batch window, messages to the same target are sent in batches, using the batch method
+ * of the subclass, to targets which are found to have that method, by a probe sent before the first batch to it.
+ * Until the probe has answered, messages are sent one by one. A target acknowledges a batch when it has received
+ * it, and returns the reply to each message in it as soon as that is ready, by invoking the batch reply method on this.
+ * Each batched message times out on its own, after what is left of its own timeout when the batch is sent.
+ * Only Java networks have the batch methods, so messages to C++ nodes are always sent one by one.
  *
  * @author baldersheim
  */
@@ -33,6 +54,10 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
     private final RPCNetwork net;
     private final String clientIdent;
     private final String serverIdent;
+    private final RPCBatcher<RPCTarget, BatchedMessage> batcher; // null if batching is disabled
+    private final ScheduledExecutorService batchTimeouts; // null if batching is disabled
+    private final AtomicLong nextBatchedId = new AtomicLong();
+    private final Map<Long, BatchedMessage> awaitingBatchedReply = new ConcurrentHashMap<>();
 
     protected abstract Method buildMethod();
     protected abstract String getReturnSpec();
@@ -42,6 +67,15 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
     protected abstract Params toParams(Values req);
     protected abstract void createResponse(Values ret, Reply reply, Version version, byte [] payload);
 
+    protected abstract String getBatchMethodName();
+    protected abstract Method buildBatchMethod(MethodHandler handler);
+    protected abstract Method buildBatchReplyMethod(MethodHandler handler);
+    protected abstract Request encodeBatchRequest(List<BatchedMessage> messages);
+    protected abstract List<Params> toBatchParams(Values req);
+    protected abstract void createBatchResponse(Values ret);
+    protected abstract Request encodeBatchReply(long id, Reply reply, Version version, byte[] payload);
+    protected abstract List<BatchedReply> createBatchReplies(Values args, LongFunction<BatchedMessage> awaiting);
+
     protected RPCSend(RPCNetwork net) {
         this.net = net;
         String prefix = net.getIdentity().getServicePrefix();
@@ -53,6 +87,29 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
             this.serverIdent = "server";
         }
         net.getSupervisor().addMethod(buildMethod());
+        net.getSupervisor().addMethod(buildBatchMethod(this::invokeBatch));
+        net.getSupervisor().addMethod(buildBatchReplyMethod(this::receiveBatchReplies));
+        this.batcher = net.getBatchWindow().isZero() ? null
+                                                    : new RPCBatcher<>(net.getBatchWindow(), net.getMaxBatchBytes(),
+                                                                       net.getExecutor(), this::sendBatch);
+        this.batchTimeouts = batcher == null ? null
+                                             : Executors.newSingleThreadScheduledExecutor(ThreadFactoryFactory.getDaemonThreadFactory("mbus.batch.timeout"));
+    }
+
+    /**
+     * Sends any pending batches, and sends messages without batching from now on.
+     * Batched messages which are still waiting for a reply are failed, as the network is shutting down.
+     */
+    final void destroy() {
+        if (batcher == null) return;
+        batcher.destroy();
+        batchTimeouts.shutdownNow();
+        for (BatchedMessage message : awaitingBatchedReply.values()) {
+            if (claim(message))
+                deliverReply(message.ctx, new EmptyReply(),
+                             new Error(ErrorCode.NETWORK_SHUTDOWN, "Network shut down while waiting for a reply from '" +
+                                                                   message.ctx.serviceName() + "'."));
+        }
     }
 
     @Override
@@ -63,8 +120,6 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
         Route route = new Route(recipient.getRoute());
         Hop hop = route.removeHop(0);
 
-        Request req = encodeRequest(version, route, address,msg, timeRemaining, payload, ctx.trace.getLevel());
-
         if (ctx.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
             ctx.trace.trace(TraceLevel.SEND_RECEIVE,
                     "Sending message (version " + version + ") from " + clientIdent + " to '" +
@@ -72,7 +127,9 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
         }
 
         if (hop.getIgnoreResult()) {
+            Request req = encodeRequest(version, route, address, msg, timeRemaining, payload, ctx.trace.getLevel());
             address.getTarget().getJRTTarget().invokeVoid(req);
+            req.discardParameters(); // allow garbage collection of request parameters
             if (ctx.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
                 ctx.trace.trace(TraceLevel.SEND_RECEIVE,
                         "Not waiting for a reply from '" + address.getServiceName() + "'.");
@@ -80,13 +137,96 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
             Reply reply = new EmptyReply();
             reply.getTrace().swap(ctx.trace);
             recipient.handleReply(reply);
+        } else if (batcher != null && supportsBatches(address.getTarget(), timeRemaining)) {
+            batcher.add(address.getTarget(),
+                        new BatchedMessage(nextBatchedId.incrementAndGet(), ctx, version, route, address, msg, payload),
+                        payload.length);
         } else {
-            req.setContext(ctx);
-            address.getTarget().getJRTTarget().invokeAsync(req, ctx.timeout, this);
+            send(new BatchedMessage(0, ctx, version, route, address, msg, payload));
         }
+    }
+
+    /** Returns whether the given target is known to support batches, and asks it if this is not yet known */
+    private boolean supportsBatches(RPCTarget target, long timeRemaining) {
+        target.probeBatchSupport(getBatchMethodName(), Duration.ofMillis(timeRemaining));
+        return target.supportsBatches();
+    }
+
+    /** Sends the given message in a request of its own, with what is left of its timeout */
+    private void send(BatchedMessage message) {
+        if ( ! startTimeout(message)) return;
+        Request req = encodeRequest(message.version, message.route, message.address, message.msg,
+                                    message.timeRemaining, message.payload, message.ctx.trace.getLevel());
+        req.setContext(message.ctx);
+        message.address.getTarget().getJRTTarget().invokeAsync(req, message.timeRemaining * 0.001, this);
         req.discardParameters(); // allow garbage collection of request parameters
     }
 
+    /**
+     * Sends the given messages to the given target in a single request, which is done when the target has received them.
+     * Each message then waits for its reply, or its timeout, on its own.
+     */
+    private void sendBatch(RPCTarget target, List<BatchedMessage> messages) {
+        if (messages.size() == 1 || ! target.supportsBatches()) {
+            messages.forEach(this::send);
+            return;
+        }
+        List<BatchedMessage> sending = new ArrayList<>(messages.size());
+        long timeRemaining = Long.MAX_VALUE;
+        for (BatchedMessage message : messages) {
+            if ( ! startTimeout(message)) continue;
+            awaitingBatchedReply.put(message.id, message);
+            message.timeout = scheduleTimeout(message);
+            timeRemaining = Math.min(timeRemaining, message.timeRemaining);
+            sending.add(message);
+        }
+        if (sending.isEmpty()) return;
+
+        Request req = encodeBatchRequest(sending);
+        req.setContext(sending);
+        target.getJRTTarget().invokeAsync(req, timeRemaining * 0.001, this);
+        req.discardParameters(); // allow garbage collection of request parameters
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(BatchedMessage message) {
+        try {
+            return batchTimeouts.schedule(() -> net.getExecutor().execute(() -> timeOut(message)),
+                                          message.timeRemaining, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            return null; // Destroyed, which fails the message
+        }
+    }
+
+    /**
+     * Subtracts the time the given message has waited to be sent, e.g., in a batch, from its time remaining,
+     * and returns true if there is time left, or replies to it with a timeout error and returns false if not.
+     */
+    private boolean startTimeout(BatchedMessage message) {
+        message.timeRemaining = message.ctx.timeRemaining - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - message.createdNanos);
+        if (message.timeRemaining > 0) return true;
+        deliverTimeout(message);
+        return false;
+    }
+
+    private void timeOut(BatchedMessage message) {
+        if (claim(message)) deliverTimeout(message);
+    }
+
+    private void deliverTimeout(BatchedMessage message) {
+        deliverReply(message.ctx, new EmptyReply(),
+                     new Error(ErrorCode.TIMEOUT, "A timeout occurred while waiting for '" + message.ctx.serviceName() +
+                                                  "' (" + message.ctx.timeout + " seconds expired)."));
+    }
+
+    /** Stops waiting for a reply to the given batched message, and returns whether this was still waiting for it */
+    private boolean claim(BatchedMessage message) {
+        if ( ! awaitingBatchedReply.remove(message.id, message)) return false;
+        ScheduledFuture<?> timeout = message.timeout;
+        if (timeout != null) timeout.cancel(false);
+        return true;
+    }
+
     protected final Object decode(Utf8Array protocolName, Version version, byte [] payload) {
         Protocol protocol = net.getOwner().getProtocol(protocolName);
         if (protocol != null) {
@@ -109,30 +249,69 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public final void handleRequestDone(Request req) {
-        net.getExecutor().execute(() -> doRequestDone(req));
+        if (req.getContext() instanceof List<?> messages)
+            net.getExecutor().execute(() -> doBatchRequestDone(req, (List<BatchedMessage>) messages));
+        else
+            net.getExecutor().execute(() -> doRequestDone(req));
     }
 
     private void doRequestDone(Request req) {
         SendContext ctx = (SendContext)req.getContext();
-        String serviceName = ((RPCServiceAddress)ctx.recipient.getServiceAddress()).getServiceName();
-        Reply reply;
-        Error error = null;
         if (!req.checkReturnTypes(getReturnSpec())) {
-            // Map all known JRT errors to the appropriate message bus error.
-            reply = new EmptyReply();
-            error = switch (req.errorCode()) {
-                case com.yahoo.jrt.ErrorCode.TIMEOUT -> new Error(ErrorCode.TIMEOUT,
-                        "A timeout occurred while waiting for '" + serviceName + "' (" +
-                                ctx.timeout + " seconds expired); " + req.errorMessage());
-                case com.yahoo.jrt.ErrorCode.CONNECTION -> new Error(ErrorCode.CONNECTION_ERROR,
-                        "A connection error occurred for '" + serviceName + "'; " + req.errorMessage());
-                default -> new Error(ErrorCode.NETWORK_ERROR,
-                        "A network error occurred for '" + serviceName + "'; " + req.errorMessage());
-            };
+            deliverReply(ctx, new EmptyReply(), toError(req, ctx));
         } else {
-            reply = createReply(req.returnValues(), serviceName, ctx.trace);
+            deliverReply(ctx, createReply(req.returnValues(), ctx.serviceName(), ctx.trace), null);
         }
+    }
+
+    private void doBatchRequestDone(Request req, List<BatchedMessage> messages) {
+        if (req.checkReturnTypes(getReturnSpec())) return; // Received: Each message is replied to separately
+
+        switch (req.errorCode()) {
+            case com.yahoo.jrt.ErrorCode.NO_SUCH_METHOD -> { // The target no longer has the method, e.g., after a downgrade
+                messages.get(0).address.getTarget().setSupportsBatches(false);
+                for (BatchedMessage message : messages)
+                    if (claim(message)) send(message);
+            }
+            case com.yahoo.jrt.ErrorCode.TIMEOUT -> { } // Each message times out after its own timeout
+            default -> {
+                for (BatchedMessage message : messages)
+                    if (claim(message)) deliverReply(message.ctx, new EmptyReply(), toError(req, message.ctx));
+            }
+        }
+    }
+
+    /** Receives replies to messages sent in batches by this, and delivers those not yet timed out */
+    private void receiveBatchReplies(Request request) {
+        request.detach();
+        net.getExecutor().execute(() -> {
+            LongFunction<BatchedMessage> awaiting = id -> {
+                BatchedMessage message = awaitingBatchedReply.get(id);
+                return message != null && claim(message) ? message : null;
+            };
+            for (BatchedReply reply : createBatchReplies(request.parameters(), awaiting))
+                deliverReply(reply.message().ctx, reply.reply(), null);
+            request.returnRequest();
+        });
+    }
+
+    /** Maps all known JRT errors to the appropriate message bus error */
+    private static Error toError(Request req, SendContext ctx) {
+        String serviceName = ctx.serviceName();
+        return switch (req.errorCode()) {
+            case com.yahoo.jrt.ErrorCode.TIMEOUT -> new Error(ErrorCode.TIMEOUT,
+                    "A timeout occurred while waiting for '" + serviceName + "' (" +
+                            ctx.timeout + " seconds expired); " + req.errorMessage());
+            case com.yahoo.jrt.ErrorCode.CONNECTION -> new Error(ErrorCode.CONNECTION_ERROR,
+                    "A connection error occurred for '" + serviceName + "'; " + req.errorMessage());
+            default -> new Error(ErrorCode.NETWORK_ERROR,
+                    "A network error occurred for '" + serviceName + "'; " + req.errorMessage());
+        };
+    }
+
+    private void deliverReply(SendContext ctx, Reply reply, Error error) {
         if (ctx.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
             ctx.trace.trace(TraceLevel.SEND_RECEIVE,
                     "Reply (type " + reply.getType() + ") received at " + clientIdent + ".");
@@ -154,8 +333,41 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
         Utf8Array protocolName;
         byte [] payload;
         int traceLevel;
+        long id; // The id of a message received in a batch
     }
 
+    /** A message to send, possibly in a batch with others */
+    protected static final class BatchedMessage {
+        final long id; // Identifies the message among those sent in batches by this
+        final SendContext ctx;
+        final Version version;
+        final Route route;
+        final RPCServiceAddress address;
+        final Message msg;
+        final byte [] payload;
+        final long createdNanos = System.nanoTime();
+        long timeRemaining; // The time left of the timeout of this when it was sent, in milliseconds
+        volatile ScheduledFuture<?> timeout = null;
+
+        BatchedMessage(long id, SendContext ctx, Version version, Route route, RPCServiceAddress address, Message msg, byte[] payload) {
+            this.id = id;
+            this.ctx = ctx;
+            this.version = version;
+            this.route = route;
+            this.address = address;
+            this.msg = msg;
+            this.payload = payload;
+            this.timeRemaining = ctx.timeRemaining;
+        }
+
+        int traceLevel() { return ctx.trace.getLevel(); }
+        Trace trace() { return ctx.trace; }
+        String serviceName() { return ctx.serviceName(); }
+    }
+
+    /** A reply to a message sent in a batch */
+    protected record BatchedReply(BatchedMessage message, Reply reply) { }
+
     @Override
     public final void invoke(Request request) {
         request.detach();
@@ -167,23 +379,49 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
 
         request.discardParameters(); // allow garbage collection of request parameters
 
+        deliverMessage(p, (reply, version, payload) -> {
+            createResponse(request.returnValues(), reply, version, payload);
+            request.returnRequest();
+        });
+    }
+
+    private void invokeBatch(Request request) {
+        request.detach();
+        Target client = request.target();
+        net.getExecutor().execute(() -> doInvokeBatch(request, client));
+    }
+
+    /** Acknowledges the batch in the given request, and returns the reply to each message as soon as it is ready */
+    private void doInvokeBatch(Request request, Target client) {
+        List<Params> messages = toBatchParams(request.parameters());
+
+        request.discardParameters(); // allow garbage collection of request parameters
+        createBatchResponse(request.returnValues());
+        request.returnRequest();
+
+        for (Params p : messages)
+            deliverMessage(p, (reply, version, payload) -> client.invokeVoid(encodeBatchReply(p.id, reply, version, payload)));
+    }
+
+    /** Decodes the message in the given parameters and delivers it to the owner, with a receiver of its reply */
+    private void deliverMessage(Params p, ReplyReceiver receiver) {
         // Make sure that the owner understands the protocol.
         Protocol protocol = net.getOwner().getProtocol(p.protocolName);
         if (protocol == null) {
-            replyError(request, p.version, protocol, p.traceLevel,
+            replyError(receiver, p.version, protocol, p.traceLevel,
                     new Error(ErrorCode.UNKNOWN_PROTOCOL,
                             "Protocol '" + p.protocolName + "' is not known by " + serverIdent + "."));
             return;
         }
         Routable routable = protocol.decode(p.version, p.payload);
         if (routable == null) {
-            replyError(request, p.version, protocol, p.traceLevel,
+            replyError(receiver, p.version, protocol, p.traceLevel,
                     new Error(ErrorCode.DECODE_ERROR,
                             "Protocol '" + protocol.getName() + "' failed to decode routable."));
             return;
         }
         if (routable instanceof Reply) {
-            replyError(request, p.version, protocol, p.traceLevel,
+            replyError(receiver, p.version, protocol, p.traceLevel,
                     new Error(ErrorCode.DECODE_ERROR,
                             "Payload decoded to a reply when expecting a message."));
             return;
@@ -192,7 +430,7 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
         if (p.route != null && !p.route.isEmpty()) {
             msg.setRoute(net.getRoute(p.route));
         }
-        msg.setContext(new ReplyContext(request, p.version, protocol));
+        msg.setContext(new ReplyContext(receiver, p.version, protocol));
         msg.pushHandler(this);
         msg.setRetryEnabled(p.retryEnabled);
         msg.setRetry(p.retry);
@@ -228,22 +466,21 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
                         "An error occurred while encoding the reply."));
             }
         }
-        createResponse(ctx.request.returnValues(), reply, ctx.version, payload);
-        ctx.request.returnRequest();
+        ctx.receiver.receive(reply, ctx.version, payload);
     }
 
     /**
      * Send an error reply for a given request.
      *
-     * @param request    The JRT request to reply to.
+     * @param receiver   The receiver of the reply.
      * @param version    The version to serialize for.
      * @param traceLevel The trace level to set in the reply.
      * @param protocol   The message protocol to serialize with.
      * @param err        The error to reply with.
      */
-    private void replyError(Request request, Version version, Protocol protocol, int traceLevel, Error err) {
+    private void replyError(ReplyReceiver receiver, Version version, Protocol protocol, int traceLevel, Error err) {
         Reply reply = new EmptyReply();
-        reply.setContext(new ReplyContext(request, version, protocol));
+        reply.setContext(new ReplyContext(receiver, version, protocol));
         reply.getTrace().setLevel(traceLevel);
         reply.addError(err);
         handleReply(reply);
@@ -253,14 +490,25 @@ public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWai
 
         final RoutingNode recipient;
         final Trace trace;
+        final long timeRemaining;
         final double timeout;
 
         SendContext(RoutingNode recipient, long timeRemaining) {
             this.recipient = recipient;
             trace = new Trace(recipient.getTrace().getLevel());
+            this.timeRemaining = timeRemaining;
             timeout = timeRemaining * 0.001;
         }
+
+        String serviceName() {
+            return ((RPCServiceAddress)recipient.getServiceAddress()).getServiceName();
+        }
+    }
+
+    /** Receives the encoded reply to a message received by this, and returns it in the request the message came in */
+    private interface ReplyReceiver {
+        void receive(Reply reply, Version version, byte [] payload);
     }
 
-    private record ReplyContext(Request request, Version version, Protocol protocol) { }
+    private record ReplyContext(ReplyReceiver receiver, Version version, Protocol protocol) { }
 }
@@ -8,6 +8,7 @@ import com.yahoo.jrt.DataValue;
 import com.yahoo.jrt.Int32Value;
 import com.yahoo.jrt.Int8Value;
 import com.yahoo.jrt.Method;
+import com.yahoo.jrt.MethodHandler;
 import com.yahoo.jrt.Request;
 import com.yahoo.jrt.Values;
 import com.yahoo.messagebus.EmptyReply;
@@ -24,8 +25,15 @@ import com.yahoo.slime.Inspector;
 import com.yahoo.slime.Slime;
 import com.yahoo.text.Utf8Array;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
 /**
- * Implements the request adapter for method "mbus.slime".
+ * Implements the request adapter for method "mbus.slime", and "mbus.slime.batch", which sends multiple messages
+ * to the same target in one request. The target acknowledges the batch when received, and returns the reply to
+ * each message as soon as it is ready, by invoking "mbus.slime.batch.reply" over the same connection.
+ * The C++ implementation only has "mbus.slime", so only messages between Java nodes are batched.
  *
  * @author baldersheim
  */
@@ -34,6 +42,8 @@ public class RPCSendV2 extends RPCSend {
     private final static String METHOD_NAME = "mbus.slime";
     private final static String METHOD_PARAMS = "bixbix";
     private final static String METHOD_RETURN = "bixbix";
+    private final static String BATCH_METHOD_NAME = "mbus.slime.batch";
+    private final static String BATCH_REPLY_METHOD_NAME = "mbus.slime.batch.reply";
     private final Compressor compressor = new Compressor(CompressionType.LZ4, 3, 0.90, 1024);
 
     protected RPCSendV2(RPCNetwork net) { super(net); }
@@ -41,6 +51,9 @@ public class RPCSendV2 extends RPCSend {
     @Override
     protected String getReturnSpec() { return METHOD_RETURN; }
 
+    @Override
+    protected String getBatchMethodName() { return BATCH_METHOD_NAME; }
+
     @Override
     protected Method buildMethod() {
 
@@ -61,6 +74,42 @@ public class RPCSendV2 extends RPCSend {
                 .returnDesc(5, "body_payload", "Slime encoded body payload.");
         return method;
     }
+
+    @Override
+    protected Method buildBatchMethod(MethodHandler handler) {
+        Method method = new Method(BATCH_METHOD_NAME, METHOD_PARAMS, METHOD_RETURN, handler)
+                .requireCapabilities(Capability.CONTAINER__DOCUMENT_API);
+        method.methodDesc("Send a batch of message bus requests, whose replies are returned by invoking " +
+                          BATCH_REPLY_METHOD_NAME + " over the same connection.");
+        method.paramDesc(0, "header_encoding", "Encoding type of header.")
+                .paramDesc(1, "header_decodedSize", "Number of bytes after header decoding.")
+                .paramDesc(2, "header_payload", "Slime encoded header payload.")
+                .paramDesc(3, "body_encoding", "Encoding type of body.")
+                .paramDesc(4, "body_decoded_ize", "Number of bytes after body decoding.")
+                .paramDesc(5, "body_payload", "Slime encoded body payload, with an array of messages with ids.");
+        method.returnDesc(0, "header_encoding", "Encoding type of header.")
+                .returnDesc(1, "header_decoded_size", "Number of bytes after header decoding.")
+                .returnDesc(2, "header_payload", "Slime encoded header payload.")
+                .returnDesc(3, "body_encoding", "Encoding type of body.")
+                .returnDesc(4, "body_encoded_size", "Number of bytes after body decoding.")
+                .returnDesc(5, "body_payload", "Slime encoded empty body payload.");
+        return method;
+    }
+
+    @Override
+    protected Method buildBatchReplyMethod(MethodHandler handler) {
+        Method method = new Method(BATCH_REPLY_METHOD_NAME, METHOD_PARAMS, "", handler)
+                .requireCapabilities(Capability.CONTAINER__DOCUMENT_API);
+        method.methodDesc("Receive replies to message bus requests sent by " + BATCH_METHOD_NAME + ".");
+        method.paramDesc(0, "header_encoding", "Encoding type of header.")
+                .paramDesc(1, "header_decodedSize", "Number of bytes after header decoding.")
+                .paramDesc(2, "header_payload", "Slime encoded header payload.")
+                .paramDesc(3, "body_encoding", "Encoding type of body.")
+                .paramDesc(4, "body_decoded_ize", "Number of bytes after body decoding.")
+                .paramDesc(5, "body_payload", "Slime encoded body payload, with an array of replies with the ids of their messages.");
+        return method;
+    }
+
     private static final String VERSION_F = "version";
     private static final String ROUTE_F = "route";
     private static final String SESSION_F = "session";
@@ -76,48 +125,97 @@ public class RPCSendV2 extends RPCSend {
     private static final String CODE_F = "code";
     private static final String BLOB_F = "msg";
     private static final String MSG_F = "msg";
+    private static final String MESSAGES_F = "messages";
+    private static final String REPLIES_F = "replies";
+    private static final String ID_F = "id";
 
     @Override
     protected Request encodeRequest(Version version, Route route, RPCServiceAddress address, Message msg,
                                     long timeRemaining, byte[] payload, int traceLevel)
     {
 
-        Request req = new Request(METHOD_NAME);
+        Slime slime = new Slime();
+        encodeMessage(slime.setObject(), version, route, address, msg, timeRemaining, payload, traceLevel);
+        return createRequest(METHOD_NAME, slime);
+    }
+
+    @Override
+    protected Request encodeBatchRequest(List<BatchedMessage> messages) {
+        Slime slime = new Slime();
+        Cursor array = slime.setObject().setArray(MESSAGES_F);
+        for (BatchedMessage message : messages) {
+            Cursor entry = array.addObject();
+            entry.setLong(ID_F, message.id);
+            encodeMessage(entry, message.version, message.route, message.address, message.msg,
+                          message.timeRemaining, message.payload, message.traceLevel());
+        }
+        return createRequest(BATCH_METHOD_NAME, slime);
+    }
+
+    @Override
+    protected Request encodeBatchReply(long id, Reply reply, Version version, byte[] payload) {
+        Slime slime = new Slime();
+        Cursor entry = slime.setObject().setArray(REPLIES_F).addObject();
+        entry.setLong(ID_F, id);
+        encodeReply(entry, reply, version, payload);
+        return createRequest(BATCH_REPLY_METHOD_NAME, slime);
+    }
+
+    private Request createRequest(String methodName, Slime slime) {
+        Request req = new Request(methodName);
         Values v = req.parameters();
 
         v.add(new Int8Value(CompressionType.NONE.getCode()));
         v.add(new Int32Value(0));
         v.add(new DataValue(new byte[0]));
 
-        Slime slime = new Slime();
-        Cursor root = slime.setObject();
+        Compressor.Compression compressionResult = BinaryFormat.encode_and_compress(slime, compressor);
+
+        v.add(new Int8Value(compressionResult.type().getCode()));
+        v.add(new Int32Value(compressionResult.uncompressedSize()));
+        v.add(new DataValue(compressionResult.data()));
 
+        return req;
+    }
+
+    private static void encodeMessage(Cursor root, Version version, Route route, RPCServiceAddress address, Message msg,
+                                      long timeRemaining, byte[] payload, int traceLevel) {
         root.setString(VERSION_F, version.toUtf8().getBytes());
         root.setString(ROUTE_F, route.toString());
         root.setString(SESSION_F, address.getSessionName());
         root.setString(PROTOCOL_F, msg.getProtocol().toString());
         root.setBool(USERETRY_F, msg.getRetryEnabled());
         root.setLong(RETRY_F, msg.getRetry());
-        root.setLong(TIMEREMAINING_F, msg.getTimeRemaining());
+        root.setLong(TIMEREMAINING_F, timeRemaining);
         root.setLong(TRACELEVEL_F, traceLevel);
         root.setData(BLOB_F, payload);
+    }
 
-        Compressor.Compression compressionResult = BinaryFormat.encode_and_compress(slime, compressor);
-
-        v.add(new Int8Value(compressionResult.type().getCode()));
-        v.add(new Int32Value(compressionResult.uncompressedSize()));
-        v.add(new DataValue(compressionResult.data()));
-
-        return req;
+    /** Returns the root of the slime in the body of the given request parameters or return values */
+    private Inspector decodeBody(Values values) {
+        CompressionType compression = CompressionType.valueOf(values.get(3).asInt8());
+        byte[] slimeBytes = compressor.decompress(values.get(5).asData(), compression, values.get(4).asInt32());
+        return BinaryFormat.decode(slimeBytes).get();
     }
 
     @Override
     protected Reply createReply(Values ret, String serviceName, Trace trace) {
-        CompressionType compression = CompressionType.valueOf(ret.get(3).asInt8());
-        byte[] slimeBytes = compressor.decompress(ret.get(5).asData(), compression, ret.get(4).asInt32());
-        Slime slime = BinaryFormat.decode(slimeBytes);
-        Inspector root = slime.get();
+        return decodeReply(decodeBody(ret), serviceName, trace);
+    }
+
+    @Override
+    protected List<BatchedReply> createBatchReplies(Values args, LongFunction<BatchedMessage> awaiting) {
+        Inspector replies = decodeBody(args).field(REPLIES_F);
+        List<BatchedReply> result = new ArrayList<>(replies.entries());
+        for (int i = 0; i < replies.entries(); i++) {
+            BatchedMessage message = awaiting.apply(replies.entry(i).field(ID_F).asLong());
+            if (message == null) continue; // Timed out
+            result.add(new BatchedReply(message, decodeReply(replies.entry(i), message.serviceName(), message.trace())));
+        }
+        return result;
+    }
 
+    private Reply decodeReply(Inspector root, String serviceName, Trace trace) {
         Version version = new Version(new Utf8Array(root.field(VERSION_F).asUtf8()));
         byte[] payload = root.field(BLOB_F).asData();
 
@@ -154,10 +252,22 @@ public class RPCSendV2 extends RPCSend {
     }
 
     protected Params toParams(Values args) {
-        CompressionType compression = CompressionType.valueOf(args.get(3).asInt8());
-        byte[] slimeBytes = compressor.decompress(args.get(5).asData(), compression, args.get(4).asInt32());
-        Slime slime = BinaryFormat.decode(slimeBytes);
-        Inspector root = slime.get();
+        return decodeParams(decodeBody(args));
+    }
+
+    @Override
+    protected List<Params> toBatchParams(Values args) {
+        Inspector messages = decodeBody(args).field(MESSAGES_F);
+        List<Params> params = new ArrayList<>(messages.entries());
+        for (int i = 0; i < messages.entries(); i++) {
+            Params p = decodeParams(messages.entry(i));
+            p.id = messages.entry(i).field(ID_F).asLong();
+            params.add(p);
+        }
+        return params;
+    }
+
+    private static Params decodeParams(Inspector root) {
         Params p = new Params();
         p.version = new Version(new Utf8Array(root.field(VERSION_F).asUtf8()));
         p.route = root.field(ROUTE_F).asString();
@@ -173,13 +283,19 @@ public class RPCSendV2 extends RPCSend {
 
     @Override
     protected void createResponse(Values ret, Reply reply, Version version, byte [] payload) {
-        ret.add(new Int8Value(CompressionType.NONE.getCode()));
-        ret.add(new Int32Value(0));
-        ret.add(new DataValue(new byte[0]));
+        Slime slime = new Slime();
+        encodeReply(slime.setObject(), reply, version, payload);
+        addResponse(ret, slime);
+    }
 
+    @Override
+    protected void createBatchResponse(Values ret) {
         Slime slime = new Slime();
-        Cursor root = slime.setObject();
+        slime.setObject();
+        addResponse(ret, slime);
+    }
 
+    private static void encodeReply(Cursor root, Reply reply, Version version, byte [] payload) {
         root.setString(VERSION_F, version.toUtf8().getBytes());
         root.setDouble(RETRYDELAY_F, reply.getRetryDelay());
         root.setString(PROTOCOL_F, reply.getProtocol().getBytes());
@@ -200,6 +316,12 @@ public class RPCSendV2 extends RPCSend {
                 }
             }
         }
+    }
+
+    private void addResponse(Values ret, Slime slime) {
+        ret.add(new Int8Value(CompressionType.NONE.getCode()));
+        ret.add(new Int32Value(0));
+        ret.add(new DataValue(new byte[0]));
 
         Compressor.Compression compressionResult = BinaryFormat.encode_and_compress(slime, compressor);
 
@@ -4,7 +4,9 @@ package com.yahoo.messagebus.network.rpc;
 import com.yahoo.component.Version;
 import com.yahoo.jrt.Request;
 import com.yahoo.jrt.RequestWaiter;
+import com.yahoo.jrt.ErrorCode;
 import com.yahoo.jrt.Spec;
+import com.yahoo.jrt.StringValue;
 import com.yahoo.jrt.Supervisor;
 import com.yahoo.jrt.Target;
 
@@ -14,6 +16,7 @@ import com.yahoo.text.Utf8Array;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -31,6 +34,8 @@ public class RPCTarget implements RequestWaiter {
     private final String name;
     private final Target target;
     private boolean targetInvoked = false;
+    private final AtomicBoolean batchSupportProbed = new AtomicBoolean(false);
+    private volatile Boolean supportsBatches = null; // null until known
     private Version version = null;
     private List<VersionHandler> versionHandlers = new LinkedList<>();
 
@@ -88,6 +93,60 @@ public class RPCTarget implements RequestWaiter {
         return ref.get();
     }
 
+    /**
+     * <p>Returns whether this target is known to support receiving messages in batches.
+     * This is false until a probe started by {@link #probeBatchSupport(String, Duration)}
+     * has found the batch method on the target.</p>
+     *
+     * @return Whether messages to this may be batched.
+     */
+    boolean supportsBatches() {
+        return supportsBatches == Boolean.TRUE;
+    }
+
+    /**
+     * <p>Returns whether it is known whether this target supports receiving messages in batches.</p>
+     *
+     * @return Whether a probe has found out whether this has the batch method.
+     */
+    boolean knowsBatchSupport() {
+        return supportsBatches != null;
+    }
+
+    /**
+     * <p>Sets whether this target supports receiving messages in batches.</p>
+     *
+     * @param supportsBatches Whether messages to this may be batched.
+     */
+    void setSupportsBatches(boolean supportsBatches) {
+        this.supportsBatches = supportsBatches;
+    }
+
+    /**
+     * <p>Asks the target whether it has the given batch method, unless this is already known or asked.
+     * This uses the method info query of JRT, which both Java and C++ targets have, so batches are only
+     * sent to targets known to receive them. If the query fails for another reason than the method being
+     * missing, the target is asked again on the next call to this.</p>
+     *
+     * @param batchMethod The name of the method which receives batches.
+     * @param timeout     The timeout for the query.
+     */
+    void probeBatchSupport(String batchMethod, Duration timeout) {
+        if (supportsBatches != null || batchSupportProbed.getAndSet(true)) return;
+        Request req = new Request("frt.rpc.getMethodInfo");
+        req.parameters().add(new StringValue(batchMethod));
+        target.invokeAsync(req, timeout, probe -> {
+            if (probe.checkReturnTypes("sssSSSS")) {
+                supportsBatches = true;
+            } else if (probe.errorCode() == ErrorCode.METHOD_FAILED) { // No such method
+                supportsBatches = false;
+            } else {
+                log.log(Level.FINE, () -> "Failed to probe batch support of target '" + name + "'; " + probe.errorMessage());
+                batchSupportProbed.set(false);
+            }
+        });
+    }
+
     /**
      * <p>Requests the version of this target be passed to the given {@link
      * VersionHandler}. If the version is available, the handler is called
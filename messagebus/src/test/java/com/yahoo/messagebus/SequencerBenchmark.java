@@ -0,0 +1,90 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus;
+
+import com.yahoo.messagebus.test.SimpleMessage;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of a sequencer when an increasing number of threads, up to 64, send messages
+ * to 1M distinct sequence ids, which are replied to immediately, so the sequencer is the only shared state.
+ * Pass the number of messages to send per thread in each run, which is 200000 by default.
+ *
+ * @author agent
+ */
+public class SequencerBenchmark {
+
+    private static final int ids = 1 << 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        int messagesPerThread = args.length == 0 ? 200_000 : Integer.parseInt(args[0]);
+        System.out.println(String.format(Locale.ENGLISH, "%8s %14s %14s", "threads", "messages/s", "per thread"));
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            run(threads, messagesPerThread); // Warmup
+            long start = System.nanoTime();
+            long replies = run(threads, messagesPerThread);
+            double seconds = (System.nanoTime() - start) * 1e-9;
+            System.out.println(String.format(Locale.ENGLISH, "%8d %14.0f %14.0f",
+                                             threads, replies / seconds, replies / seconds / threads));
+        }
+    }
+
+    /** Sends the given number of messages from each of the given number of threads, and returns the number of replies */
+    private static long run(int threads, int messagesPerThread) throws InterruptedException {
+        Sequencer sequencer = new Sequencer(SequencerBenchmark::reply);
+        LongAdder replies = new LongAdder();
+        ReplyHandler handler = reply -> replies.increment();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] senders = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            SplittableRandom random = new SplittableRandom(i);
+            senders[i] = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int j = 0; j < messagesPerThread; j++) {
+                    Message message = new SequencedMessage(random.nextInt(ids));
+                    message.pushHandler(handler);
+                    sequencer.handleMessage(message);
+                }
+            });
+            senders[i].start();
+        }
+        start.countDown();
+        for (Thread sender : senders)
+            sender.join();
+        sequencer.destroy();
+        return replies.sum();
+    }
+
+    private static void reply(Message message) {
+        Reply reply = new EmptyReply();
+        reply.swapState(message);
+        reply.setMessage(message);
+        reply.popHandler().handleReply(reply);
+    }
+
+    private static class SequencedMessage extends SimpleMessage {
+
+        private final long seqId;
+
+        SequencedMessage(long seqId) {
+            super("benchmark");
+            this.seqId = seqId;
+        }
+
+        @Override
+        public boolean hasSequenceId() { return true; }
+
+        @Override
+        public long getSequenceId() { return seqId; }
+
+    }
+
+}
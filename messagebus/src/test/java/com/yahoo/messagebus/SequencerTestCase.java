@@ -5,13 +5,17 @@ import com.yahoo.messagebus.test.SimpleMessage;
 import org.junit.jupiter.api.Test;
 
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -156,6 +160,49 @@ public class SequencerTestCase {
         messenger.destroy();
     }
 
+    @Test
+    void testConcurrentSendingKeepsOneMessageInFlightPerIdInOrder() throws InterruptedException {
+        int threads = 8, messagesPerThread = 10000, ids = 16;
+        ExecutorService replier = Executors.newFixedThreadPool(4);
+        Map<Long, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        Map<String, Integer> lastSent = new ConcurrentHashMap<>();
+        AtomicInteger violations = new AtomicInteger();
+        MessageHandler sender = message -> {
+            OrderedMessage ordered = (OrderedMessage) message;
+            if (inFlight.computeIfAbsent(ordered.seqId, __ -> new AtomicInteger()).incrementAndGet() != 1)
+                violations.incrementAndGet();
+            Integer previous = lastSent.put(ordered.seqId + "/" + ordered.thread, ordered.index);
+            if (previous != null && previous >= ordered.index)
+                violations.incrementAndGet();
+            replier.execute(() -> {
+                inFlight.get(ordered.seqId).decrementAndGet();
+                Reply reply = new EmptyReply();
+                reply.swapState(message);
+                reply.setMessage(message);
+                reply.popHandler().handleReply(reply);
+            });
+        };
+
+        CountDownLatch replied = new CountDownLatch(threads * messagesPerThread);
+        ReplyHandler handler = reply -> replied.countDown();
+        Sequencer sequencer = new Sequencer(sender);
+        ExecutorService senders = Executors.newFixedThreadPool(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            int sendingThread = thread;
+            senders.execute(() -> {
+                for (int i = 0; i < messagesPerThread; i++) {
+                    Message message = new OrderedMessage((long) (i * 31 + sendingThread) % ids, sendingThread, i);
+                    message.pushHandler(handler);
+                    sequencer.handleMessage(message);
+                }
+            });
+        }
+        assertTrue(replied.await(60, TimeUnit.SECONDS), "All messages should obtain a reply within 60s");
+        assertEquals(0, violations.get());
+        senders.shutdown();
+        replier.shutdown();
+    }
+
     private static class TestQueue extends LinkedList<Routable> implements ReplyHandler {
 
         void checkReply(boolean hasSeqId, long seqId) {
@@ -234,5 +281,18 @@ public class SequencerTestCase {
         }
     }
 
+    private static class OrderedMessage extends MyMessage {
+
+        final int thread;
+        final int index;
+
+        OrderedMessage(long seqId, int thread, int index) {
+            super(true, seqId);
+            this.thread = thread;
+            this.index = index;
+        }
+
+    }
+
 }
 
@@ -0,0 +1,239 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import com.yahoo.jrt.Acceptor;
+import com.yahoo.jrt.Spec;
+import com.yahoo.jrt.Supervisor;
+import com.yahoo.jrt.Transport;
+import com.yahoo.jrt.slobrok.server.Slobrok;
+import com.yahoo.messagebus.DestinationSession;
+import com.yahoo.messagebus.DestinationSessionParams;
+import com.yahoo.messagebus.Error;
+import com.yahoo.messagebus.ErrorCode;
+import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.MessageBusParams;
+import com.yahoo.messagebus.Reply;
+import com.yahoo.messagebus.SourceSession;
+import com.yahoo.messagebus.SourceSessionParams;
+import com.yahoo.messagebus.network.Identity;
+import com.yahoo.messagebus.network.rpc.test.TestServer;
+import com.yahoo.messagebus.routing.Route;
+import com.yahoo.messagebus.test.Receptor;
+import com.yahoo.messagebus.test.SimpleMessage;
+import com.yahoo.messagebus.test.SimpleProtocol;
+import com.yahoo.messagebus.test.SimpleReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests sending messages in batches over the network.
+ *
+ * @author agent
+ */
+public class BatchingTestCase {
+
+    private static final int messages = 100;
+
+    Slobrok slobrok;
+    TestServer srcServer, dstServer;
+    SourceSession srcSession;
+    DestinationSession dstSession;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        slobrok = new Slobrok();
+        dstServer = new TestServer(new MessageBusParams().addProtocol(new SimpleProtocol()),
+                                   new RPCNetworkParams().setIdentity(new Identity("dst"))
+                                                         .setSlobrokConfigId(TestServer.getSlobrokConfig(slobrok)));
+        dstSession = dstServer.mb.createDestinationSession(new DestinationSessionParams().setName("session")
+                                                                                         .setMessageHandler(new Receptor()));
+        srcServer = new TestServer(new MessageBusParams().addProtocol(new SimpleProtocol()),
+                                   new RPCNetworkParams().setSlobrokConfigId(TestServer.getSlobrokConfig(slobrok))
+                                                         .setBatchWindow(Duration.ofMillis(50))
+                                                         .setMaxBatchBytes(256));
+        srcSession = srcServer.mb.createSourceSession(new SourceSessionParams().setTimeout(600.0)
+                                                                               .setThrottlePolicy(null)
+                                                                               .setReplyHandler(new Receptor()));
+        assertTrue(srcServer.waitSlobrok("dst/session", 1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        slobrok.stop();
+        dstSession.destroy();
+        dstServer.destroy();
+        srcSession.destroy();
+        srcServer.destroy();
+    }
+
+    @Test
+    void requireThatBatchedMessagesAreRepliedToIndividually() {
+        for (int i = 0; i < messages; i++)
+            assertTrue(srcSession.send(new SimpleMessage("message " + i), Route.parse("dst/session")).isAccepted());
+
+        for (int i = 0; i < messages; i++) {
+            Message msg = ((Receptor)dstSession.getMessageHandler()).getMessage(60);
+            assertNotNull(msg);
+            String value = ((SimpleMessage)msg).getValue();
+            Reply reply = new SimpleReply("reply to " + value);
+            reply.swapState(msg);
+            if (value.endsWith("7"))
+                reply.addError(new Error(ErrorCode.APP_FATAL_ERROR, "error for " + value));
+            dstSession.reply(reply);
+        }
+
+        Map<String, Reply> replies = new HashMap<>();
+        for (int i = 0; i < messages; i++) {
+            Reply reply = ((Receptor)srcSession.getReplyHandler()).getReply(60);
+            assertNotNull(reply);
+            replies.put(((SimpleMessage)reply.getMessage()).getValue(), reply);
+        }
+        assertEquals(messages, replies.size());
+        for (var entry : replies.entrySet()) {
+            if (entry.getKey().endsWith("7")) {
+                assertEquals(1, entry.getValue().getNumErrors());
+                assertEquals("error for " + entry.getKey(), entry.getValue().getError(0).getMessage());
+                assertEquals("dst/session", entry.getValue().getError(0).getService());
+            }
+            else {
+                assertFalse(entry.getValue().hasErrors(), entry.getValue().toString());
+                assertEquals("reply to " + entry.getKey(), ((SimpleReply)entry.getValue()).getValue());
+            }
+        }
+    }
+
+    @Test
+    void requireThatRepliesAreReturnedWithoutWaitingForTheRestOfTheBatch() {
+        for (int i = 0; i < messages; i++)
+            assertTrue(srcSession.send(new SimpleMessage("message " + i), Route.parse("dst/session")).isAccepted());
+
+        List<Message> received = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            Message msg = ((Receptor)dstSession.getMessageHandler()).getMessage(60);
+            assertNotNull(msg);
+            received.add(msg);
+        }
+        for (Message msg : received.subList(1, messages)) {
+            Reply reply = new SimpleReply("reply");
+            reply.swapState(msg);
+            dstSession.reply(reply);
+        }
+        for (int i = 1; i < messages; i++)
+            assertNotNull(((Receptor)srcSession.getReplyHandler()).getReply(60), "Replies arrive before the held one");
+
+        Reply held = new SimpleReply("reply");
+        held.swapState(received.get(0));
+        dstSession.reply(held);
+        assertNotNull(((Receptor)srcSession.getReplyHandler()).getReply(60));
+    }
+
+    @Test
+    void requireThatBatchedMessagesTimeOutIndividually() {
+        for (int i = 0; i < messages; i++) {
+            Message msg = new SimpleMessage("message " + i);
+            msg.setRetryEnabled(false);
+            if (i == 0)
+                msg.setTimeRemaining(500);
+            assertTrue(srcSession.send(msg, Route.parse("dst/session")).isAccepted());
+        }
+
+        List<Message> received = new ArrayList<>();
+        for (int i = 0; i < messages; i++)
+            received.add(((Receptor)dstSession.getMessageHandler()).getMessage(60));
+
+        Reply timedOut = ((Receptor)srcSession.getReplyHandler()).getReply(60);
+        assertNotNull(timedOut);
+        assertEquals("message 0", ((SimpleMessage)timedOut.getMessage()).getValue());
+        assertEquals(ErrorCode.TIMEOUT, timedOut.getError(0).getCode());
+
+        for (Message msg : received) {
+            Reply reply = new SimpleReply("reply");
+            reply.swapState(msg);
+            dstSession.reply(reply);
+        }
+        for (int i = 1; i < messages; i++) {
+            Reply reply = ((Receptor)srcSession.getReplyHandler()).getReply(60);
+            assertNotNull(reply);
+            assertFalse(reply.hasErrors(), reply.toString());
+        }
+        assertNull(((Receptor)srcSession.getReplyHandler()).getReply(1), "The late reply is ignored");
+    }
+
+    @Test
+    void requireThatBatchSupportIsProbedBeforeSendingBatches() throws Exception {
+        Supervisor orb = new Supervisor(new Transport());
+        Acceptor plain = orb.listen(new Spec(0)); // Without the batch method, like a C++ node
+        try {
+            RPCTarget javaTarget = new RPCTarget(new Spec(dstServer.net.getConnectionSpec()), orb);
+            RPCTarget plainTarget = new RPCTarget(new Spec("localhost", plain.port()), orb);
+            assertFalse(javaTarget.supportsBatches());
+            assertFalse(plainTarget.supportsBatches());
+
+            javaTarget.probeBatchSupport("mbus.slime.batch", Duration.ofSeconds(60));
+            plainTarget.probeBatchSupport("mbus.slime.batch", Duration.ofSeconds(60));
+            for (int i = 0; i < 6000 && ! (javaTarget.knowsBatchSupport() && plainTarget.knowsBatchSupport()); i++)
+                Thread.sleep(10);
+            assertTrue(javaTarget.supportsBatches());
+            assertTrue(plainTarget.knowsBatchSupport());
+            assertFalse(plainTarget.supportsBatches());
+            javaTarget.subRef();
+            plainTarget.subRef();
+        }
+        finally {
+            orb.transport().shutdown().join();
+        }
+    }
+
+    @Test
+    void requireThatTheTimeWaitingInABatchIsSubtractedFromTheTimeout() {
+        // The first message learns that the target receives batches
+        assertTrue(srcSession.send(new SimpleMessage("first"), Route.parse("dst/session")).isAccepted());
+        Message first = ((Receptor)dstSession.getMessageHandler()).getMessage(60);
+        Reply firstReply = new SimpleReply("reply");
+        firstReply.swapState(first);
+        dstSession.reply(firstReply);
+        assertNotNull(((Receptor)srcSession.getReplyHandler()).getReply(60));
+
+        Message msg = new SimpleMessage("second");
+        msg.setTimeRemaining(10_000);
+        assertTrue(srcSession.send(msg, Route.parse("dst/session")).isAccepted());
+        Message second = ((Receptor)dstSession.getMessageHandler()).getMessage(60);
+        assertNotNull(second);
+        assertTrue(second.getTimeRemaining() <= 10_000 - 50, "The batch window of 50ms is subtracted, but left " + second.getTimeRemaining());
+        Reply reply = new SimpleReply("reply");
+        reply.swapState(second);
+        dstSession.reply(reply);
+        assertNotNull(((Receptor)srcSession.getReplyHandler()).getReply(60));
+    }
+
+    @Test
+    void requireThatErrorsDeliveringBatchedMessagesAreReturnedIndividually() {
+        Route missing = Route.parse(dstServer.net.getConnectionSpec() + "/missing");
+        for (int i = 0; i < messages; i++) {
+            Message msg = new SimpleMessage("message " + i);
+            msg.setRetryEnabled(false);
+            assertTrue(srcSession.send(msg, missing).isAccepted());
+        }
+
+        for (int i = 0; i < messages; i++) {
+            Reply reply = ((Receptor)srcSession.getReplyHandler()).getReply(60);
+            assertNotNull(reply);
+            assertEquals(1, reply.getNumErrors());
+            assertEquals(ErrorCode.UNKNOWN_SESSION, reply.getError(0).getCode());
+        }
+    }
+
+}
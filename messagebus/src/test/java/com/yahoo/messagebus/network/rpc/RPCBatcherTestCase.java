@@ -0,0 +1,74 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+public class RPCBatcherTestCase {
+
+    private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+
+    @Test
+    void testBatchesAreSentWhenFull() throws InterruptedException {
+        RPCBatcher<String, Integer> batcher = new RPCBatcher<>(Duration.ofHours(1), 10, Runnable::run, this::send);
+        batcher.add("a", 1, 4);
+        batcher.add("b", 2, 4);
+        batcher.add("a", 3, 4);
+        assertNull(sent.poll());
+        batcher.add("a", 4, 2);
+        assertEquals("a: [1, 3, 4]", sent.poll());
+        assertEquals(1, batcher.pendingBatches());
+
+        batcher.add("c", 5, 100);
+        assertEquals("c: [5]", sent.poll());
+        assertEquals(1, batcher.pendingBatches());
+        batcher.destroy();
+        assertEquals("b: [2]", sent.poll());
+        assertEquals(0, batcher.pendingBatches());
+    }
+
+    @Test
+    void testBatchesAreSentWhenTheWindowEnds() throws InterruptedException {
+        RPCBatcher<String, Integer> batcher = new RPCBatcher<>(Duration.ofMillis(10), 1000, Runnable::run, this::send);
+        batcher.add("a", 1, 4);
+        batcher.add("b", 2, 4);
+        batcher.add("a", 3, 4);
+        List<String> batches = new ArrayList<>();
+        batches.add(sent.poll(60, TimeUnit.SECONDS));
+        batches.add(sent.poll(60, TimeUnit.SECONDS));
+        assertTrue(batches.containsAll(List.of("a: [1, 3]", "b: [2]")), batches.toString());
+        assertEquals(0, batcher.pendingBatches());
+
+        batcher.add("a", 4, 4);
+        assertEquals("a: [4]", sent.poll(60, TimeUnit.SECONDS));
+        batcher.destroy();
+        assertNull(sent.poll());
+    }
+
+    @Test
+    void testItemsAreSentImmediatelyAfterDestruction() {
+        RPCBatcher<String, Integer> batcher = new RPCBatcher<>(Duration.ofHours(1), 1000, Runnable::run, this::send);
+        batcher.destroy();
+        batcher.add("a", 1, 4);
+        assertEquals("a: [1]", sent.poll());
+        assertEquals(0, batcher.pendingBatches());
+    }
+
+    private void send(String key, List<Integer> items) {
+        sent.add(key + ": " + items);
+    }
+
+}
@@ -143,6 +143,18 @@ public enum ContainerMetrics implements VespaMetrics {
     TOTAL_HITS_PER_QUERY("totalhits_per_query", Unit.HIT_PER_QUERY, "The total number of documents found to match queries"),
     EMPTY_RESULTS("empty_results", Unit.OPERATION, "Number of queries matching no documents"),
     REQUESTS_OVER_QUOTA("requestsOverQuota", Unit.OPERATION, "The number of requests rejected due to exceeding quota"),
+    RESULT_CACHE_HITS("result_cache.hits", Unit.OPERATION, "The number of queries answered from the container result cache"),
+    RESULT_CACHE_MISSES("result_cache.misses", Unit.OPERATION, "The number of cacheable queries not found in the container result cache"),
+    RESULT_CACHE_EVICTIONS("result_cache.evictions", Unit.OPERATION, "The number of results evicted from the container result cache due to its size limit"),
+    DISPATCH_HEDGES("dispatch.hedges", Unit.OPERATION, "The number of searches which were also sent to another group because the first group was slow to respond"),
+    DISPATCH_HEDGE_WINS("dispatch.hedge_wins", Unit.OPERATION, "The number of hedged searches where the result from the other group was used"),
+    DISPATCH_RPC_CONNECTIONS("dispatch.rpc.connections", Unit.CONNECTION, "The number of open rpc connections from the dispatcher to content nodes"),
+    DISPATCH_RPC_INFLIGHT_BYTES("dispatch.rpc.inflight_bytes", Unit.BYTE, "The request bytes already in flight on the connection a dispatch request is queued behind"),
+    DISPATCH_RPC_QUEUE_DELAY("dispatch.rpc.queue_delay", Unit.MILLISECOND, "The time a dispatch request waits on its rpc connection before it is sent"),
+    DISPATCH_COMPRESSION_REQUESTS("dispatch.compression.requests", Unit.REQUEST, "The number of adaptively compressed dispatch requests, by chosen compression and payload"),
+    DISPATCH_COMPRESSION_BYTES_SAVED("dispatch.compression.bytes_saved", Unit.BYTE, "The number of bytes saved by adaptive compression of dispatch requests, by chosen compression and payload"),
+    DISPATCH_TOPK_PREDICTED_SHARE("dispatch.topk.predicted_share", Unit.FRACTION, "The share of the top hits of queries a node was predicted to contribute by adaptive top K estimation, by node"),
+    DISPATCH_TOPK_ACTUAL_SHARE("dispatch.topk.actual_share", Unit.FRACTION, "The share of the top hits of queries a node actually contributed with adaptive top K estimation, by node"),
     
     RELEVANCE_AT_1("relevance.at_1", Unit.SCORE, "The relevance of hit number 1"),
     RELEVANCE_AT_3("relevance.at_3", Unit.SCORE, "The relevance of hit number 3"),
@@ -207,7 +219,11 @@ public enum ContainerMetrics implements VespaMetrics {
     SERVER_STARTED_MILLIS("serverStartedMillis", Unit.MILLISECOND, "Time since the service was started"),
 
     EMBEDDER_LATENCY("embedder.latency", Unit.MILLISECOND, "Time spent creating an embedding"),
-    EMBEDDER_SEQUENCE_LENGTH("embedder.sequence_length", Unit.BYTE, "Size of sequence produced by tokenizer");
+    EMBEDDER_SEQUENCE_LENGTH("embedder.sequence_length", Unit.BYTE, "Size of sequence produced by tokenizer"),
+    EMBEDDER_CACHE_HITS("embedder.cache.hits", Unit.OPERATION, "Number of embeddings found in the container wide embedder cache"),
+    EMBEDDER_CACHE_MISSES("embedder.cache.misses", Unit.OPERATION, "Number of embeddings not found in the container wide embedder cache"),
+    EMBEDDER_CACHE_EVICTIONS("embedder.cache.evictions", Unit.ITEM, "Number of embeddings evicted from the container wide embedder cache to make room for new ones"),
+    EMBEDDER_CACHE_SIZE("embedder.cache.size", Unit.BYTE, "Size of the embeddings in the container wide embedder cache");
 
     private final String name;
     private final Unit unit;
@@ -214,6 +214,10 @@ public class Vespa9VespaMetricSet {
         // Embedders
         addMetric(metrics, ContainerMetrics.EMBEDDER_LATENCY, EnumSet.of(max, sum, count));
         addMetric(metrics, ContainerMetrics.EMBEDDER_SEQUENCE_LENGTH, EnumSet.of(max, sum, count));
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_HITS.rate());
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_MISSES.rate());
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_EVICTIONS.rate());
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_SIZE.last());
 
         return metrics;
     }
@@ -236,6 +236,10 @@ public class VespaMetricSet {
         // Embedders
         addMetric(metrics, ContainerMetrics.EMBEDDER_LATENCY, EnumSet.of(max, sum, count));
         addMetric(metrics, ContainerMetrics.EMBEDDER_SEQUENCE_LENGTH, EnumSet.of(max, sum, count));
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_HITS.rate());
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_MISSES.rate());
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_EVICTIONS.rate());
+        addMetric(metrics, ContainerMetrics.EMBEDDER_CACHE_SIZE.last());
 
         // Deprecated metrics. TODO: Remove on Vespa 9.
         addMetric(metrics, ContainerMetrics.SERVER_REJECTED_REQUESTS, EnumSet.of(rate, count));
@@ -126,6 +126,22 @@ public class Model implements AutoCloseable {
           Map<String, TensorType> declaredTypes,
           List<Constant> constants,
           List<OnnxModel> onnxModels) {
+        this(name, functions, referencedFunctions, declaredTypes, constants, onnxModels, false);
+    }
+
+    /**
+     * Creates a model.
+     *
+     * @param compileExpressions whether to compile the scalar subexpressions of the functions of this model,
+     *                           see {@link com.yahoo.searchlib.rankingexpression.evaluation.compilation.ExpressionCompiler}
+     */
+    Model(String name,
+          Map<FunctionReference, ExpressionFunction> functions,
+          Map<FunctionReference, ExpressionFunction> referencedFunctions,
+          Map<String, TensorType> declaredTypes,
+          List<Constant> constants,
+          List<OnnxModel> onnxModels,
+          boolean compileExpressions) {
         this.name = name;
 
         var bindingExtractor = new BindingExtractor(referencedFunctions, onnxModels);
@@ -173,7 +189,8 @@ public class Model implements AutoCloseable {
         this.functions = List.copyOf(functions.entrySet()
                                      .stream()
                                      .map(f -> optimize(f.getValue(),
-                                                        contextPrototypes.get(f.getKey().functionName())))
+                                                        contextPrototypes.get(f.getKey().functionName()),
+                                                        compileExpressions && ! isReferenced(f.getValue(), referencedFunctions.values())))
                                      .collect(Collectors.toList()));
 
         this.publicFunctions = functions.values().stream()
@@ -184,12 +201,21 @@ public class Model implements AutoCloseable {
     }
 
     /** Returns an optimized version of the given function */
-    private ExpressionFunction optimize(ExpressionFunction function, ContextIndex context) {
+    private ExpressionFunction optimize(ExpressionFunction function, ContextIndex context, boolean compile) {
         // Note: Optimization is in-place but we do not depend on that outside this method
-        expressionOptimizer.optimize(function.getBody(), context);
+        expressionOptimizer.optimize(function.getBody(), context, compile);
         return function;
     }
 
+    /**
+     * Returns whether the given function is referenced from other functions. Such functions are also evaluated
+     * in the contexts of the functions referencing them, so they cannot be compiled to lookups by index
+     * into the context of the function itself.
+     */
+    private static boolean isReferenced(ExpressionFunction function, Collection<ExpressionFunction> referencedFunctions) {
+        return referencedFunctions.stream().anyMatch(f -> f.getBody() == function.getBody());
+    }
+
     public String name() { return name; }
 
     /**
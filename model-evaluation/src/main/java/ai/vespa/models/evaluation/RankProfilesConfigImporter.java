@@ -49,10 +49,22 @@ public class RankProfilesConfigImporter {
 
     private final FileAcquirer fileAcquirer;
     private final OnnxRuntime onnx;
+    private final boolean compileExpressions;
 
     public RankProfilesConfigImporter(FileAcquirer fileAcquirer, OnnxRuntime onnx) {
+        this(fileAcquirer, onnx, false);
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param compileExpressions whether to compile the scalar subexpressions of the imported functions,
+     *                           which speeds up e.g. arithmetic over GBDT forests. Default false.
+     */
+    public RankProfilesConfigImporter(FileAcquirer fileAcquirer, OnnxRuntime onnx, boolean compileExpressions) {
         this.fileAcquirer = fileAcquirer;
         this.onnx = onnx;
+        this.compileExpressions = compileExpressions;
     }
 
     /**
@@ -177,7 +189,8 @@ public class RankProfilesConfigImporter {
             referencedFunctions.remove(ref);
         }
         try {
-            return new Model(profile.name(), functions, referencedFunctions, declaredTypes, constants, onnxModels);
+            return new Model(profile.name(), functions, referencedFunctions, declaredTypes, constants, onnxModels,
+                             compileExpressions);
         }
         catch (RuntimeException e) {
             throw new IllegalArgumentException("Could not load model '" + profile.name() + "'", e);
@@ -37,6 +37,15 @@ public class ModelsEvaluatorTest {
         assertEquals(32.0, function.evaluate().asDouble(), delta);
     }
 
+    @Test
+    public void testEvaluationWithCompiledExpressions() {
+        ModelsEvaluator models = createModels(true);
+        FunctionEvaluator function = models.evaluatorOf("macros", "secondphase");
+        function.bind("match", 3);
+        function.bind("rankBoost", 5);
+        assertEquals(32.0, function.evaluate().asDouble(), delta);
+    }
+
     /** Tests a function defined as 4 * (var1 + var2) */
     @Test
     public void testSettingMissingValue() {
@@ -135,14 +144,18 @@ public class ModelsEvaluatorTest {
     // TODO: Test argument-less function
     // TODO: Test with nested functions
 
-    @SuppressWarnings("deprecation")
     private ModelsEvaluator createModels() {
+        return createModels(false);
+    }
+
+    @SuppressWarnings("deprecation")
+    private ModelsEvaluator createModels(boolean compileExpressions) {
         RankProfilesConfig config = ConfigGetter.getConfig(RankProfilesConfig.class, fileConfigId("rank-profiles.cfg"));
         RankingConstantsConfig constantsConfig = ConfigGetter.getConfig(RankingConstantsConfig.class, fileConfigId("ranking-constants.cfg"));
         RankingExpressionsConfig expressionsConfig = ConfigGetter.getConfig(RankingExpressionsConfig.class, fileConfigId("ranking-expressions.cfg"));
         OnnxModelsConfig onnxModelsConfig = ConfigGetter.getConfig(OnnxModelsConfig.class, fileConfigId("onnx-models.cfg"));
 
-        return new ModelsEvaluator(new RankProfilesConfigImporterWithMockedConstants(Path.fromString(CONFIG_DIR), MockFileAcquirer.returnFile(null)),
+        return new ModelsEvaluator(new RankProfilesConfigImporterWithMockedConstants(Path.fromString(CONFIG_DIR), MockFileAcquirer.returnFile(null), compileExpressions),
                 config, constantsConfig, expressionsConfig, onnxModelsConfig);
     }
 
@@ -25,7 +25,11 @@ public class RankProfilesConfigImporterWithMockedConstants extends RankProfilesC
     private final Path constantsPath;
 
     public RankProfilesConfigImporterWithMockedConstants(Path constantsPath, FileAcquirer fileAcquirer) {
-        super(fileAcquirer, new OnnxRuntime());
+        this(constantsPath, fileAcquirer, false);
+    }
+
+    public RankProfilesConfigImporterWithMockedConstants(Path constantsPath, FileAcquirer fileAcquirer, boolean compileExpressions) {
+        super(fileAcquirer, new OnnxRuntime(), compileExpressions);
         this.constantsPath = constantsPath;
     }
 
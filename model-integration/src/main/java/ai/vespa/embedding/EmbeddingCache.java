@@ -0,0 +1,110 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.component.annotation.Inject;
+import com.yahoo.embedding.EmbeddingCacheConfig;
+import com.yahoo.language.Language;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of model outputs shared by the embedders in a container, such that embedding texts which are
+ * embedded repeatedly across requests, such as popular queries, does not require evaluating the model each time.
+ * The least recently used entries are evicted when the cache reaches its max size in bytes.
+ *
+ * @author agent
+ */
+public class EmbeddingCache {
+
+    /** A cache which caches nothing */
+    public static final EmbeddingCache disabled = new EmbeddingCache(0, MetricReceiver.nullImplementation);
+
+    private final long maxSize;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Gauge sizeGauge;
+    private final Map<String, Point> metricPoints = new ConcurrentHashMap<>();
+
+    @Inject
+    public EmbeddingCache(EmbeddingCacheConfig config, MetricReceiver metrics) {
+        this(config.maxSize(), metrics);
+    }
+
+    public EmbeddingCache(long maxSize, MetricReceiver metrics) {
+        this.maxSize = maxSize;
+        hits = metrics.declareCounter(ContainerMetrics.EMBEDDER_CACHE_HITS.baseName());
+        misses = metrics.declareCounter(ContainerMetrics.EMBEDDER_CACHE_MISSES.baseName());
+        evictions = metrics.declareCounter(ContainerMetrics.EMBEDDER_CACHE_EVICTIONS.baseName());
+        sizeGauge = metrics.declareGauge(ContainerMetrics.EMBEDDER_CACHE_SIZE.baseName());
+    }
+
+    /** Returns whether this caches anything */
+    public boolean isEnabled() { return maxSize > 0; }
+
+    /** Returns the value cached for the given key, or null if none */
+    public Object get(Key key) {
+        if ( ! isEnabled()) return null;
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        (entry != null ? hits : misses).add(metricPoint(key));
+        return entry != null ? entry.value() : null;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used values if the size of this exceeds its max size.
+     *
+     * @param key the key of the value
+     * @param value the value to cache
+     * @param size the size of the value in bytes
+     */
+    public void put(Key key, Object value, long size) {
+        if ( ! isEnabled() || size > maxSize) return;
+
+        long evicted = 0;
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(value, size));
+            this.size += size - (previous != null ? previous.size() : 0);
+            for (Iterator<Entry> i = entries.values().iterator(); this.size > maxSize && i.hasNext(); evicted++) {
+                this.size -= i.next().size();
+                i.remove();
+            }
+        }
+        if (evicted > 0)
+            evictions.add(evicted, metricPoint(key));
+        sizeGauge.sample(size());
+    }
+
+    /** Returns the total size in bytes of the values in this */
+    public synchronized long size() { return size; }
+
+    /** Returns the number of values in this */
+    public synchronized int entries() { return entries.size(); }
+
+    private Point metricPoint(Key key) {
+        return metricPoints.computeIfAbsent(key.embedderId(), id -> new Point(Map.of("embedder", id)));
+    }
+
+    /**
+     * The key of a cached value. Embedders must add anything else which may affect the model output,
+     * such as instructions prepended depending on the destination, to the text.
+     */
+    public record Key(String embedderId, String text, Language language) { }
+
+    private record Entry(Object value, long size) { }
+
+}
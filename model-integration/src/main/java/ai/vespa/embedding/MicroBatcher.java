@@ -0,0 +1,110 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Gathers items from concurrent callers into batches which are processed together, e.g., texts to
+ * embed with one model evaluation. The first caller to add an item to a batch waits for more items until
+ * the max delay has passed or the batch is full, and then processes the batch on behalf of all its callers.
+ * No threads are created: Batches are processed by the threads of the callers.
+ *
+ * @author agent
+ */
+public class MicroBatcher<ITEM, RESULT> {
+
+    private final long maxDelayNanos;
+    private final int maxSize;
+    private final Function<List<ITEM>, List<RESULT>> processor;
+
+    private final Object monitor = new Object();
+    private Batch<ITEM, RESULT> current = null;
+
+    /**
+     * Creates a micro batcher.
+     *
+     * @param maxDelay the max time to wait for more items to add to a batch
+     * @param maxSize the max number of items in a batch
+     * @param processor processes a batch of items, returning one result per item, in the same order
+     */
+    public MicroBatcher(Duration maxDelay, int maxSize, Function<List<ITEM>, List<RESULT>> processor) {
+        if (maxSize < 1) throw new IllegalArgumentException("Max batch size must be positive, but was " + maxSize);
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxSize = maxSize;
+        this.processor = processor;
+    }
+
+    /**
+     * Processes the given item in a batch with any others which are added concurrently,
+     * and returns its result when the batch is processed.
+     *
+     * @throws RuntimeException any exception thrown by the processor when processing the batch of this item
+     */
+    public RESULT process(ITEM item) {
+        Batch<ITEM, RESULT> batch;
+        int index;
+        synchronized (monitor) {
+            if (current == null)
+                current = new Batch<>();
+            batch = current;
+            index = batch.items.size();
+            batch.items.add(item);
+            if (batch.items.size() >= maxSize) {
+                current = null;
+                monitor.notifyAll();
+            }
+        }
+        if (index == 0)
+            processWhenComplete(batch);
+        return batch.result(index);
+    }
+
+    private void processWhenComplete(Batch<ITEM, RESULT> batch) {
+        synchronized (monitor) {
+            long deadline = System.nanoTime() + maxDelayNanos;
+            try {
+                for (long remaining = maxDelayNanos; current == batch && remaining > 0; remaining = deadline - System.nanoTime())
+                    TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Process what we have
+            }
+            if (current == batch)
+                current = null;
+        }
+        try {
+            List<RESULT> results = processor.apply(batch.items);
+            if (results.size() != batch.items.size())
+                throw new IllegalStateException("Expected " + batch.items.size() + " results, but got " + results.size());
+            batch.results.complete(results);
+        }
+        catch (RuntimeException e) {
+            batch.results.completeExceptionally(e);
+        }
+    }
+
+    private static class Batch<ITEM, RESULT> {
+
+        /** The items of this, which are only modified while this is the current batch */
+        final List<ITEM> items = new ArrayList<>();
+        final CompletableFuture<List<RESULT>> results = new CompletableFuture<>();
+
+        RESULT result(int index) {
+            try {
+                return results.join().get(index);
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+
+    }
+
+}
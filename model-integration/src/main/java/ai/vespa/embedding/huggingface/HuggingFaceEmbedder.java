@@ -1,6 +1,8 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package ai.vespa.embedding.huggingface;
 
+import ai.vespa.embedding.EmbeddingCache;
+import ai.vespa.embedding.MicroBatcher;
 import ai.vespa.embedding.PoolingStrategy;
 import ai.vespa.modelintegration.evaluator.OnnxEvaluator;
 import ai.vespa.modelintegration.evaluator.OnnxEvaluatorOptions;
@@ -9,6 +11,7 @@ import com.yahoo.api.annotations.Beta;
 import com.yahoo.component.AbstractComponent;
 import com.yahoo.component.annotation.Inject;
 import com.yahoo.embedding.huggingface.HuggingFaceEmbedderConfig;
+import com.yahoo.language.huggingface.Encoding;
 import com.yahoo.language.huggingface.HuggingFaceTokenizer;
 import com.yahoo.language.process.Embedder;
 import com.yahoo.tensor.IndexedTensor;
@@ -17,9 +20,15 @@ import com.yahoo.tensor.TensorAddress;
 import com.yahoo.tensor.TensorType;
 
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import java.util.logging.Logger;
 
 import static com.yahoo.language.huggingface.ModelInfo.TruncationStrategy.LONGEST_FIRST;
@@ -38,14 +47,22 @@ public class HuggingFaceEmbedder extends AbstractComponent implements Embedder {
     private final HuggingFaceTokenizer tokenizer;
     private final OnnxEvaluator evaluator;
     private final PoolingStrategy poolingStrategy;
+    private final int batchSize;
+    private final MicroBatcher<Input, HFEmbeddingResult> batcher;
+    private final EmbeddingCache cache;
 
     private final String prependQuery;
 
     private final String prependDocument;
 
-    @Inject
     public HuggingFaceEmbedder(OnnxRuntime onnx, Embedder.Runtime runtime, HuggingFaceEmbedderConfig config) {
+        this(onnx, runtime, config, EmbeddingCache.disabled);
+    }
+
+    @Inject
+    public HuggingFaceEmbedder(OnnxRuntime onnx, Embedder.Runtime runtime, HuggingFaceEmbedderConfig config, EmbeddingCache cache) {
         this.runtime = runtime;
+        this.cache = cache;
         inputIdsName = config.transformerInputIds();
         attentionMaskName = config.transformerAttentionMask();
         tokenTypeIdsName = config.transformerTokenTypeIds();
@@ -76,6 +93,10 @@ public class HuggingFaceEmbedder extends AbstractComponent implements Embedder {
         onnxOpts.setThreads(config.transformerInterOpThreads(), config.transformerIntraOpThreads());
         evaluator = onnx.evaluatorOf(config.transformerModel().toString(), onnxOpts);
         validateModel();
+        batchSize = Math.max(1, config.transformerBatchSize());
+        batcher = config.transformerBatchingMaxDelay() > 0
+                  ? new MicroBatcher<>(Duration.ofNanos((long) (config.transformerBatchingMaxDelay() * 1_000_000)), batchSize, this::evaluate)
+                  : null;
     }
 
     private void validateModel() {
@@ -110,21 +131,33 @@ public class HuggingFaceEmbedder extends AbstractComponent implements Embedder {
         tokenizer.close();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Tensor embed(String text, Context context, TensorType tensorType) {
+        validateType(tensorType);
+        return toSentenceEmbedding(lookupOrEvaluate(context, prependInstruction(text, context)), tensorType);
+    }
+
+    @Override
+    public List<Tensor> embed(List<String> texts, Context context, TensorType tensorType) {
+        validateType(tensorType);
+        var embeddingResults = lookupOrEvaluate(context, texts.stream().map(text -> prependInstruction(text, context)).toList());
+        return embeddingResults.stream().map(embeddingResult -> toSentenceEmbedding(embeddingResult, tensorType)).toList();
+    }
+
+    private static void validateType(TensorType tensorType) {
         if (tensorType.dimensions().size() != 1) {
             throw new IllegalArgumentException("Error in embedding to type '" + tensorType + "': should only have one dimension.");
         }
         if (!tensorType.dimensions().get(0).isIndexed()) {
             throw new IllegalArgumentException("Error in embedding to type '" + tensorType + "': dimension should be indexed.");
         }
-        var embeddingResult = lookupOrEvaluate(context, prependInstruction(text, context));
-        IndexedTensor tokenEmbeddings = embeddingResult.output;
+    }
+
+    private Tensor toSentenceEmbedding(HFEmbeddingResult embeddingResult, TensorType tensorType) {
         if (tensorType.valueType() == TensorType.Value.INT8) {
             return binaryQuantization(embeddingResult, tensorType);
         } else {
-            Tensor result = poolingStrategy.toSentenceEmbedding(tensorType, tokenEmbeddings, embeddingResult.attentionMask);
+            Tensor result = poolingStrategy.toSentenceEmbedding(tensorType, embeddingResult.output, embeddingResult.attentionMask);
             return  normalize ? normalize(result, tensorType) : result;
         }
     }
@@ -160,7 +193,46 @@ public class HuggingFaceEmbedder extends AbstractComponent implements Embedder {
 
     private HuggingFaceEmbedder.HFEmbeddingResult lookupOrEvaluate(Context context, String text) {
         var key = new HFEmbedderCacheKey(context.getEmbedderId(), text);
-        return context.computeCachedValueIfAbsent(key, () -> evaluate(context, text));
+        return context.computeCachedValueIfAbsent(key, () -> {
+            var cached = (HFEmbeddingResult) cache.get(sharedCacheKey(context, text));
+            if (cached != null) return cached;
+
+            var result = batcher != null ? batcher.process(new Input(text, context)) : evaluate(context, text);
+            cache.put(sharedCacheKey(context, text), result, sizeOf(result));
+            return result;
+        });
+    }
+
+    private List<HFEmbeddingResult> lookupOrEvaluate(Context context, List<String> texts) {
+        Map<String, HFEmbeddingResult> results = new HashMap<>();
+        List<Input> missing = new ArrayList<>();
+        for (String text : new LinkedHashSet<>(texts)) {
+            var cached = (HFEmbeddingResult) context.getCachedValue(new HFEmbedderCacheKey(context.getEmbedderId(), text));
+            if (cached == null)
+                cached = (HFEmbeddingResult) cache.get(sharedCacheKey(context, text));
+            if (cached != null)
+                results.put(text, cached);
+            else
+                missing.add(new Input(text, context));
+        }
+        var evaluated = evaluate(missing);
+        for (int i = 0; i < missing.size(); i++) {
+            String text = missing.get(i).text();
+            cache.put(sharedCacheKey(context, text), evaluated.get(i), sizeOf(evaluated.get(i)));
+            results.put(text, evaluated.get(i));
+        }
+        for (var result : results.entrySet())
+            context.putCachedValue(new HFEmbedderCacheKey(context.getEmbedderId(), result.getKey()), result.getValue());
+        return texts.stream().map(results::get).toList();
+    }
+
+    private static EmbeddingCache.Key sharedCacheKey(Context context, String text) {
+        return new EmbeddingCache.Key(context.getEmbedderId(), text, context.getLanguage());
+    }
+
+    /** Returns the approximate size in bytes of the given result */
+    private static long sizeOf(HFEmbeddingResult result) {
+        return (result.output().size() + result.attentionMask().size()) * Float.BYTES + 256;
     }
 
     private HuggingFaceEmbedder.HFEmbeddingResult evaluate(Context context, String text) {
@@ -192,6 +264,89 @@ public class HuggingFaceEmbedder extends AbstractComponent implements Embedder {
         return new HFEmbeddingResult(tokenEmbeddings, attentionMask, context.getEmbedderId());
     }
 
+    /**
+     * Evaluates the model for multiple texts, in batches of texts of similar length to minimize padding.
+     * The results are the same as from evaluating each text by itself.
+     */
+    private List<HFEmbeddingResult> evaluate(List<Input> inputs) {
+        var start = System.nanoTime();
+        List<Encoding> encodings = new ArrayList<>(inputs.size());
+        for (Input input : inputs) {
+            var encoding = tokenizer.encode(input.text(), input.context().getLanguage());
+            runtime.sampleSequenceLength(encoding.ids().size(), input.context());
+            encodings.add(encoding);
+        }
+        List<Integer> byLength = IntStream.range(0, inputs.size()).boxed()
+                                          .sorted(Comparator.comparingInt(i -> encodings.get(i).ids().size()))
+                                          .toList();
+        var results = new HFEmbeddingResult[inputs.size()];
+        for (int from = 0; from < byLength.size(); from += batchSize) {
+            var batch = byLength.subList(from, Math.min(from + batchSize, byLength.size()));
+            evaluateBatch(batch.stream().map(encodings::get).toList(),
+                          batch.stream().map(i -> inputs.get(i).context()).toList(),
+                          batch.stream().mapToInt(Integer::intValue).toArray(),
+                          results);
+        }
+        // Sample the latency per text, as when embedding texts one by one
+        double latencyPerText = (System.nanoTime() - start)/1_000_000d / inputs.size();
+        for (Input input : inputs)
+            runtime.sampleEmbeddingLatency(latencyPerText, input.context());
+        return List.of(results);
+    }
+
+    /** Evaluates the model for the given encodings, padded to the longest, and stores each result at the given index */
+    private void evaluateBatch(List<Encoding> encodings, List<Context> contexts, int[] resultIndexes, HFEmbeddingResult[] results) {
+        int length = encodings.stream().mapToInt(encoding -> encoding.ids().size()).max().orElse(0);
+        var inputType = new TensorType.Builder(TensorType.Value.FLOAT).indexed("d0", encodings.size()).indexed("d1", length).build();
+        var inputSequence = IndexedTensor.Builder.of(inputType);
+        var attentionMask = IndexedTensor.Builder.of(inputType);
+        var tokenTypeIds = IndexedTensor.Builder.of(inputType);
+        boolean hasTokenTypeIds = ! tokenTypeIdsName.isEmpty() && ! encodings.get(0).typeIds().isEmpty();
+        for (int row = 0; row < encodings.size(); row++) { // Cells which are not set are 0, meaning padding
+            var encoding = encodings.get(row);
+            for (int i = 0; i < encoding.ids().size(); i++) {
+                inputSequence.cell(encoding.ids().get(i), row, i);
+                attentionMask.cell(encoding.attentionMask().get(i), row, i);
+                if (hasTokenTypeIds)
+                    tokenTypeIds.cell(encoding.typeIds().get(i), row, i);
+            }
+        }
+        Map<String, Tensor> inputs = hasTokenTypeIds ? Map.of(inputIdsName, inputSequence.build(),
+                                                              attentionMaskName, attentionMask.build(),
+                                                              tokenTypeIdsName, tokenTypeIds.build())
+                                                     : Map.of(inputIdsName, inputSequence.build(),
+                                                              attentionMaskName, attentionMask.build());
+        IndexedTensor tokenEmbeddings = (IndexedTensor) evaluator.evaluate(inputs).get(outputName);
+        long[] resultShape = tokenEmbeddings.shape();
+        if (resultShape.length != 3) {
+            throw new IllegalArgumentException("" +
+                    "Expected 3 output dimensions for output name '" +
+                    outputName + "': [batch, sequence, embedding], got " + resultShape.length);
+        }
+        for (int row = 0; row < encodings.size(); row++) {
+            var encoding = encodings.get(row);
+            results[resultIndexes[row]] = new HFEmbeddingResult(rowOf(tokenEmbeddings, row, encoding.ids().size()),
+                                                                createTensorRepresentation(encoding.attentionMask(), "d1"),
+                                                                contexts.get(row).getEmbedderId());
+        }
+    }
+
+    /** Returns the token embeddings of the given row in a batch, without padding, as if it was evaluated by itself */
+    private static IndexedTensor rowOf(IndexedTensor tokenEmbeddings, int row, int length) {
+        long[] shape = tokenEmbeddings.shape();
+        var dimensions = tokenEmbeddings.type().dimensions();
+        var rowType = new TensorType.Builder(tokenEmbeddings.type().valueType()).indexed(dimensions.get(0).name(), 1)
+                                                                                .indexed(dimensions.get(1).name(), length)
+                                                                                .indexed(dimensions.get(2).name(), shape[2])
+                                                                                .build();
+        var builder = IndexedTensor.Builder.of(rowType);
+        long offset = row * shape[1] * shape[2];
+        for (int token = 0; token < length; token++)
+            for (int i = 0; i < shape[2]; i++)
+                builder.cell(tokenEmbeddings.getFloat(offset + token * shape[2] + i), 0, token, i);
+        return builder.build();
+    }
+
     private Tensor binaryQuantization(HuggingFaceEmbedder.HFEmbeddingResult embeddingResult, TensorType tensorType) {
         long outputDimensions = embeddingResult.output().shape()[2];
         long targetDim = tensorType.dimensions().get(0).size().get();
@@ -247,6 +402,7 @@ public class HuggingFaceEmbedder extends AbstractComponent implements Embedder {
     }
 
     protected record HFEmbeddingResult(IndexedTensor output, Tensor attentionMask, String embedderId) {}
+    private record Input(String text, Context context) { }
     protected record HFEmbedderCacheKey(String embedderId, Object embeddedValue) { }
 }
 
@@ -0,0 +1,60 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding;
+
+import com.yahoo.language.Language;
+import com.yahoo.metrics.simple.MetricReceiver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author agent
+ */
+public class EmbeddingCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedValuesAreEvicted() {
+        var cache = new EmbeddingCache(100, MetricReceiver.nullImplementation);
+        cache.put(key("a"), "A", 40);
+        cache.put(key("b"), "B", 40);
+        assertEquals("A", cache.get(key("a"))); // b is now least recently used
+        cache.put(key("c"), "C", 40);
+        assertEquals(2, cache.entries());
+        assertEquals(80, cache.size());
+        assertEquals("A", cache.get(key("a")));
+        assertNull(cache.get(key("b")));
+        assertEquals("C", cache.get(key("c")));
+
+        cache.put(key("c"), "C2", 10);
+        assertEquals(50, cache.size());
+        assertEquals("C2", cache.get(key("c")));
+
+        cache.put(key("d"), "D", 101); // Larger than the cache
+        assertNull(cache.get(key("d")));
+        assertEquals(50, cache.size());
+    }
+
+    @Test
+    public void testKeysIncludeEmbedderAndLanguage() {
+        var cache = new EmbeddingCache(100, MetricReceiver.nullImplementation);
+        cache.put(key("a"), "A", 10);
+        assertNull(cache.get(new EmbeddingCache.Key("other", "a", Language.ENGLISH)));
+        assertNull(cache.get(new EmbeddingCache.Key("embedder", "a", Language.UNKNOWN)));
+        assertEquals("A", cache.get(new EmbeddingCache.Key("embedder", "a", Language.ENGLISH)));
+    }
+
+    @Test
+    public void testDisabledCacheCachesNothing() {
+        assertFalse(EmbeddingCache.disabled.isEnabled());
+        EmbeddingCache.disabled.put(key("a"), "A", 10);
+        assertNull(EmbeddingCache.disabled.get(key("a")));
+        assertEquals(0, EmbeddingCache.disabled.size());
+    }
+
+    private static EmbeddingCache.Key key(String text) {
+        return new EmbeddingCache.Key("embedder", text, Language.ENGLISH);
+    }
+
+}
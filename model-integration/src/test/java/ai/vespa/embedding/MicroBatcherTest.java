@@ -0,0 +1,80 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class MicroBatcherTest {
+
+    @Test
+    public void testConcurrentItemsAreProcessedTogether() throws Exception {
+        List<List<Integer>> batches = new ArrayList<>();
+        var batcher = new MicroBatcher<Integer, Integer>(Duration.ofMinutes(1), 4, items -> {
+            synchronized (batches) { batches.add(List.copyOf(items)); }
+            return items.stream().map(item -> item * 2).toList();
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                int item = i;
+                results.add(executor.submit(() -> batcher.process(item)));
+            }
+            for (int i = 0; i < 8; i++)
+                assertEquals(i * 2, (int) results.get(i).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(2, batches.size());
+        assertEquals(4, batches.get(0).size());
+        assertEquals(4, batches.get(1).size());
+    }
+
+    @Test
+    public void testItemIsProcessedAfterMaxDelayWithoutOthers() {
+        List<List<String>> batches = new ArrayList<>();
+        var batcher = new MicroBatcher<String, String>(Duration.ofMillis(1), 10, items -> {
+            batches.add(List.copyOf(items));
+            return items.stream().map(String::toUpperCase).toList();
+        });
+        assertEquals("A", batcher.process("a"));
+        assertEquals("B", batcher.process("b"));
+        assertEquals(List.of(List.of("a"), List.of("b")), batches);
+    }
+
+    @Test
+    public void testProcessingErrorsArePassedToAllCallers() throws Exception {
+        var batcher = new MicroBatcher<Integer, Integer>(Duration.ofMinutes(1), 2, items -> {
+            throw new IllegalArgumentException("Bad batch " + items.size());
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> batcher.process(1));
+            Future<Integer> second = executor.submit(() -> batcher.process(2));
+            for (Future<Integer> result : List.of(first, second)) {
+                var e = assertThrows(ExecutionException.class, result::get);
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+                assertEquals("Bad batch 2", e.getCause().getMessage());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding.huggingface;
+
+import ai.vespa.modelintegration.evaluator.OnnxRuntime;
+import com.yahoo.config.ModelReference;
+import com.yahoo.embedding.huggingface.HuggingFaceEmbedderConfig;
+import com.yahoo.language.process.Embedder;
+import com.yahoo.tensor.TensorType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares embedding texts one at a time with embedding them in batches, by docs/s and the p99 latency per call,
+ * using the dummy embedding model by default. Documents are embedded by a single thread, either one text per call,
+ * or a list of texts per call as for array fields. Queries are embedded as single texts by concurrent threads,
+ * either each by itself, or gathered into batches across threads with transformerBatchingMaxDelay.
+ * <p>
+ * Usage: HuggingFaceEmbedderBenchmark [texts] [model path] [token type ids input name]
+ *
+ * @author agent
+ */
+public class HuggingFaceEmbedderBenchmark {
+
+    private static final String tokenizerPath = "src/test/models/onnx/transformer/real_tokenizer.json";
+    private static final TensorType type = TensorType.fromSpec("tensor<float>(x[8])");
+    private static final int textsPerCall = 32;
+    private static final int queryThreads = 8;
+
+    private final String modelPath;
+    private final String tokenTypeIds;
+    private final List<String> texts;
+
+    public HuggingFaceEmbedderBenchmark(String modelPath, String tokenTypeIds, int textCount) {
+        this.modelPath = modelPath;
+        this.tokenTypeIds = tokenTypeIds;
+        this.texts = texts(textCount);
+    }
+
+    public void run() {
+        System.out.println("Documents, 1 thread:");
+        runDocuments("one at a time", 1);
+        runDocuments("batched", textsPerCall);
+        System.out.println("Queries, " + queryThreads + " threads:");
+        runQueries("one at a time", 0);
+        runQueries("batched, 1 ms", 1);
+        runQueries("batched, 5 ms", 5);
+    }
+
+    /** Embeds all texts from one thread, the given number of texts per call */
+    private void runDocuments(String name, int textsPerCall) {
+        HuggingFaceEmbedder embedder = embedder(textsPerCall, 0);
+        try {
+            embedDocuments(embedder, textsPerCall, texts.size() / 10); // warmup
+            long startTime = System.nanoTime();
+            long[] latencies = embedDocuments(embedder, textsPerCall, texts.size());
+            report(name, texts.size(), System.nanoTime() - startTime, latencies);
+        }
+        finally {
+            embedder.deconstruct();
+        }
+    }
+
+    private long[] embedDocuments(HuggingFaceEmbedder embedder, int textsPerCall, int count) {
+        long[] latencies = new long[(count + textsPerCall - 1) / textsPerCall];
+        for (int start = 0, call = 0; start < count; start += textsPerCall, call++) {
+            List<String> batch = texts.subList(start, Math.min(start + textsPerCall, count));
+            long callStart = System.nanoTime();
+            if (batch.size() == 1)
+                embedder.embed(batch.get(0), new Embedder.Context("schema.indexing"), type);
+            else
+                embedder.embed(batch, new Embedder.Context("schema.indexing"), type);
+            latencies[call] = System.nanoTime() - callStart;
+        }
+        return latencies;
+    }
+
+    /** Embeds all texts as single texts from concurrent threads, batched across threads with the given max delay */
+    private void runQueries(String name, double maxDelayMillis) {
+        HuggingFaceEmbedder embedder = embedder(textsPerCall, maxDelayMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(queryThreads);
+        try {
+            embedQueries(embedder, executor, texts.size() / 10); // warmup
+            long startTime = System.nanoTime();
+            long[] latencies = embedQueries(embedder, executor, texts.size());
+            report(name, texts.size(), System.nanoTime() - startTime, latencies);
+        }
+        finally {
+            executor.shutdown();
+            embedder.deconstruct();
+        }
+    }
+
+    private long[] embedQueries(HuggingFaceEmbedder embedder, ExecutorService executor, int count) {
+        long[] latencies = new long[count];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < queryThreads; thread++) {
+            int first = thread;
+            futures.add(executor.submit(() -> {
+                for (int i = first; i < count; i += queryThreads) {
+                    long callStart = System.nanoTime();
+                    embedder.embed(texts.get(i), new Embedder.Context("query(q)"), type);
+                    latencies[i] = System.nanoTime() - callStart;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return latencies;
+    }
+
+    private static void report(String name, int texts, long elapsedNanos, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long p99 = sorted[Math.min(sorted.length - 1, (int)Math.ceil(0.99 * sorted.length) - 1)];
+        System.out.printf("  %-16s %,10.0f docs/s   p99 %,8.3f ms per call%n",
+                          name, texts * 1e9 / elapsedNanos, p99 / 1e6);
+    }
+
+    private HuggingFaceEmbedder embedder(int batchSize, double maxDelayMillis) {
+        HuggingFaceEmbedderConfig.Builder builder = new HuggingFaceEmbedderConfig.Builder();
+        builder.tokenizerPath(ModelReference.valueOf(tokenizerPath));
+        builder.transformerModel(ModelReference.valueOf(modelPath));
+        builder.transformerTokenTypeIds(tokenTypeIds);
+        builder.transformerBatchSize(batchSize);
+        builder.transformerBatchingMaxDelay(maxDelayMillis);
+        builder.transformerGpuDevice(-1);
+        return new HuggingFaceEmbedder(new OnnxRuntime(), Embedder.Runtime.testInstance(), builder.build());
+    }
+
+    /** Returns texts of 5 to 100 random words, such that batches are padded to their longest text */
+    private static List<String> texts(int count) {
+        String[] words = ("the quick brown fox jumps over lazy dog search engine vector embedding document query " +
+                          "ranking tensor model batch token text field index content node cluster").split(" ");
+        Random random = new Random(1234);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = 5 + random.nextInt(96);
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < length; j++)
+                text.append(j > 0 ? " " : "").append(words[random.nextInt(words.length)]);
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+
+    public static void main(String[] args) {
+        int textCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String modelPath = args.length > 1 ? args[1] : "src/test/models/onnx/transformer/dummy_embedding_model_without_type_ids.onnx";
+        String tokenTypeIds = args.length > 2 ? args[2] : "";
+        if ( ! OnnxRuntime.isRuntimeAvailable(modelPath)) {
+            System.out.println("The ONNX runtime is not available for " + modelPath);
+            return;
+        }
+        new HuggingFaceEmbedderBenchmark(modelPath, tokenTypeIds, textCount).run();
+    }
+
+}
@@ -2,16 +2,21 @@
 package ai.vespa.embedding.huggingface;
 
 
+import ai.vespa.embedding.EmbeddingCache;
 import ai.vespa.modelintegration.evaluator.OnnxRuntime;
 import com.yahoo.config.ModelReference;
 import com.yahoo.embedding.huggingface.HuggingFaceEmbedderConfig;
+import com.yahoo.language.Language;
 import com.yahoo.language.process.Embedder;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.TensorAddress;
 import org.junit.Test;
 
+import java.util.List;
+
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assume.assumeTrue;
@@ -85,6 +90,58 @@ public class HuggingFaceEmbedderTest {
         embedder.embed(input, copyContext,TensorType.fromSpec("tensor<int8>(x[2])"));
         assertNotEquals(modelOuput, copyContext.getCachedValue(key));
     }
+    @Test
+    public void testSharedCaching() {
+        var cache = new EmbeddingCache(10_000_000, MetricReceiver.nullImplementation);
+        var embedder = getEmbedder(cache);
+        var type = TensorType.fromSpec("tensor<float>(x[8])");
+        var input = "This is a test string to embed";
+
+        Tensor result = embedder.embed(input, new Embedder.Context("query(q)"), type);
+        assertEquals(1, cache.entries());
+        var cached = cache.get(new EmbeddingCache.Key("unknown", input, Language.UNKNOWN));
+        assertNotNull(cached);
+
+        // A new request reuses the model output
+        var context = new Embedder.Context("query(q)");
+        assertEquals(result, embedder.embed(input, context, type));
+        assertEquals(cached, context.getCachedValue(new HuggingFaceEmbedder.HFEmbedderCacheKey("unknown", input)));
+        assertEquals(1, cache.entries());
+
+        // Embedding a list reuses and adds to the same cache
+        var results = embedder.embed(List.of(input, "Another text"), new Embedder.Context("query(q)"), type);
+        assertEquals(result, results.get(0));
+        assertEquals(2, cache.entries());
+    }
+
+    @Test
+    public void testBatchEmbeddingEqualsSingleEmbedding() {
+        assertBatchEmbeddingEqualsSingleEmbedding("src/test/models/onnx/transformer/embedding_model.onnx", "token_type_ids");
+    }
+
+    @Test
+    public void testBatchEmbeddingEqualsSingleEmbeddingWithoutTokenTypeIds() {
+        assertBatchEmbeddingEqualsSingleEmbedding("src/test/models/onnx/transformer/dummy_embedding_model_without_type_ids.onnx", "");
+    }
+
+    private void assertBatchEmbeddingEqualsSingleEmbedding(String modelPath, String tokenTypeIds) {
+        var embedder = getBatchingEmbedder(modelPath, tokenTypeIds, 3);
+        var type = TensorType.fromSpec("tensor<float>(x[8])");
+        // Of different lengths, and more than the batch size, so they are split into batches padded to different lengths
+        var texts = List.of("This is a test string to embed",
+                            "Short",
+                            "A somewhat longer text, which has quite a few more tokens than the others",
+                            "Another text",
+                            "Yet another text to embed",
+                            "One",
+                            "Two words",
+                            "The quick brown fox jumps over the lazy dog");
+        var batched = embedder.embed(texts, new Embedder.Context("schema.indexing"), type);
+        assertEquals(texts.size(), batched.size());
+        for (int i = 0; i < texts.size(); i++)
+            assertEquals(embedder.embed(texts.get(i), new Embedder.Context("schema.indexing"), type), batched.get(i), texts.get(i));
+    }
+
     @Test
     public void testEmbedder() {
         var context = new Embedder.Context("schema.indexing");
@@ -177,6 +234,10 @@ public class HuggingFaceEmbedderTest {
     }
 
     private static HuggingFaceEmbedder getEmbedder() {
+        return getEmbedder(EmbeddingCache.disabled);
+    }
+
+    private static HuggingFaceEmbedder getEmbedder(EmbeddingCache cache) {
         String vocabPath = "src/test/models/onnx/transformer/real_tokenizer.json";
         String modelPath = "src/test/models/onnx/transformer/embedding_model.onnx";
         assumeTrue(OnnxRuntime.isRuntimeAvailable(modelPath));
@@ -184,8 +245,20 @@ public class HuggingFaceEmbedderTest {
         builder.tokenizerPath(ModelReference.valueOf(vocabPath));
         builder.transformerModel(ModelReference.valueOf(modelPath));
         builder.transformerGpuDevice(-1);
+        return new HuggingFaceEmbedder(new OnnxRuntime(), Embedder.Runtime.testInstance(), builder.build(), cache);
+    }
+    private static HuggingFaceEmbedder getBatchingEmbedder(String modelPath, String tokenTypeIds, int batchSize) {
+        String vocabPath = "src/test/models/onnx/transformer/real_tokenizer.json";
+        assumeTrue(OnnxRuntime.isRuntimeAvailable(modelPath));
+        HuggingFaceEmbedderConfig.Builder builder = new HuggingFaceEmbedderConfig.Builder();
+        builder.tokenizerPath(ModelReference.valueOf(vocabPath));
+        builder.transformerModel(ModelReference.valueOf(modelPath));
+        builder.transformerTokenTypeIds(tokenTypeIds);
+        builder.transformerBatchSize(batchSize);
+        builder.transformerGpuDevice(-1);
         return new HuggingFaceEmbedder(new OnnxRuntime(), Embedder.Runtime.testInstance(), builder.build());
     }
+
     private static HuggingFaceEmbedder getNormalizedEmbedder() {
         String vocabPath = "src/test/models/onnx/transformer/real_tokenizer.json";
         String modelPath = "src/test/models/onnx/transformer/embedding_model.onnx";
@@ -0,0 +1,148 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.rankingexpression.importer;
+
+import ai.vespa.rankingexpression.importer.lightgbm.LightGBMImporter;
+import ai.vespa.rankingexpression.importer.xgboost.XGBoostImporter;
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.ArrayContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
+import com.yahoo.searchlib.rankingexpression.evaluation.compilation.ExpressionCompiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the throughput of evaluating imported XGBoost and LightGBM models by interpretation,
+ * as GBDT forests, and with the remaining scalar subexpressions compiled by the ExpressionCompiler.
+ * The XGBoost model is a generated forest of the size of typical production models.
+ *
+ * @author agent
+ */
+public class GBDTEvaluationBenchmark {
+
+    private static final int inputCount = 1000;
+
+    public void run(int iterations) {
+        Path xgboostModel = xgboostModel(300, 6, 50);
+        try {
+            runModel("XGBoost, 300 trees of depth 6", () -> importXGBoost(xgboostModel.toString()), iterations);
+        }
+        finally {
+            xgboostModel.toFile().delete();
+        }
+        runModel("LightGBM regression", () -> importLightGBM("src/test/models/lightgbm/regression.json"), iterations);
+        runModel("LightGBM classification", () -> importLightGBM("src/test/models/lightgbm/classification.json"), iterations);
+    }
+
+    private void runModel(String name, Supplier<RankingExpression> model, int iterations) {
+        System.out.println(name + ":");
+        double interpreted = run("interpreted", model, null, iterations, Double.NaN);
+        run("GBDT optimized", model, new ExpressionOptimizer(), iterations, interpreted);
+        run("GBDT + compiled", model, compiler(), iterations, interpreted);
+    }
+
+    /** Runs the benchmark and returns the sum of the evaluation results, for validation */
+    private double run(String name, Supplier<RankingExpression> model, ExpressionOptimizer optimizer,
+                       int iterations, double expectedSum) {
+        RankingExpression expression = model.get();
+        ArrayContext prototype = new ArrayContext(expression, true, DoubleValue.NaN);
+        if (optimizer != null)
+            optimizer.optimize(expression, prototype);
+        List<ArrayContext> inputs = inputs(prototype);
+
+        double sum = 0;
+        for (int i = 0; i < iterations / 10; i++) // warmup
+            sum += expression.evaluate(inputs.get(i % inputCount)).asDouble();
+
+        sum = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sum += expression.evaluate(inputs.get(i % inputCount)).asDouble();
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        if ( ! Double.isNaN(expectedSum) && Math.abs(sum - expectedSum) > Math.abs(expectedSum) * 1e-9)
+            throw new IllegalStateException(name + " evaluation produced " + sum + " but expected " + expectedSum);
+        System.out.printf("  %-16s %,12.0f evaluations/s%n", name, iterations * 1e9 / elapsedNanos);
+        return sum;
+    }
+
+    private List<ArrayContext> inputs(ArrayContext prototype) {
+        Random random = new Random(1234);
+        List<ArrayContext> inputs = new ArrayList<>();
+        for (int i = 0; i < inputCount; i++) {
+            ArrayContext input = prototype.clone();
+            for (String feature : prototype.names()) {
+                if (random.nextDouble() < 0.9) // leave some missing
+                    input.put(feature, random.nextDouble());
+            }
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    private ExpressionOptimizer compiler() {
+        ExpressionOptimizer optimizer = new ExpressionOptimizer();
+        optimizer.getOptimizer(ExpressionCompiler.class).setEnabled(true);
+        return optimizer;
+    }
+
+    private RankingExpression importXGBoost(String path) {
+        return new XGBoostImporter().importModel("xgb", path).expressions().get("xgb");
+    }
+
+    private RankingExpression importLightGBM(String path) {
+        return new LightGBMImporter().importModel("lightgbm", path).expressions().get("lightgbm");
+    }
+
+    /** Writes an XGBoost model with random splits to a temporary file */
+    private Path xgboostModel(int trees, int depth, int features) {
+        Random random = new Random(5678);
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < trees; i++) {
+            int[] nextId = { 0 };
+            writeXGBoostNode(depth, features, random, nextId, json);
+            json.append(i < trees - 1 ? ",\n" : "\n");
+        }
+        json.append("]");
+        try {
+            Path file = Files.createTempFile("xgboost", ".json");
+            Files.writeString(file, json);
+            return file;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeXGBoostNode(int depth, int features, Random random, int[] nextId, StringBuilder json) {
+        int id = nextId[0]++;
+        if (depth == 0) {
+            json.append("{ \"nodeid\": ").append(id).append(", \"leaf\": ").append(random.nextDouble() - 0.5).append(" }");
+            return;
+        }
+        int yes = nextId[0];
+        StringBuilder children = new StringBuilder();
+        writeXGBoostNode(depth - 1, features, random, nextId, children);
+        children.append(", ");
+        int no = nextId[0];
+        writeXGBoostNode(depth - 1, features, random, nextId, children);
+        json.append("{ \"nodeid\": ").append(id)
+            .append(", \"split\": \"f").append(random.nextInt(features))
+            .append("\", \"split_condition\": ").append(random.nextDouble())
+            .append(", \"yes\": ").append(yes).append(", \"no\": ").append(no)
+            .append(", \"missing\": ").append(random.nextBoolean() ? yes : no)
+            .append(", \"children\": [ ").append(children).append(" ] }");
+    }
+
+    public static void main(String[] args) {
+        new GBDTEvaluationBenchmark().run(args.length > 0 ? Integer.parseInt(args[0]) : 1000 * 1000);
+    }
+
+}
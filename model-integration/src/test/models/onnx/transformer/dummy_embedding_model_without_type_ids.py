@@ -0,0 +1,39 @@
+# Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+
+import random
+import onnx
+from onnx import helper, TensorProto
+
+
+# A model without token type ids where the output for each token depends on all tokens not masked out,
+# such that padding which is not masked out changes the output: last_hidden_state = e + sum(e * mask)
+def main():
+    vocabulary_size = 16
+    embedding_size = 8
+    random.seed(17)
+    embeddings = [random.uniform(-1, 1) for _ in range(vocabulary_size * embedding_size)]
+
+    nodes = [
+        helper.make_node("Mod", ["input_ids", "vocab_size"], ["ids"], name="mod"),
+        helper.make_node("Gather", ["embeddings", "ids"], ["token_embeddings"], name="gather", axis=0),
+        helper.make_node("Cast", ["attention_mask"], ["mask"], name="cast", to=TensorProto.FLOAT),
+        helper.make_node("Unsqueeze", ["mask"], ["mask3"], name="unsqueeze", axes=[2]),
+        helper.make_node("Mul", ["token_embeddings", "mask3"], ["masked"], name="mul"),
+        helper.make_node("ReduceSum", ["masked"], ["context"], name="sum", axes=[1], keepdims=1),
+        helper.make_node("Add", ["token_embeddings", "context"], ["last_hidden_state"], name="add"),
+    ]
+    graph = helper.make_graph(
+        nodes,
+        "dummy_embedding_model_without_type_ids",
+        [helper.make_tensor_value_info("input_ids", TensorProto.INT64, ["batch", "tokens"]),
+         helper.make_tensor_value_info("attention_mask", TensorProto.INT64, ["batch", "tokens"])],
+        [helper.make_tensor_value_info("last_hidden_state", TensorProto.FLOAT, ["batch", "tokens", embedding_size])],
+        [helper.make_tensor("vocab_size", TensorProto.INT64, [], [vocabulary_size]),
+         helper.make_tensor("embeddings", TensorProto.FLOAT, [vocabulary_size, embedding_size], embeddings)])
+    model = helper.make_model(graph, producer_name="vespa", opset_imports=[helper.make_opsetid("", 12)])
+    model.ir_version = 7
+    onnx.save(model, "dummy_embedding_model_without_type_ids.onnx")
+
+
+if __name__ == "__main__":
+    main()
@@ -2,6 +2,7 @@
 package com.yahoo.searchlib.rankingexpression.evaluation;
 
 import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.compilation.ExpressionCompiler;
 import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForestOptimizer;
 import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTOptimizer;
 import com.yahoo.searchlib.rankingexpression.evaluation.tensoroptimization.TensorOptimizer;
@@ -32,12 +33,15 @@ import com.yahoo.searchlib.rankingexpression.evaluation.tensoroptimization.Tenso
  */
 public class ExpressionOptimizer {
 
+    private final ExpressionCompiler expressionCompiler = new ExpressionCompiler();
     private final GBDTOptimizer gbdtOptimizer = new GBDTOptimizer();
     private final GBDTForestOptimizer gbdtForestOptimizer = new GBDTForestOptimizer();
     private final TensorOptimizer tensorOptimizer = new TensorOptimizer();
 
     /** Gets an optimizer instance used by this by class name, or null if the optimizer is not known */
     public Optimizer getOptimizer(Class<?> clazz) {
+        if (clazz == expressionCompiler.getClass())
+            return expressionCompiler;
         if (clazz == gbdtOptimizer.getClass())
             return gbdtOptimizer;
         if (clazz == gbdtForestOptimizer.getClass())
@@ -48,10 +52,22 @@ public class ExpressionOptimizer {
     }
 
     public OptimizationReport optimize(RankingExpression expression, ContextIndex contextIndex) {
+        return optimize(expression, contextIndex, expressionCompiler.isEnabled());
+    }
+
+    /**
+     * Optimizes the given expression.
+     *
+     * @param compile whether to compile the scalar subexpressions of this, regardless of whether
+     *                the {@link ExpressionCompiler} of this is enabled
+     */
+    public OptimizationReport optimize(RankingExpression expression, ContextIndex contextIndex, boolean compile) {
         OptimizationReport report = new OptimizationReport();
         // Note: Order of optimizations matter
         gbdtOptimizer.optimize(expression, contextIndex, report);
         gbdtForestOptimizer.optimize(expression, contextIndex, report);
+        if (compile)
+            expressionCompiler.compile(expression, contextIndex, report);
         tensorOptimizer.optimize(expression, contextIndex, report);
         return report;
     }
@@ -0,0 +1,68 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.compilation;
+
+import com.yahoo.searchlib.rankingexpression.Reference;
+import com.yahoo.searchlib.rankingexpression.evaluation.Context;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
+import com.yahoo.searchlib.rankingexpression.rule.CompositeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.SerializationContext;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.TypeContext;
+
+import java.util.Deque;
+
+/**
+ * A scalar subexpression compiled by the {@link ExpressionCompiler}.
+ * This is evaluated by the compiled code, unless the context returns a value which is not a scalar
+ * for some variable, in which case this falls back to evaluating the original subexpression from then on.
+ *
+ * @author agent
+ */
+public final class CompiledNode extends ExpressionNode {
+
+    private final ExpressionNode original;
+    private final ExpressionCompiler.Code code;
+
+    /** Set when the compiled code has failed to evaluate in some context, after which the original is used */
+    private volatile boolean interpret = false;
+
+    CompiledNode(ExpressionNode original, ExpressionCompiler.Code code) {
+        this.original = original;
+        this.code = code;
+    }
+
+    /** Returns the expression this is compiled from */
+    public ExpressionNode original() { return original; }
+
+    /** Returns whether this has fallen back to evaluating the original expression */
+    public boolean isInterpreted() { return interpret; }
+
+    @Override
+    public TensorType type(TypeContext<Reference> context) { return original.type(context); }
+
+    @Override
+    public Value evaluate(Context context) {
+        if ( ! interpret) {
+            try {
+                return new DoubleValue(code.evaluate(context));
+            }
+            catch (UnsupportedOperationException e) { // Some variable does not have a double value
+                interpret = true;
+            }
+        }
+        return original.evaluate(context);
+    }
+
+    /** Returns the original expression */
+    @Override
+    public StringBuilder toString(StringBuilder string, SerializationContext context, Deque<String> path, CompositeNode parent) {
+        return original.toString(string, context, path, parent);
+    }
+
+    /** Returns the hash code of the original expression, as this is equal to it */
+    @Override
+    public int hashCode() { return original.hashCode(); }
+
+}
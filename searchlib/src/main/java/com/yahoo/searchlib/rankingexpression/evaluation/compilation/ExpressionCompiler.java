@@ -0,0 +1,374 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.compilation;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.Context;
+import com.yahoo.searchlib.rankingexpression.evaluation.ContextIndex;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleCompatibleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.OptimizationReport;
+import com.yahoo.searchlib.rankingexpression.evaluation.Optimizer;
+import com.yahoo.searchlib.rankingexpression.evaluation.StringValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForestNode;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTNode;
+import com.yahoo.searchlib.rankingexpression.rule.CompositeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.EmbracedNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.Function;
+import com.yahoo.searchlib.rankingexpression.rule.FunctionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.NegativeNode;
+import com.yahoo.searchlib.rankingexpression.rule.NotNode;
+import com.yahoo.searchlib.rankingexpression.rule.OperationNode;
+import com.yahoo.searchlib.rankingexpression.rule.Operator;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.searchlib.rankingexpression.rule.SetMembershipNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Compiles the scalar subexpressions of an expression, such as GBDT forests and arithmetic over features,
+ * to trees of closures which compute primitive doubles directly from a fast lookup context.
+ * This avoids creating a value object for each node, and the generic dispatch over value types the
+ * interpreter must do, while subexpressions containing anything else, such as tensors, are left to be interpreted.
+ * Trees already optimized to GBDT nodes are evaluated as part of the compiled code, which is
+ * useful e.g. when the forest is an argument to a function.
+ * Compiled expressions <b>must</b> be evaluated using a context implementing {@link ContextIndex}
+ * created from the expression before it was optimized.
+ *
+ * <p>This is disabled by default.</p>
+ *
+ * @author agent
+ */
+public class ExpressionCompiler extends Optimizer {
+
+    public ExpressionCompiler() {
+        setEnabled(false);
+    }
+
+    /**
+     * Replaces each maximal scalar subexpression of the given expression by a {@link CompiledNode}.
+     *
+     * @param expression the expression to destructively optimize
+     * @param context    a fast lookup context created from the given expression
+     * @param report     the optimization report to which actions of this is logged
+     */
+    @Override
+    public void optimize(RankingExpression expression, ContextIndex context, OptimizationReport report) {
+        if ( ! isEnabled()) return;
+        compile(expression, context, report);
+    }
+
+    /**
+     * Replaces each maximal scalar subexpression of the given expression by a {@link CompiledNode},
+     * whether or not this is enabled.
+     * Expressions which are just a GBDT forest are left as-is, as forest nodes already evaluate
+     * without creating values, so compiling them only adds a level of indirection.
+     *
+     * @param expression the expression to destructively optimize
+     * @param context    a fast lookup context created from the given expression
+     * @param report     the optimization report to which actions of this is logged
+     */
+    public void compile(RankingExpression expression, ContextIndex context, OptimizationReport report) {
+        if (expression.getRoot() instanceof GBDTForestNode) return;
+
+        expression.setRoot(findAndCompile(expression.getRoot(), context, report));
+        report.note("Expression compilation done");
+    }
+
+    /**
+     * Compiles this node if possible, and otherwise its children.
+     * This only descends into nodes whose children are evaluated in the same context as the node itself.
+     */
+    private ExpressionNode findAndCompile(ExpressionNode node, ContextIndex context, OptimizationReport report) {
+        if ( ! isOperation(node)) return node;
+
+        Code code = compile(node, context);
+        if (code != null) {
+            report.incMetric("Compiled subexpressions", 1);
+            return new CompiledNode(node, code);
+        }
+        var composite = (CompositeNode)node;
+        List<ExpressionNode> children = new ArrayList<>();
+        for (ExpressionNode child : composite.children())
+            children.add(findAndCompile(child, context, report));
+        return composite.setChildren(children);
+    }
+
+    private boolean isOperation(ExpressionNode node) {
+        return node instanceof OperationNode || node instanceof IfNode || node instanceof FunctionNode ||
+               node instanceof EmbracedNode || node instanceof NegativeNode || node instanceof NotNode ||
+               node instanceof SetMembershipNode;
+    }
+
+    /** Returns the compiled code computing the value of the given node, or null if it is not scalar */
+    private Code compile(ExpressionNode node, ContextIndex context) {
+        if (node instanceof ConstantNode constant) {
+            Double value = constantValue(constant);
+            if (value == null) return null;
+            double v = value;
+            return c -> v;
+        }
+        if (node instanceof ReferenceNode reference) {
+            Integer index = indexOf(reference, context);
+            if (index == null) return null;
+            int i = index;
+            return c -> c.getDouble(i);
+        }
+        if (node instanceof GBDTNode tree) {
+            double[] values = tree.values();
+            return c -> GBDTNode.evaluate(values, 0, c);
+        }
+        if (node instanceof GBDTForestNode forest) {
+            double[] values = forest.values();
+            return c -> GBDTForestNode.evaluate(values, c);
+        }
+        if (node instanceof EmbracedNode embraced) {
+            return compile(embraced.getValue(), context);
+        }
+        if (node instanceof NegativeNode negative) {
+            Code value = compile(negative.getValue(), context);
+            if (value == null) return null;
+            return c -> - value.evaluate(c);
+        }
+        if (node instanceof FunctionNode function) {
+            return compileFunction(function, context);
+        }
+        if (node instanceof IfNode ifNode) {
+            Condition condition = compileCondition(ifNode.getCondition(), context);
+            Code trueValue = compile(ifNode.getTrueExpression(), context);
+            Code falseValue = compile(ifNode.getFalseExpression(), context);
+            if (condition == null || trueValue == null || falseValue == null) return null;
+            return c -> condition.test(c) ? trueValue.evaluate(c) : falseValue.evaluate(c);
+        }
+        if (node instanceof NotNode || node instanceof SetMembershipNode || isBooleanOperation(node)) {
+            Condition condition = compileCondition(node, context);
+            if (condition == null) return null;
+            return c -> condition.test(c) ? 1 : 0;
+        }
+        if (node instanceof OperationNode operation) {
+            return compileOperation(operation, context);
+        }
+        return null;
+    }
+
+    private Code compileFunction(FunctionNode node, ContextIndex context) {
+        Function function = node.getFunction();
+        List<ExpressionNode> arguments = node.children();
+        if (arguments.isEmpty()) {
+            double v = function.evaluate(0, 0);
+            return c -> v;
+        }
+        Code x = compile(arguments.get(0), context);
+        if (x == null) return null;
+        if (arguments.size() == 1)
+            return c -> function.evaluate(x.evaluate(c), 0);
+        Code y = compile(arguments.get(1), context);
+        if (y == null) return null;
+        return c -> function.evaluate(x.evaluate(c), y.evaluate(c));
+    }
+
+    /** Compiles a sequence of binary operations, applied in precedence order as in OperationNode */
+    private Code compileOperation(OperationNode node, ContextIndex context) {
+        List<Code> children = new ArrayList<>();
+        for (ExpressionNode child : node.children()) {
+            Code code = compile(child, context);
+            if (code == null) return null;
+            children.add(code);
+        }
+
+        if (node.operators().stream().allMatch(operator -> operator == Operator.plus)) { // e.g. a GBDT forest
+            Code[] terms = children.toArray(new Code[0]);
+            return c -> {
+                double sum = 0;
+                for (Code term : terms)
+                    sum += term.evaluate(c);
+                return sum;
+            };
+        }
+
+        Deque<Item> stack = new ArrayDeque<>();
+        stack.push(new Item(null, children.get(0)));
+        for (int i = 0; i < node.operators().size(); i++) {
+            Operator operator = node.operators().get(i);
+            while (stack.size() > 1 && ! operator.hasPrecedenceOver(stack.peek().operator))
+                if ( ! pop(stack)) return null;
+            stack.push(new Item(operator, children.get(i + 1)));
+        }
+        while (stack.size() > 1)
+            if ( ! pop(stack)) return null;
+        return stack.getFirst().code;
+    }
+
+    /** Combines the two topmost items on the stack. Returns false if this is not possible. */
+    private boolean pop(Deque<Item> stack) {
+        Item right = stack.pop();
+        Item left = stack.peek();
+        left.code = combine(left.code, right.operator, right.code);
+        return left.code != null;
+    }
+
+    private Code combine(Code x, Operator operator, Code y) {
+        switch (operator) {
+            case plus -> { return c -> x.evaluate(c) + y.evaluate(c); }
+            case minus -> { return c -> x.evaluate(c) - y.evaluate(c); }
+            case multiply -> { return c -> x.evaluate(c) * y.evaluate(c); }
+            case divide -> { return c -> x.evaluate(c) / y.evaluate(c); }
+            case modulo -> { return c -> x.evaluate(c) % y.evaluate(c); }
+            case power -> { return c -> Math.pow(x.evaluate(c), y.evaluate(c)); }
+        }
+        Condition condition = compare(x, operator, y);
+        if (condition == null) return null;
+        return c -> condition.test(c) ? 1 : 0;
+    }
+
+    /** Returns the compiled code testing whether the given node evaluates to true, or null if it is not scalar */
+    private Condition compileCondition(ExpressionNode node, ContextIndex context) {
+        if (node instanceof EmbracedNode embraced) {
+            return compileCondition(embraced.getValue(), context);
+        }
+        if (node instanceof NotNode not) {
+            Condition value = compileCondition(not.getValue(), context);
+            if (value == null) return null;
+            return c -> ! value.test(c);
+        }
+        if (node instanceof SetMembershipNode setMembership) {
+            return compileSetMembership(setMembership, context);
+        }
+        if (isBooleanOperation(node)) {
+            OperationNode operation = (OperationNode)node;
+            Operator operator = operation.operators().get(0);
+            ExpressionNode left = operation.children().get(0);
+            ExpressionNode right = operation.children().get(1);
+            if (operator == Operator.and || operator == Operator.or) {
+                Condition x = compileCondition(left, context);
+                Condition y = compileCondition(right, context);
+                if (x == null || y == null) return null;
+                return operator == Operator.and ? c -> x.test(c) && y.test(c) : c -> x.test(c) || y.test(c);
+            }
+            Code x = compile(left, context);
+            if (x == null) return null;
+            if (right instanceof ConstantNode constant && constantValue(constant) != null) { // e.g. a GBDT condition
+                return compare(x, operator, constantValue(constant));
+            }
+            Code y = compile(right, context);
+            if (y == null) return null;
+            return compare(x, operator, y);
+        }
+        Code value = compile(node, context);
+        if (value == null) return null;
+        return c -> value.evaluate(c) != 0;
+    }
+
+    /** Returns a condition comparing the values of x and y, or null if the operator is not supported */
+    private Condition compare(Code x, Operator operator, Code y) {
+        return switch (operator) {
+            case or -> c -> x.evaluate(c) != 0 || y.evaluate(c) != 0;
+            case and -> c -> x.evaluate(c) != 0 && y.evaluate(c) != 0;
+            case largerOrEqual -> c -> x.evaluate(c) >= y.evaluate(c);
+            case larger -> c -> x.evaluate(c) > y.evaluate(c);
+            case smallerOrEqual -> c -> x.evaluate(c) <= y.evaluate(c);
+            case smaller -> c -> x.evaluate(c) < y.evaluate(c);
+            case notEqual -> c -> x.evaluate(c) != y.evaluate(c);
+            case equal -> c -> x.evaluate(c) == y.evaluate(c);
+            default -> null; // approxEqual, and operators which are not conditions
+        };
+    }
+
+    /** Returns a condition comparing the value of x to a constant, or null if the operator is not supported */
+    private Condition compare(Code x, Operator operator, double y) {
+        return switch (operator) {
+            case or -> c -> x.evaluate(c) != 0 || y != 0;
+            case and -> c -> x.evaluate(c) != 0 && y != 0;
+            case largerOrEqual -> c -> x.evaluate(c) >= y;
+            case larger -> c -> x.evaluate(c) > y;
+            case smallerOrEqual -> c -> x.evaluate(c) <= y;
+            case smaller -> c -> x.evaluate(c) < y;
+            case notEqual -> c -> x.evaluate(c) != y;
+            case equal -> c -> x.evaluate(c) == y;
+            default -> null;
+        };
+    }
+
+    /** Compiles membership tests of a variable in a set of constants, e.g. a GBDT condition on categories */
+    private Condition compileSetMembership(SetMembershipNode node, ContextIndex context) {
+        if ( ! (node.getTestValue() instanceof ReferenceNode)) return null;
+        Code value = compile(node.getTestValue(), context);
+        if (value == null) return null;
+
+        double[] set = new double[node.getSetValues().size()];
+        for (int i = 0; i < set.length; i++) {
+            if ( ! (node.getSetValues().get(i) instanceof ConstantNode constant)) return null;
+            Value setValue = constant.getValue();
+            if ( ! (setValue instanceof DoubleCompatibleValue || setValue instanceof StringValue)) return null;
+            set[i] = setValue.asDouble(); // strings are compared by their hash, as in StringValue
+        }
+        return c -> {
+            double v = value.evaluate(c);
+            for (double setValue : set)
+                if (v == setValue) return true;
+            return false;
+        };
+    }
+
+    private boolean isBooleanOperation(ExpressionNode node) {
+        if ( ! (node instanceof OperationNode operation)) return false;
+        if (operation.operators().size() != 1) return false;
+        return switch (operation.operators().get(0)) {
+            case or, and, largerOrEqual, larger, smallerOrEqual, smaller, notEqual, equal -> true;
+            default -> false;
+        };
+    }
+
+    private Double constantValue(ConstantNode node) {
+        if ( ! (node.getValue() instanceof DoubleCompatibleValue value)) return null;
+        return value.asDouble();
+    }
+
+    private Integer indexOf(ReferenceNode reference, ContextIndex context) {
+        try {
+            return context.getIndex(reference.toString());
+        }
+        catch (RuntimeException e) { // Not known to the context
+            return null;
+        }
+    }
+
+    /** Compiled code computing the value of a scalar expression */
+    @FunctionalInterface
+    interface Code {
+
+        /**
+         * Returns the value of the compiled expression in the given context.
+         *
+         * @throws UnsupportedOperationException if the context contains a variable which is not a scalar
+         */
+        double evaluate(Context context);
+
+    }
+
+    /** Compiled code testing whether a scalar expression is true */
+    @FunctionalInterface
+    private interface Condition {
+
+        boolean test(Context context);
+
+    }
+
+    private static class Item {
+
+        final Operator operator;
+        Code code;
+
+        Item(Operator operator, Code code) {
+            this.operator = operator;
+            this.code = code;
+        }
+
+    }
+
+}
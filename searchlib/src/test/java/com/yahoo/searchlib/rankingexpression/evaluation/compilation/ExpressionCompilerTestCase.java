@@ -0,0 +1,156 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.compilation;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.ArrayContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.Context;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
+import com.yahoo.searchlib.rankingexpression.evaluation.MapContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.OptimizationReport;
+import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForestNode;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTOptimizer;
+import com.yahoo.searchlib.rankingexpression.parser.ParseException;
+import com.yahoo.searchlib.rankingexpression.rule.OperationNode;
+import com.yahoo.searchlib.rankingexpression.rule.TensorFunctionNode;
+import com.yahoo.tensor.Tensor;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class ExpressionCompilerTestCase {
+
+    private static final List<String> expressions =
+            List.of("a + b * c - d / 2",
+                    "a * b + c ^ 2 ^ 0.5 - a % 3 + (a - b) * (c - d)",
+                    "-(a - b) * (c + 1) + -a",
+                    "if (a < 0.5, b, if (c >= 1, -a, 2)) + if (!(b >= 0.3), 1, 0) + if (d == 2, 3, 4)",
+                    "if (a in [1, 2, 3], 10, 20) + max(a, b) + sqrt(c) + sigmoid(d) + fmod(c, 2) + isNan(d)",
+                    "(a > b && c <= d) + (a != 1 || !b) + (a + b < c * d) + (d > 1)",
+                    "if (a, b, c) + if (a - b, c, d)");
+
+    private static final List<double[]> inputs =
+            List.of(new double[] { 0, 0, 0, 0 },
+                    new double[] { 1, 2, 3, 4 },
+                    new double[] { 0.4, 0.2, 1.5, 2 },
+                    new double[] { 3, -1, 0.5, -7.5 },
+                    new double[] { 2, 2, 100, Double.NaN }); // NaN means not set
+
+    @Test
+    public void testCompiledEvaluationEqualsInterpretation() throws ParseException {
+        for (String expressionString : expressions) {
+            RankingExpression expression = new RankingExpression(expressionString);
+            ArrayContext prototype = new ArrayContext(expression, true, DoubleValue.NaN);
+            ExpressionOptimizer optimizer = compiler();
+            optimizer.getOptimizer(GBDTOptimizer.class).setEnabled(false); // compile the trees instead
+            OptimizationReport report = optimizer.optimize(expression, prototype);
+            assertEquals(expressionString, 1, report.getMetric("Compiled subexpressions"));
+            assertTrue(expression.getRoot() instanceof CompiledNode);
+            assertEquals(new RankingExpression(expressionString).toString(), expression.toString());
+
+            for (double[] input : inputs) {
+                MapContext interpreted = new MapContext(DoubleValue.NaN);
+                ArrayContext compiled = prototype.clone();
+                bind(input, interpreted);
+                bind(input, compiled);
+                assertEquals(expressionString + " with " + interpreted,
+                             new RankingExpression(expressionString).evaluate(interpreted).asDouble(),
+                             expression.evaluate(compiled).asDouble(),
+                             0.0000001);
+            }
+            assertFalse(((CompiledNode)expression.getRoot()).isInterpreted());
+        }
+    }
+
+    @Test
+    public void testGBDTNodesAreCompiled() throws ParseException {
+        RankingExpression expression = new RankingExpression("if (a < 2, 1, 2) + if (b < 1, 3, 4) + c * 2");
+        ArrayContext context = new ArrayContext(expression, DoubleValue.NaN);
+        OptimizationReport report = compiler().optimize(expression, context);
+        assertEquals(2, report.getMetric("Optimized GDBT trees"));
+        assertEquals(1, report.getMetric("Compiled subexpressions"));
+        assertTrue(expression.getRoot() instanceof CompiledNode);
+
+        context.put("a", 1);
+        context.put("b", 0);
+        context.put("c", 2);
+        assertEquals(8.0, expression.evaluate(context).asDouble(), 0.0000001);
+    }
+
+    @Test
+    public void testOnlyScalarSubexpressionsAreCompiled() throws ParseException {
+        RankingExpression expression = new RankingExpression("sum(t * 2) + if (a < 2, a * b, 3)");
+        ArrayContext context = new ArrayContext(expression, DoubleValue.NaN);
+        OptimizationReport report = compiler().optimize(expression, context);
+        assertEquals(1, report.getMetric("Compiled subexpressions"));
+        OperationNode root = (OperationNode)expression.getRoot();
+        assertTrue(root.children().get(0) instanceof TensorFunctionNode);
+        assertTrue(root.children().get(1) instanceof CompiledNode);
+
+        context.put("t", new TensorValue(Tensor.from("tensor(x[2]):[1, 2]")));
+        context.put("a", 1);
+        context.put("b", 5);
+        assertEquals(11.0, expression.evaluate(context).asDouble(), 0.0000001);
+    }
+
+    @Test
+    public void testFallsBackToInterpretationOfNonScalars() throws ParseException {
+        RankingExpression expression = new RankingExpression("a * 2 + 1");
+        ArrayContext context = new ArrayContext(expression, DoubleValue.NaN);
+        compiler().optimize(expression, context);
+        CompiledNode compiled = (CompiledNode)expression.getRoot();
+
+        context.put("a", new TensorValue(Tensor.from("tensor(x[2]):[1, 2]")));
+        assertEquals(Tensor.from("tensor(x[2]):[3, 5]"), expression.evaluate(context).asTensor());
+        assertTrue(compiled.isInterpreted());
+
+        context.put("a", 3);
+        assertEquals(7.0, expression.evaluate(context).asDouble(), 0.0000001);
+    }
+
+    @Test
+    public void testCompilationIsDisabledByDefault() throws ParseException {
+        RankingExpression expression = new RankingExpression("a * 2 + 1");
+        new ExpressionOptimizer().optimize(expression, new ArrayContext(expression));
+        assertTrue(expression.getRoot() instanceof OperationNode);
+    }
+
+    @Test
+    public void testCompilationCanBeRequestedExplicitly() throws ParseException {
+        RankingExpression expression = new RankingExpression("a * 2 + 1");
+        ExpressionOptimizer optimizer = new ExpressionOptimizer();
+        optimizer.optimize(expression, new ArrayContext(expression), true);
+        assertTrue(expression.getRoot() instanceof CompiledNode);
+        assertFalse(optimizer.getOptimizer(ExpressionCompiler.class).isEnabled());
+    }
+
+    @Test
+    public void testForestsAreNotCompiled() throws ParseException {
+        RankingExpression expression = new RankingExpression("if (a < 2, 1, 2) + if (b < 1, 3, 4)");
+        ArrayContext context = new ArrayContext(expression, DoubleValue.NaN);
+        compiler().optimize(expression, context);
+        assertTrue(expression.getRoot() instanceof GBDTForestNode);
+    }
+
+    private ExpressionOptimizer compiler() {
+        ExpressionOptimizer optimizer = new ExpressionOptimizer();
+        optimizer.getOptimizer(ExpressionCompiler.class).setEnabled(true);
+        return optimizer;
+    }
+
+    private void bind(double[] input, Context context) {
+        for (int i = 0; i < input.length; i++) {
+            if ( ! Double.isNaN(input[i]))
+                context.put(String.valueOf((char)('a' + i)), input[i]);
+        }
+    }
+
+}
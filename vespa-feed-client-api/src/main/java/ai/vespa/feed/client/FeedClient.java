@@ -6,6 +6,8 @@ import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * Asynchronous feed client accepting document operations as JSON. The payload should be
  * the same as the HTTP payload required by the /document/v1 HTTP API, i.e., <pre>
@@ -33,6 +35,22 @@ public interface FeedClient extends Closeable {
      */
     CompletableFuture<Result> update(DocumentId documentId, String updateJson, OperationParameters params);
 
+    /**
+     * Same as {@link #put(DocumentId, String, OperationParameters)}, but with the document JSON as UTF-8 bytes,
+     * which implementations may send as they are, without decoding them first.
+     */
+    default CompletableFuture<Result> put(DocumentId documentId, byte[] documentJson, OperationParameters params) {
+        return put(documentId, new String(documentJson, UTF_8), params);
+    }
+
+    /**
+     * Same as {@link #update(DocumentId, String, OperationParameters)}, but with the update JSON as UTF-8 bytes,
+     * which implementations may send as they are, without decoding them first.
+     */
+    default CompletableFuture<Result> update(DocumentId documentId, byte[] updateJson, OperationParameters params) {
+        return update(documentId, new String(updateJson, UTF_8), params);
+    }
+
     /**
      * Send a document remove with the given parameters, returning a future with the result of the operation.
      * Exceptional completion will use be an instance of {@link FeedException} or one of its sub-classes.
@@ -152,6 +152,32 @@ public interface FeedClientBuilder {
 
     enum Compression { auto, none, gzip }
 
+    /**
+     * What format to send document operations in; default {@code json}.
+     * CBOR has the same structure as the JSON document format, but is cheaper for the server to parse.
+     */
+    FeedClientBuilder setBodyFormat(BodyFormat format);
+
+    enum BodyFormat { json, cbor }
+
+    /**
+     * Whether to send document operations in long-lived feed streams, one per connection, instead of as separate
+     * HTTP requests; default {@code false}. Responses to the operations in a stream are returned as they complete,
+     * in the response of the stream. This requires a server which supports feed streams.
+     * Request headers are sent with each stream, and a stream is replaced by a new one when a header value changes.
+     */
+    FeedClientBuilder setStreaming(boolean streaming);
+
+    /**
+     * How to adjust the number of operations in flight to the throughput of the cluster; default {@code dynamic}.
+     * {@code dynamic} samples throughput at varying numbers of operations in flight, and keeps close to the best;
+     * {@code gradient} keeps a small, stable queue of operations at the server, estimated from operation latency,
+     * which settles close to the lowest number of operations in flight which saturates the cluster.
+     */
+    FeedClientBuilder setThrottling(Throttling throttling);
+
+    enum Throttling { dynamic, gradient }
+
     /** Constructs instance of {@link FeedClient} from builder configuration */
     FeedClient build();
 
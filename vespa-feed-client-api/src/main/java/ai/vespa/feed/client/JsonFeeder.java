@@ -14,6 +14,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -47,12 +54,14 @@ public class JsonFeeder implements Closeable {
     });
     private final FeedClient client;
     private final OperationParameters protoParameters;
+    private final int parserThreads;
     private final AtomicInteger globalInflightOperations = new AtomicInteger(0);
     private volatile boolean closed = false;
 
-    private JsonFeeder(FeedClient client, OperationParameters protoParameters) {
+    private JsonFeeder(FeedClient client, OperationParameters protoParameters, int parserThreads) {
         this.client = client;
         this.protoParameters = protoParameters;
+        this.parserThreads = parserThreads;
     }
 
     public interface ResultCallback {
@@ -132,6 +141,8 @@ public class JsonFeeder implements Closeable {
      *     ]
      * </pre>
      * Note that {@code "id"} is an alias for the document put operation.
+     * The operations may also be given as a sequence of objects without the enclosing array, e.g., as JSONL.
+     * Operations are sent in the order they appear in the stream, also when parsed by multiple threads.
      * Exceptional completion will use be an instance of {@link FeedException} or one of its sub-classes.
      * The input stream will be closed upon exhaustion, or error.
      */
@@ -153,8 +164,9 @@ public class JsonFeeder implements Closeable {
         CompletableFuture<Result> result;
         AtomicInteger localInflightOperations = new AtomicInteger(1); // The below dispatch loop itself is counted as a single pending operation
         AtomicBoolean finalCallbackInvoked = new AtomicBoolean();
-        try (RingBufferStream buffer = new RingBufferStream(jsonStream, size)) {
-            while ((result = buffer.next()) != null) {
+        try (OperationStream operations = parserThreads > 1 ? new ParallelOperationStream(jsonStream, parserThreads)
+                                                            : new RingBufferStream(jsonStream, size)) {
+            while ((result = operations.next()) != null) {
                 localInflightOperations.incrementAndGet();
                 globalInflightOperations.incrementAndGet();
                 result.whenCompleteAsync((r, t) -> {
@@ -229,7 +241,15 @@ public class JsonFeeder implements Closeable {
         return new FeedException(e);
     }
 
-    private class RingBufferStream extends InputStream {
+    /** A stream of operations which are dispatched to the client as they are read */
+    private interface OperationStream extends Closeable {
+
+        /** Dispatches the next operation, and returns its result, or returns null if there are no more operations */
+        CompletableFuture<Result> next() throws IOException;
+
+    }
+
+    private class RingBufferStream extends InputStream implements OperationStream {
 
         private final byte[] b = new byte[1];
         private final InputStream in;
@@ -289,6 +309,7 @@ public class JsonFeeder implements Closeable {
             }
         }
 
+        @Override
         public CompletableFuture<Result> next() throws IOException {
            return parserAndExecutor.next();
         }
@@ -312,17 +333,16 @@ public class JsonFeeder implements Closeable {
             lock.notify();
         }
 
-        private final byte[] prefix = "{\"fields\":".getBytes(UTF_8);
         private byte[] copy(long start, long end) {
             int length = (int) (end - start);
-            byte[] buffer = new byte[prefix.length + length + 1];
-            System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+            byte[] buffer = new byte[fieldsPrefix.length + length + 1];
+            System.arraycopy(fieldsPrefix, 0, buffer, 0, fieldsPrefix.length);
 
             int offset = (int) (start % size);
             int toWrite = min(length, size - offset);
-            System.arraycopy(data, offset, buffer, prefix.length, toWrite);
+            System.arraycopy(data, offset, buffer, fieldsPrefix.length, toWrite);
             if (toWrite < length)
-                System.arraycopy(data, 0, buffer, prefix.length + toWrite, length - toWrite);
+                System.arraycopy(data, 0, buffer, fieldsPrefix.length + toWrite, length - toWrite);
 
             buffer[buffer.length - 1] = '}';
             return buffer;
@@ -376,8 +396,8 @@ public class JsonFeeder implements Closeable {
             RingBufferBackedOperationParserAndExecutor(JsonParser parser) { super(parser, true); }
 
             @Override
-            String getDocumentJson(long start, long end) {
-                String payload = new String(copy(start, end), UTF_8);
+            byte[] getDocumentJson(long start, long end) {
+                byte[] payload = copy(start, end);
                 synchronized (lock) {
                     tail = end;
                     lock.notify();
@@ -387,19 +407,267 @@ public class JsonFeeder implements Closeable {
         }
     }
 
+    /**
+     * Splits the stream into chunks of whole operations, which are parsed by a pool of threads, while the parsed
+     * operations are dispatched in the order they appear in the stream, so operations to the same document are
+     * still sent in order. Operations are delimited by a simple scan for brackets outside strings, either as the
+     * elements of a top-level array, or as a sequence of top-level objects, and each is then parsed separately.
+     * Up to a fixed number of chunks are read ahead of the operation which is dispatched.
+     */
+    private class ParallelOperationStream implements OperationStream {
+
+        private static final int blockSize = 1 << 23;
+        private static final int chunkSize = 1 << 20;
+
+        private final InputStream in;
+        private final ExecutorService parsers;
+        private final int maxParsing;
+        private final Deque<CompletableFuture<Chunk>> parsing = new ArrayDeque<>();
+        private Iterator<Operation> operations = Collections.emptyIterator();
+        private Exception failure = null;
+
+        // Scanning state
+        private byte[] block = new byte[blockSize];
+        private long blockOffset = 0;    // Offset of the current block in the stream.
+        private int filled = 0;          // Number of bytes read into the current block.
+        private int position = 0;        // Position of the next byte to scan in the current block.
+        private int operationStart = -1; // Start of the operation being scanned, or -1 when between operations.
+        private int operationDepth = -1; // Nesting depth of operations: 1 in an array, 0 otherwise, and -1 until known.
+        private int depth = 0;
+        private boolean inString = false;
+        private boolean escaped = false;
+        private boolean scanned = false;
+
+        ParallelOperationStream(InputStream in, int threads) {
+            this.in = in;
+            this.parsers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "json-feeder-parser");
+                t.setDaemon(true);
+                return t;
+            });
+            this.maxParsing = 4 * threads;
+        }
+
+        @Override
+        public CompletableFuture<Result> next() throws IOException {
+            while ( ! operations.hasNext()) {
+                if (failure instanceof IOException) throw (IOException) failure;
+                if (failure != null) throw (RuntimeException) failure;
+
+                while ( ! scanned && parsing.size() < maxParsing) {
+                    Chunk chunk = scan();
+                    if (chunk != null) parsing.add(CompletableFuture.supplyAsync(() -> parse(chunk), parsers));
+                }
+                if (parsing.isEmpty()) return null;
+
+                Chunk chunk = parsing.poll().join();
+                operations = chunk.operations.iterator();
+                failure = chunk.failure;
+            }
+            return operations.next().dispatch();
+        }
+
+        /** Parses the operations of the given chunk, stopping at the first which fails */
+        private Chunk parse(Chunk chunk) {
+            for (int i = 0; i < chunk.count; i++) {
+                int start = chunk.starts[i], length = chunk.ends[i] - start;
+                try {
+                    chunk.operations.add(new SingleOperationParserAndExecutor(chunk.data, start, length).parse());
+                }
+                catch (IOException | RuntimeException e) {
+                    chunk.failure = new OperationParseException("Failed to parse operation at offset " + (chunk.offset + start) +
+                                                                ": " + e.getMessage(), e);
+                    break;
+                }
+            }
+            chunk.data = null;
+            return chunk;
+        }
+
+        /**
+         * Scans the stream for whole operations until they fill a chunk, the current block is full, or the stream ends,
+         * and returns the chunk, or null if there were no more operations.
+         */
+        private Chunk scan() {
+            Chunk chunk = new Chunk(block, blockOffset);
+            try {
+                while ( ! scanned && chunk.bytes < chunkSize) {
+                    if (position == filled) {
+                        if (filled == block.length) {
+                            if (chunk.count > 0) break; // The operations of this chunk are in the current block.
+                            nextBlock();
+                            chunk = new Chunk(block, blockOffset);
+                        }
+                        int read = in.read(block, filled, block.length - filled);
+                        if (read < 0) {
+                            scanned = true;
+                            if (depth > 0)
+                                throw new OperationParseException("Unexpected end of input at offset " + (blockOffset + filled));
+                            break;
+                        }
+                        filled += read;
+                    }
+                    scan(chunk);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                scanned = true;
+                chunk.failure = e;
+            }
+            return chunk.count == 0 && chunk.failure == null ? null : chunk;
+        }
+
+        /** Scans the bytes read into the current block, and adds each complete operation to the given chunk */
+        private void scan(Chunk chunk) {
+            for ( ; position < filled && chunk.bytes < chunkSize; position++) {
+                byte b = block[position];
+                if (inString) {
+                    if (escaped) escaped = false;
+                    else if (b == '\\') escaped = true;
+                    else if (b == '"') inString = false;
+                }
+                else if (operationStart >= 0) {
+                    switch (b) {
+                        case '"': inString = true; break;
+                        case '{': case '[': ++depth; break;
+                        case '}': case ']':
+                            if (--depth == operationDepth) {
+                                chunk.add(operationStart, position + 1);
+                                operationStart = -1;
+                            }
+                    }
+                }
+                else {
+                    switch (b) {
+                        case ' ': case '\t': case '\n': case '\r': break;
+                        case '[':
+                            if (operationDepth >= 0) throw unexpected(b);
+                            operationDepth = depth = 1;
+                            break;
+                        case ',':
+                            if (operationDepth < 1) throw unexpected(b);
+                            break;
+                        case ']':
+                            if (operationDepth < 1) throw unexpected(b);
+                            depth = 0;
+                            scanned = true;
+                            return;
+                        case '{':
+                            if (operationDepth < 0) operationDepth = 0;
+                            operationStart = position;
+                            ++depth;
+                            break;
+                        default:
+                            throw unexpected(b);
+                    }
+                }
+            }
+        }
+
+        private OperationParseException unexpected(byte b) {
+            return new OperationParseException("Unexpected character '" + (char) b + "' at offset " + (blockOffset + position));
+        }
+
+        /** Moves on to a new block, which starts with what is read of the operation currently being scanned */
+        private void nextBlock() {
+            int carried = operationStart < 0 ? 0 : filled - operationStart;
+            byte[] next = new byte[Math.max(blockSize, 2 * carried)];
+            System.arraycopy(block, filled - carried, next, 0, carried);
+            blockOffset += filled - carried;
+            block = next;
+            filled = position = carried;
+            if (operationStart >= 0) operationStart = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parsers.shutdownNow();
+            in.close();
+        }
+
+    }
+
+    /** The byte ranges of a sequence of operations in a block of the stream, and the operations parsed from these */
+    private static class Chunk {
+
+        private final long offset;
+        private byte[] data;
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int count = 0;
+        private long bytes = 0;
+        private final List<Operation> operations = new ArrayList<>();
+        private Exception failure = null;
+
+        Chunk(byte[] data, long offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+
+        void add(int start, int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+            }
+            starts[count] = start;
+            ends[count++] = end;
+            bytes += end - start;
+        }
+
+    }
+
+    private static final byte[] fieldsPrefix = "{\"fields\":".getBytes(UTF_8);
+
     private class SingleOperationParserAndExecutor extends OperationParserAndExecutor {
 
         private final byte[] json;
+        private final int offset;
 
         SingleOperationParserAndExecutor(byte[] json) throws IOException {
-            super(factory.createParser(json), false);
+            this(json, 0, json.length);
+        }
+
+        SingleOperationParserAndExecutor(byte[] json, int offset, int length) throws IOException {
+            super(factory.createParser(json, offset, length), false);
             this.json = json;
+            this.offset = offset;
         }
 
         @Override
-        String getDocumentJson(long start, long end) {
-            return "{\"fields\":" + new String(json, (int) start, (int) (end - start), UTF_8) + "}";
+        byte[] getDocumentJson(long start, long end) {
+            int length = (int) (end - start);
+            byte[] buffer = new byte[fieldsPrefix.length + length + 1];
+            System.arraycopy(fieldsPrefix, 0, buffer, 0, fieldsPrefix.length);
+            System.arraycopy(json, offset + (int) start, buffer, fieldsPrefix.length, length);
+            buffer[buffer.length - 1] = '}';
+            return buffer;
+        }
+    }
+
+    /** A parsed operation, which is ready to be dispatched to the client */
+    private class Operation {
+
+        private final OperationType type;
+        private final DocumentId id;
+        private final OperationParameters parameters;
+        private final byte[] json;
+
+        Operation(OperationType type, DocumentId id, OperationParameters parameters, byte[] json) {
+            this.type = type;
+            this.id = id;
+            this.parameters = parameters;
+            this.json = json;
+        }
+
+        CompletableFuture<Result> dispatch() {
+            switch (type) {
+                case PUT:    return client.put   (id, json, parameters);
+                case UPDATE: return client.update(id, json, parameters);
+                case REMOVE: return client.remove(id, parameters);
+                default: throw new OperationParseException("Unexpected operation type '" + type + "'");
+            }
         }
+
     }
 
     private abstract class OperationParserAndExecutor {
@@ -413,7 +681,7 @@ public class JsonFeeder implements Closeable {
             this.multipleOperations = multipleOperations;
         }
 
-        abstract String getDocumentJson(long start, long end);
+        abstract byte[] getDocumentJson(long start, long end);
 
         OperationParseException parseException(String error) {
             JsonLocation location = parser.currentLocation();
@@ -422,6 +690,12 @@ public class JsonFeeder implements Closeable {
         }
 
         CompletableFuture<Result> next() throws IOException {
+            Operation operation = parse();
+            return operation == null ? null : operation.dispatch();
+        }
+
+        /** Parses the next operation, or returns null if there are no more */
+        Operation parse() throws IOException {
             JsonToken token = parser.nextToken();
             if (multipleOperations && ! arrayPrefixParsed && token == JsonToken.START_ARRAY) {
                 arrayPrefixParsed = true;
@@ -477,13 +751,8 @@ public class JsonFeeder implements Closeable {
             else if (end < start)
                 throw parseException("No 'fields' object for document");
 
-            String payload = getDocumentJson(start, end);
-            switch (type) {
-                case PUT:    return client.put   (id, payload, parameters);
-                case UPDATE: return client.update(id, payload, parameters);
-                case REMOVE: return client.remove(id, parameters);
-                default: throw new OperationParseException("Unexpected operation type '" + type + "'");
-            }
+            byte[] payload = getDocumentJson(start, end);
+            return new Operation(type, id, parameters, type == REMOVE ? null : payload);
         }
 
         private void expect(JsonToken token) throws IOException {
@@ -521,6 +790,7 @@ public class JsonFeeder implements Closeable {
 
         final FeedClient client;
         OperationParameters parameters = OperationParameters.empty();
+        int parserThreads = 1;
 
         private Builder(FeedClient client) {
             this.client = requireNonNull(client);
@@ -541,8 +811,18 @@ public class JsonFeeder implements Closeable {
             return this;
         }
 
+        /**
+         * Sets the number of threads which parse the operations given to {@link JsonFeeder#feedMany(InputStream)},
+         * which is useful when parsing limits the feed rate. The default is 1, which parses operations as they are fed.
+         */
+        public Builder withParserThreads(int parserThreads) {
+            if (parserThreads < 1) throw new IllegalArgumentException("Parser threads must be positive, but got " + parserThreads);
+            this.parserThreads = parserThreads;
+            return this;
+        }
+
         public JsonFeeder build() {
-            return new JsonFeeder(client, parameters);
+            return new JsonFeeder(client, parameters, parserThreads);
         }
 
     }
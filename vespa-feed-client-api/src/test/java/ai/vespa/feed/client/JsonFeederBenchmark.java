@@ -0,0 +1,131 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.feed.client;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures the throughput of parsing a JSONL feed file with an increasing number of parser threads,
+ * feeding to a client which completes all operations immediately.
+ * Pass the path to a feed file to use that, or the number of megabytes of feed to generate, which is 1024 by default.
+ *
+ * @author agent
+ */
+public class JsonFeederBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path feed;
+        boolean generated = args.length == 0 || args[0].matches("\\d+");
+        if (generated) {
+            feed = Files.createTempFile("feed", ".jsonl");
+            generate(feed, (args.length == 0 ? 1024 : Long.parseLong(args[0])) << 20);
+        }
+        else {
+            feed = Path.of(args[0]);
+        }
+        try {
+            long bytes = Files.size(feed);
+            System.out.println(String.format(Locale.ENGLISH, "%8s %12s %12s %8s", "threads", "MB/s", "ops/s", "speedup"));
+            double baseline = 0;
+            for (int threads = 1; threads <= 2 * Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                measure(feed, threads); // Warmup
+                long start = System.nanoTime();
+                long operations = measure(feed, threads);
+                double seconds = (System.nanoTime() - start) * 1e-9;
+                if (threads == 1) baseline = seconds;
+                System.out.println(String.format(Locale.ENGLISH, "%8d %12.1f %12.0f %8.2f",
+                                                 threads, bytes / seconds / (1 << 20), operations / seconds, baseline / seconds));
+            }
+        }
+        finally {
+            if (generated) Files.delete(feed);
+        }
+    }
+
+    /** Feeds the given file with the given number of parser threads, and returns the number of operations fed */
+    private static long measure(Path feed, int threads) throws IOException {
+        CountingClient client = new CountingClient();
+        try (JsonFeeder feeder = JsonFeeder.builder(client).withParserThreads(threads).build();
+             InputStream in = Files.newInputStream(feed)) {
+            feeder.feedMany(in).join();
+        }
+        return client.operations;
+    }
+
+    /** Writes puts with a few string fields and a 384 value embedding, until the given number of bytes are written */
+    private static void generate(Path feed, long bytes) throws IOException {
+        Random random = new Random(1);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(feed), 1 << 16)) {
+            long written = 0;
+            for (int i = 0; written < bytes; i++) {
+                StringBuilder operation = new StringBuilder();
+                operation.append("{\"put\":\"id:ns:type::doc").append(i).append("\",\"fields\":{")
+                         .append("\"title\":\"Document number ").append(i).append(" with a \\\"quoted\\\" title\",")
+                         .append("\"body\":\"");
+                for (int j = 0; j < 50; j++) operation.append("word").append(random.nextInt(10000)).append(' ');
+                operation.append("\",\"embedding\":{\"values\":[");
+                for (int j = 0; j < 384; j++) operation.append(j == 0 ? "" : ",").append(random.nextFloat());
+                operation.append("]}}}\n");
+                byte[] utf8 = operation.toString().getBytes(UTF_8);
+                out.write(utf8);
+                written += utf8.length;
+            }
+        }
+    }
+
+    private static class CountingClient implements FeedClient {
+
+        private volatile long operations = 0;
+
+        @Override
+        public CompletableFuture<Result> put(DocumentId documentId, String documentJson, OperationParameters params) {
+            throw new UnsupportedOperationException("Should receive bytes");
+        }
+
+        @Override
+        public CompletableFuture<Result> update(DocumentId documentId, String updateJson, OperationParameters params) {
+            throw new UnsupportedOperationException("Should receive bytes");
+        }
+
+        @Override
+        public CompletableFuture<Result> put(DocumentId documentId, byte[] documentJson, OperationParameters params) {
+            return result(documentId);
+        }
+
+        @Override
+        public CompletableFuture<Result> update(DocumentId documentId, byte[] updateJson, OperationParameters params) {
+            return result(documentId);
+        }
+
+        @Override
+        public CompletableFuture<Result> remove(DocumentId documentId, OperationParameters params) {
+            return result(documentId);
+        }
+
+        private CompletableFuture<Result> result(DocumentId documentId) {
+            operations++; // Only called by the feeding thread.
+            return CompletableFuture.completedFuture(new Result() {
+                @Override public Type type() { return Type.success; }
+                @Override public DocumentId documentId() { return documentId; }
+                @Override public Optional<String> resultMessage() { return Optional.empty(); }
+                @Override public Optional<String> traceMessage() { return Optional.empty(); }
+            });
+        }
+
+        @Override public OperationStats stats() { return null; }
+        @Override public CircuitBreaker.State circuitBreakerState() { return null; }
+        @Override public void close(boolean graceful) { }
+
+    }
+
+}
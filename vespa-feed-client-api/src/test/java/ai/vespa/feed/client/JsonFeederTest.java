@@ -166,6 +166,46 @@ class JsonFeederTest {
         }
     }
 
+    @Test
+    public void operationsParsedInParallelAreDispatchedInOrder() throws IOException, ExecutionException, InterruptedException {
+        int docs = 1 << 16; // Spans several blocks of input.
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 0; i < docs; i++)
+            jsonl.append("{\"update\":\"id:ns:type::abc").append(i % 7).append("\",\"fields\":{\"lul\":{\"assign\":\"")
+                 .append(i).append(" \\\"}{][\\\\\"},\"n\":[").append(lulVal(i % 100).length()).append("]}}\n");
+        String array = "[" + jsonl.toString().replace("}\n{", "},\n{") + "]";
+
+        for (String json : List.of(jsonl.toString(), array)) {
+            MockClient client = new MockClient();
+            AtomicInteger results = new AtomicInteger();
+            try (JsonFeeder feeder = JsonFeeder.builder(client).withParserThreads(4).build()) {
+                feeder.feedMany(new ByteArrayInputStream(json.getBytes(UTF_8)), new JsonFeeder.ResultCallback() {
+                    @Override public void onNextResult(Result result, FeedException error) { results.incrementAndGet(); }
+                }).get();
+            }
+            assertEquals(docs, results.get());
+            client.assertUpdateDocumentIds("abc0", "abc1", "abc2", "abc3", "abc4", "abc5", "abc6");
+            for (int i = docs - 7; i < docs; i++) // The last update to each document is the one which is dispatched last.
+                client.assertUpdateOperation("abc" + i % 7, "{\"fields\":{\"lul\":{\"assign\":\"" + i + " \\\"}{][\\\\\"},\"n\":[" +
+                                                            lulVal(i % 100).length() + "]}}");
+        }
+    }
+
+    @Test
+    public void operationsBeforeAnInvalidOneAreDispatchedWhenParsingInParallel() throws IOException {
+        MockClient client = new MockClient();
+        String json = "{\"put\": \"id:ns:type::abc1\", \"fields\": { \"lul\": \"lal\" } }\n" +
+                      "{\"put\": \"id:ns:type::abc2\" }\n" +
+                      "{\"put\": \"id:ns:type::abc3\", \"fields\": { \"lul\": \"lal\" } }\n";
+        try (JsonFeeder feeder = JsonFeeder.builder(client).withParserThreads(2).build()) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                                                 () -> feeder.feedMany(new ByteArrayInputStream(json.getBytes(UTF_8))).get());
+            assertEquals("Failed to parse operation at offset 57: No 'fields' object for document at offset 28 (line 1, column 29)",
+                         e.getCause().getMessage());
+        }
+        client.assertPutDocumentIds("abc1");
+    }
+
     private static class MockClient implements FeedClient {
         final Map<DocumentId, String> putOperations = new LinkedHashMap<>();
         final Map<DocumentId, String> updateOperations = new LinkedHashMap<>();
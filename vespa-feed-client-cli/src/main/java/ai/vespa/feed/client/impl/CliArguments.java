@@ -1,7 +1,9 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package ai.vespa.feed.client.impl;
 
+import ai.vespa.feed.client.FeedClientBuilder.BodyFormat;
 import ai.vespa.feed.client.FeedClientBuilder.Compression;
+import ai.vespa.feed.client.FeedClientBuilder.Throttling;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -24,7 +26,9 @@ import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.OptionalInt;
 
+import static ai.vespa.feed.client.FeedClientBuilder.BodyFormat.json;
 import static ai.vespa.feed.client.FeedClientBuilder.Compression.auto;
+import static ai.vespa.feed.client.FeedClientBuilder.Throttling.dynamic;
 
 /**
  * Parses command line arguments
@@ -48,6 +52,7 @@ class CliArguments {
     private static final String HEADER_OPTION = "header";
     private static final String HELP_OPTION = "help";
     private static final String MAX_STREAMS_PER_CONNECTION = "max-streams-per-connection";
+    private static final String PARSER_THREADS_OPTION = "parser-threads";
     private static final String PRIVATE_KEY_OPTION = "private-key";
     private static final String ROUTE_OPTION = "route";
     private static final String TIMEOUT_OPTION = "timeout";
@@ -61,6 +66,9 @@ class CliArguments {
     private static final String DOOM_OPTION = "max-failure-seconds";
     private static final String PROXY_OPTION = "proxy";
     private static final String COMPRESSION = "compression";
+    private static final String BODY_FORMAT = "body-format";
+    private static final String STREAMING_OPTION = "streaming";
+    private static final String THROTTLING = "throttling";
     private static final String LOG_CONFIG_OPTION = "log-config";
 
     private final CommandLine arguments;
@@ -123,6 +131,8 @@ class CliArguments {
 
     OptionalInt maxStreamsPerConnection() throws CliArgumentsException { return intValue(MAX_STREAMS_PER_CONNECTION); }
 
+    OptionalInt parserThreads() throws CliArgumentsException { return intValue(PARSER_THREADS_OPTION); }
+
     Optional<CertificateAndKey> certificateAndKey() throws CliArgumentsException {
         Path certificateFile = fileValue(CERTIFICATE_OPTION).orElse(null);
         Path privateKeyFile = fileValue(PRIVATE_KEY_OPTION).orElse(null);
@@ -194,6 +204,26 @@ class CliArguments {
         }
     }
 
+    boolean streaming() { return has(STREAMING_OPTION); }
+
+    Throttling throttling() throws CliArgumentsException {
+        try {
+            return stringValue(THROTTLING).map(Throttling::valueOf).orElse(dynamic);
+        }
+        catch (IllegalArgumentException e) {
+            throw new CliArgumentsException("Invalid " + THROTTLING + " argument: " + e.getMessage(), e);
+        }
+    }
+
+    BodyFormat bodyFormat() throws CliArgumentsException {
+        try {
+            return stringValue(BODY_FORMAT).map(BodyFormat::valueOf).orElse(json);
+        }
+        catch (IllegalArgumentException e) {
+            throw new CliArgumentsException("Invalid " + BODY_FORMAT + " argument: " + e.getMessage(), e);
+        }
+    }
+
     OptionalInt testPayloadSize() throws CliArgumentsException { return intValue(TEST_PAYLOAD_SIZE_OPTION); }
 
     Optional<URI> proxy() throws CliArgumentsException {
@@ -281,6 +311,13 @@ class CliArguments {
                         .hasArg()
                         .type(Number.class)
                         .build())
+                .addOption(Option.builder()
+                        .longOpt(PARSER_THREADS_OPTION)
+                        .desc("Number of threads which parse the feed, for when parsing limits the feed rate. " +
+                              "Operations are still sent in the order they are given. Default is 1")
+                        .hasArg()
+                        .type(Number.class)
+                        .build())
                 .addOption(Option.builder()
                         .longOpt(CERTIFICATE_OPTION)
                         .desc("Path to PEM encoded X.509 certificate file")
@@ -377,6 +414,26 @@ class CliArguments {
                         .hasArg()
                         .type(Compression.class)
                         .build())
+                .addOption(Option.builder()
+                        .longOpt(BODY_FORMAT)
+                        .desc("Format of the bodies of feed requests. Valid arguments are: 'json' (default), " +
+                              "'cbor', which is the same structure in a binary encoding that is cheaper for the server to parse")
+                        .hasArg()
+                        .type(BodyFormat.class)
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt(STREAMING_OPTION)
+                        .desc("Send feed operations in long-lived feed streams, one per connection, instead of as separate requests. " +
+                              "Requires a server which supports feed streams")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt(THROTTLING)
+                        .desc("How to adjust the number of operations in flight to the throughput of the cluster. " +
+                              "Valid arguments are: 'dynamic' (default), 'gradient', which settles at the lowest number " +
+                              "which saturates the cluster, based on operation latency")
+                        .hasArg()
+                        .type(Throttling.class)
+                        .build())
                 .addOption(Option.builder()
                         .longOpt(LOG_CONFIG_OPTION)
                         .desc("Specify a path to a Java Util Logging properties file. " +
@@ -173,6 +173,9 @@ public class CliClient {
         builder.setDryrun(cliArgs.dryrunEnabled());
         builder.setSpeedTest(cliArgs.speedTest());
         builder.setCompression(cliArgs.compression());
+        builder.setBodyFormat(cliArgs.bodyFormat());
+        builder.setStreaming(cliArgs.streaming());
+        builder.setThrottling(cliArgs.throttling());
         cliArgs.doomSeconds().ifPresent(doom -> builder.setCircuitBreaker(new GracePeriodCircuitBreaker(Duration.ofSeconds(10),
                                                                                                         Duration.ofSeconds(doom))));
         cliArgs.proxy().ifPresent(builder::setProxy);
@@ -184,6 +187,7 @@ public class CliClient {
         cliArgs.timeout().ifPresent(builder::withTimeout);
         cliArgs.route().ifPresent(builder::withRoute);
         cliArgs.traceLevel().ifPresent(builder::withTracelevel);
+        cliArgs.parserThreads().ifPresent(builder::withParserThreads);
         return builder.build();
     }
 
@@ -1,7 +1,9 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package ai.vespa.feed.client.impl;
 
+import ai.vespa.feed.client.FeedClientBuilder.BodyFormat;
 import ai.vespa.feed.client.FeedClientBuilder.Compression;
+import ai.vespa.feed.client.FeedClientBuilder.Throttling;
 import ai.vespa.feed.client.impl.CliArguments.CliArgumentsException;
 import org.junit.jupiter.api.Test;
 
@@ -29,6 +31,7 @@ class CliArgumentsTest {
                 "--file", "feed.json",
                 "--connections", "10",
                 "--max-streams-per-connection", "128",
+                "--parser-threads", "8",
                 "--certificate", "cert.pem",
                 "--private-key", "key.pem",
                 "--ca-certificates", "ca-certs.pem",
@@ -42,6 +45,9 @@ class CliArgumentsTest {
                 "--verbose",
                 "--silent",
                 "--compression", "gzip",
+                "--body-format", "cbor",
+                "--streaming",
+                "--throttling", "gradient",
                 "--show-errors",
                 "--show-all",
                 "--max-failure-seconds", "30",
@@ -50,6 +56,7 @@ class CliArgumentsTest {
         assertEquals(Paths.get("feed.json"), args.inputFile().get());
         assertEquals(10, args.connections().getAsInt());
         assertEquals(128, args.maxStreamsPerConnection().getAsInt());
+        assertEquals(8, args.parserThreads().getAsInt());
         assertEquals(Paths.get("cert.pem"), args.certificateAndKey().get().certificateFile);
         assertEquals(Paths.get("key.pem"), args.certificateAndKey().get().privateKeyFile);
         assertEquals(Paths.get("ca-certs.pem"), args.caCertificates().get());
@@ -69,6 +76,9 @@ class CliArgumentsTest {
         assertTrue(args.showSuccesses());
         assertFalse(args.showProgress());
         assertEquals(Compression.gzip, args.compression());
+        assertEquals(BodyFormat.cbor, args.bodyFormat());
+        assertTrue(args.streaming());
+        assertEquals(Throttling.gradient, args.throttling());
         assertEquals(URI.create("https://myproxy:1234"), args.proxy().orElse(null));
     }
 
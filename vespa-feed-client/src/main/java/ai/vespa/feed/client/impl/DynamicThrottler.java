@@ -5,6 +5,7 @@ import ai.vespa.feed.client.HttpResponse;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import static java.lang.Math.log;
 import static java.lang.Math.max;
@@ -23,12 +24,15 @@ public class DynamicThrottler extends StaticThrottler {
     private final AtomicLong targetInflight;
     private final double weight = 0.7;
     private final double[] throughputs = new double[128];
-    private long startNanos = System.nanoTime();
+    private final LongSupplier nanoClock;
+    private long startNanos;
     private long sent = 0;
 
     public DynamicThrottler(FeedClientBuilderImpl builder) {
         super(builder);
         targetInflight = new AtomicLong(minInflight);
+        nanoClock = builder.nanoClock;
+        startNanos = nanoClock.getAsLong();
     }
 
     @Override
@@ -38,7 +42,7 @@ public class DynamicThrottler extends StaticThrottler {
             return;
 
         sent = 0;
-        double elapsedNanos = -startNanos + (startNanos = System.nanoTime());
+        double elapsedNanos = -startNanos + (startNanos = nanoClock.getAsLong());
         double currentThroughput = ok.getAndSet(0) / elapsedNanos;
 
         // Use buckets for throughput over inflight, along the log-scale, in [minInflight, maxInflight).
@@ -21,7 +21,9 @@ import java.util.Map;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
+import static ai.vespa.feed.client.FeedClientBuilder.BodyFormat.json;
 import static ai.vespa.feed.client.FeedClientBuilder.Compression.auto;
+import static ai.vespa.feed.client.FeedClientBuilder.Throttling.dynamic;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -56,6 +58,9 @@ public class FeedClientBuilderImpl implements FeedClientBuilder {
     boolean dryrun = false;
     boolean speedTest = false;
     Compression compression = auto;
+    BodyFormat bodyFormat = json;
+    boolean streaming = false;
+    Throttling throttling = dynamic;
     URI proxy;
     Duration connectionTtl = Duration.ZERO;
     LongSupplier nanoClock = System::nanoTime;
@@ -252,6 +257,24 @@ public class FeedClientBuilderImpl implements FeedClientBuilder {
         return this;
     }
 
+    @Override
+    public FeedClientBuilderImpl setBodyFormat(BodyFormat format) {
+        this.bodyFormat = requireNonNull(format);
+        return this;
+    }
+
+    @Override
+    public FeedClientBuilderImpl setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    @Override
+    public FeedClientBuilderImpl setThrottling(Throttling throttling) {
+        this.throttling = requireNonNull(throttling);
+        return this;
+    }
+
     FeedClientBuilderImpl setNanoClock(LongSupplier nanoClock) {
         this.nanoClock = requireNonNull(nanoClock);
         return this;
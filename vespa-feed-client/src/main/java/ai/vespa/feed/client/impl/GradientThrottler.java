@@ -0,0 +1,108 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.feed.client.impl;
+
+import ai.vespa.feed.client.HttpResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+import static java.lang.Math.log10;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Adjusts the target inflight count by the gradient of operation latency over inflight operations, like TCP Vegas:
+ * the number of operations queued at the server is estimated from how much the latency of recent operations exceeds
+ * the latency of the cluster when it is not loaded, and the target is adjusted to keep this queue small, but non-empty.
+ * This settles close to the lowest inflight count which saturates the cluster, instead of exploring around it.
+ * The unloaded latency is measured by regularly lowering the target for one sample window, so the target also
+ * follows changes in the latency of the cluster, and not only in its throughput.
+ *
+ * @author agent
+ */
+public class GradientThrottler extends StaticThrottler {
+
+    /** The number of sample windows between each measurement of the latency of the cluster when not loaded */
+    private static final int probeInterval = 64;
+
+    /** How much the target is lowered when measuring the latency of the cluster when not loaded */
+    private static final double probeFactor = 0.75;
+
+    private final LongSupplier nanoClock;
+    private final Object monitor = new Object();
+    private double target;
+    private double baseLatency = 0;
+    private long windowStartNanos;
+    private double windowLatency = 0;
+    private long windowSamples = 0;
+    private long windowMaxInflight = 0;
+    private int windowsSinceProbe = 0;
+    private boolean probing = true;
+
+    public GradientThrottler(FeedClientBuilderImpl builder) {
+        super(builder);
+        this.nanoClock = builder.nanoClock;
+        this.target = minInflight;
+        this.windowStartNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public void sent(long inflight, CompletableFuture<HttpResponse> vessel) {
+        long sentNanos = nanoClock.getAsLong();
+        synchronized (monitor) {
+            windowMaxInflight = max(windowMaxInflight, inflight);
+        }
+        vessel.whenComplete((response, thrown) -> {
+            if (response != null && response.code() / 100 == 2)
+                sampled(sentNanos, nanoClock.getAsLong());
+        });
+    }
+
+    private void sampled(long sentNanos, long completedNanos) {
+        synchronized (monitor) {
+            // Only sample operations sent after the previous window ended, as earlier ones were sent with another target.
+            if (sentNanos < windowStartNanos) return;
+            windowLatency += completedNanos - sentNanos;
+            if (++windowSamples < max(minInflight, currentTarget())) return; // Sample about one round-trip's worth.
+
+            double latency = windowLatency / windowSamples;
+            boolean limited = 2 * windowMaxInflight >= currentTarget(); // Only adjust when inflight is limited by the target.
+            windowStartNanos = completedNanos;
+            windowLatency = 0;
+            windowSamples = 0;
+            windowMaxInflight = 0;
+            if (probing) {
+                baseLatency = latency;
+                probing = false;
+                windowsSinceProbe = 0;
+                return;
+            }
+            if ( ! limited) return;
+
+            // Keep the estimated queue between alpha and beta, which grow slowly with the target, like TCP Vegas.
+            double step = max(1, log10(target));
+            double alpha = 3 * step, beta = 6 * step;
+            double queue = target * (1 - baseLatency / latency);
+            if (queue < step) target += max(step, target / 4); // No queue yet; grow quickly.
+            else if (queue < alpha) target += step;
+            else if (queue > beta) target -= max(step, (queue - beta) / 2);
+            target = max(minInflight, min(maxInflight, target));
+
+            // Measure the unloaded latency again regularly, or when the queue is so long the cluster has likely slowed down.
+            if (++windowsSinceProbe >= probeInterval || queue > target / 2)
+                probing = true;
+        }
+    }
+
+    private long currentTarget() {
+        return (long) (probing ? probeFactor * target : target);
+    }
+
+    @Override
+    public long targetInflight() {
+        synchronized (monitor) {
+            return min(super.targetInflight(), currentTarget());
+        }
+    }
+
+}
@@ -12,10 +12,13 @@ import ai.vespa.feed.client.ResultException;
 import ai.vespa.feed.client.ResultParseException;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
@@ -34,6 +37,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
+import static ai.vespa.feed.client.FeedClientBuilder.BodyFormat.cbor;
 import static ai.vespa.feed.client.OperationParameters.empty;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
@@ -50,11 +54,13 @@ class HttpFeedClient implements FeedClient {
     private static final JsonFactory jsonParserFactory = new JsonFactoryBuilder()
             .streamReadConstraints(StreamReadConstraints.builder().maxStringLength(Integer.MAX_VALUE).build())
             .build();
+    private static final CBORFactory cborFactory = new CBORFactory();
 
     private final Map<String, Supplier<String>> requestHeaders;
     private final RequestStrategy requestStrategy;
     private final AtomicBoolean closed = new AtomicBoolean();
     private final boolean speedTest;
+    private final boolean cborBody;
     private final LongSupplier nanoClock;
 
     HttpFeedClient(FeedClientBuilderImpl builder) throws IOException {
@@ -70,18 +76,29 @@ class HttpFeedClient implements FeedClient {
         this.requestHeaders = new HashMap<>(builder.requestHeaders);
         this.requestStrategy = requestStrategy;
         this.speedTest = builder.speedTest;
+        this.cborBody = builder.bodyFormat == cbor;
         this.nanoClock = builder.nanoClock;
         verifyConnection(builder, clusterFactory);
     }
 
     @Override
     public CompletableFuture<Result> put(DocumentId documentId, String documentJson, OperationParameters params) {
-        return send("POST", documentId, requireNonNull(documentJson), params);
+        return send("POST", documentId, toBody(requireNonNull(documentJson)), params);
     }
 
     @Override
     public CompletableFuture<Result> update(DocumentId documentId, String updateJson, OperationParameters params) {
-        return send("PUT", documentId, requireNonNull(updateJson), params);
+        return send("PUT", documentId, toBody(requireNonNull(updateJson)), params);
+    }
+
+    @Override
+    public CompletableFuture<Result> put(DocumentId documentId, byte[] documentJson, OperationParameters params) {
+        return send("POST", documentId, toBody(requireNonNull(documentJson)), params);
+    }
+
+    @Override
+    public CompletableFuture<Result> update(DocumentId documentId, byte[] updateJson, OperationParameters params) {
+        return send("PUT", documentId, toBody(requireNonNull(updateJson)), params);
     }
 
     @Override
@@ -108,7 +125,7 @@ class HttpFeedClient implements FeedClient {
         requestStrategy.destroy();
     }
 
-    private CompletableFuture<Result> send(String method, DocumentId documentId, String operationJson, OperationParameters params) {
+    private CompletableFuture<Result> send(String method, DocumentId documentId, byte[] body, OperationParameters params) {
         if (closed.get())
             throw new IllegalStateException("Client is closed");
 
@@ -116,7 +133,7 @@ class HttpFeedClient implements FeedClient {
                                               getPath(documentId),
                                               getQuery(params, speedTest),
                                               requestHeaders,
-                                              operationJson == null ? null : operationJson.getBytes(UTF_8), // TODO: make it bytes all the way?
+                                              body,
                                               params.timeout().orElse(maxTimeout),
                                               nanoClock);
 
@@ -136,6 +153,33 @@ class HttpFeedClient implements FeedClient {
         return promise;
     }
 
+    private byte[] toBody(String operationJson) {
+        return cborBody ? toCbor(operationJson) : operationJson.getBytes(UTF_8);
+    }
+
+    private byte[] toBody(byte[] operationJson) {
+        return cborBody ? toCbor(operationJson) : operationJson;
+    }
+
+    /** Returns the given JSON encoded as CBOR, with the same structure, field names and values */
+    static byte[] toCbor(String json) {
+        return toCbor(json.getBytes(UTF_8));
+    }
+
+    /** Returns the given UTF-8 encoded JSON encoded as CBOR, with the same structure, field names and values */
+    static byte[] toCbor(byte[] json) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonParserFactory.createParser(json);
+             JsonGenerator generator = cborFactory.createGenerator(buffer)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
     private void verifyConnection(FeedClientBuilderImpl builder, ClusterFactory clusterFactory) throws IOException {
         Instant start = Instant.now();
         try (Cluster cluster = clusterFactory.create()) {
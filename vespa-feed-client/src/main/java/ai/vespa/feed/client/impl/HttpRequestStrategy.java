@@ -37,6 +37,7 @@ import java.util.logging.Logger;
 import static ai.vespa.feed.client.FeedClient.CircuitBreaker.State.CLOSED;
 import static ai.vespa.feed.client.FeedClient.CircuitBreaker.State.HALF_OPEN;
 import static ai.vespa.feed.client.FeedClient.CircuitBreaker.State.OPEN;
+import static ai.vespa.feed.client.FeedClientBuilder.Throttling.gradient;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.FINER;
@@ -82,7 +83,7 @@ class HttpRequestStrategy implements RequestStrategy {
     private final AtomicBoolean reset = new AtomicBoolean(false);
 
     HttpRequestStrategy(FeedClientBuilderImpl builder, ClusterFactory clusterFactory) throws IOException {
-        this.throttler = new DynamicThrottler(builder);
+        this.throttler = builder.throttling == gradient ? new GradientThrottler(builder) : new DynamicThrottler(builder);
         this.resettableCluster = new ResettableCluster(clusterFactory);
         this.cluster = builder.benchmark ? new BenchmarkingCluster(resettableCluster, throttler) : resettableCluster;
         this.strategy = builder.retryStrategy;
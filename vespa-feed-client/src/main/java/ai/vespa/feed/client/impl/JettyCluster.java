@@ -4,6 +4,10 @@ package ai.vespa.feed.client.impl;
 
 import ai.vespa.feed.client.FeedClientBuilder.Compression;
 import ai.vespa.feed.client.HttpResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpProxy;
 import org.eclipse.jetty.client.MultiplexConnectionPool;
@@ -15,6 +19,7 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.dynamic.HttpClientTransportDynamic;
 import org.eclipse.jetty.client.http.HttpClientConnectionFactory;
+import org.eclipse.jetty.client.util.AsyncRequestContent;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.BytesRequestContent;
 import org.eclipse.jetty.http.HttpField;
@@ -33,6 +38,7 @@ import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -40,21 +46,27 @@ import java.io.UncheckedIOException;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 
+import static ai.vespa.feed.client.FeedClientBuilder.BodyFormat.cbor;
 import static ai.vespa.feed.client.FeedClientBuilder.Compression.auto;
 import static ai.vespa.feed.client.FeedClientBuilder.Compression.gzip;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.eclipse.jetty.http.MimeTypes.Type.APPLICATION_JSON;
 
@@ -69,14 +81,22 @@ class JettyCluster implements Cluster {
     // Socket timeout must be longer than the longest feasible response timeout
     private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(15);
 
+    static final String FEED_STREAM_PATH = "/document/v1/feed";
+    static final String FEED_STREAM_CONTENT_TYPE = "application/x-vespa-feed-stream";
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
     private final HttpClient client;
     private final List<Endpoint> endpoints;
     private final Compression compression;
+    private final String contentType;
+    private final boolean streaming;
 
     JettyCluster(FeedClientBuilderImpl b) throws IOException {
         this.client = createHttpClient(b);
-        this.endpoints = b.endpoints.stream().map(Endpoint::new).collect(Collectors.toList());
+        this.endpoints = b.endpoints.stream().map(uri -> new Endpoint(uri, b.connectionsPerEndpoint)).collect(Collectors.toList());
         this.compression = b.compression;
+        this.contentType = b.bodyFormat == cbor ? "application/cbor" : APPLICATION_JSON.asString();
+        this.streaming = b.streaming;
     }
 
     @Override
@@ -90,6 +110,10 @@ class JettyCluster implements Cluster {
                     vessel.completeExceptionally(new TimeoutException("operation timed out after '" + req.timeout() + "'"));
                     return;
                 }
+                if (streaming) {
+                    dispatchStreamed(endpoint, req, vessel);
+                    return;
+                }
                 Request jettyReq = client.newRequest(URI.create(endpoint.uri + req.pathAndQuery()))
                         .version(HttpVersion.HTTP_2)
                         .method(HttpMethod.fromString(req.method()))
@@ -109,7 +133,7 @@ class JettyCluster implements Cluster {
                     } else {
                         bytes = req.body();
                     }
-                    jettyReq.body(new BytesRequestContent(APPLICATION_JSON.asString(), bytes));
+                    jettyReq.body(new BytesRequestContent(contentType, bytes));
                 }
                 log.log(Level.FINER, () ->
                         String.format("Dispatching request %s (%s)", req, System.identityHashCode(vessel)));
@@ -134,8 +158,45 @@ class JettyCluster implements Cluster {
         });
     }
 
+    /**
+     * Sends the request as a frame in one of the feed streams of the given endpoint, opening a new stream if needed.
+     * The headers of the request are evaluated for each request, and if they differ from those the stream was opened
+     * with, e.g., because a token was refreshed, the stream is replaced by one with the new headers. The old stream
+     * is closed, and ends when the operations in it have their responses.
+     */
+    private void dispatchStreamed(Endpoint endpoint, HttpRequest req, CompletableFuture<HttpResponse> vessel) {
+        int index = Math.floorMod(endpoint.nextStream.getAndIncrement(), endpoint.streams.length);
+        Map<String, String> headers = new TreeMap<>();
+        req.headers().forEach((name, value) -> headers.put(name, value.get()));
+        FeedStream stream;
+        synchronized (endpoint) {
+            stream = endpoint.streams[index];
+        }
+        if (stream != null && stream.headers.equals(headers) && stream.offer(req, vessel)) return;
+
+        FeedStream replaced = null;
+        synchronized (endpoint) {
+            if (endpoint.streams[index] == stream) {
+                replaced = stream;
+                endpoint.streams[index] = new FeedStream(endpoint, headers);
+            }
+            stream = endpoint.streams[index];
+        }
+        if (replaced != null) replaced.close();
+        if ( ! stream.offer(req, vessel)) {
+            endpoint.inflight.decrementAndGet();
+            vessel.completeExceptionally(stream.failure());
+        }
+    }
+
     @Override
     public void close() {
+        for (Endpoint endpoint : endpoints) {
+            synchronized (endpoint) {
+                for (FeedStream stream : endpoint.streams)
+                    if (stream != null) stream.close();
+            }
+        }
         try {
             client.stop();
         } catch (Exception e) { throw new RuntimeException(e); }
@@ -266,8 +327,251 @@ class JettyCluster implements Cluster {
 
     private static class Endpoint {
         final AtomicInteger inflight = new AtomicInteger();
+        final AtomicInteger nextStream = new AtomicInteger();
+        final FeedStream[] streams;
         final String uri;
-        Endpoint(URI uri) { this.uri = endpointUri(uri); }
+        Endpoint(URI uri, int streams) { this.uri = endpointUri(uri); this.streams = new FeedStream[streams]; }
+    }
+
+    /**
+     * A long-lived request to the feed stream endpoint of /document/v1, where each operation is sent as a frame in
+     * the request body, and the response to each operation is received as a frame in the response body, in the
+     * order they complete. The number of operations in flight is limited by the throttler, just like for separate
+     * requests. Operations in a stream are sent with the headers the stream was opened with, and without compression.
+     * When a stream ends, operations without a response fail, and are retried by the request strategy. This also
+     * happens if the response to the stream can not be read, in which case the stream is aborted.
+     */
+    private class FeedStream {
+
+        private final Endpoint endpoint;
+        private final Map<String, String> headers;
+        private final AsyncRequestContent content = new AsyncRequestContent(FEED_STREAM_CONTENT_TYPE);
+        private final Map<Long, Operation> operations = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong();
+        private final FrameReader frames = new FrameReader();
+        private final ByteArrayOutputStream errorBody = new ByteArrayOutputStream();
+        private volatile boolean open = true;
+        private volatile Response rejected = null; // Set if the server responds to the stream with something else than 200
+        private volatile String error = null; // Set if the server reports an error with the stream itself
+        private volatile Throwable failure = null;
+
+        FeedStream(Endpoint endpoint, Map<String, String> headers) {
+            this.endpoint = endpoint;
+            this.headers = headers;
+            log.log(Level.FINE, () -> "Opening feed stream to " + endpoint.uri);
+            try {
+                client.newRequest(URI.create(endpoint.uri + FEED_STREAM_PATH))
+                      .version(HttpVersion.HTTP_2)
+                      .method(HttpMethod.POST)
+                      .headers(hs -> headers.forEach(hs::add))
+                      .idleTimeout(IDLE_TIMEOUT.toMillis(), MILLISECONDS)
+                      .body(content)
+                      .send(new Response.Listener.Adapter() {
+                          @Override public void onHeaders(Response response) {
+                              if (response.getStatus() != 200) rejected = response;
+                          }
+                          @Override public void onContent(Response response, ByteBuffer buffer) {
+                              if (rejected != null) {
+                                  synchronized (errorBody) {
+                                      while (buffer.hasRemaining()) errorBody.write(buffer.get());
+                                  }
+                              }
+                              else if (failure == null) {
+                                  try {
+                                      frames.read(buffer, FeedStream.this::received);
+                                  }
+                                  catch (RuntimeException e) { // The response can not be read, so this stream is useless
+                                      completed(e);
+                                      response.abort(e);
+                                  }
+                              }
+                          }
+                          @Override public void onComplete(Result result) { completed(result.getFailure()); }
+                      });
+            }
+            catch (RuntimeException e) {
+                completed(e);
+            }
+        }
+
+        /** Sends the given request in this stream, or returns false if this stream has ended */
+        boolean offer(HttpRequest req, CompletableFuture<HttpResponse> vessel) {
+            long id = nextId.getAndIncrement();
+            Operation operation = new Operation(vessel);
+            operations.put(id, operation);
+            // If the stream ended after the operation was added, the operation was either completed by that, or is ours to retry
+            if ( ! open) return operations.remove(id) == null;
+
+            byte[] body = req.body() == null ? new byte[0] : req.body();
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(body.length + 256);
+            try (JsonGenerator generator = jsonFactory.createGenerator(frame)) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", id);
+                generator.writeStringField("method", req.method());
+                generator.writeStringField("path", req.pathAndQuery());
+                generator.writeStringField("contentType", contentType);
+                generator.writeNumberField("length", body.length);
+                generator.writeEndObject();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            frame.write('\n');
+            frame.write(body, 0, body.length);
+            operation.timeout = client.getScheduler().schedule(() -> timedOut(id, req), req.timeLeft().toMillis(), MILLISECONDS);
+            log.log(Level.FINER, () -> String.format("Dispatching request %s (%s) in feed stream as %d",
+                                                     req, System.identityHashCode(vessel), id));
+            if ( ! content.offer(ByteBuffer.wrap(frame.toByteArray())) && operations.remove(id) != null) {
+                operation.timeout.cancel();
+                return false;
+            }
+            return true;
+        }
+
+        Throwable failure() {
+            return failure != null ? failure : new IOException("Feed stream to " + endpoint.uri + " ended" + (error != null ? ": " + error : ""));
+        }
+
+        void close() {
+            content.close();
+        }
+
+        private void received(long id, int status, byte[] body) {
+            if (id < 0) {
+                error = new String(body, UTF_8);
+                open = false;
+                log.log(Level.FINE, () -> "Feed stream to " + endpoint.uri + " failed: " + error);
+                return;
+            }
+            Operation operation = operations.remove(id);
+            if (operation != null) complete(operation, new StreamedResponse(status, body, APPLICATION_JSON.asString()));
+        }
+
+        private void timedOut(long id, HttpRequest req) {
+            Operation operation = operations.remove(id);
+            if (operation != null) {
+                endpoint.inflight.decrementAndGet();
+                operation.vessel.completeExceptionally(new TimeoutException("operation timed out after '" + req.timeout() + "'"));
+            }
+        }
+
+        private void completed(Throwable failure) {
+            this.failure = failure;
+            open = false;
+            content.close();
+            Response response = rejected;
+            byte[] body;
+            synchronized (errorBody) {
+                body = errorBody.toByteArray();
+            }
+            log.log(Level.FINE, () -> "Feed stream to " + endpoint.uri + " completed" +
+                                      (failure != null ? " with failure: " + failure : response != null ? " with status " + response.getStatus() : ""));
+            for (Long id : operations.keySet()) {
+                Operation operation = operations.remove(id);
+                if (operation == null) continue;
+                if (failure == null && response != null)
+                    complete(operation, new StreamedResponse(response.getStatus(), body, response.getHeaders().get(HttpHeader.CONTENT_TYPE)));
+                else {
+                    if (operation.timeout != null) operation.timeout.cancel();
+                    endpoint.inflight.decrementAndGet();
+                    operation.vessel.completeExceptionally(failure());
+                }
+            }
+        }
+
+        private void complete(Operation operation, HttpResponse response) {
+            if (operation.timeout != null) operation.timeout.cancel();
+            endpoint.inflight.decrementAndGet();
+            operation.vessel.complete(response);
+        }
+
+    }
+
+    private static class Operation {
+        final CompletableFuture<HttpResponse> vessel;
+        volatile Scheduler.Task timeout;
+        Operation(CompletableFuture<HttpResponse> vessel) { this.vessel = vessel; }
+    }
+
+    private static class StreamedResponse implements HttpResponse {
+        final int code;
+        final byte[] body;
+        final String contentType;
+
+        StreamedResponse(int code, byte[] body, String contentType) { this.code = code; this.body = body; this.contentType = contentType; }
+
+        @Override public int code() { return code; }
+        @Override public byte[] body() { return body; }
+        @Override public String contentType() { return contentType; }
+    }
+
+    /**
+     * Reads the response frames of a feed stream, which may be split arbitrarily over the buffers it is given.
+     * Each frame is a line with a JSON header with the id of the operation, the status, and the length of the body,
+     * followed by the body. A frame without an id is an error with the stream itself.
+     */
+    static class FrameReader {
+
+        interface Handler { void frame(long id, int status, byte[] body); }
+
+        private byte[] data = new byte[1 << 12];
+        private int size = 0;
+        private long id;
+        private int status;
+        private int length = -1; // The length of the body of the current frame, or -1 if its header is not yet read
+
+        synchronized void read(ByteBuffer buffer, Handler handler) {
+            if (size + buffer.remaining() > data.length)
+                data = Arrays.copyOf(data, Math.max(2 * data.length, size + buffer.remaining()));
+            int added = buffer.remaining();
+            buffer.get(data, size, added);
+            size += added;
+
+            int start = 0;
+            while (true) {
+                if (length < 0) {
+                    int end = start;
+                    while (end < size && data[end] != '\n') end++;
+                    if (end == size) break;
+                    readHeader(start, end - start);
+                    start = end + 1;
+                }
+                if (size - start < length) break;
+                handler.frame(id, status, Arrays.copyOfRange(data, start, start + length));
+                start += length;
+                length = -1;
+            }
+            System.arraycopy(data, start, data, 0, size - start);
+            size -= start;
+        }
+
+        private void readHeader(int offset, int headerLength) {
+            id = -1;
+            status = 0;
+            length = 0;
+            try (JsonParser parser = jsonFactory.createParser(data, offset, headerLength)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT)
+                    throw new IllegalStateException("Expected feed stream frame header to be a JSON object, but got: " +
+                                                    new String(data, offset, headerLength, UTF_8));
+                String name;
+                while ((name = parser.nextFieldName()) != null) {
+                    parser.nextToken();
+                    switch (name) {
+                        case "id": id = parser.getLongValue(); break;
+                        case "status": status = parser.getIntValue(); break;
+                        case "length": length = parser.getIntValue(); break;
+                        default: parser.skipChildren();
+                    }
+                }
+                if (length < 0)
+                    throw new IllegalStateException("Expected feed stream frame length to be non-negative, but got: " +
+                                                    new String(data, offset, headerLength, UTF_8));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
     }
 
     private static class Ipv4PreferringResolver extends AbstractLifeCycle implements SocketAddressResolver {
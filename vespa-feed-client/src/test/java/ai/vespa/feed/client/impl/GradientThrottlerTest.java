@@ -0,0 +1,61 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.feed.client.impl;
+
+import ai.vespa.feed.client.HttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author agent
+ */
+class GradientThrottlerTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final GradientThrottler throttler = new GradientThrottler(new FeedClientBuilderImpl(List.of(URI.create("http://localhost:8080")))
+                                                                              .setConnectionsPerEndpoint(1)
+                                                                              .setNanoClock(nanos::get));
+
+    @Test
+    void testThrottlerSettlesAtTheLowestInflightWhichSaturatesTheCluster() {
+        // A cluster which handles 10 operations per ms, with a latency of 10 ms when not saturated: saturated at 100 inflight.
+        roundTrips(500, 10);
+        long target = throttler.targetInflight();
+        assertTrue(target >= 100 && target <= 115, "Target " + target + " should be just above 100");
+
+        // Capacity is halved, and the cluster is now saturated at 50 inflight.
+        roundTrips(500, 5);
+        target = throttler.targetInflight();
+        assertTrue(target >= 50 && target <= 62, "Target " + target + " should be just above 50");
+
+        // Capacity is restored.
+        roundTrips(500, 10);
+        target = throttler.targetInflight();
+        assertTrue(target >= 100 && target <= 115, "Target " + target + " should be just above 100");
+    }
+
+    /** Sends the target number of operations, which all complete after the latency given by the capacity of the cluster */
+    private void roundTrips(int count, int operationsPerMilli) {
+        for (int i = 0; i < count; i++) {
+            long inflight = throttler.targetInflight();
+            List<CompletableFuture<HttpResponse>> vessels = new ArrayList<>();
+            for (int j = 0; j < inflight; j++) {
+                CompletableFuture<HttpResponse> vessel = new CompletableFuture<>();
+                throttler.sent(j + 1, vessel);
+                vessels.add(vessel);
+            }
+            nanos.addAndGet(Math.max(10_000_000, inflight * 1_000_000 / operationsPerMilli));
+            for (CompletableFuture<HttpResponse> vessel : vessels) {
+                throttler.success();
+                vessel.complete(HttpResponse.of(200, null));
+            }
+        }
+    }
+
+}
@@ -9,8 +9,13 @@ import ai.vespa.feed.client.OperationParameters;
 import ai.vespa.feed.client.OperationStats;
 import ai.vespa.feed.client.Result;
 import ai.vespa.feed.client.ResultException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
@@ -261,4 +266,19 @@ class HttpFeedClientTest {
                            null);
     }
 
+    @Test
+    void testCborBody() throws IOException {
+        String json = "{\"fields\":{\"title\":\"Fast Car\",\"year\":1988,\"embedding\":{\"values\":[0.5,-1.25,3.0]},\"live\":true}}";
+        byte[] cbor = HttpFeedClient.toCbor(json);
+        assertTrue(cbor.length < json.length());
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (JsonParser parser = new CBORFactory().createParser(cbor);
+             JsonGenerator generator = new JsonFactory().createGenerator(decoded)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        assertEquals(json, decoded.toString(UTF_8));
+    }
+
 }
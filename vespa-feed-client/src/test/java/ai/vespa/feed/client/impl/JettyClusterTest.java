@@ -0,0 +1,53 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.feed.client.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author agent
+ */
+class JettyClusterTest {
+
+    @Test
+    void testReadingFeedStreamFrames() {
+        byte[] stream = ("{\"id\":3,\"status\":200,\"length\":2}\n{}" +
+                         "{\"id\":1,\"status\":404,\"length\":14}\n{\"message\":\"\"}" +
+                         "{\"status\":400,\"length\":4}\nOops" +
+                         "{\"id\":2,\"status\":200,\"length\":0}\n").getBytes(UTF_8);
+        String expected = "3 200 {}\n1 404 {\"message\":\"\"}\n-1 400 Oops\n2 200 \n";
+
+        // All at once
+        assertEquals(expected, read(List.of(stream)));
+
+        // One byte at a time
+        List<byte[]> bytes = new ArrayList<>();
+        for (byte b : stream) bytes.add(new byte[] { b });
+        assertEquals(expected, read(bytes));
+    }
+
+    @Test
+    void testReadingInvalidFeedStreamFrameHeaders() {
+        assertThrows(UncheckedIOException.class, () -> read(List.of("{\"id\":1,\n".getBytes(UTF_8))));
+        assertThrows(IllegalStateException.class, () -> read(List.of("[1]\n".getBytes(UTF_8))));
+        assertThrows(IllegalStateException.class, () -> read(List.of("{\"id\":1,\"status\":200,\"length\":-1}\n".getBytes(UTF_8))));
+    }
+
+    private static String read(List<byte[]> buffers) {
+        JettyCluster.FrameReader reader = new JettyCluster.FrameReader();
+        StringBuilder frames = new StringBuilder();
+        for (byte[] buffer : buffers)
+            reader.read(ByteBuffer.wrap(buffer), (id, status, body) -> frames.append(id).append(' ').append(status).append(' ')
+                                                                             .append(new String(body, UTF_8)).append('\n'));
+        return frames.toString();
+    }
+
+}
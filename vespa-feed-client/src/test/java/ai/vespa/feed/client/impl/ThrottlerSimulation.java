@@ -0,0 +1,189 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.feed.client.impl;
+
+import ai.vespa.feed.client.HttpResponse;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static java.lang.Math.log;
+
+/**
+ * Simulates feeding to a cluster whose capacity changes over time, e.g., when content nodes are busy merging,
+ * and prints the throughput, latency and inflight count each throttler settles at in each phase,
+ * compared to the lowest inflight count which saturates the cluster.
+ * <p>
+ * The cluster is modelled as a fixed network round-trip time, and a number of workers which process operations
+ * from a bounded queue, with exponentially distributed processing times whose mean is given by the current capacity;
+ * operations which do not fit in the queue are rejected with 429.
+ *
+ * @author agent
+ */
+public class ThrottlerSimulation {
+
+    private static final long networkNanos = 4_000_000;
+    private static final int workers = 32;
+    private static final int maxQueued = 8 * workers;
+    private static final List<Phase> phases = List.of(new Phase("normal", 20, 10_000),
+                                                      new Phase("merging", 20, 4_000),
+                                                      new Phase("recovered", 20, 15_000),
+                                                      new Phase("normal", 20, 10_000));
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+    private final Throttler throttler;
+    private final Random random = new Random(1);
+    private long now = 0;
+    private long sequence = 0;
+    private double capacity;
+    private int busy = 0;
+    private long inflight = 0;
+
+    // Statistics for the current phase
+    private long ok = 0;
+    private long throttled = 0;
+    private double latencySum = 0;
+    private double inflightIntegral = 0;
+    private long lastChange = 0;
+
+    private ThrottlerSimulation(Function<FeedClientBuilderImpl, Throttler> throttler) {
+        FeedClientBuilderImpl builder = new FeedClientBuilderImpl(List.of(URI.create("http://localhost:8080")));
+        builder.setConnectionsPerEndpoint(4);
+        builder.setNanoClock(() -> now);
+        this.throttler = throttler.apply(builder);
+    }
+
+    private void run(String name) {
+        System.out.println(name);
+        System.out.println(String.format(Locale.ENGLISH, "%12s %10s %10s %10s %12s %12s %10s",
+                                         "phase", "capacity", "optimal", "inflight", "throughput", "latency ms", "throttled"));
+        long end = 0;
+        fill();
+        for (Phase phase : phases) {
+            capacity = phase.capacity;
+            end += (long) (phase.seconds * 1e9);
+            ok = throttled = 0;
+            latencySum = inflightIntegral = 0;
+            lastChange = now;
+            long start = now;
+            while ( ! events.isEmpty() && events.peek().at < end) {
+                Event event = events.poll();
+                advance(event.at);
+                event.action.run();
+            }
+            advance(end);
+            double seconds = (now - start) * 1e-9;
+            System.out.println(String.format(Locale.ENGLISH, "%12s %10.0f %10.0f %10.1f %12.0f %12.2f %10d",
+                                             phase.name, capacity, optimalInflight(), inflightIntegral / (now - start),
+                                             ok / seconds, latencySum / ok * 1e-6, throttled));
+        }
+        System.out.println();
+    }
+
+    /** The lowest inflight count which would saturate the cluster if processing times were constant */
+    private double optimalInflight() {
+        return capacity * (networkNanos + serviceNanos()) * 1e-9;
+    }
+
+    private long serviceNanos() {
+        return (long) (workers * 1e9 / capacity);
+    }
+
+    private void advance(long to) {
+        inflightIntegral += (double) inflight * (to - lastChange);
+        lastChange = now = to;
+    }
+
+    private void fill() {
+        while (inflight < throttler.targetInflight())
+            send();
+    }
+
+    private void send() {
+        long sent = now;
+        CompletableFuture<HttpResponse> vessel = new CompletableFuture<>();
+        advance(now);
+        inflight++;
+        throttler.sent(inflight, vessel);
+        schedule(networkNanos / 2, () -> {
+            if (busy < workers) process(sent, vessel);
+            else if (queued.size() < maxQueued) queued.add(() -> process(sent, vessel));
+            else schedule(networkNanos / 2, () -> respond(sent, vessel, 429));
+        });
+    }
+
+    private void process(long sent, CompletableFuture<HttpResponse> vessel) {
+        busy++;
+        schedule((long) (-log(1 - random.nextDouble()) * serviceNanos()), () -> {
+            busy--;
+            if ( ! queued.isEmpty()) queued.poll().run();
+            schedule(networkNanos / 2, () -> respond(sent, vessel, 200));
+        });
+    }
+
+    private void respond(long sent, CompletableFuture<HttpResponse> vessel, int code) {
+        if (code == 200) {
+            ok++;
+            latencySum += now - sent;
+            throttler.success();
+        }
+        else {
+            throttled++;
+            throttler.throttled(inflight);
+        }
+        advance(now);
+        inflight--;
+        vessel.complete(HttpResponse.of(code, null));
+        fill();
+    }
+
+    private void schedule(long delayNanos, Runnable action) {
+        events.add(new Event(now + delayNanos, sequence++, action));
+    }
+
+    public static void main(String[] args) {
+        new ThrottlerSimulation(DynamicThrottler::new).run("DynamicThrottler");
+        new ThrottlerSimulation(GradientThrottler::new).run("GradientThrottler");
+    }
+
+    private static class Phase {
+
+        final String name;
+        final double seconds;
+        final double capacity;
+
+        Phase(String name, double seconds, double capacity) {
+            this.name = name;
+            this.seconds = seconds;
+            this.capacity = capacity;
+        }
+
+    }
+
+    private static class Event implements Comparable<Event> {
+
+        final long at;
+        final long sequence;
+        final Runnable action;
+
+        Event(long at, long sequence, Runnable action) {
+            this.at = at;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return at != other.at ? Long.compare(at, other.at) : Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+}
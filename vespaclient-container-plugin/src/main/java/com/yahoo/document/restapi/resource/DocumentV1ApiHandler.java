@@ -4,7 +4,10 @@ package com.yahoo.document.restapi.resource;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonFactoryBuilder;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.yahoo.cloud.config.ClusterListConfig;
 import com.yahoo.component.annotation.Inject;
 import com.yahoo.concurrent.DaemonThreadFactory;
@@ -81,15 +84,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -102,6 +110,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
@@ -160,6 +170,19 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
             .streamReadConstraints(StreamReadConstraints.builder().maxStringLength(Integer.MAX_VALUE).build())
             .build();
 
+    /** Document operations may also be sent as CBOR, which has the same structure as JSON but is cheaper to parse */
+    private static final JsonFactory cborFactory = CBORFactory.builder()
+            .streamReadConstraints(StreamReadConstraints.builder().maxStringLength(Integer.MAX_VALUE).build())
+            .build();
+
+    static final String CBOR_CONTENT_TYPE = "application/cbor";
+
+    /** The content type of the request and response of a {@link FeedStream} */
+    static final String FEED_STREAM_CONTENT_TYPE = "application/x-vespa-feed-stream";
+    static final String FEED_STREAM_PATH = "/document/v1/feed";
+    /** The max length of the header line of a frame in a {@link FeedStream} */
+    static final int MAX_FEED_STREAM_HEADER_BYTES = 1 << 16;
+
     private static final String CREATE = "create";
     private static final String CONDITION = "condition";
     private static final String ROUTE = "route";
@@ -189,15 +212,17 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
     private final DocumentOperationParser parser;
     private final long maxThrottled;
     private final long maxThrottledAgeNS;
+    private final int maxFeedStreamFrameBytes;
+    private final int maxFeedStreamPending;
     private final DocumentAccess access;
     private final AsyncSession asyncSession;
     private final Map<String, StorageCluster> clusters;
-    private final Deque<Operation> operations;
-    private final Deque<BooleanSupplier> visitOperations = new ConcurrentLinkedDeque<>();
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
     private final AtomicLong enqueued = new AtomicLong();
     private final AtomicLong outstanding = new AtomicLong();
     private final Map<VisitorControlHandler, VisitorSession> visits = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("document-api-handler-"));
+    private final ScheduledExecutorService dispatcher;
     private final ScheduledExecutorService visitDispatcher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("document-api-handler-visit-"));
     private final Map<String, Map<Method, Handler>> handlers = defineApi();
 
@@ -218,20 +243,30 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
                          ClusterListConfig clusterListConfig, AllClustersBucketSpacesConfig bucketSpacesConfig) {
         this.clock = clock;
         this.visitTimeout = visitTimeout;
-        this.parser = new DocumentOperationParser(documentmanagerConfig);
+        this.parser = new DocumentOperationParser(documentmanagerConfig, executorConfig.directPutSerialization());
         this.metric = metric;
         this.metrics = new DocumentApiMetrics(metricReceiver, "documentV1");
         this.maxThrottled = executorConfig.maxThrottled();
         this.maxThrottledAgeNS = (long) (executorConfig.maxThrottledAge() * 1_000_000_000.0);
+        this.maxFeedStreamFrameBytes = executorConfig.maxFeedStreamFrameBytes();
+        this.maxFeedStreamPending = Math.max(1, executorConfig.maxFeedStreamPending());
         this.access = access;
         this.asyncSession = access.createAsyncSession(new AsyncParameters());
         this.clusters = parseClusters(clusterListConfig, bucketSpacesConfig);
-        this.operations = new ConcurrentLinkedDeque<>();
+        this.stripes = new Stripe[stripeCount(executorConfig)];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe();
+        this.dispatcher = Executors.newScheduledThreadPool(stripes.length, new DaemonThreadFactory("document-api-handler-"));
         long resendDelayMS = SystemTimer.adjustTimeoutByDetectedHz(Duration.ofMillis(executorConfig.resendDelayMillis())).toMillis();
 
         // TODO: Here it would be better to have dedicated threads with different wait depending on blocked or empty.
-        this.dispatcher.scheduleWithFixedDelay(this::dispatchEnqueued, resendDelayMS, resendDelayMS, MILLISECONDS);
-        this.visitDispatcher.scheduleWithFixedDelay(this::dispatchVisitEnqueued, resendDelayMS, resendDelayMS, MILLISECONDS);
+        for (Stripe stripe : stripes)
+            this.dispatcher.scheduleWithFixedDelay(stripe::dispatchEnqueued, resendDelayMS, resendDelayMS, MILLISECONDS);
+    }
+
+    private static int stripeCount(DocumentOperationExecutorConfig executorConfig) {
+        return executorConfig.dispatchStripes() > 0 ? executorConfig.dispatchStripes()
+                                                    : Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
     }
 
     // ------------------------------------------------ Requests -------------------------------------------------
@@ -284,23 +319,23 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
         Instant doom = clock.instant().plus(Duration.ofSeconds(30));
 
         // This blocks until all visitors are done. These, in turn, may require the asyncSession to be alive
-        // to be able to run, as well as dispatch of operations against it, which is done by visitDispatcher.
+        // to be able to run, as well as dispatch of operations against it, which is done by the dispatcher.
         visits.values().forEach(VisitorSession::abort);
         visits.values().forEach(VisitorSession::destroy);
 
         // Shut down both dispatchers, so only we empty the queues of outstanding operations, and can be sure they're empty.
         dispatcher.shutdown();
         visitDispatcher.shutdown();
-        while ( ! (operations.isEmpty() && visitOperations.isEmpty()) && clock.instant().isBefore(doom)) {
+        while ( ! Arrays.stream(stripes).allMatch(Stripe::isEmpty) && clock.instant().isBefore(doom))
             dispatchEnqueued();
-            dispatchVisitEnqueued();
-        }
 
-        if ( ! operations.isEmpty())
-            log.log(WARNING, "Failed to empty request queue before shutdown timeout — " + operations.size() + " requests left");
+        int operationsLeft = Arrays.stream(stripes).mapToInt(stripe -> stripe.operations.size()).sum();
+        if (operationsLeft > 0)
+            log.log(WARNING, "Failed to empty request queue before shutdown timeout — " + operationsLeft + " requests left");
 
-        if ( ! visitOperations.isEmpty())
-            log.log(WARNING, "Failed to empty visitor operations queue before shutdown timeout — " + operations.size() + " operations left");
+        int visitOperationsLeft = Arrays.stream(stripes).mapToInt(stripe -> stripe.visitOperations.size()).sum();
+        if (visitOperationsLeft > 0)
+            log.log(WARNING, "Failed to empty visitor operations queue before shutdown timeout — " + visitOperationsLeft + " operations left");
 
         try {
             while (outstanding.get() > 0 && clock.instant().isBefore(doom))
@@ -336,6 +371,9 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
                             POST, this::postDocuments,
                             DELETE, this::deleteDocuments));
 
+        handlers.put(FEED_STREAM_PATH,
+                     Map.of(POST, this::postFeedStream));
+
         handlers.put("/document/v1/{namespace}/{documentType}/docid/",
                      Map.of(GET, this::getDocuments,
                             POST, this::postDocuments,
@@ -377,7 +415,7 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
 
     private ContentChannel getDocuments(HttpRequest request, DocumentPath path, ResponseHandler handler) {
         disallow(request, DRY_RUN);
-        enqueueAndDispatch(request, handler, () -> {
+        enqueueAndDispatch(anyStripe(), request, handler, () -> {
             boolean streamed = getProperty(request, STREAM, booleanParser).orElse(false);
             VisitorParameters parameters = parseGetParameters(request, path, streamed);
             return () -> {
@@ -390,7 +428,7 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
 
     private ContentChannel postDocuments(HttpRequest request, DocumentPath path, ResponseHandler handler) {
         disallow(request, DRY_RUN);
-        enqueueAndDispatch(request, handler, () -> {
+        enqueueAndDispatch(anyStripe(), request, handler, () -> {
             StorageCluster destination = resolveCluster(Optional.of(requireProperty(request, DESTINATION_CLUSTER)), clusters);
             VisitorParameters parameters = parseParameters(request, path);
             parameters.setRemoteDataHandler("[Content:cluster=" + destination.name() + "]"); // Bypass indexing.
@@ -406,13 +444,13 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
     private ContentChannel putDocuments(HttpRequest request, DocumentPath path, ResponseHandler handler) {
         disallow(request, DRY_RUN);
         return new ForwardingContentChannel(in -> {
-            enqueueAndDispatch(request, handler, () -> {
+            enqueueAndDispatch(anyStripe(), request, handler, () -> {
                 StorageCluster cluster = resolveCluster(Optional.of(requireProperty(request, CLUSTER)), clusters);
                 VisitorParameters parameters = parseParameters(request, path);
                 parameters.setFieldSet(DocIdOnly.NAME);
                 String type = path.documentType().orElseThrow(() -> new IllegalStateException("Document type must be specified for mass updates"));
                 IdIdString dummyId = new IdIdString("dummy", type, "", "");
-                ParsedDocumentOperation update = parser.parseUpdate(in, dummyId.toString());
+                ParsedDocumentOperation update = parser.parseUpdate(in, dummyId.toString(), bodyFactory(request));
                 update.operation().setCondition(new TestAndSetCondition(requireProperty(request, SELECTION)));
                 return () -> {
                     visitAndUpdate(request, parameters, update.fullyApplied(), handler, (DocumentUpdate)update.operation(), cluster.name());
@@ -424,7 +462,7 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
 
     private ContentChannel deleteDocuments(HttpRequest request, DocumentPath path, ResponseHandler handler) {
         disallow(request, DRY_RUN);
-        enqueueAndDispatch(request, handler, () -> {
+        enqueueAndDispatch(anyStripe(), request, handler, () -> {
             VisitorParameters parameters = parseParameters(request, path);
             parameters.setFieldSet(DocIdOnly.NAME);
             TestAndSetCondition condition = new TestAndSetCondition(requireProperty(request, SELECTION));
@@ -437,10 +475,14 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
         return ignoredContent;
     }
 
+    private ContentChannel postFeedStream(HttpRequest request, DocumentPath path, ResponseHandler handler) {
+        return new FeedStream(request, handler);
+    }
+
     private ContentChannel getDocument(HttpRequest request, DocumentPath path, ResponseHandler rawHandler) {
         ResponseHandler handler = new MeasuringResponseHandler(request, rawHandler, com.yahoo.documentapi.metrics.DocumentOperationType.GET, clock.instant());
         disallow(request, DRY_RUN);
-        enqueueAndDispatch(request, handler, () -> {
+        enqueueAndDispatch(stripe(path.id()), request, handler, () -> {
             DocumentOperationParameters rawParameters = parametersFromRequest(request, CLUSTER, FIELD_SET);
             if (rawParameters.fieldSet().isEmpty())
                 rawParameters = rawParameters.withFieldSet(path.documentType().orElseThrow() + ":[document]");
@@ -469,8 +511,8 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
         }
 
         return new ForwardingContentChannel(in -> {
-            enqueueAndDispatch(request, handler, () -> {
-                ParsedDocumentOperation parsed = parser.parsePut(in, path.id().toString());
+            enqueueAndDispatch(stripe(path.id()), request, handler, () -> {
+                ParsedDocumentOperation parsed = parser.parsePut(in, path.id().toString(), bodyFactory(request));
                 DocumentPut put = (DocumentPut)parsed.operation();
                 getProperty(request, CONDITION).map(TestAndSetCondition::new).ifPresent(put::setCondition);
                 getProperty(request, CREATE, booleanParser).ifPresent(put::setCreateIfNonExistent);
@@ -494,8 +536,8 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
         }
 
         return new ForwardingContentChannel(in -> {
-            enqueueAndDispatch(request, handler, () -> {
-                ParsedDocumentOperation parsed = parser.parseUpdate(in, path.id().toString());
+            enqueueAndDispatch(stripe(path.id()), request, handler, () -> {
+                ParsedDocumentOperation parsed = parser.parseUpdate(in, path.id().toString(), bodyFactory(request));
                 DocumentUpdate update = (DocumentUpdate)parsed.operation();
                 getProperty(request, CONDITION).map(TestAndSetCondition::new).ifPresent(update::setCondition);
                 getProperty(request, CREATE, booleanParser).ifPresent(update::setCreateIfNonExistent);
@@ -518,7 +560,7 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
             return ignoredContent;
         }
 
-        enqueueAndDispatch(request, handler, () -> {
+        enqueueAndDispatch(stripe(path.id()), request, handler, () -> {
             DocumentRemove remove = new DocumentRemove(path.id());
             getProperty(request, CONDITION).map(TestAndSetCondition::new).ifPresent(remove::setCondition);
             DocumentOperationParameters parameters = parametersFromRequest(request, ROUTE)
@@ -551,65 +593,27 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
         return parameters;
     }
 
-    /** Dispatches enqueued requests until one is blocked. */
+    /** Dispatches enqueued requests in all stripes until one is blocked in each. */
     void dispatchEnqueued() {
-        try {
-            while (dispatchFirst());
-        }
-        catch (Exception e) {
-            log.log(WARNING, "Uncaught exception in /document/v1 dispatch thread", e);
-        }
-    }
-
-    /** Attempts to dispatch the first enqueued operations, and returns whether this was successful. */
-    private boolean dispatchFirst() {
-        Operation operation = operations.poll();
-        if (operation == null)
-            return false;
-
-        if (operation.dispatch()) {
-            enqueued.decrementAndGet();
-            return true;
-        }
-        operations.push(operation);
-        return false;
+        for (Stripe stripe : stripes)
+            stripe.dispatchEnqueued();
     }
 
-    /** Dispatches enqueued requests until one is blocked. */
-    private void dispatchVisitEnqueued() {
-        try {
-            while (dispatchFirstVisit());
-        }
-        catch (Exception e) {
-            log.log(WARNING, "Uncaught exception in /document/v1 dispatch thread", e);
-        }
-    }
-
-    /** Attempts to dispatch the first enqueued visit operations, and returns whether this was successful. */
-    private boolean dispatchFirstVisit() {
-        BooleanSupplier operation = visitOperations.poll();
-        if (operation == null)
-            return false;
-
-        if (operation.getAsBoolean())
-            return true;
-
-        visitOperations.push(operation);
-        return false;
+    /** Returns the stripe operations on the document with the given id are dispatched through. */
+    private Stripe stripe(DocumentId id) {
+        return stripes[Math.floorMod(id.hashCode(), stripes.length)];
     }
 
-    private long qAgeNS(HttpRequest request) {
-        Operation oldest = operations.peek();
-        return (oldest != null)
-                ? (request.relativeCreatedAtNanoTime() - oldest.request.relativeCreatedAtNanoTime())
-                : 0;
+    /** Returns a stripe for operations which are not on a single document, in round-robin order. */
+    private Stripe anyStripe() {
+        return stripes[Math.floorMod(nextStripe.getAndIncrement(), stripes.length)];
     }
 
     /**
-     * Enqueues the given request and operation, or responds with "overload" if the queue is full,
-     * and then attempts to dispatch an enqueued operation from the head of the queue.
+     * Enqueues the given request and operation in the given stripe, or responds with "overload" if the queues
+     * are full, and then attempts to dispatch the enqueued operations from the head of the queue of that stripe.
      */
-    private void enqueueAndDispatch(HttpRequest request, ResponseHandler handler, Supplier<BooleanSupplier> operationParser) {
+    private void enqueueAndDispatch(Stripe stripe, HttpRequest request, ResponseHandler handler, Supplier<BooleanSupplier> operationParser) {
         long numQueued = enqueued.incrementAndGet();
         if (numQueued > maxThrottled) {
             enqueued.decrementAndGet();
@@ -618,7 +622,7 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
             return;
         }
         if (numQueued > 1) {
-            long ageNS = qAgeNS(request);
+            long ageNS = stripe.qAgeNS(request);
             if (ageNS > maxThrottledAgeNS) {
                 enqueued.decrementAndGet();
                 overload(request, "Rejecting execution due to overload: "
@@ -626,8 +630,446 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
                 return;
             }
         }
-        operations.offer(new Operation(request, handler, operationParser));
-        dispatchFirst();
+        stripe.operations.offer(new Operation(request, handler, operationParser));
+        stripe.operationDispatch.run();
+    }
+
+    /**
+     * Queues of operations which are dispatched in order by a single thread at a time, such that operations
+     * on the same document are dispatched in order, while a blocked operation only holds back its own stripe.
+     * A thread which finds another dispatching from a queue leaves it to that thread to also dispatch what it enqueued.
+     */
+    private class Stripe {
+
+        private final Deque<Operation> operations = new ConcurrentLinkedDeque<>();
+        private final Deque<BooleanSupplier> visitOperations = new ConcurrentLinkedDeque<>();
+        private final ExclusiveDispatch operationDispatch = new ExclusiveDispatch(this::dispatchFirst);
+        private final ExclusiveDispatch visitDispatch = new ExclusiveDispatch(this::dispatchFirstVisit);
+
+        /** Dispatches enqueued requests and visit operations until one of each is blocked. */
+        void dispatchEnqueued() {
+            try {
+                operationDispatch.run();
+                visitDispatch.run();
+            }
+            catch (Exception e) {
+                log.log(WARNING, "Uncaught exception in /document/v1 dispatch thread", e);
+            }
+        }
+
+        /** Attempts to dispatch the first enqueued operations, and returns whether this was successful. */
+        boolean dispatchFirst() {
+            Operation operation = operations.poll();
+            if (operation == null)
+                return false;
+
+            if (operation.dispatch()) {
+                enqueued.decrementAndGet();
+                return true;
+            }
+            operations.push(operation);
+            return false;
+        }
+
+        /** Attempts to dispatch the first enqueued visit operations, and returns whether this was successful. */
+        boolean dispatchFirstVisit() {
+            BooleanSupplier operation = visitOperations.poll();
+            if (operation == null)
+                return false;
+
+            if (operation.getAsBoolean())
+                return true;
+
+            visitOperations.push(operation);
+            return false;
+        }
+
+        long qAgeNS(HttpRequest request) {
+            Operation oldest = operations.peek();
+            return (oldest != null)
+                    ? (request.relativeCreatedAtNanoTime() - oldest.request.relativeCreatedAtNanoTime())
+                    : 0;
+        }
+
+        boolean isEmpty() {
+            return operations.isEmpty() && visitOperations.isEmpty();
+        }
+
+    }
+
+    /**
+     * Dispatches from the head of a queue until that fails, in one thread at a time, so the order of the queue is kept
+     * when a blocked head is pushed back. If this is run while another thread is running it, that thread runs it again.
+     */
+    private static class ExclusiveDispatch implements Runnable {
+
+        private final BooleanSupplier dispatchFirst;
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final AtomicBoolean requested = new AtomicBoolean(false);
+
+        ExclusiveDispatch(BooleanSupplier dispatchFirst) {
+            this.dispatchFirst = dispatchFirst;
+        }
+
+        @Override
+        public void run() {
+            requested.set(true);
+            while (requested.get() && running.compareAndSet(false, true)) {
+                try {
+                    requested.set(false);
+                    while (dispatchFirst.getAsBoolean());
+                }
+                finally {
+                    running.set(false);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A stream of operations in the body of a single long-lived request, where each operation is a request to this API,
+     * and its response is written to the response stream as soon as the operation completes. This lets a client send
+     * many operations without the cost of a separate HTTP request for each, while their responses are multiplexed
+     * back in the order they complete. The client controls the flow by the number of operations it keeps in flight.
+     * <p>
+     * Each operation and each response is a frame consisting of a line with a JSON header, followed by the number
+     * of body bytes given by the header. An operation frame is
+     * <pre>
+     * {"id":1,"method":"POST","path":"/document/v1/ns/type/docid/1?timeout=10000ms","contentType":"application/json","length":14}
+     * {"fields":{}}
+     * </pre>
+     * and the response to this is
+     * <pre>
+     * {"id":1,"status":200,"length":66}
+     * {"pathId":"/document/v1/ns/type/docid/1","id":"id:ns:type::1"}
+     * </pre>
+     * A response frame without an id reports a problem with the stream itself, after which no more operations are read.
+     * This happens when a header line is longer than {@link #MAX_FEED_STREAM_HEADER_BYTES}, or a body is longer than
+     * the configured max frame size. A response which is longer than this is replaced by an error response.
+     * <p>
+     * There is at most one write to the response pending at any time, and responses which complete in the meantime
+     * are acknowledged together in the next write, so that responses are batched more the higher the load.
+     * Writes to the stream are not completed while the configured max number of operations are in flight,
+     * which pauses reading from the client until some of them complete. Each operation times out like a separate
+     * request would.
+     */
+    private class FeedStream implements ContentChannel {
+
+        private final HttpRequest request;
+        private final ContentChannel responses;
+        private final AtomicLong pending = new AtomicLong();
+        private final List<byte[]> acks = new ArrayList<>();
+        private CompletionHandler paused = null; // The completion of the last write, if withheld to pause reading
+        private byte[] input = new byte[1 << 16];
+        private int inputSize = 0;
+        private Frame header = null; // The header of the frame whose body is being read, if any
+        private boolean inputClosed = false;
+        private boolean failed = false;
+        private boolean writing = false;
+        private boolean responsesClosed = false;
+
+        FeedStream(HttpRequest request, ResponseHandler handler) {
+            this.request = request;
+            Response response = new Response(Response.Status.OK);
+            response.headers().add("Content-Type", FEED_STREAM_CONTENT_TYPE);
+            this.responses = handler.handleResponse(response);
+        }
+
+        @Override
+        public void write(ByteBuffer buf, CompletionHandler handler) {
+            List<Frame> frames = new ArrayList<>();
+            IllegalArgumentException error = null;
+            synchronized (this) {
+                if ( ! failed) {
+                    append(buf);
+                    try {
+                        readFrames(frames);
+                    }
+                    catch (IllegalArgumentException e) {
+                        error = e;
+                    }
+                }
+            }
+            frames.forEach(this::dispatch);
+            if (error != null)
+                fail(error);
+
+            synchronized (this) {
+                if ( ! failed && pending.get() >= maxFeedStreamPending) {
+                    paused = handler;
+                    return;
+                }
+            }
+            handler.completed();
+        }
+
+        @Override
+        public void close(CompletionHandler handler) {
+            boolean truncated;
+            synchronized (this) {
+                truncated = ! failed && (inputSize > 0 || header != null);
+                inputClosed = true;
+            }
+            if (truncated)
+                fail(new IllegalArgumentException("Feed stream ended in the middle of a frame"));
+            flushAcks();
+            handler.completed();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            log.log(FINE, error, () -> "Error reading feed stream: " + error.getMessage());
+            synchronized (this) {
+                failed = true;
+                inputClosed = true;
+                input = new byte[0];
+                inputSize = 0;
+            }
+            flushAcks();
+        }
+
+        private void append(ByteBuffer buf) {
+            if (inputSize + buf.remaining() > input.length)
+                input = Arrays.copyOf(input, Math.max(2 * input.length, inputSize + buf.remaining()));
+            int length = buf.remaining();
+            buf.get(input, inputSize, length);
+            inputSize += length;
+        }
+
+        /** Adds all complete frames read so far to the given list, and retains the rest of the input */
+        private void readFrames(List<Frame> frames) {
+            int start = 0;
+            while (true) {
+                if (header == null) {
+                    int end = start;
+                    while (end < inputSize && input[end] != '\n' && end - start <= MAX_FEED_STREAM_HEADER_BYTES) end++;
+                    if (end - start > MAX_FEED_STREAM_HEADER_BYTES)
+                        throw new IllegalArgumentException("Feed stream frame header is longer than " +
+                                                           MAX_FEED_STREAM_HEADER_BYTES + " bytes");
+                    if (end == inputSize) break;
+                    header = Frame.parseHeader(input, start, end - start, maxFeedStreamFrameBytes);
+                    start = end + 1;
+                }
+                if (inputSize - start < header.length()) break;
+                frames.add(header.withBody(Arrays.copyOfRange(input, start, start + header.length())));
+                start += header.length();
+                header = null;
+            }
+            System.arraycopy(input, start, input, 0, inputSize - start);
+            inputSize -= start;
+        }
+
+        /** Handles the given operation as a child request of the stream request */
+        private void dispatch(Frame frame) {
+            pending.incrementAndGet();
+            OperationResponseHandler handler = new OperationResponseHandler(frame.id());
+            HttpRequest operation = null;
+            try {
+                URI uri = request.getUri().resolve(frame.path());
+                operation = HttpRequest.newClientRequest(request, uri, frame.method());
+                handler.dispatched(operation);
+                operation.setBindingMatch(request.getBindingMatch());
+                operation.headers().addAll(request.headers());
+                operation.headers().remove("Content-Length");
+                operation.headers().remove("Content-Type");
+                if (frame.contentType() != null)
+                    operation.headers().put("Content-Type", frame.contentType());
+                if (Path.withoutValidation(uri).matches(FEED_STREAM_PATH))
+                    throw new IllegalArgumentException("Feed streams cannot be nested");
+
+                ContentChannel content = handleRequest(operation, handler);
+                if (frame.body().length > 0)
+                    content.write(ByteBuffer.wrap(frame.body()), logException);
+                content.close(logException);
+            }
+            catch (IllegalArgumentException e) {
+                badRequest(operation != null ? operation : request, e, handler);
+            }
+            catch (RuntimeException e) {
+                serverError(operation != null ? operation : request, e, handler);
+            }
+        }
+
+        /** Stops reading operations from this, and responds with the given error */
+        private void fail(IllegalArgumentException e) {
+            synchronized (this) {
+                if (failed) return;
+                failed = true;
+                input = new byte[0];
+                inputSize = 0;
+            }
+            pending.incrementAndGet();
+            badRequest(request, e, new OperationResponseHandler(-1));
+        }
+
+        private void acknowledge(long id, int status, byte[] body) {
+            String header = (id >= 0 ? "{\"id\":" + id + "," : "{") + "\"status\":" + status + ",\"length\":" + body.length + "}\n";
+            byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+            byte[] ack = Arrays.copyOf(headerBytes, headerBytes.length + body.length);
+            System.arraycopy(body, 0, ack, headerBytes.length, body.length);
+            CompletionHandler resumed = null;
+            synchronized (this) {
+                acks.add(ack);
+                if (pending.decrementAndGet() < maxFeedStreamPending) {
+                    resumed = paused;
+                    paused = null;
+                }
+            }
+            if (resumed != null)
+                resumed.completed();
+            flushAcks();
+        }
+
+        /**
+         * Writes all acknowledgements which are not yet written as a single batch, unless a write is already pending,
+         * or closes the response if all operations are acknowledged and no more will arrive.
+         */
+        private void flushAcks() {
+            ByteBuffer batch;
+            synchronized (this) {
+                if (writing || responsesClosed) return;
+                if (acks.isEmpty()) {
+                    if ( ! inputClosed || pending.get() > 0) return;
+                    responsesClosed = true;
+                    batch = null;
+                }
+                else {
+                    batch = ByteBuffer.allocate(acks.stream().mapToInt(ack -> ack.length).sum());
+                    acks.forEach(batch::put);
+                    batch.flip();
+                    acks.clear();
+                    writing = true;
+                }
+            }
+            if (batch == null) {
+                responses.close(logException);
+                return;
+            }
+            responses.write(batch, new CompletionHandler() {
+                @Override public void completed() { written(); }
+                @Override public void failed(Throwable t) {
+                    log.log(FINE, "Failed writing to feed stream", t);
+                    written();
+                }
+            });
+        }
+
+        private void written() {
+            synchronized (this) {
+                writing = false;
+            }
+            flushAcks();
+        }
+
+        /**
+         * Collects the first response to an operation in the stream, and acknowledges it when complete.
+         * The operation is timed out by this, as there is no timeout manager for child requests.
+         */
+        private class OperationResponseHandler implements ResponseHandler {
+
+            private final long id;
+            private final AtomicBoolean responded = new AtomicBoolean();
+            private volatile HttpRequest operation = null;
+            private volatile ScheduledFuture<?> timeout = null;
+
+            OperationResponseHandler(long id) {
+                this.id = id;
+            }
+
+            /** Starts the timeout of the given operation, which is released when it has a response */
+            void dispatched(HttpRequest operation) {
+                this.operation = operation;
+                this.timeout = dispatcher.schedule(() -> handleTimeout(operation, this),
+                                                   Math.max(0, doomMillis(operation) - clock.millis()), MILLISECONDS);
+            }
+
+            @Override
+            public ContentChannel handleResponse(Response response) {
+                if ( ! responded.compareAndSet(false, true)) return ignoredContent; // Timed out, or already responded.
+
+                if (timeout != null) timeout.cancel(false);
+                if (operation != null) operation.release();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                AtomicBoolean truncated = new AtomicBoolean();
+                return new ContentChannel() {
+                    @Override
+                    public void write(ByteBuffer buf, CompletionHandler handler) {
+                        synchronized (body) {
+                            if (body.size() + buf.remaining() > maxFeedStreamFrameBytes)
+                                truncated.set(true);
+                            if ( ! truncated.get())
+                                while (buf.hasRemaining())
+                                    body.write(buf.get());
+                        }
+                        handler.completed();
+                    }
+                    @Override
+                    public void close(CompletionHandler handler) {
+                        if (truncated.get()) {
+                            String message = "Response is longer than the max feed stream frame size of " +
+                                             maxFeedStreamFrameBytes + " bytes; send this operation as a separate request";
+                            acknowledge(id, Response.Status.INTERNAL_SERVER_ERROR,
+                                        ("{\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+                        }
+                        else {
+                            byte[] bytes;
+                            synchronized (body) {
+                                bytes = body.toByteArray();
+                            }
+                            acknowledge(id, response.getStatus(), bytes);
+                        }
+                        handler.completed();
+                    }
+                };
+            }
+
+        }
+
+    }
+
+    /** The header of a frame in a {@link FeedStream}, and, once read, its body */
+    private record Frame(long id, Method method, String path, String contentType, int length, byte[] body) {
+
+        Frame withBody(byte[] body) {
+            return new Frame(id, method, path, contentType, length, body);
+        }
+
+        static Frame parseHeader(byte[] data, int offset, int length, int maxBodyLength) {
+            try (JsonParser parser = jsonFactory.createParser(data, offset, length)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT)
+                    throw new IllegalArgumentException("Expected a feed stream frame header to be a JSON object");
+                long id = -1;
+                String method = null;
+                String path = null;
+                String contentType = null;
+                int bodyLength = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id" -> id = parser.getLongValue();
+                        case "method" -> method = parser.getText();
+                        case "path" -> path = parser.getText();
+                        case "contentType" -> contentType = parser.getText();
+                        case "length" -> bodyLength = parser.getIntValue();
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (id < 0 || method == null || path == null)
+                    throw new IllegalArgumentException("Expected a feed stream frame header to contain 'id', 'method' and 'path'");
+                if (bodyLength < 0)
+                    throw new IllegalArgumentException("Feed stream frame body length cannot be negative, but was " + bodyLength);
+                if (bodyLength > maxBodyLength)
+                    throw new IllegalArgumentException("Feed stream frame body length cannot exceed " + maxBodyLength +
+                                                       " bytes, but was " + bodyLength);
+                return new Frame(id, Method.valueOf(method), path, contentType, bodyLength, null);
+            }
+            catch (IOException e) {
+                throw new IllegalArgumentException("Failed parsing feed stream frame header: " + Exceptions.toMessageString(e));
+            }
+        }
+
     }
 
 
@@ -1064,22 +1506,24 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
     class DocumentOperationParser {
 
         private final DocumentTypeManager manager;
+        private final boolean serializePuts;
 
-        DocumentOperationParser(DocumentmanagerConfig config) {
+        DocumentOperationParser(DocumentmanagerConfig config, boolean serializePuts) {
             this.manager = new DocumentTypeManager(config);
+            this.serializePuts = serializePuts;
         }
 
-        ParsedDocumentOperation parsePut(InputStream inputStream, String docId) {
-            return parse(inputStream, docId, DocumentOperationType.PUT);
+        ParsedDocumentOperation parsePut(InputStream inputStream, String docId, JsonFactory factory) {
+            return parse(inputStream, docId, DocumentOperationType.PUT, factory);
         }
 
-        ParsedDocumentOperation parseUpdate(InputStream inputStream, String docId)  {
-            return parse(inputStream, docId, DocumentOperationType.UPDATE);
+        ParsedDocumentOperation parseUpdate(InputStream inputStream, String docId, JsonFactory factory)  {
+            return parse(inputStream, docId, DocumentOperationType.UPDATE, factory);
         }
 
-        private ParsedDocumentOperation parse(InputStream inputStream, String docId, DocumentOperationType operation) {
+        private ParsedDocumentOperation parse(InputStream inputStream, String docId, DocumentOperationType operation, JsonFactory factory) {
             try {
-                return new JsonReader(manager, inputStream, jsonFactory).readSingleDocumentStreaming(operation, docId);
+                return new JsonReader(manager, inputStream, factory).readSingleDocumentStreaming(operation, docId, serializePuts);
             } catch (IllegalArgumentException e) {
                 incrementMetricParseError();
                 throw e;
@@ -1088,6 +1532,12 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
 
     }
 
+    /** Returns the factory of parsers for the body of the given request, which is CBOR if so specified, and JSON otherwise */
+    private static JsonFactory bodyFactory(HttpRequest request) {
+        String contentType = request.headers().getFirst("Content-Type");
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(CBOR_CONTENT_TYPE) ? cborFactory : jsonFactory;
+    }
+
     interface SuccessCallback {
         void onSuccess(Document document, JsonResponse response) throws IOException;
     }
@@ -1331,7 +1781,8 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
                                     onError.accept("Unexpected response " + operationResponse);
                             }
                         });
-                visitOperations.offer(() -> {
+                Stripe stripe = stripe(document.getId());
+                stripe.visitOperations.offer(() -> {
                     Result result = operation.apply(document.getId(), operationParameters);
                     if (result.type() == Result.ResultType.TRANSIENT_ERROR)
                         return false;
@@ -1344,7 +1795,7 @@ public final class DocumentV1ApiHandler extends AbstractRequestHandler {
                     ack.run();
                     return true;
                 });
-                dispatchFirstVisit();
+                stripe.visitDispatch.run();
             }
         });
     }
@@ -0,0 +1,119 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.restapi.resource;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.yahoo.document.DataType;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.json.DocumentOperationType;
+import com.yahoo.document.json.JsonReader;
+import com.yahoo.tensor.TensorType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the throughput of parsing document puts sent as JSON and as CBOR,
+ * for documents which are mostly text, and documents which are mostly tensor cells.
+ *
+ * @author agent
+ */
+public class DocumentBodyFormatBenchmark {
+
+    private static final long minNanos = 2_000_000_000L;
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final JsonFactory cborFactory = new CBORFactory();
+
+    public DocumentBodyFormatBenchmark() {
+        DocumentType type = new DocumentType("bench");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("body", DataType.STRING));
+        type.addField(new Field("embedding", DataType.getTensor(TensorType.fromSpec("tensor<float>(x[768])"))));
+        types.registerDocumentType(type);
+    }
+
+    public void run() {
+        out(String.format(Locale.ENGLISH, "%8s %6s %10s %12s %12s", "document", "format", "bytes/doc", "docs/s", "MB/s"));
+        measure("text", textDocument());
+        measure("tensor", tensorDocument());
+    }
+
+    private void measure(String name, String json) {
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        byte[] cborBytes = toCbor(json);
+        measure(jsonBytes, jsonFactory); // Warmup
+        measure(cborBytes, cborFactory);
+        report(name, "json", jsonBytes.length, measure(jsonBytes, jsonFactory));
+        report(name, "cbor", cborBytes.length, measure(cborBytes, cborFactory));
+    }
+
+    /** Returns the number of documents parsed per second */
+    private double measure(byte[] body, JsonFactory factory) {
+        long count = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            new JsonReader(types, new ByteArrayInputStream(body), factory)
+                    .readSingleDocumentStreaming(DocumentOperationType.PUT, "id:test:bench::" + count);
+            count++;
+        } while ((elapsed = System.nanoTime() - start) < minNanos);
+        return count * 1e9 / elapsed;
+    }
+
+    private void report(String name, String format, int bytes, double docsPerSecond) {
+        out(String.format(Locale.ENGLISH, "%8s %6s %10d %12.0f %12.1f",
+                          name, format, bytes, docsPerSecond, docsPerSecond * bytes / 1e6));
+    }
+
+    private static String textDocument() {
+        Random random = new Random(1);
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 8000)
+            body.append(words[random.nextInt(words.length)]).append(' ');
+        return "{ \"fields\": { \"title\": \"A text heavy document\", \"body\": \"" + body.toString().trim() + "\" } }";
+    }
+
+    private static String tensorDocument() {
+        Random random = new Random(1);
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < 768; i++)
+            values.append(i == 0 ? "" : ",").append(random.nextFloat() * 2 - 1);
+        return "{ \"fields\": { \"title\": \"A tensor heavy document\", \"embedding\": { \"values\": [" + values + "] } } }";
+    }
+
+    private static byte[] toCbor(String json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonParser parser = new JsonFactory().createParser(json);
+             JsonGenerator generator = new CBORFactory().createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final String[] words = { "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "document",
+                                            "feed", "container", "throughput", "parsing", "vespa", "search", "engine" };
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) {
+        new DocumentBodyFormatBenchmark().run();
+    }
+
+}
@@ -1,11 +1,16 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document.restapi.resource;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.yahoo.cloud.config.ClusterListConfig;
 import com.yahoo.container.jdisc.RequestHandlerTestDriver;
 import com.yahoo.document.BucketId;
 import com.yahoo.document.Document;
 import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentOperation;
 import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
 import com.yahoo.document.DocumentTypeManager;
@@ -64,7 +69,9 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +85,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -1051,6 +1059,280 @@ public class DocumentV1ApiTest {
         });
     }
 
+    @Test
+    public void testCborBody() throws IOException {
+        RequestHandlerTestDriver driver = new RequestHandlerTestDriver(handler);
+        access.session.expect((put, parameters) -> {
+            assertEquals(new DocumentPut(doc2), put);
+            parameters.responseHandler().get().handleResponse(new Response(0, null, Response.Outcome.SUCCESS));
+            return new Result();
+        });
+        var response = driver.sendRequest("http://localhost/document/v1/space/music/number/1/two", POST,
+                                          cbor("{" +
+                                               "  \"fields\": {" +
+                                               "    \"artist\": \"Asa-Chan & Jun-Ray\"," +
+                                               "    \"embedding\": { \"values\": [4.0,5.0,6.0] } " +
+                                               "  }" +
+                                               "}"),
+                                          DocumentV1ApiHandler.CBOR_CONTENT_TYPE);
+        assertSameJson("{" +
+                       "  \"pathId\": \"/document/v1/space/music/number/1/two\"," +
+                       "  \"id\": \"id:space:music:n=1:two\"" +
+                       "}", response.readAll());
+        assertEquals(200, response.getStatus());
+
+        access.session.expect((update, parameters) -> {
+            DocumentUpdate expectedUpdate = new DocumentUpdate(doc3.getDataType(), doc3.getId());
+            expectedUpdate.addFieldUpdate(FieldUpdate.createAssign(doc3.getField("artist"), new StringFieldValue("Lisa Ekdahl")));
+            assertEquals(expectedUpdate, update);
+            parameters.responseHandler().get().handleResponse(new Response(0, null, Response.Outcome.SUCCESS));
+            return new Result();
+        });
+        response = driver.sendRequest("http://localhost/document/v1/space/music/group/a/three", PUT,
+                                      cbor("{ \"fields\": { \"artist\": { \"assign\": \"Lisa Ekdahl\" } } }"),
+                                      DocumentV1ApiHandler.CBOR_CONTENT_TYPE);
+        assertSameJson("{" +
+                       "  \"pathId\": \"/document/v1/space/music/group/a/three\"," +
+                       "  \"id\": \"id:space:music:g=a:three\"" +
+                       "}", response.readAll());
+        assertEquals(200, response.getStatus());
+        driver.close();
+    }
+
+    @Test
+    public void testFeedStream() {
+        RequestHandlerTestDriver driver = new RequestHandlerTestDriver(handler);
+        access.session.expect((operation, parameters) -> {
+            if (operation instanceof DocumentPut put)
+                assertEquals(new DocumentPut(doc2), put);
+            else
+                assertEquals(new DocumentRemove(doc1.getId()), operation);
+            parameters.responseHandler().get().handleResponse(new Response(0, null, Response.Outcome.SUCCESS));
+            return new Result();
+        });
+        String put = "{ \"fields\": { \"artist\": \"Asa-Chan & Jun-Ray\", \"embedding\": { \"values\": [4.0,5.0,6.0] } } }";
+        String stream = frame(1, "POST", "/document/v1/space/music/number/1/two", put) +
+                        frame(2, "DELETE", "/document/v1/space/music/docid/one", "") +
+                        frame(3, "GET", "/document/v1/feed", "") +
+                        frame(4, "GET", "/document/v1/nope", "");
+        var response = driver.sendRequest("http://localhost/document/v1/feed", POST,
+                                          ByteBuffer.wrap(stream.getBytes(UTF_8)),
+                                          DocumentV1ApiHandler.FEED_STREAM_CONTENT_TYPE);
+        String acks = response.readAll();
+        assertEquals(200, response.getStatus());
+        Map<Long, String> bodies = new TreeMap<>();
+        Map<Long, Integer> statuses = new TreeMap<>();
+        for (int start = 0; start < acks.length(); ) {
+            int end = acks.indexOf('\n', start);
+            Inspector header = SlimeUtils.jsonToSlime(acks.substring(start, end)).get();
+            int length = (int) header.field("length").asLong();
+            statuses.put(header.field("id").asLong(), (int) header.field("status").asLong());
+            bodies.put(header.field("id").asLong(), acks.substring(end + 1, end + 1 + length));
+            start = end + 1 + length;
+        }
+        assertEquals(Map.of(1L, 200, 2L, 200, 3L, 400, 4L, 404), statuses);
+        assertSameJson("{" +
+                       "  \"pathId\": \"/document/v1/space/music/number/1/two\"," +
+                       "  \"id\": \"id:space:music:n=1:two\"" +
+                       "}", bodies.get(1L));
+        assertSameJson("{" +
+                       "  \"pathId\": \"/document/v1/space/music/docid/one\"," +
+                       "  \"id\": \"id:space:music::one\"" +
+                       "}", bodies.get(2L));
+        assertSameJson("{" +
+                       "  \"pathId\": \"/document/v1/feed\"," +
+                       "  \"message\": \"Feed streams cannot be nested\"" +
+                       "}", bodies.get(3L));
+
+        // A malformed frame header ends the stream with an error without an id
+        response = driver.sendRequest("http://localhost/document/v1/feed", POST,
+                                      ByteBuffer.wrap("{\"length\":3}\n{}\n".getBytes(UTF_8)),
+                                      DocumentV1ApiHandler.FEED_STREAM_CONTENT_TYPE);
+        String ack = response.readAll();
+        assertEquals(200, response.getStatus());
+        assertTrue(ack, ack.startsWith("{\"status\":400,"));
+        assertTrue(ack, ack.contains("Expected a feed stream frame header to contain 'id', 'method' and 'path'"));
+        driver.close();
+    }
+
+    @Test
+    public void testFeedStreamLimits() {
+        DocumentOperationExecutorConfig executorConfig = new DocumentOperationExecutorConfig.Builder()
+                .resendDelayMillis(1 << 30)
+                .maxFeedStreamFrameBytes(64)
+                .build();
+        handler.destroy();
+        handler = new DocumentV1ApiHandler(clock, Duration.ofMillis(1), metric, metrics, access, docConfig,
+                                           executorConfig, clusterConfig, bucketConfig);
+        RequestHandlerTestDriver driver = new RequestHandlerTestDriver(handler);
+        access.session.expect((operation, parameters) -> {
+            parameters.responseHandler().get().handleResponse(new Response(0, null, Response.Outcome.SUCCESS));
+            return new Result();
+        });
+
+        // A response which is longer than the max frame size is replaced by an error
+        var response = driver.sendRequest("http://localhost/document/v1/feed", POST,
+                                          ByteBuffer.wrap(frame(1, "DELETE", "/document/v1/space/music/docid/one", "").getBytes(UTF_8)),
+                                          DocumentV1ApiHandler.FEED_STREAM_CONTENT_TYPE);
+        String ack = response.readAll();
+        assertTrue(ack, ack.startsWith("{\"id\":1,\"status\":500,"));
+        assertTrue(ack, ack.contains("Response is longer than the max feed stream frame size of 64 bytes"));
+
+        // A body which is longer than the max frame size fails the stream
+        String put = "{ \"fields\": { \"artist\": \"Asa-Chan & Jun-Ray\", \"embedding\": { \"values\": [4.0,5.0,6.0] } } }";
+        response = driver.sendRequest("http://localhost/document/v1/feed", POST,
+                                      ByteBuffer.wrap(frame(1, "POST", "/document/v1/space/music/number/1/two", put).getBytes(UTF_8)),
+                                      DocumentV1ApiHandler.FEED_STREAM_CONTENT_TYPE);
+        ack = response.readAll();
+        assertTrue(ack, ack.startsWith("{\"status\":400,"));
+        assertTrue(ack, ack.contains("Feed stream frame body length cannot exceed 64 bytes, but was " + put.length()));
+
+        // A header line which is too long fails the stream, even before it ends
+        response = driver.sendRequest("http://localhost/document/v1/feed", POST,
+                                      ByteBuffer.wrap("{".repeat(DocumentV1ApiHandler.MAX_FEED_STREAM_HEADER_BYTES + 1).getBytes(UTF_8)),
+                                      DocumentV1ApiHandler.FEED_STREAM_CONTENT_TYPE);
+        ack = response.readAll();
+        assertTrue(ack, ack.startsWith("{\"status\":400,"));
+        assertTrue(ack, ack.contains("Feed stream frame header is longer than " + DocumentV1ApiHandler.MAX_FEED_STREAM_HEADER_BYTES + " bytes"));
+        driver.close();
+    }
+
+    @Test
+    public void testFeedStreamOperationTimeout() {
+        RequestHandlerTestDriver driver = new RequestHandlerTestDriver(handler);
+        AtomicReference<DocumentOperationParameters> dispatched = new AtomicReference<>();
+        access.session.expect((operation, parameters) -> {
+            dispatched.set(parameters);
+            return new Result();
+        });
+        var response = driver.sendRequest("http://localhost/document/v1/feed", POST,
+                                          ByteBuffer.wrap(frame(1, "DELETE", "/document/v1/space/music/docid/one?timeout=1ms", "").getBytes(UTF_8)),
+                                          DocumentV1ApiHandler.FEED_STREAM_CONTENT_TYPE);
+        String ack = response.readAll();
+        assertTrue(ack, ack.startsWith("{\"id\":1,\"status\":504,"));
+        assertTrue(ack, ack.contains("Timeout after 1ms"));
+
+        // A late response is ignored
+        if (dispatched.get() != null)
+            dispatched.get().responseHandler().get().handleResponse(new Response(0, null, Response.Outcome.SUCCESS));
+        driver.close();
+    }
+
+    private static String frame(long id, String method, String path, String body) {
+        return "{\"id\":" + id + ",\"method\":\"" + method + "\",\"path\":\"" + path + "\"," +
+               "\"contentType\":\"application/json\",\"length\":" + body.getBytes(UTF_8).length + "}\n" + body;
+    }
+
+    private static ByteBuffer cbor(String json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonParser parser = new JsonFactory().createParser(json);
+             JsonGenerator generator = new CBORFactory().createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Test
+    public void testStripedDispatch() {
+        DocumentOperationExecutorConfig executorConfig = new DocumentOperationExecutorConfig.Builder()
+                .maxThrottled(16)
+                .resendDelayMillis(1 << 30)
+                .dispatchStripes(2)
+                .build();
+        handler.destroy();
+        handler = new DocumentV1ApiHandler(clock, Duration.ofMillis(1), metric, metrics, access, docConfig,
+                                           executorConfig, clusterConfig, bucketConfig);
+        RequestHandlerTestDriver driver = new RequestHandlerTestDriver(handler);
+
+        // Find documents dispatched through different stripes
+        String blocked = "blocked";
+        int blockedStripe = Math.floorMod(new DocumentId("id:space:music::" + blocked).hashCode(), 2);
+        String free = null;
+        for (int i = 0; free == null; i++)
+            if (Math.floorMod(new DocumentId("id:space:music::free" + i).hashCode(), 2) != blockedStripe)
+                free = "free" + i;
+
+        Response success = new Response(0, null, Response.Outcome.SUCCESS);
+        List<String> dispatched = new ArrayList<>();
+        access.session.expect((operation, parameters) -> {
+            if (operation instanceof DocumentPut documentPut && documentPut.getId().toString().endsWith("::" + blocked))
+                return new Result(Result.ResultType.TRANSIENT_ERROR, Result.toError(Result.ResultType.TRANSIENT_ERROR));
+            dispatched.add(operation.getClass().getSimpleName() + " " + ((DocumentOperation) operation).getId());
+            parameters.responseHandler().get().handleResponse(success);
+            return new Result(0);
+        });
+        var put = driver.sendRequest("http://localhost/document/v1/space/music/docid/" + blocked, POST, "{\"fields\": {}}");
+        var update = driver.sendRequest("http://localhost/document/v1/space/music/docid/" + blocked, PUT,
+                                        "{\"fields\": { \"artist\": { \"assign\": \"Lisa Ekdahl\" } } }");
+        var other = driver.sendRequest("http://localhost/document/v1/space/music/docid/" + free, POST, "{\"fields\": {}}");
+        other.readAll();
+        assertEquals("Operations in other stripes are not blocked", 200, other.getStatus());
+        assertEquals(List.of("DocumentPut id:space:music::" + free), dispatched);
+
+        access.session.expect((operation, parameters) -> {
+            dispatched.add(operation.getClass().getSimpleName() + " " + ((DocumentOperation) operation).getId());
+            parameters.responseHandler().get().handleResponse(success);
+            return new Result(0);
+        });
+        handler.dispatchEnqueued();
+        put.readAll();
+        update.readAll();
+        assertEquals(200, put.getStatus());
+        assertEquals(200, update.getStatus());
+        assertEquals("Operations on the same document are dispatched in order",
+                     List.of("DocumentPut id:space:music::" + free,
+                             "DocumentPut id:space:music::" + blocked,
+                             "DocumentUpdate id:space:music::" + blocked),
+                     dispatched);
+        driver.close();
+    }
+
+    @Test
+    public void testStripeIsDispatchedByOneThreadAtATime() throws InterruptedException {
+        DocumentOperationExecutorConfig executorConfig = new DocumentOperationExecutorConfig.Builder()
+                .maxThrottled(16)
+                .resendDelayMillis(1 << 30)
+                .dispatchStripes(1)
+                .build();
+        handler.destroy();
+        handler = new DocumentV1ApiHandler(clock, Duration.ofMillis(1), metric, metrics, access, docConfig,
+                                           executorConfig, clusterConfig, bucketConfig);
+        RequestHandlerTestDriver driver = new RequestHandlerTestDriver(handler);
+
+        // While the put is being dispatched, and then blocked, an update to the same document is enqueued by another thread
+        Response success = new Response(0, null, Response.Outcome.SUCCESS);
+        List<String> dispatched = new ArrayList<>();
+        AtomicReference<RequestHandlerTestDriver.MockResponseHandler> update = new AtomicReference<>();
+        AtomicBoolean first = new AtomicBoolean(true);
+        access.session.expect((operation, parameters) -> {
+            dispatched.add(operation.getClass().getSimpleName());
+            if (first.getAndSet(false)) {
+                Thread updater = new Thread(() -> update.set(driver.sendRequest("http://localhost/document/v1/space/music/docid/one", PUT,
+                                                                                "{\"fields\": { \"artist\": { \"assign\": \"Lisa Ekdahl\" } } }")));
+                updater.start();
+                try { updater.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            return new Result(Result.ResultType.TRANSIENT_ERROR, Result.toError(Result.ResultType.TRANSIENT_ERROR));
+        });
+        var put = driver.sendRequest("http://localhost/document/v1/space/music/docid/one", POST, "{\"fields\": {}}");
+        assertEquals("The update is not dispatched before the blocked put, which is retried by the dispatching thread",
+                     List.of("DocumentPut", "DocumentPut"), dispatched);
+
+        access.session.expect((operation, parameters) -> {
+            dispatched.add(operation.getClass().getSimpleName());
+            parameters.responseHandler().get().handleResponse(success);
+            return new Result(0);
+        });
+        handler.dispatchEnqueued();
+        put.readAll();
+        update.get().readAll();
+        assertEquals(200, put.getStatus());
+        assertEquals(200, update.get().getStatus());
+        assertEquals(List.of("DocumentPut", "DocumentPut", "DocumentPut", "DocumentUpdate"), dispatched);
+        driver.close();
+    }
+
     @Test
     public void testThroughput() throws InterruptedException {
         DocumentOperationExecutorConfig executorConfig = new DocumentOperationExecutorConfig.Builder().build();
@@ -381,6 +381,27 @@ public abstract class IndexedTensor implements Tensor {
             };
         }
 
+        /**
+         * Creates a builder initialized with the given int8 values. If the tensor value type is int8,
+         * the tensor will hold the values in this byte array, using a quarter of the memory of floats.
+         *
+         * @param type the type of the tensor to build
+         * @param values the initial values of the tensor in the <i>standard value order</i>.
+         *               This <b>transfers ownership</b> of the value array - it
+         *               must not be further mutated by the caller
+         */
+        public static Builder of(TensorType type, DimensionSizes sizes, byte[] values) {
+            validate(type, sizes);
+            validateSizes(sizes, values.length);
+            if (type.valueType() == TensorType.Value.INT8)
+                return new IndexedInt8Tensor.BoundInt8Builder(type, sizes, values);
+
+            BoundBuilder builder = (BoundBuilder)of(type, sizes);
+            for (int i = 0; i < values.length; i++)
+                builder.cellByDirectIndex(i, (float)values[i]);
+            return builder;
+        }
+
         private static void validateSizes(DimensionSizes sizes, int length) {
             if (sizes.totalSize() != length) {
                 throw new IllegalArgumentException("Invalid size(" + length + ") of supplied value vector." +
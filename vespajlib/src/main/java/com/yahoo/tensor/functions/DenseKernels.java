@@ -0,0 +1,221 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Loops over contiguous cells of indexed tensors for the combinations of joins and reductions
+ * which are most common in practice: Dot products, squared distances and max.
+ * The loops keep four independent partial results, which lets the CPU execute
+ * four lanes in parallel instead of waiting for each addition to complete.
+ * Results may therefore differ from summing in cell order in the last bits.
+ *
+ * When the joined cells would be of another type than double, each combined value is rounded to float
+ * before it is summed, as it is when the joined tensor is created, since such tensors store floats.
+ * Sums therefore equal those of the general implementations of reduce over join, except for summation order.
+ *
+ * Functions use these when the combinator and aggregator is recognized
+ * (i.e. are instances of the {@link ScalarFunctions} classes), and fall back
+ * to their general implementations otherwise.
+ *
+ * @author agent
+ */
+final class DenseKernels {
+
+    private DenseKernels() {}
+
+    /** Returns whether the given tensors are indexed vectors in the same dimension */
+    static boolean isVectorPair(Tensor a, Tensor b) {
+        return isVector(a) && isVector(b) &&
+               a.type().dimensions().get(0).name().equals(b.type().dimensions().get(0).name());
+    }
+
+    static boolean isVector(Tensor tensor) {
+        return tensor instanceof IndexedTensor &&
+               tensor.type().dimensions().size() == 1 &&
+               tensor.type().dimensions().get(0).isIndexed();
+    }
+
+    /** Returns whether the given combinator followed by a sum has a kernel */
+    static boolean hasSumKernel(DoubleBinaryOperator combinator) {
+        return combinator instanceof ScalarFunctions.Multiply || combinator instanceof ScalarFunctions.SquaredDifference;
+    }
+
+    /**
+     * Returns the sum of the given combinator applied to pairs of cells, which must have a sum kernel.
+     *
+     * @param cellType the cell type of the tensor the combined values would be joined into
+     */
+    static double sum(DoubleBinaryOperator combinator,
+                      IndexedTensor a, long aOffset, IndexedTensor b, long bOffset, int length,
+                      TensorType.Value cellType) {
+        boolean isDouble = cellType == TensorType.Value.DOUBLE;
+        if (combinator instanceof ScalarFunctions.Multiply)
+            return isDouble ? dotProduct(a, aOffset, b, bOffset, length)
+                            : floatDotProduct(a, aOffset, b, bOffset, length);
+        if (combinator instanceof ScalarFunctions.SquaredDifference)
+            return isDouble ? squaredDistance(a, aOffset, b, bOffset, length)
+                            : floatSquaredDistance(a, aOffset, b, bOffset, length, false);
+        throw new IllegalArgumentException("No kernel for " + combinator);
+    }
+
+    /**
+     * Returns the sum of the squares of the differences of pairs of cells, where the differences are
+     * joined into a tensor of the given cell type before they are squared.
+     */
+    static double sumOfSquaredDifferences(IndexedTensor a, long aOffset, IndexedTensor b, long bOffset, int length,
+                                          TensorType.Value cellType) {
+        return cellType == TensorType.Value.DOUBLE ? squaredDistance(a, aOffset, b, bOffset, length)
+                                                   : floatSquaredDistance(a, aOffset, b, bOffset, length, true);
+    }
+
+    /** Returns the sum of a[aOffset + i] * b[bOffset + i] for i in [0, length) */
+    static double dotProduct(IndexedTensor a, long aOffset, IndexedTensor b, long bOffset, int length) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += a.get(aOffset + i) * b.get(bOffset + i);
+            sum1 += a.get(aOffset + i + 1) * b.get(bOffset + i + 1);
+            sum2 += a.get(aOffset + i + 2) * b.get(bOffset + i + 2);
+            sum3 += a.get(aOffset + i + 3) * b.get(bOffset + i + 3);
+        }
+        for (; i < length; i++)
+            sum0 += a.get(aOffset + i) * b.get(bOffset + i);
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /** Returns the sum of (a[aOffset + i] - b[bOffset + i])^2 for i in [0, length) */
+    static double squaredDistance(IndexedTensor a, long aOffset, IndexedTensor b, long bOffset, int length) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            double d0 = a.get(aOffset + i) - b.get(bOffset + i);
+            double d1 = a.get(aOffset + i + 1) - b.get(bOffset + i + 1);
+            double d2 = a.get(aOffset + i + 2) - b.get(bOffset + i + 2);
+            double d3 = a.get(aOffset + i + 3) - b.get(bOffset + i + 3);
+            sum0 += d0 * d0;
+            sum1 += d1 * d1;
+            sum2 += d2 * d2;
+            sum3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            double d = a.get(aOffset + i) - b.get(bOffset + i);
+            sum0 += d * d;
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /** Returns the sum of (float)(a[aOffset + i] * b[bOffset + i]) for i in [0, length) */
+    static double floatDotProduct(IndexedTensor a, long aOffset, IndexedTensor b, long bOffset, int length) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += (float)(a.get(aOffset + i) * b.get(bOffset + i));
+            sum1 += (float)(a.get(aOffset + i + 1) * b.get(bOffset + i + 1));
+            sum2 += (float)(a.get(aOffset + i + 2) * b.get(bOffset + i + 2));
+            sum3 += (float)(a.get(aOffset + i + 3) * b.get(bOffset + i + 3));
+        }
+        for (; i < length; i++)
+            sum0 += (float)(a.get(aOffset + i) * b.get(bOffset + i));
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Returns the sum of (float)((a[aOffset + i] - b[bOffset + i])^2) for i in [0, length)
+     *
+     * @param roundDifferences whether to also round each difference to float before squaring it
+     */
+    static double floatSquaredDistance(IndexedTensor a, long aOffset, IndexedTensor b, long bOffset, int length,
+                                       boolean roundDifferences) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            double d0 = difference(a.get(aOffset + i), b.get(bOffset + i), roundDifferences);
+            double d1 = difference(a.get(aOffset + i + 1), b.get(bOffset + i + 1), roundDifferences);
+            double d2 = difference(a.get(aOffset + i + 2), b.get(bOffset + i + 2), roundDifferences);
+            double d3 = difference(a.get(aOffset + i + 3), b.get(bOffset + i + 3), roundDifferences);
+            sum0 += (float)(d0 * d0);
+            sum1 += (float)(d1 * d1);
+            sum2 += (float)(d2 * d2);
+            sum3 += (float)(d3 * d3);
+        }
+        for (; i < length; i++) {
+            double d = difference(a.get(aOffset + i), b.get(bOffset + i), roundDifferences);
+            sum0 += (float)(d * d);
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static double difference(double a, double b, boolean round) {
+        return round ? (float)(a - b) : a - b;
+    }
+
+    /** Returns the sum of the first length cells of the given tensor */
+    static double sum(IndexedTensor a, int length) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += a.get(i);
+            sum1 += a.get(i + 1);
+            sum2 += a.get(i + 2);
+            sum3 += a.get(i + 3);
+        }
+        for (; i < length; i++)
+            sum0 += a.get(i);
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /** Returns the max of the first length cells of the given tensor, ignoring NaN's as Reduce does */
+    static double max(IndexedTensor a, int length) {
+        double max0 = Double.NEGATIVE_INFINITY, max1 = max0, max2 = max0, max3 = max0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            max0 = max(max0, a.get(i));
+            max1 = max(max1, a.get(i + 1));
+            max2 = max(max2, a.get(i + 2));
+            max3 = max(max3, a.get(i + 3));
+        }
+        for (; i < length; i++)
+            max0 = max(max0, a.get(i));
+        return max(max(max0, max1), max(max2, max3));
+    }
+
+    private static double max(double max, double value) {
+        return value > max ? value : max;
+    }
+
+    /** Returns the result of joining the first length cells of two vectors into a vector of the given type */
+    static Tensor join(IndexedTensor a, IndexedTensor b, int length, TensorType type, DoubleBinaryOperator combinator) {
+        DimensionSizes sizes = new DimensionSizes.Builder(1).set(0, length).build();
+        if (type.valueType() == TensorType.Value.DOUBLE) {
+            double[] values = new double[length];
+            if (combinator instanceof ScalarFunctions.Multiply)
+                for (int i = 0; i < length; i++) values[i] = a.get(i) * b.get(i);
+            else if (combinator instanceof ScalarFunctions.Add)
+                for (int i = 0; i < length; i++) values[i] = a.get(i) + b.get(i);
+            else if (combinator instanceof ScalarFunctions.Subtract)
+                for (int i = 0; i < length; i++) values[i] = a.get(i) - b.get(i);
+            else
+                for (int i = 0; i < length; i++) values[i] = combinator.applyAsDouble(a.get(i), b.get(i));
+            return IndexedTensor.Builder.of(type, sizes, values).build();
+        }
+        else {
+            float[] values = new float[length];
+            if (combinator instanceof ScalarFunctions.Multiply)
+                for (int i = 0; i < length; i++) values[i] = (float)(a.get(i) * b.get(i));
+            else if (combinator instanceof ScalarFunctions.Add)
+                for (int i = 0; i < length; i++) values[i] = (float)(a.get(i) + b.get(i));
+            else if (combinator instanceof ScalarFunctions.Subtract)
+                for (int i = 0; i < length; i++) values[i] = (float)(a.get(i) - b.get(i));
+            else
+                for (int i = 0; i < length; i++) values[i] = (float)combinator.applyAsDouble(a.get(i), b.get(i));
+            return IndexedTensor.Builder.of(type, sizes, values).build();
+        }
+    }
+
+}
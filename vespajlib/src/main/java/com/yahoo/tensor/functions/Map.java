@@ -60,7 +60,10 @@ public class Map<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMETYPE
 
     @Override
     public Tensor evaluate(EvaluationContext<NAMETYPE> context) {
-        Tensor input = argument().evaluate(context);
+        return evaluate(argument().evaluate(context), mapper);
+    }
+
+    static Tensor evaluate(Tensor input, DoubleUnaryOperator mapper) {
         Tensor.Builder builder = Tensor.Builder.of(outputType(input.type()));
         for (Iterator<Tensor.Cell> i = input.cellIterator(); i.hasNext(); ) {
             java.util.Map.Entry<TensorAddress, Double> cell = i.next();
@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * The <i>reduce</i> tensor operation returns a tensor produced from the argument tensor where some dimensions
@@ -105,9 +106,45 @@ public class Reduce<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMET
 
     @Override
     public Tensor evaluate(EvaluationContext<NAMETYPE> context) {
+        if (aggregator == Aggregator.sum && argument instanceof Join<NAMETYPE> join
+            && DenseKernels.hasSumKernel(join.combinator()))
+            return evaluateSumOfJoin(join, null, context);
+        if (aggregator == Aggregator.sum && argument instanceof com.yahoo.tensor.functions.Map<NAMETYPE> map
+            && map.mapper() instanceof ScalarFunctions.Square
+            && map.argument() instanceof Join<NAMETYPE> join && join.combinator() instanceof ScalarFunctions.Subtract)
+            return evaluateSumOfJoin(join, map.mapper(), context);
         return evaluate(this.argument.evaluate(context), dimensions, aggregator);
     }
 
+    /**
+     * Evaluates the sum of a join, which may be mapped, without creating the joined tensor
+     * if the join arguments are vectors.
+     *
+     * @param join the join whose result should be summed
+     * @param mapper the square applied to the result of a subtracting join before summing, or null if none
+     */
+    private Tensor evaluateSumOfJoin(Join<NAMETYPE> join, DoubleUnaryOperator mapper, EvaluationContext<NAMETYPE> context) {
+        Tensor a = join.arguments().get(0).evaluate(context);
+        Tensor b = join.arguments().get(1).evaluate(context);
+        TensorType joinedType = Join.outputType(a.type(), b.type());
+        if (DenseKernels.isVectorPair(a, b) && reducesAll(a)) {
+            int length = (int)Math.min(a.size(), b.size());
+            double sum = mapper == null
+                         ? DenseKernels.sum(join.combinator(), (IndexedTensor)a, 0, (IndexedTensor)b, 0, length, joinedType.valueType())
+                         : DenseKernels.sumOfSquaredDifferences((IndexedTensor)a, 0, (IndexedTensor)b, 0, length, joinedType.valueType());
+            return Tensor.Builder.of(TensorType.empty).cell(sum).build();
+        }
+        Tensor joined = Join.evaluate(a, b, joinedType, join.combinator());
+        if (mapper != null)
+            joined = com.yahoo.tensor.functions.Map.evaluate(joined, mapper);
+        return evaluate(joined, dimensions, aggregator);
+    }
+
+    private boolean reducesAll(Tensor vector) {
+        return dimensions.isEmpty() ||
+               (dimensions.size() == 1 && dimensions.get(0).equals(vector.type().dimensions().get(0).name()));
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash("reduce", argument, dimensions, aggregator);
@@ -232,8 +269,13 @@ public class Reduce<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMET
     }
 
     private static Tensor reduceIndexedVector(IndexedTensor argument, Aggregator aggregator) {
-        ValueAggregator valueAggregator = ValueAggregator.ofType(aggregator);
         int dimensionSize = Convert.safe2Int(argument.dimensionSizes().size(0));
+        if (aggregator == Aggregator.sum)
+            return Tensor.Builder.of(TensorType.empty).cell(DenseKernels.sum(argument, dimensionSize)).build();
+        if (aggregator == Aggregator.max)
+            return Tensor.Builder.of(TensorType.empty).cell(DenseKernels.max(argument, dimensionSize)).build();
+
+        ValueAggregator valueAggregator = ValueAggregator.ofType(aggregator);
         for (int i = 0; i < dimensionSize ; i++)
             valueAggregator.aggregate(argument.get(i));
         return Tensor.Builder.of(TensorType.empty).cell(valueAggregator.aggregatedValue()).build();
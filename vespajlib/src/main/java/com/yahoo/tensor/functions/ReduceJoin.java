@@ -146,6 +146,10 @@ public class ReduceJoin<NAMETYPE extends Name> extends CompositeTensorFunction<N
         }
         IndexedTensor.BoundBuilder builder = (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(reducedType);
         long commonSize = Math.min(a.dimensionSizes().size(0), b.dimensionSizes().size(0));
+        if (hasSumKernel()) {
+            builder.cellByDirectIndex(0, DenseKernels.sum(combinator, a, 0, b, 0, (int)commonSize, joinedValueType(a, b)));
+            return builder.build();
+        }
 
         Reduce.ValueAggregator agg = Reduce.ValueAggregator.ofType(aggregator);
         for (int ic = 0; ic < commonSize; ++ic) {
@@ -164,6 +168,13 @@ public class ReduceJoin<NAMETYPE extends Name> extends CompositeTensorFunction<N
         IndexedTensor.BoundBuilder builder = (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(reducedType);
         DimensionSizes sizesA = a.dimensionSizes();
         DimensionSizes sizesB = b.dimensionSizes();
+        if (hasSumKernel()) { // the kernel combinators are symmetric, so swapping does not matter
+            int commonSize = (int)Math.min(sizesA.size(0), sizesB.size(1));
+            TensorType.Value cellType = joinedValueType(a, b);
+            for (int ib = 0; ib < sizesB.size(0); ++ib)
+                builder.cellByDirectIndex(ib, DenseKernels.sum(combinator, a, 0, b, ib * sizesB.size(1), commonSize, cellType));
+            return builder.build();
+        }
 
         Reduce.ValueAggregator agg = Reduce.ValueAggregator.ofType(aggregator);
         for (int ib = 0; ib < sizesB.size(0); ++ib) {
@@ -191,6 +202,17 @@ public class ReduceJoin<NAMETYPE extends Name> extends CompositeTensorFunction<N
         long strideA = iaToReduced < ibToReduced ? sizesB.size(0) : 1;
         long strideB = ibToReduced < iaToReduced ? sizesA.size(0) : 1;
 
+        if (hasSumKernel()) {
+            int commonSize = (int)Math.min(sizesA.size(1), sizesB.size(1));
+            TensorType.Value cellType = joinedValueType(a, b);
+            for (int ia = 0; ia < sizesA.size(0); ++ia) {
+                for (int ib = 0; ib < sizesB.size(0); ++ib)
+                    builder.cellByDirectIndex(ia * strideA + ib * strideB,
+                                              DenseKernels.sum(combinator, a, ia * sizesA.size(1), b, ib * sizesB.size(1), commonSize, cellType));
+            }
+            return builder.build();
+        }
+
         Reduce.ValueAggregator agg = Reduce.ValueAggregator.ofType(aggregator);
         for (int ia = 0; ia < sizesA.size(0); ++ia) {
             for (int ib = 0; ib < sizesB.size(0); ++ib) {
@@ -206,6 +228,15 @@ public class ReduceJoin<NAMETYPE extends Name> extends CompositeTensorFunction<N
         return builder.build();
     }
 
+    private boolean hasSumKernel() {
+        return aggregator == Reduce.Aggregator.sum && DenseKernels.hasSumKernel(combinator);
+    }
+
+    /** Returns the value type of the tensor joining the given tensors would produce, to which kernels round */
+    private static TensorType.Value joinedValueType(Tensor a, Tensor b) {
+        return TensorType.combinedValueType(a.type(), b.type());
+    }
+
     private Tensor evaluateGeneral(IndexedTensor a, IndexedTensor b, TensorType reducedType) {
         IndexedTensor.BoundBuilder builder = (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(reducedType);
         TensorType onlyInA = Reduce.outputType(a.type(), dimensions);
@@ -95,9 +95,14 @@ public class DenseBinaryFormat implements BinaryFormat {
             type = decodeType(buffer);
             sizes = sizesFromType(type);
         }
-        Tensor.Builder builder = Tensor.Builder.of(type, sizes);
-        decodeCells(sizes, buffer, (IndexedTensor.BoundBuilder)builder);
-        return builder.build();
+        return switch (serializationValueType) {
+            case INT8 -> IndexedTensor.Builder.of(type, sizes, decodeInt8Values(sizes, buffer)).build();
+            default -> {
+                Tensor.Builder builder = Tensor.Builder.of(type, sizes);
+                decodeCells(sizes, buffer, (IndexedTensor.BoundBuilder)builder);
+                yield builder.build();
+            }
+        };
     }
 
     private TensorType decodeType(GrowableByteBuffer buffer) {
@@ -121,7 +126,7 @@ public class DenseBinaryFormat implements BinaryFormat {
             case DOUBLE: decodeDoubleCells(sizes, builder, buffer); break;
             case FLOAT: decodeFloatCells(sizes, builder, buffer); break;
             case BFLOAT16: decodeBFloat16Cells(sizes, builder, buffer); break;
-            case INT8: decodeInt8Cells(sizes, builder, buffer); break;
+            default: throw new IllegalStateException("Unexpected value type " + serializationValueType);
         }
     }
 
@@ -141,10 +146,10 @@ public class DenseBinaryFormat implements BinaryFormat {
         }
     }
 
-    private void decodeInt8Cells(DimensionSizes sizes, IndexedTensor.BoundBuilder builder, GrowableByteBuffer buffer) {
-        for (long i = 0; i < sizes.totalSize(); i++) {
-            builder.cellByDirectIndex(i, (float) buffer.get());
-        }
+    private byte[] decodeInt8Values(DimensionSizes sizes, GrowableByteBuffer buffer) {
+        byte[] values = new byte[(int)sizes.totalSize()];
+        buffer.get(values);
+        return values;
     }
 
 }
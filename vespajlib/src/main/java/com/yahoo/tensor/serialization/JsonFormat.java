@@ -308,47 +308,37 @@ public class JsonFormat {
         return (byte)d;
     }
 
-    private static double[] decodeHexStringAsBytes(String input) {
-        int l = input.length() / 2;
-        double[] result = new double[l];
-        int idx = 0;
-        for (int i = 0; i < l; i++) {
-            byte v = decodeHex(input, idx++);
-            v <<= 4;
-            v += decodeHex(input, idx++);
-            result[i] = v;
-        }
-        return result;
+    /** Receives the values decoded from a hex string of a value type which can be represented exactly as floats */
+    private interface FloatSink {
+        void set(int index, float value);
     }
 
-    private static double[] decodeHexStringAsBFloat16s(String input) {
-        int l = input.length() / 4;
-        double[] result = new double[l];
-        int idx = 0;
-        for (int i = 0; i < l; i++) {
-            int v = decodeHex(input, idx++);
-            v <<= 4; v += decodeHex(input, idx++);
-            v <<= 4; v += decodeHex(input, idx++);
-            v <<= 4; v += decodeHex(input, idx++);
-            v <<= 16;
-            result[i] = Float.intBitsToFloat(v);
-        }
-        return result;
+    private static int hexDigitsPerValue(TensorType.Value valueType) {
+        return switch (valueType) {
+            case INT8 -> 2;
+            case BFLOAT16 -> 4;
+            case FLOAT -> 8;
+            case DOUBLE -> 16;
+        };
     }
 
-    private static double[] decodeHexStringAsFloats(String input) {
-        int l = input.length() / 8;
-        double[] result = new double[l];
+    private static void decodeHexStringAsFloats(String input, TensorType.Value valueType, FloatSink sink) {
+        int digits = hexDigitsPerValue(valueType);
+        int l = input.length() / digits;
         int idx = 0;
         for (int i = 0; i < l; i++) {
             int v = 0;
-            for (int j = 0; j < 8; j++) {
+            for (int j = 0; j < digits; j++) {
                 v <<= 4;
                 v += decodeHex(input, idx++);
             }
-            result[i] = Float.intBitsToFloat(v);
+            sink.set(i, switch (valueType) {
+                case INT8 -> (byte)v;
+                case BFLOAT16 -> Float.intBitsToFloat(v << 16);
+                case FLOAT -> Float.intBitsToFloat(v);
+                case DOUBLE -> throw new IllegalArgumentException("Double values cannot be decoded to floats");
+            });
         }
-        return result;
     }
 
     private static double[] decodeHexStringAsDoubles(String input) {
@@ -367,12 +357,24 @@ public class JsonFormat {
     }
 
     public static double[] decodeHexString(String input, TensorType.Value valueType) {
-        return switch (valueType) {
-            case INT8 -> decodeHexStringAsBytes(input);
-            case BFLOAT16 -> decodeHexStringAsBFloat16s(input);
-            case FLOAT -> decodeHexStringAsFloats(input);
-            case DOUBLE -> decodeHexStringAsDoubles(input);
-        };
+        if (valueType == TensorType.Value.DOUBLE) return decodeHexStringAsDoubles(input);
+        double[] result = new double[input.length() / hexDigitsPerValue(valueType)];
+        decodeHexStringAsFloats(input, valueType, (i, v) -> result[i] = v);
+        return result;
+    }
+
+    /**
+     * Decodes a hex string of values of a value type which can be represented exactly as floats,
+     * without widening the values to doubles.
+     *
+     * @throws IllegalArgumentException if the value type is double
+     */
+    public static float[] decodeHexStringToFloats(String input, TensorType.Value valueType) {
+        if (valueType == TensorType.Value.DOUBLE)
+            throw new IllegalArgumentException("Double values cannot be decoded to floats");
+        float[] result = new float[input.length() / hexDigitsPerValue(valueType)];
+        decodeHexStringAsFloats(input, valueType, (i, v) -> result[i] = v);
+        return result;
     }
 
     private static void decodeMaybeNestedValuesInBlock(Inspector arrayField, double[] target, MutableInteger index) {
@@ -306,6 +306,27 @@ public class BinaryViewTest {
         }
     }
 
+    @Test public void testBinaryViewOfArrayPart() {
+        for (int i = 0; i < numShapes; ++i) {
+            var slime = makeSlime(i);
+            ctx = "case " + i + ": '" + slime.toString() + "'";
+            byte[] data = BinaryFormat.encode(slime);
+            byte[] padded = new byte[data.length + 10];
+            System.arraycopy(data, 0, padded, 3, data.length);
+            checkParity(slime.get(), BinaryView.inspect(padded, 3, data.length));
+        }
+    }
+
+    @Test public void testUnderflowInArrayPart() {
+        byte[] data = { 0, encode_type_and_meta(Type.STRING.ID, 3), 65, 66, 67 };
+        try {
+            BinaryView.inspect(data, 0, 3);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("bad input: underflow", e.getMessage());
+        }
+    }
+
     void assertFail(byte[] data, String reason) {
         try {
             var view = BinaryView.inspect(data);
@@ -0,0 +1,100 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.evaluation.Name;
+import com.yahoo.tensor.evaluation.VariableTensor;
+import com.yahoo.tensor.functions.ConstantTensor;
+import com.yahoo.tensor.functions.Join;
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.TensorFunction;
+import com.yahoo.tensor.serialization.TypedBinaryFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Compares the memory usage and dot product throughput of int8 tensors held in their narrow representation
+ * (as decoded from the binary format) to the same tensors held as floats.
+ *
+ * @author agent
+ */
+public class CellStorageBenchmark {
+
+    private final static Random random = new Random(1234);
+
+    public void run(int tensorCount, int dimensionSize, int iterations) {
+        TensorType type = new TensorType.Builder(TensorType.Value.INT8).indexed("x", dimensionSize).build();
+        List<byte[]> serialized = serialized(type, tensorCount);
+        System.out.println(tensorCount + " " + type + " tensors:");
+        run("narrow", type, serialized, false, iterations);
+        run("float", type, serialized, true, iterations);
+    }
+
+    private void run(String name, TensorType type, List<byte[]> serialized, boolean asFloats, int iterations) {
+        long memoryBefore = usedMemory();
+        List<Tensor> tensors = new ArrayList<>(serialized.size());
+        for (byte[] bytes : serialized)
+            tensors.add(asFloats ? asFloats(decode(type, bytes)) : decode(type, bytes));
+        long memory = usedMemory() - memoryBefore;
+
+        TensorFunction<Name> dotProduct = new Reduce<>(new Join<>(new ConstantTensor<>(tensors.get(0)),
+                                                                  new VariableTensor<>("argument"), (a, b) -> a * b),
+                                                       Reduce.Aggregator.sum).toPrimitive();
+        dotProducts(dotProduct, tensors, Math.max(iterations / 10, 1)); // warmup
+        long startTime = System.nanoTime();
+        double result = dotProducts(dotProduct, tensors, iterations);
+        long elapsedNanos = System.nanoTime() - startTime;
+        System.out.printf("  %-8s %,8d kb   %,12.0f dot products/s   (checksum %.1f)%n",
+                          name, memory / 1024, (double)iterations * tensors.size() * 1e9 / elapsedNanos, result);
+    }
+
+    private double dotProducts(TensorFunction<Name> dotProduct, List<Tensor> tensors, int iterations) {
+        double sum = 0;
+        MapEvaluationContext<Name> context = new MapEvaluationContext<>();
+        for (int i = 0; i < iterations; i++) {
+            for (Tensor tensor : tensors) {
+                context.put("argument", tensor);
+                sum += dotProduct.evaluate(context).asDouble();
+            }
+        }
+        return sum;
+    }
+
+    private Tensor decode(TensorType type, byte[] bytes) {
+        return TypedBinaryFormat.decode(Optional.of(type), GrowableByteBuffer.wrap(bytes));
+    }
+
+    /** Returns the given tensor with its values held as floats, as tensors built by setting cells are */
+    private Tensor asFloats(Tensor tensor) {
+        float[] values = new float[(int)tensor.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = ((IndexedTensor)tensor).getFloat(i);
+        return IndexedTensor.Builder.of(tensor.type(), values).build();
+    }
+
+    private List<byte[]> serialized(TensorType type, int count) {
+        List<byte[]> serialized = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            IndexedTensor.Builder builder = IndexedTensor.Builder.of(type);
+            for (int j = 0; j < type.dimensions().get(0).size().get(); j++)
+                builder.cell(random.nextInt(256) - 128, j);
+            serialized.add(TypedBinaryFormat.encode(builder.build()));
+        }
+        return serialized;
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    public static void main(String[] args) {
+        new CellStorageBenchmark().run(10000, 768, 20);
+    }
+
+}
@@ -0,0 +1,92 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.evaluation.Name;
+import com.yahoo.tensor.evaluation.VariableTensor;
+import com.yahoo.tensor.functions.ConstantTensor;
+import com.yahoo.tensor.functions.EuclideanDistance;
+import com.yahoo.tensor.functions.Join;
+import com.yahoo.tensor.functions.Map;
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.ScalarFunctions;
+import com.yahoo.tensor.functions.TensorFunction;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Compares the throughput of vector functions evaluated by kernels
+ * (when the combinators are ScalarFunctions instances) to the general implementations (when they are lambdas).
+ *
+ * @author agent
+ */
+public class DenseKernelBenchmark {
+
+    private final static Random random = new Random(1234);
+
+    public void run(int iterations) {
+        for (TensorType.Value valueType : List.of(TensorType.Value.DOUBLE, TensorType.Value.FLOAT)) {
+            for (int size : List.of(128, 256, 512, 1024, 2048, 4096)) {
+                Tensor query = vector(valueType, size);
+                Tensor document = vector(valueType, size);
+                System.out.println(valueType + " vectors of size " + size + ":");
+                compare("dot product",
+                        new Reduce<>(join(query, ScalarFunctions.multiply()), Reduce.Aggregator.sum),
+                        new Reduce<>(join(query, (a, b) -> a * b), Reduce.Aggregator.sum),
+                        document, iterations);
+                compare("euclidean distance",
+                        new EuclideanDistance<>(new ConstantTensor<>(query), new VariableTensor<>("argument"), "x").toPrimitive(),
+                        new Map<>(new Reduce<>(new Map<>(join(query, (a, b) -> a - b), x -> x * x),
+                                               Reduce.Aggregator.sum), Math::sqrt),
+                        document, iterations);
+                compare("max",
+                        new Reduce<>(join(query, ScalarFunctions.add()), Reduce.Aggregator.max),
+                        new Reduce<>(join(query, (a, b) -> a + b), Reduce.Aggregator.max),
+                        document, iterations);
+            }
+        }
+    }
+
+    private void compare(String name, TensorFunction<Name> kernel, TensorFunction<Name> general,
+                         Tensor argument, int iterations) {
+        double kernelTime = time(kernel, argument, iterations);
+        double generalTime = time(general, argument, iterations);
+        System.out.printf("  %-20s kernel %8.3f us, general %8.3f us, speedup %5.1fx%n",
+                          name, kernelTime / 1000, generalTime / 1000, generalTime / kernelTime);
+    }
+
+    /** Returns the average time per evaluation in nanoseconds */
+    private double time(TensorFunction<Name> function, Tensor argument, int iterations) {
+        MapEvaluationContext<Name> context = new MapEvaluationContext<>();
+        context.put("argument", argument);
+        double sum = 0;
+        for (int i = 0; i < iterations / 10; i++) // warmup
+            sum += function.evaluate(context).asDouble();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sum += function.evaluate(context).asDouble();
+        long elapsedNanos = System.nanoTime() - startTime;
+        if (Double.isNaN(sum))
+            throw new IllegalStateException("Unexpected result");
+        return (double)elapsedNanos / iterations;
+    }
+
+    private TensorFunction<Name> join(Tensor query, DoubleBinaryOperator combinator) {
+        return new Join<>(new ConstantTensor<>(query), new VariableTensor<>("argument"), combinator);
+    }
+
+    private static Tensor vector(TensorType.Value valueType, int size) {
+        TensorType type = new TensorType.Builder(valueType).indexed("x", size).build();
+        IndexedTensor.BoundBuilder builder = (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(type);
+        for (int i = 0; i < size; i++)
+            builder.cellByDirectIndex(i, random.nextDouble());
+        return builder.build();
+    }
+
+    public static void main(String[] args) {
+        new DenseKernelBenchmark().run(args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+    }
+
+}
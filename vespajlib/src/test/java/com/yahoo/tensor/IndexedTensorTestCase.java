@@ -80,6 +80,24 @@ public class IndexedTensorTestCase {
         }
     }
     
+    @Test
+    public void testNarrowCellStorage() {
+        TensorType int8Type = TensorType.fromSpec("tensor<int8>(x[2],y[2])");
+        Tensor int8 = IndexedTensor.Builder.of(int8Type, DimensionSizes.of(int8Type), new byte[] { -128, 0, 3, 127 }).build();
+        assertEquals(IndexedInt8Tensor.class, int8.getClass());
+        assertEquals(-128.0, int8.get(TensorAddress.of(0, 0)), 0);
+        assertEquals(127.0, int8.get(TensorAddress.of(1, 1)), 0);
+        Tensor int8AsFloats = Tensor.from("tensor<int8>(x[2],y[2]):[[-128, 0], [3, 127]]");
+        assertEquals(int8AsFloats, int8);
+        assertEquals(int8AsFloats.hashCode(), int8.hashCode());
+        assertEquals(int8AsFloats.toString(), int8.toString());
+
+        // Other value types are converted
+        TensorType floatType = TensorType.fromSpec("tensor<float>(x[3])");
+        Tensor floats = IndexedTensor.Builder.of(floatType, DimensionSizes.of(floatType), new byte[] { 1, 2, 3 }).build();
+        assertEquals(Tensor.from("tensor<float>(x[3]):[1, 2, 3]"), floats);
+    }
+
     @Test
     public void testBoundBuilding() {
         TensorType type = new TensorType.Builder().indexed("v", vSize)
@@ -0,0 +1,113 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.Name;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that functions evaluated by kernels produce the same results as when evaluated by the general implementations.
+ * Lambda combinators are not recognized, and are used here to get the general implementations.
+ * Kernels round combined values to the cell type as joining does, so results only differ by summation order.
+ *
+ * @author agent
+ */
+public class DenseKernelsTestCase {
+
+    private final Random random = new Random(1234);
+
+    @Test
+    public void testVectorKernels() {
+        for (String valueType : List.of("double", "float", "bfloat16", "int8")) {
+            for (int size = 1; size <= 9; size++) {
+                Tensor a = vector(valueType, size);
+                Tensor b = vector(valueType, size);
+                String message = valueType + " of size " + size;
+                double delta = 1e-9;
+                assertEquals(message,
+                             reduce(join(a, b, (x, y) -> x * y), Reduce.Aggregator.sum).asDouble(),
+                             reduce(join(a, b, ScalarFunctions.multiply()), Reduce.Aggregator.sum).asDouble(),
+                             delta);
+                assertEquals(message,
+                             reduce(new Map<>(join(a, b, (x, y) -> x - y), x -> x * x), Reduce.Aggregator.sum).asDouble(),
+                             reduce(new Map<>(join(a, b, ScalarFunctions.subtract()), ScalarFunctions.square()), Reduce.Aggregator.sum).asDouble(),
+                             delta);
+                assertEquals(message,
+                             reduce(join(a, b, (x, y) -> (x - y) * (x - y)), Reduce.Aggregator.sum).asDouble(),
+                             reduce(join(a, b, ScalarFunctions.squareddifference()), Reduce.Aggregator.sum).asDouble(),
+                             delta);
+                assertEquals(message,
+                             reduce(join(a, b, (x, y) -> x + y), Reduce.Aggregator.max),
+                             reduce(join(a, b, ScalarFunctions.add()), Reduce.Aggregator.max));
+                assertEquals(message, a.multiply(b), join(a, b, (x, y) -> x * y).evaluate());
+                assertEquals(message, a.subtract(b), join(a, b, (x, y) -> x - y).evaluate());
+            }
+        }
+    }
+
+    @Test
+    public void testReduceJoinKernels() {
+        Tensor vector = Tensor.from("tensor(x[5]):[1, 2, 3, 4, 5]");
+        Tensor matrix = Tensor.from("tensor(y[2],x[5]):[[1, 0, 1, 0, 1], [-1, 2, -3, 4, 0.5]]");
+        Tensor matrix2 = Tensor.from("tensor(z[3],x[5]):[[1, 1, 1, 1, 1], [0, 0, 0, 0, 1], [2, 2, 2, 2, 2]]");
+        assertEquals(Tensor.from("tensor(y[2]):[9, 12.5]"), reduceJoin(vector, matrix, ScalarFunctions.multiply()));
+        assertEquals(Tensor.from("tensor(y[2]):[9, 12.5]"), reduceJoin(matrix, vector, ScalarFunctions.multiply()));
+        assertEquals(Tensor.from("tensor(y[2],z[3]):[[3, 1, 6], [2.5, 0.5, 5]]"),
+                     reduceJoin(matrix, matrix2, ScalarFunctions.multiply()));
+        assertEquals(Tensor.from("tensor(y[2]):[40, 60.25]"), reduceJoin(vector, matrix, ScalarFunctions.squareddifference()));
+    }
+
+    @Test
+    public void testReduceJoinKernelsRoundAsJoin() {
+        for (String valueType : List.of("float", "bfloat16", "int8")) {
+            Tensor a = vector(valueType, 9);
+            Tensor b = vector(valueType, 9);
+            assertEquals(valueType,
+                         reduce(join(a, b, (x, y) -> x * y), Reduce.Aggregator.sum).asDouble(),
+                         reduceJoin(a, b, ScalarFunctions.multiply()).asDouble(),
+                         1e-9);
+            assertEquals(valueType,
+                         reduce(join(a, b, (x, y) -> (x - y) * (x - y)), Reduce.Aggregator.sum).asDouble(),
+                         reduceJoin(a, b, ScalarFunctions.squareddifference()).asDouble(),
+                         1e-9);
+        }
+    }
+
+    @Test
+    public void testMaxIgnoresNaN() {
+        Tensor vector = Tensor.from("tensor(x[6]):[-3, -2, -5, -1, -4, -6]");
+        assertEquals(-1.0, vector.max().asDouble(), 0);
+        Tensor withNaN = IndexedTensor.Builder.of(TensorType.fromSpec("tensor(x[5])"),
+                                                  new double[] { Double.NaN, -2, Double.NaN, -1, Double.NaN }).build();
+        assertEquals(-1.0, withNaN.max().asDouble(), 0);
+    }
+
+    private Tensor vector(String valueType, int size) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++)
+            values[i] = valueType.equals("int8") ? random.nextInt(256) - 128 : random.nextDouble() * 2 - 1;
+        return IndexedTensor.Builder.of(TensorType.fromSpec("tensor<" + valueType + ">(x[" + size + "])"), values).build();
+    }
+
+    private TensorFunction<Name> join(Tensor a, Tensor b, DoubleBinaryOperator combinator) {
+        return new Join<>(new ConstantTensor<>(a), new ConstantTensor<>(b), combinator);
+    }
+
+    private Tensor reduce(TensorFunction<Name> argument, Reduce.Aggregator aggregator) {
+        return new Reduce<>(argument, aggregator).evaluate();
+    }
+
+    private Tensor reduceJoin(Tensor a, Tensor b, DoubleBinaryOperator combinator) {
+        return new ReduceJoin<>(new ConstantTensor<>(a), new ConstantTensor<>(b), combinator,
+                                Reduce.Aggregator.sum, List.of("x")).evaluate();
+    }
+
+}
@@ -108,6 +108,22 @@ public class DenseBinaryFormatTestCase {
         assertSerialization("tensor<int8>(x[2],y[2]):[2, 3, 4, 5]");
     }
 
+    @Test
+    public void testSerializationOfNarrowValues() {
+        assertNarrowSerialization("tensor<bfloat16>(x[4]):[-1.5, 0.0, 0.0078125, 65536.0]");
+        assertNarrowSerialization("tensor<int8>(x[4]):[-128, -1, 0, 127]");
+        assertSerialization(Tensor.from("tensor<int8>(x[2]):[-128, 127]"), TensorType.fromSpec("tensor<int8>(x[])"));
+    }
+
+    /** Narrow values are decoded to tensors which are equal, and have the same hash code, as parsed tensors */
+    private void assertNarrowSerialization(String tensorString) {
+        Tensor tensor = Tensor.from(tensorString);
+        Tensor decodedTensor = TypedBinaryFormat.decode(Optional.of(tensor.type()),
+                                                        GrowableByteBuffer.wrap(TypedBinaryFormat.encode(tensor)));
+        assertEquals(tensor, decodedTensor);
+        assertEquals(tensor.hashCode(), decodedTensor.hashCode());
+    }
+
     private void assertSerialization(String tensorString) {
         assertSerialization(Tensor.from(tensorString));
     }